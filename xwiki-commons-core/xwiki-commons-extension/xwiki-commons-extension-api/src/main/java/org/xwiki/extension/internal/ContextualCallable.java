@@ -0,0 +1,133 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.extension.internal;
+
+import java.util.concurrent.Callable;
+
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContext;
+import org.xwiki.job.Job;
+import org.xwiki.job.JobContext;
+import org.xwiki.job.event.status.JobStatus;
+import org.xwiki.logging.LogQueue;
+import org.xwiki.logging.LoggerManager;
+import org.xwiki.logging.event.LoggerListener;
+
+/**
+ * Execute a task in another thread as if it was executed by the thread which created it: with the same
+ * {@link ExecutionContext} and context class loader, and with its log captured by the current job if any.
+ * 
+ * @param <T> the type of the task result
+ * @version $Id$
+ * @since 6.0M1
+ */
+public class ContextualCallable<T> implements Callable<T>
+{
+    /**
+     * The task to execute.
+     */
+    private final Callable<T> callable;
+
+    /**
+     * Used to set the execution context in the thread executing the task.
+     */
+    private final Execution execution;
+
+    /**
+     * The execution context of the thread which created the task.
+     */
+    private final ExecutionContext context;
+
+    /**
+     * Used to capture the log of the thread executing the task.
+     */
+    private final LoggerManager loggerManager;
+
+    /**
+     * The log of the job which created the task, null if the task was not created by a job.
+     */
+    private final LogQueue jobLog;
+
+    /**
+     * The context class loader of the thread which created the task.
+     */
+    private final ClassLoader contextClassLoader;
+
+    /**
+     * Must be called from the thread creating the task.
+     * 
+     * @param callable the task to execute
+     * @param execution used to get and set the execution context
+     * @param jobContext used to find the job which creates the task
+     * @param loggerManager used to capture the log of the thread executing the task
+     */
+    public ContextualCallable(Callable<T> callable, Execution execution, JobContext jobContext,
+        LoggerManager loggerManager)
+    {
+        this.callable = callable;
+        this.execution = execution;
+        this.context = execution.getContext();
+        this.loggerManager = loggerManager;
+        this.contextClassLoader = Thread.currentThread().getContextClassLoader();
+
+        LogQueue log = null;
+        if (this.context != null) {
+            Job job = jobContext.getCurrentJob();
+            if (job != null) {
+                JobStatus status = job.getStatus();
+                if (status != null) {
+                    log = status.getLog();
+                }
+            }
+        }
+        this.jobLog = log;
+    }
+
+    @Override
+    public T call() throws Exception
+    {
+        Thread currentThread = Thread.currentThread();
+        ClassLoader currentClassLoader = currentThread.getContextClassLoader();
+        currentThread.setContextClassLoader(this.contextClassLoader);
+
+        if (this.context != null) {
+            this.execution.setContext(this.context);
+        }
+
+        if (this.jobLog != null) {
+            this.loggerManager.pushLogListener(new LoggerListener(LoggerListener.class.getName() + '_'
+                + hashCode(), this.jobLog));
+        }
+
+        try {
+            return this.callable.call();
+        } finally {
+            if (this.jobLog != null) {
+                this.loggerManager.popLogListener();
+            }
+
+            if (this.context != null) {
+                this.execution.removeContext();
+            }
+
+            currentThread.setContextClassLoader(currentClassLoader);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.extension.internal;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Create the daemon threads used by the extension modules and help running a list of tasks in parallel.
+ * 
+ * @version $Id$
+ * @since 6.0M1
+ */
+public class ExtensionThreadFactory implements ThreadFactory
+{
+    /**
+     * The minimum number of tasks to run per thread, below that it's not worth starting a new thread.
+     */
+    public static final int MIN_TASKS_PER_THREAD = 20;
+
+    /**
+     * The name of the threads.
+     */
+    private final String name;
+
+    /**
+     * The priority of the threads.
+     */
+    private final int priority;
+
+    /**
+     * True if a number should be appended to the name of the threads.
+     */
+    private final boolean numbered;
+
+    /**
+     * Used to number the threads.
+     */
+    private final AtomicInteger counter = new AtomicInteger();
+
+    /**
+     * Create numbered threads with normal priority.
+     * 
+     * @param name the name of the threads
+     */
+    public ExtensionThreadFactory(String name)
+    {
+        this(name, Thread.NORM_PRIORITY, true);
+    }
+
+    /**
+     * @param name the name of the threads
+     * @param priority the priority of the threads
+     * @param numbered true if a number should be appended to the name of the threads
+     */
+    public ExtensionThreadFactory(String name, int priority, boolean numbered)
+    {
+        this.name = name;
+        this.priority = priority;
+        this.numbered = numbered;
+    }
+
+    @Override
+    public Thread newThread(Runnable runnable)
+    {
+        Thread thread =
+            new Thread(runnable, this.numbered ? this.name + ' ' + this.counter.incrementAndGet() : this.name);
+        thread.setDaemon(true);
+        thread.setPriority(this.priority);
+
+        return thread;
+    }
+
+    /**
+     * @param tasks the number of tasks to run
+     * @return the number of threads worth using to run the passed number of tasks, 1 or less means it's better to run
+     *         them in the current thread
+     */
+    public static int getParallelism(int tasks)
+    {
+        return Math.min(Runtime.getRuntime().availableProcessors(), tasks / MIN_TASKS_PER_THREAD);
+    }
+
+    /**
+     * Run the passed tasks with a dedicated pool of threads and wait for all of them to be finished.
+     * 
+     * @param <T> the type of the task results
+     * @param name the name of the threads
+     * @param threads the number of threads to use
+     * @param tasks the tasks to run
+     * @return the finished tasks in the same order as the passed tasks
+     * @throws InterruptedException if interrupted while waiting, the remaining tasks are cancelled
+     */
+    public static <T> List<Future<T>> invokeAll(String name, int threads, List< ? extends Callable<T>> tasks)
+        throws InterruptedException
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new ExtensionThreadFactory(name));
+
+        try {
+            return executor.invokeAll(tasks);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
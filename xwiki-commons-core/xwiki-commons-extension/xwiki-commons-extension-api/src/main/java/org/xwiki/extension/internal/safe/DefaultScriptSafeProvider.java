@@ -21,8 +21,12 @@
 
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -33,9 +37,15 @@
 import org.xwiki.component.manager.ComponentManager;
 import org.xwiki.component.util.DefaultParameterizedType;
 import org.xwiki.component.util.ReflectionUtils;
+import org.xwiki.extension.wrap.AbstractWrappingObject;
 
 /**
  * Find the right safe provider for the passed object.
+ * <p>
+ * The roles of the providers found for a class are remembered (the providers themselves are looked up each time since
+ * they are not necessarily singletons) and the wrappers are cached so that the same unsafe object always get the same
+ * safe version while it's used. The caches are cleared with {@link #clearCache()} when new providers might
+ * have been registered.
  * 
  * @version $Id$
  * @since 4.0M2
@@ -57,6 +67,17 @@ public class DefaultScriptSafeProvider implements ScriptSafeProvider
     @Inject
     private Logger logger;
 
+    /**
+     * The roles of the providers to try for each class, in the order they should be tried. Since it keeps references
+     * to the classes it is cleared when an extension is uninstalled (see {@link ScriptSafeProviderCacheListener}).
+     */
+    private final Map<Class< ? >, List<Type>> providerRoles = new ConcurrentHashMap<Class< ? >, List<Type>>();
+
+    /**
+     * The wrappers already provided.
+     */
+    private final SafeObjectCache safeObjects = new SafeObjectCache();
+
     @Override
     public Object get(Object unsafe)
     {
@@ -64,58 +85,119 @@ public Object get(Object unsafe)
             return null;
         }
 
-        Object safe = get(unsafe, Arrays.<Type> asList(unsafe.getClass()));
+        Object safe = this.safeObjects.get(unsafe);
 
         if (safe == null) {
-            safe = unsafe;
+            safe = get(unsafe, getProviderRoles(unsafe.getClass()));
+
+            if (safe == null) {
+                safe = unsafe;
+            } else if (safe instanceof AbstractWrappingObject) {
+                // A wrapper only delegates to the unsafe object so it can be reused
+                this.safeObjects.put(unsafe, safe);
+            }
         }
 
         return safe;
     }
 
+    /**
+     * Forget the providers found for each class and the provided wrappers.
+     * 
+     * @since 6.0M1
+     */
+    public void clearCache()
+    {
+        this.providerRoles.clear();
+        this.safeObjects.clear();
+    }
+
     /**
      * @param unsafe the unsafe version of the object
-     * @param types the types implemented or extended by the object for which to search a provider
+     * @param roles the roles of the providers to try
      * @return a safe version of the passed object, null if none could be provided
      */
-    private Object get(Object unsafe, List<Type> types)
+    private Object get(Object unsafe, List<Type> roles)
     {
-        for (Type type : types) {
-            Object safe = get(unsafe, type);
+        for (Type role : roles) {
+            ScriptSafeProvider<Object> provider = getProvider(role);
+
+            if (provider != null) {
+                Object safe = provider.get(unsafe);
 
-            if (safe != null) {
-                return safe;
+                if (safe != null) {
+                    return safe;
+                }
             }
         }
 
+        return null;
+    }
+
+    /**
+     * @param role the role of the provider
+     * @return the provider, null if it could not be loaded
+     */
+    private ScriptSafeProvider<Object> getProvider(Type role)
+    {
+        try {
+            return this.component.getInstance(role);
+        } catch (ComponentLookupException e) {
+            this.logger.error("Failed to load safe provider [{}]", role, e);
+        }
+
+        return null;
+    }
+
+    /**
+     * @param unsafeClass the class of the unsafe object
+     * @return the roles of the providers to try, in the order they should be tried
+     */
+    private List<Type> getProviderRoles(Class< ? > unsafeClass)
+    {
+        List<Type> roles = this.providerRoles.get(unsafeClass);
+
+        if (roles == null) {
+            roles = new ArrayList<Type>();
+            addProviderRoles(Arrays.<Type> asList(unsafeClass), roles);
+
+            roles = roles.isEmpty() ? Collections.<Type> emptyList() : Collections.unmodifiableList(roles);
+
+            this.providerRoles.put(unsafeClass, roles);
+        }
+
+        return roles;
+    }
+
+    /**
+     * @param types the types implemented or extended by the object for which to search providers
+     * @param roles the roles of the found providers
+     */
+    private void addProviderRoles(List<Type> types, List<Type> roles)
+    {
         for (Type type : types) {
-            Object safe = get(unsafe, ReflectionUtils.getDirectTypes(type));
+            Type role = getProviderRole(type);
 
-            if (safe != null) {
-                return safe;
+            if (role != null && !roles.contains(role)) {
+                roles.add(role);
             }
         }
 
-        return null;
+        for (Type type : types) {
+            addProviderRoles(ReflectionUtils.getDirectTypes(type), roles);
+        }
     }
 
     /**
-     * @param unsafe the unsafe version of the object
      * @param type the type implemented or extended by the object for which to search a provider
-     * @return a safe version of the passed object, null if none could be provided
+     * @return the role of the provider registered for the passed type, null if there is none
      */
-    private Object get(Object unsafe, Type type)
+    private Type getProviderRole(Type type)
     {
         Type completeRole = new DefaultParameterizedType(null, ScriptSafeProvider.class, type);
 
         if (this.component.hasComponent(completeRole)) {
-            try {
-                ScriptSafeProvider<Object> provider = this.component.getInstance(completeRole);
-
-                return provider.get(unsafe);
-            } catch (ComponentLookupException e) {
-                this.logger.error("Failed to load safe provider for complete type [{}]", type, e);
-            }
+            return completeRole;
         } else if (type instanceof ParameterizedType) {
             Type rawType = ((ParameterizedType) type).getRawType();
             Type rawRole = new DefaultParameterizedType(null, ScriptSafeProvider.class, rawType);
@@ -123,13 +205,7 @@ private Object get(Object unsafe, Type type)
             this.logger.debug("Could not find any safe provider for type [{}]. Trying with [{}]", type, rawType);
 
             if (this.component.hasComponent(rawRole)) {
-                try {
-                    ScriptSafeProvider<Object> provider = this.component.getInstance(rawRole);
-
-                    return provider.get(unsafe);
-                } catch (ComponentLookupException e) {
-                    this.logger.error("Failed to load safe provider for raw type [{}]", rawType, e);
-                }
+                return rawRole;
             }
         }
 
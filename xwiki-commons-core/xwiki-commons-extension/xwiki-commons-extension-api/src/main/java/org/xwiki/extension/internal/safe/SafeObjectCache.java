@@ -0,0 +1,170 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.extension.internal.safe;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remember the safe version of each unsafe object.
+ * <p>
+ * The unsafe objects are compared by identity and weakly referenced. The safe versions are softly referenced since
+ * they generally reference the unsafe object themselves: they are kept as long as memory allows it.
+ * 
+ * @version $Id$
+ * @since 6.0M1
+ */
+class SafeObjectCache
+{
+    /**
+     * Weak reference to an unsafe object, compared by identity.
+     * 
+     * @version $Id$
+     */
+    private static final class IdentityKey extends WeakReference<Object>
+    {
+        /**
+         * The identity hash code of the referenced object.
+         */
+        private final int hash;
+
+        /**
+         * @param unsafe the unsafe object
+         * @param queue the queue where to register the reference
+         */
+        IdentityKey(Object unsafe, ReferenceQueue<Object> queue)
+        {
+            super(unsafe, queue);
+
+            this.hash = System.identityHashCode(unsafe);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return this.hash;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (obj == this) {
+                return true;
+            }
+
+            if (obj instanceof IdentityKey) {
+                Object unsafe = get();
+
+                return unsafe != null && unsafe == ((IdentityKey) obj).get();
+            }
+
+            return false;
+        }
+    }
+
+    /**
+     * Key used to search the map without creating a reference. The map compares the searched key with the stored keys
+     * by calling the equals method of the searched key.
+     * 
+     * @version $Id$
+     */
+    private static final class LookupKey
+    {
+        /**
+         * The unsafe object.
+         */
+        private final Object unsafe;
+
+        /**
+         * @param unsafe the unsafe object
+         */
+        LookupKey(Object unsafe)
+        {
+            this.unsafe = unsafe;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return System.identityHashCode(this.unsafe);
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            return obj instanceof IdentityKey && ((IdentityKey) obj).get() == this.unsafe;
+        }
+    }
+
+    /**
+     * The safe objects indexed by unsafe object.
+     */
+    private final Map<Object, SoftReference<Object>> safeObjects =
+        new ConcurrentHashMap<Object, SoftReference<Object>>();
+
+    /**
+     * The keys of the collected unsafe objects.
+     */
+    private final ReferenceQueue<Object> queue = new ReferenceQueue<Object>();
+
+    /**
+     * @param unsafe the unsafe object
+     * @return the safe version of the passed object, null if it's not cached
+     */
+    Object get(Object unsafe)
+    {
+        SoftReference<Object> reference = this.safeObjects.get(new LookupKey(unsafe));
+
+        return reference != null ? reference.get() : null;
+    }
+
+    /**
+     * @param unsafe the unsafe object
+     * @param safe the safe version of the object
+     */
+    void put(Object unsafe, Object safe)
+    {
+        expunge();
+
+        this.safeObjects.put(new IdentityKey(unsafe, this.queue), new SoftReference<Object>(safe));
+    }
+
+    /**
+     * Forget all the safe objects.
+     */
+    void clear()
+    {
+        this.safeObjects.clear();
+    }
+
+    /**
+     * Remove the entries of the collected unsafe objects.
+     */
+    private void expunge()
+    {
+        for (Reference< ? > key = this.queue.poll(); key != null; key = this.queue.poll()) {
+            this.safeObjects.remove(key);
+        }
+    }
+}
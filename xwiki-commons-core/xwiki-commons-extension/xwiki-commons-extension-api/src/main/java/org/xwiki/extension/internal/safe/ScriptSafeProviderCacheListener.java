@@ -0,0 +1,111 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.extension.internal.safe;
+
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.event.ComponentDescriptorAddedEvent;
+import org.xwiki.component.event.ComponentDescriptorEvent;
+import org.xwiki.component.event.ComponentDescriptorRemovedEvent;
+import org.xwiki.component.util.ReflectionUtils;
+import org.xwiki.extension.event.ExtensionUninstalledEvent;
+import org.xwiki.extension.event.ExtensionUpgradedEvent;
+import org.xwiki.observation.EventListener;
+import org.xwiki.observation.event.Event;
+
+/**
+ * Clear the caches of the default {@link ScriptSafeProvider} when a safe provider is registered or unregistered (for
+ * example by an installed or uninstalled extension) and when an extension is uninstalled or upgraded, since the caches
+ * keep references to the classes of the provided objects which would otherwise prevent the extension ClassLoader to be
+ * released.
+ * 
+ * @version $Id$
+ * @since 6.0M1
+ */
+@Component
+@Singleton
+@Named(ScriptSafeProviderCacheListener.NAME)
+public class ScriptSafeProviderCacheListener implements EventListener
+{
+    /**
+     * The name of the listener.
+     */
+    public static final String NAME = "ScriptSafeProviderCacheListener";
+
+    /**
+     * The list of events observed.
+     */
+    private static final List<Event> EVENTS = Arrays.<Event> asList(new ComponentDescriptorAddedEvent(),
+        new ComponentDescriptorRemovedEvent(), new ExtensionUninstalledEvent(), new ExtensionUpgradedEvent());
+
+    /**
+     * The default safe provider.
+     */
+    @Inject
+    @SuppressWarnings("rawtypes")
+    private Provider<ScriptSafeProvider> safeProvider;
+
+    @Override
+    public List<Event> getEvents()
+    {
+        return EVENTS;
+    }
+
+    @Override
+    public String getName()
+    {
+        return NAME;
+    }
+
+    @Override
+    public void onEvent(Event event, Object source, Object data)
+    {
+        if (event instanceof ComponentDescriptorEvent) {
+            // The role of a safe provider is parameterized with the type it supports
+            Type roleType = ((ComponentDescriptorEvent) event).getRoleType();
+
+            if (ReflectionUtils.getTypeClass(roleType) == ScriptSafeProvider.class) {
+                clearCache();
+            }
+        } else {
+            clearCache();
+        }
+    }
+
+    /**
+     * Clear the caches of the default {@link ScriptSafeProvider}.
+     */
+    private void clearCache()
+    {
+        ScriptSafeProvider< ? > provider = this.safeProvider.get();
+
+        if (provider instanceof DefaultScriptSafeProvider) {
+            ((DefaultScriptSafeProvider) provider).clearCache();
+        }
+    }
+}
@@ -25,6 +25,7 @@
 import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.ListIterator;
 import java.util.Map;
 import java.util.Set;
 
@@ -63,24 +64,12 @@
 public abstract class AbstractInstallPlanJob<R extends ExtensionRequest> extends
     AbstractExtensionPlanJob<R>
 {
-    protected static class ModifableExtensionPlanTree extends DefaultExtensionPlanTree implements Cloneable
+    protected static class ModifableExtensionPlanTree extends DefaultExtensionPlanTree
     {
         private static final long serialVersionUID = 1L;
-
-        @Override
-        public ModifableExtensionPlanTree clone()
-        {
-            ModifableExtensionPlanTree tree = new ModifableExtensionPlanTree();
-
-            for (ExtensionPlanNode node : this) {
-                tree.add(((ModifableExtensionPlanNode) node).clone());
-            }
-
-            return tree;
-        }
     }
 
-    protected static class ModifableExtensionPlanNode extends DefaultExtensionPlanNode implements Cloneable
+    protected static class ModifableExtensionPlanNode extends DefaultExtensionPlanNode
     {
         // never change
 
@@ -112,15 +101,25 @@ public ModifableExtensionPlanNode(ExtensionDependency initialDependency, Modifab
             set(node);
         }
 
-        @Override
-        protected ModifableExtensionPlanNode clone()
+        /**
+         * @return a task restoring the current state of the node
+         */
+        public Runnable saveState()
         {
-            try {
-                return (ModifableExtensionPlanNode) super.clone();
-            } catch (CloneNotSupportedException e) {
-                // this shouldn't happen, since we are Cloneable
-                throw new InternalError();
-            }
+            final ExtensionPlanAction savedAction = this.action;
+            final Collection<ExtensionPlanNode> savedChildren = this.children;
+            final VersionConstraint savedVersionConstraint = this.versionConstraint;
+
+            return new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    ModifableExtensionPlanNode.this.action = savedAction;
+                    ModifableExtensionPlanNode.this.children = savedChildren;
+                    ModifableExtensionPlanNode.this.versionConstraint = savedVersionConstraint;
+                }
+            };
         }
 
         public void set(ModifableExtensionPlanNode node)
@@ -166,12 +165,73 @@ public void setChildren(Collection< ? extends ExtensionPlanNode> children)
     private Map<String, Map<String, ModifableExtensionPlanNode>> extensionsNodeCache =
         new HashMap<String, Map<String, ModifableExtensionPlanNode>>();
 
+    /**
+     * The extensions already resolved during this job indexed by {@link ExtensionId} or {@link ExtensionDependency}
+     * (the same dependency is generally met many times in a big plan). Contains the {@link InstallException} when the
+     * extension could not be resolved.
+     */
+    private final Map<Object, Object> resolvedExtensions = new HashMap<Object, Object>();
+
+    /**
+     * The tasks cancelling the modifications made to the plan since the beginning of the current attempt, null when
+     * there is no attempt in progress.
+     */
+    private List<Runnable> attemptUndoTasks;
+
     protected void setExtensionTree(ModifableExtensionPlanTree extensionTree)
     {
         this.extensionTree = extensionTree;
         this.status.setTree(this.extensionTree);
     }
 
+    /**
+     * Start remembering the modifications made to the plan so that they can be cancelled with
+     * {@link #rollbackAttempt()}.
+     * 
+     * @since 6.0M1
+     */
+    protected void startAttempt()
+    {
+        this.attemptUndoTasks = new ArrayList<Runnable>();
+    }
+
+    /**
+     * Keep the modifications made to the plan since {@link #startAttempt()}.
+     * 
+     * @since 6.0M1
+     */
+    protected void commitAttempt()
+    {
+        this.attemptUndoTasks = null;
+    }
+
+    /**
+     * Cancel the modifications made to the plan since {@link #startAttempt()}. Does nothing if the attempt has already
+     * been committed so that it can be called from a {@code finally} block.
+     * 
+     * @since 6.0M1
+     */
+    protected void rollbackAttempt()
+    {
+        List<Runnable> undoTasks = this.attemptUndoTasks;
+
+        // Stop recording before undoing anything
+        this.attemptUndoTasks = null;
+
+        if (undoTasks != null) {
+            for (ListIterator<Runnable> it = undoTasks.listIterator(undoTasks.size()); it.hasPrevious();) {
+                it.previous().run();
+            }
+        }
+    }
+
+    private void addUndoTask(Runnable task)
+    {
+        if (this.attemptUndoTasks != null) {
+            this.attemptUndoTasks.add(task);
+        }
+    }
+
     /**
      * @param extensionsByNamespace the map to fill
      * @param extensionId the id of the extension to install/upgrade
@@ -263,16 +323,54 @@ private void addExtensionNode(ModifableExtensionPlanNode node)
         ModifableExtensionPlanNode existingNode = extensionsById.get(node.getAction().getNamespace());
 
         if (existingNode != null) {
+            addUndoTask(existingNode.saveState());
             existingNode.set(node);
+            // The existing node now targets the extension selected for the new node. When the new node has a
+            // constraint it's the merge of the existing node constraint and of the new dependency constraint (see
+            // #checkExistingPlanNode) so it replaces the existing one and the next dependencies are merged with all
+            // the previous ones. The previous constraint is restored if the current attempt is rolled back.
+            if (node.versionConstraint != null) {
+                existingNode.versionConstraint = node.versionConstraint;
+            }
             for (ModifableExtensionPlanNode duplicate : existingNode.duplicates) {
+                addUndoTask(duplicate.saveState());
                 duplicate.set(node);
             }
-            existingNode.duplicates.add(node);
+            addDuplicate(existingNode, node);
         } else {
-            extensionsById.put(node.getAction().getNamespace(), node);
+            final Map<String, ModifableExtensionPlanNode> undoExtensionsById = extensionsById;
+            final String undoNamespace = node.getAction().getNamespace();
+
+            undoExtensionsById.put(undoNamespace, node);
+
+            addUndoTask(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    undoExtensionsById.remove(undoNamespace);
+                }
+            });
         }
     }
 
+    private void addDuplicate(ModifableExtensionPlanNode existingNode, ModifableExtensionPlanNode node)
+    {
+        final List<ModifableExtensionPlanNode> duplicates = existingNode.duplicates;
+        final int size = duplicates.size();
+
+        duplicates.add(node);
+
+        addUndoTask(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                duplicates.subList(size, duplicates.size()).clear();
+            }
+        });
+    }
+
     /**
      * Install provided extension.
      * 
@@ -708,6 +806,43 @@ private ModifableExtensionPlanNode installExtension(InstalledExtension previousE
      * @throws InstallException error when trying to resolve extension
      */
     private Extension resolveExtension(ExtensionId extensionId) throws InstallException
+    {
+        Object resolved = this.resolvedExtensions.get(extensionId);
+        if (resolved == null) {
+            try {
+                resolved = resolveExtensionWithoutCache(extensionId);
+            } catch (InstallException e) {
+                resolved = e;
+            }
+
+            this.resolvedExtensions.put(extensionId, resolved);
+        }
+
+        return getResolvedExtension(resolved);
+    }
+
+    /**
+     * @param resolved the result of a previous resolution
+     * @return the resolved extension
+     * @throws InstallException the reason why the extension could not be resolved
+     */
+    private Extension getResolvedExtension(Object resolved) throws InstallException
+    {
+        if (resolved instanceof InstallException) {
+            InstallException exception = (InstallException) resolved;
+
+            throw new InstallException(exception.getMessage(), exception.getCause());
+        }
+
+        return (Extension) resolved;
+    }
+
+    /**
+     * @param extensionId the identifier of the extension to install
+     * @return the extension
+     * @throws InstallException error when trying to resolve extension
+     */
+    private Extension resolveExtensionWithoutCache(ExtensionId extensionId) throws InstallException
     {
         // Check is the extension is already in local repository
         Extension extension = this.localExtensionRepository.getLocalExtension(extensionId);
@@ -732,6 +867,27 @@ private Extension resolveExtension(ExtensionId extensionId) throws InstallExcept
      * @throws InstallException error when trying to resolve extension
      */
     private Extension resolveExtension(ExtensionDependency extensionDependency) throws InstallException
+    {
+        Object resolved = this.resolvedExtensions.get(extensionDependency);
+        if (resolved == null) {
+            try {
+                resolved = resolveExtensionWithoutCache(extensionDependency);
+            } catch (InstallException e) {
+                resolved = e;
+            }
+
+            this.resolvedExtensions.put(extensionDependency, resolved);
+        }
+
+        return getResolvedExtension(resolved);
+    }
+
+    /**
+     * @param extensionDependency describe the extension to install
+     * @return the extension
+     * @throws InstallException error when trying to resolve extension
+     */
+    private Extension resolveExtensionWithoutCache(ExtensionDependency extensionDependency) throws InstallException
     {
         // Check is the extension is already in local repository
         Extension extension;
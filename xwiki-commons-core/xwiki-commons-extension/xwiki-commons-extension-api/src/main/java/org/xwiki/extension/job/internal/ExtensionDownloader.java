@@ -0,0 +1,194 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.extension.job.internal;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.xwiki.context.Execution;
+import org.xwiki.extension.Extension;
+import org.xwiki.extension.ExtensionException;
+import org.xwiki.extension.ExtensionId;
+import org.xwiki.extension.InstallException;
+import org.xwiki.extension.LocalExtension;
+import org.xwiki.extension.internal.ContextualCallable;
+import org.xwiki.extension.internal.ExtensionThreadFactory;
+import org.xwiki.extension.repository.LocalExtensionRepository;
+import org.xwiki.extension.repository.LocalExtensionRepositoryException;
+import org.xwiki.job.JobContext;
+import org.xwiki.logging.LoggerManager;
+import org.xwiki.logging.marker.TranslationMarker;
+
+/**
+ * Store extensions in the local repository in background threads executed with the context and log of the job which
+ * started them.
+ * 
+ * @version $Id$
+ * @since 6.0M1
+ */
+class ExtensionDownloader
+{
+    /**
+     * The maximum number of extensions downloaded at the same time.
+     */
+    private static final int DOWNLOAD_THREADS = 4;
+
+    /**
+     * The marker of the log produced when a download starts.
+     */
+    private static final TranslationMarker LOG_DOWNLOADING = new TranslationMarker("extension.log.job.downloading");
+
+    /**
+     * The repository where to store the extensions.
+     */
+    private final LocalExtensionRepository localExtensionRepository;
+
+    /**
+     * Used to pass the execution context to the download threads.
+     */
+    private final Execution execution;
+
+    /**
+     * Used to find the job which starts the downloads.
+     */
+    private final JobContext jobContext;
+
+    /**
+     * Used to capture the log of the download threads.
+     */
+    private final LoggerManager loggerManager;
+
+    /**
+     * The logger of the job.
+     */
+    private final Logger logger;
+
+    /**
+     * The extensions being downloaded indexed by identifier.
+     */
+    private final Map<ExtensionId, Future<LocalExtension>> downloads =
+        new HashMap<ExtensionId, Future<LocalExtension>>();
+
+    /**
+     * The executor in charge of the downloads, null if nothing has been started.
+     */
+    private ExecutorService executor;
+
+    /**
+     * @param localExtensionRepository the repository where to store the extensions
+     * @param execution used to pass the execution context to the download threads
+     * @param jobContext used to find the job which starts the downloads
+     * @param loggerManager used to capture the log of the download threads
+     * @param logger the logger of the job
+     */
+    ExtensionDownloader(LocalExtensionRepository localExtensionRepository, Execution execution,
+        JobContext jobContext, LoggerManager loggerManager, Logger logger)
+    {
+        this.localExtensionRepository = localExtensionRepository;
+        this.execution = execution;
+        this.jobContext = jobContext;
+        this.loggerManager = loggerManager;
+        this.logger = logger;
+    }
+
+    /**
+     * Start downloading the provided extensions. Must be called from the thread of the job.
+     * 
+     * @param extensions the extensions to download, in the order they will be needed
+     * @param verbose true if the start of each download should be logged
+     */
+    void start(Collection<Extension> extensions, final boolean verbose)
+    {
+        if (extensions.isEmpty()) {
+            return;
+        }
+
+        this.executor =
+            Executors.newFixedThreadPool(Math.min(DOWNLOAD_THREADS, extensions.size()), new ExtensionThreadFactory(
+                "Extension downloader"));
+
+        // Submitted in order so that the first extensions to install are the first to be downloaded
+        for (final Extension extension : extensions) {
+            Callable<LocalExtension> download = new Callable<LocalExtension>()
+            {
+                @Override
+                public LocalExtension call() throws LocalExtensionRepositoryException
+                {
+                    if (verbose) {
+                        logger.info(LOG_DOWNLOADING, "Downloading extension [{}]", extension.getId());
+                    }
+
+                    return localExtensionRepository.storeExtension(extension);
+                }
+            };
+
+            this.downloads.put(extension.getId(), this.executor.submit(new ContextualCallable<LocalExtension>(
+                download, this.execution, this.jobContext, this.loggerManager)));
+        }
+    }
+
+    /**
+     * Wait until the provided extension is stored in the local repository. Does nothing if the extension is not being
+     * downloaded.
+     * 
+     * @param extensionId the identifier of the extension to wait for
+     * @throws ExtensionException failed to download the extension
+     */
+    void waitFor(ExtensionId extensionId) throws ExtensionException
+    {
+        Future<LocalExtension> download = this.downloads.get(extensionId);
+
+        if (download != null) {
+            try {
+                download.get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof LocalExtensionRepositoryException) {
+                    throw (LocalExtensionRepositoryException) e.getCause();
+                }
+
+                throw new InstallException("Failed to download extension [" + extensionId + "]", e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+
+                throw new InstallException("Interrupted while downloading extension [" + extensionId + "]", e);
+            }
+        }
+    }
+
+    /**
+     * Cancel the remaining downloads and release the download threads.
+     */
+    void stop()
+    {
+        if (this.executor != null) {
+            this.executor.shutdownNow();
+            this.executor = null;
+        }
+
+        this.downloads.clear();
+    }
+}
@@ -20,7 +20,9 @@
 package org.xwiki.extension.job.internal;
 
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -29,18 +31,18 @@
 import org.xwiki.context.Execution;
 import org.xwiki.context.ExecutionContext;
 import org.xwiki.extension.Extension;
+import org.xwiki.extension.ExtensionException;
+import org.xwiki.extension.ExtensionId;
 import org.xwiki.extension.InstallException;
 import org.xwiki.extension.job.InstallRequest;
 import org.xwiki.extension.job.plan.ExtensionPlan;
 import org.xwiki.extension.job.plan.ExtensionPlanAction;
 import org.xwiki.extension.job.plan.ExtensionPlanAction.Action;
-import org.xwiki.extension.repository.LocalExtensionRepositoryException;
 import org.xwiki.job.Job;
 import org.xwiki.job.Request;
 import org.xwiki.job.internal.DefaultJobStatus;
 import org.xwiki.logging.LogLevel;
 import org.xwiki.logging.event.LogEvent;
-import org.xwiki.logging.marker.TranslationMarker;
 
 /**
  * Extension installation related task.
@@ -59,8 +61,6 @@ public class InstallJob extends AbstractExtensionJob<InstallRequest, DefaultJobS
      */
     public static final String JOBTYPE = "install";
 
-    private static final TranslationMarker LOG_DOWNLOADING = new TranslationMarker("extension.log.job.downloading");
-
     /**
      * Used to generate the install plan.
      */
@@ -74,6 +74,11 @@ public class InstallJob extends AbstractExtensionJob<InstallRequest, DefaultJobS
     @Inject
     private Execution execution;
 
+    /**
+     * The extensions being downloaded, null when no plan is being applied.
+     */
+    private ExtensionDownloader downloader;
+
     @Override
     public String getType()
     {
@@ -127,25 +132,24 @@ protected void runInternal() throws Exception
 
             Collection<ExtensionPlanAction> actions = plan.getActions();
 
-            // Download all extensions
+            // Download all extensions in the background
 
-            notifyPushLevelProgress(actions.size());
+            this.downloader =
+                new ExtensionDownloader(this.localExtensionRepository, this.execution, this.jobContext,
+                    this.loggerManager, this.logger);
 
             try {
-                for (ExtensionPlanAction action : actions) {
-                    store(action);
-
-                    notifyStepPropress();
-                }
-            } finally {
-                notifyPopLevelProgress();
-            }
+                this.downloader.start(getExtensionsToDownload(actions), getRequest().isVerbose());
 
-            notifyStepPropress();
+                notifyStepPropress();
 
-            // Install all extensions
+                // Install all extensions (as soon as they are downloaded)
 
-            applyActions(actions);
+                applyActions(actions);
+            } finally {
+                this.downloader.stop();
+                this.downloader = null;
+            }
         } finally {
             notifyPopLevelProgress();
 
@@ -154,30 +158,42 @@ protected void runInternal() throws Exception
         }
     }
 
+    @Override
+    protected void applyAction(ExtensionPlanAction action) throws ExtensionException
+    {
+        if (this.downloader != null && isStored(action)) {
+            this.downloader.waitFor(action.getExtension().getId());
+        }
+
+        super.applyAction(action);
+    }
+
     /**
-     * @param action the action containing the extension to download
-     * @throws LocalExtensionRepositoryException failed to store extension
+     * @param action the action
+     * @return true if the action require the extension to be in the local repository
      */
-    private void store(ExtensionPlanAction action) throws LocalExtensionRepositoryException
+    private boolean isStored(ExtensionPlanAction action)
     {
-        if (action.getAction() == Action.INSTALL || action.getAction() == Action.UPGRADE
-            || action.getAction() == Action.DOWNGRADE) {
-            storeExtension(action.getExtension());
-        }
+        return action.getAction() == Action.INSTALL || action.getAction() == Action.UPGRADE
+            || action.getAction() == Action.DOWNGRADE;
     }
 
     /**
-     * @param extension the extension to store
-     * @throws LocalExtensionRepositoryException failed to store extension
+     * @param actions the actions containing the extensions to download
+     * @return the extensions which are not already in the local repository, in plan order
      */
-    private void storeExtension(Extension extension) throws LocalExtensionRepositoryException
+    private Collection<Extension> getExtensionsToDownload(Collection<ExtensionPlanAction> actions)
     {
-        if (!this.localExtensionRepository.exists(extension.getId())) {
-            if (getRequest().isVerbose()) {
-                this.logger.info(LOG_DOWNLOADING, "Downloading extension [{}]", extension.getId());
-            }
+        Map<ExtensionId, Extension> extensions = new LinkedHashMap<ExtensionId, Extension>();
+        for (ExtensionPlanAction action : actions) {
+            Extension extension = action.getExtension();
 
-            this.localExtensionRepository.storeExtension(extension);
+            if (isStored(action) && !extensions.containsKey(extension.getId())
+                && !this.localExtensionRepository.exists(extension.getId())) {
+                extensions.put(extension.getId(), extension);
+            }
         }
+
+        return extensions.values();
     }
 }
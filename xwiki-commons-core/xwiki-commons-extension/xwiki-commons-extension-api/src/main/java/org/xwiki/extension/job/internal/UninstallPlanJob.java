@@ -19,16 +19,21 @@
  */
 package org.xwiki.extension.job.internal;
 
+import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import javax.inject.Named;
 
 import org.xwiki.component.annotation.Component;
 import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.extension.ExtensionDependency;
 import org.xwiki.extension.ExtensionId;
 import org.xwiki.extension.InstalledExtension;
 import org.xwiki.extension.ResolveException;
@@ -43,6 +48,10 @@
 
 /**
  * Create an Extension uninstallation plan.
+ * <p>
+ * The extensions depending on an uninstalled extension are taken from the installed extensions repository closure
+ * and planned as children of the extensions they directly depend on. Each extension is planned only once for a given
+ * namespace.
  * 
  * @version $Id$
  * @since 4.0M1
@@ -67,6 +76,21 @@ public class UninstallPlanJob extends
      */
     private static final String EXCEPTION_NOTINSTALLEDNAMESPACE = EXCEPTION_NOTINSTALLED + " on namespace [%s]";
 
+    /**
+     * The extensions already part of the plan.
+     * <p>
+     * <<extension id, namespace>>
+     */
+    private Set<Map.Entry<ExtensionId, String>> plannedExtensions;
+
+    /**
+     * The backward dependencies closure of the extension being uninstalled, indexed by the extension they directly
+     * depend on.
+     * <p>
+     * <<extension id, namespace>, <<backward dependency, namespace>>>
+     */
+    private Map<Map.Entry<ExtensionId, String>, List<Map.Entry<InstalledExtension, String>>> directBackwardDependencies;
+
     @Override
     public String getType()
     {
@@ -91,6 +115,8 @@ protected void runInternal() throws Exception
     {
         Collection<ExtensionId> extensions = getRequest().getExtensions();
 
+        this.plannedExtensions = new HashSet<Map.Entry<ExtensionId, String>>();
+
         notifyPushLevelProgress(extensions.size());
 
         try {
@@ -119,6 +145,8 @@ protected void runInternal() throws Exception
             }
         } finally {
             notifyPopLevelProgress();
+
+            this.plannedExtensions = null;
         }
     }
 
@@ -190,41 +218,148 @@ private void uninstallExtension(InstalledExtension installedExtension, Collectio
     }
 
     /**
-     * @param extensions the installed extensions to uninstall
-     * @param namespace the namespaces from where to uninstall the extensions
-     * @param parentBranch the children of the parent {@link DefaultExtensionPlanNode}
-     * @throws UninstallException error when trying to uninstall provided extensions
+     * @param installedExtension the extension to uninstall
+     * @param namespace the namespace from where to uninstall the extension
+     * @param parentBranch the children of the parent {@link ExtensionPlanNode}
+     * @throws UninstallException error when trying to uninstall provided extension
      */
-    private void uninstallExtensions(Collection<InstalledExtension> extensions, String namespace,
+    private void uninstallExtension(InstalledExtension installedExtension, String namespace,
         Collection<ExtensionPlanNode> parentBranch) throws UninstallException
     {
-        notifyPushLevelProgress(extensions.size());
+        if (namespace != null) {
+            if (installedExtension.getNamespaces() == null || !installedExtension.getNamespaces().contains(namespace)) {
+                throw new UninstallException(String.format(EXCEPTION_NOTINSTALLEDNAMESPACE, installedExtension,
+                    namespace));
+            }
+        }
 
-        try {
-            for (InstalledExtension backardDependency : extensions) {
-                uninstallExtension(backardDependency, namespace, parentBranch);
+        if (!plan(installedExtension, namespace)) {
+            // Already uninstalled by the plan
+            return;
+        }
 
-                notifyStepPropress();
+        notifyPushLevelProgress(2);
+
+        try {
+            // Uninstall backward dependencies
+            Map<String, List<InstalledExtension>> backwardDependencies;
+            try {
+                backwardDependencies =
+                    this.installedExtensionRepository.getBackwardDependenciesClosure(installedExtension.getId(),
+                        namespace);
+            } catch (ResolveException e) {
+                throw new UninstallException("Failed to resolve backward dependencies of extension ["
+                    + installedExtension + "]", e);
             }
+
+            notifyStepPropress();
+
+            indexDirectBackwardDependencies(backwardDependencies);
+
+            List<ExtensionPlanNode> children = new ArrayList<ExtensionPlanNode>();
+            uninstallBackwardDependencies(installedExtension.getId(), namespace, children);
+
+            parentBranch.add(createNode(installedExtension, namespace, children));
         } finally {
             notifyPopLevelProgress();
         }
     }
 
     /**
+     * Index the extensions of a backward dependencies closure by the extension they directly depend on.
+     * 
+     * @param backwardDependencies the backward dependencies closure by namespace, sorted in uninstall order
+     */
+    private void indexDirectBackwardDependencies(Map<String, List<InstalledExtension>> backwardDependencies)
+    {
+        this.directBackwardDependencies =
+            new HashMap<Map.Entry<ExtensionId, String>, List<Map.Entry<InstalledExtension, String>>>();
+
+        for (Map.Entry<String, List<InstalledExtension>> entry : backwardDependencies.entrySet()) {
+            for (InstalledExtension backwardDependency : entry.getValue()) {
+                indexDirectBackwardDependency(backwardDependency, entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * @param backwardDependency an extension of the backward dependencies closure
+     * @param namespace the namespace where the extension is installed
+     */
+    private void indexDirectBackwardDependency(InstalledExtension backwardDependency, String namespace)
+    {
+        for (ExtensionDependency dependency : backwardDependency.getDependencies()) {
+            InstalledExtension dependencyExtension =
+                this.installedExtensionRepository.getInstalledExtension(dependency.getId(), namespace);
+
+            if (dependencyExtension != null) {
+                // The dependency might be installed on root namespace
+                Map.Entry<ExtensionId, String> key =
+                    new AbstractMap.SimpleImmutableEntry<ExtensionId, String>(dependencyExtension.getId(),
+                        dependencyExtension.getNamespaces() != null ? namespace : null);
+
+                List<Map.Entry<InstalledExtension, String>> dependencyBackwardDependencies =
+                    this.directBackwardDependencies.get(key);
+                if (dependencyBackwardDependencies == null) {
+                    dependencyBackwardDependencies = new ArrayList<Map.Entry<InstalledExtension, String>>();
+                    this.directBackwardDependencies.put(key, dependencyBackwardDependencies);
+                }
+                dependencyBackwardDependencies.add(new AbstractMap.SimpleImmutableEntry<InstalledExtension, String>(
+                    backwardDependency, namespace));
+            }
+        }
+    }
+
+    /**
+     * @param extensionId the id of the extension being uninstalled
+     * @param namespace the namespace from where the extension is uninstalled
+     * @param parentBranch the children of the parent {@link ExtensionPlanNode}
+     * @throws UninstallException error when trying to uninstall backward dependencies
+     */
+    private void uninstallBackwardDependencies(ExtensionId extensionId, String namespace,
+        List<ExtensionPlanNode> parentBranch) throws UninstallException
+    {
+        List<Map.Entry<InstalledExtension, String>> backwardDependencies =
+            this.directBackwardDependencies.get(new AbstractMap.SimpleImmutableEntry<ExtensionId, String>(extensionId,
+                namespace));
+
+        if (backwardDependencies != null) {
+            notifyPushLevelProgress(backwardDependencies.size());
+
+            try {
+                for (Map.Entry<InstalledExtension, String> entry : backwardDependencies) {
+                    InstalledExtension backwardDependency = entry.getKey();
+                    String backwardDependencyNamespace = entry.getValue();
+
+                    if (plan(backwardDependency, backwardDependencyNamespace)) {
+                        List<ExtensionPlanNode> children = new ArrayList<ExtensionPlanNode>();
+                        uninstallBackwardDependencies(backwardDependency.getId(), backwardDependencyNamespace,
+                            children);
+
+                        parentBranch.add(createNode(backwardDependency, backwardDependencyNamespace, children));
+                    }
+
+                    notifyStepPropress();
+                }
+            } finally {
+                notifyPopLevelProgress();
+            }
+        }
+    }
+
+    /**
+     * Check that the extension can be uninstalled and remember it's part of the plan.
+     * 
      * @param installedExtension the extension to uninstall
      * @param namespace the namespace from where to uninstall the extension
-     * @param parentBranch the children of the parent {@link ExtensionPlanNode}
+     * @return false if the extension is already part of the plan
      * @throws UninstallException error when trying to uninstall provided extension
      */
-    private void uninstallExtension(InstalledExtension installedExtension, String namespace,
-        Collection<ExtensionPlanNode> parentBranch) throws UninstallException
+    private boolean plan(InstalledExtension installedExtension, String namespace) throws UninstallException
     {
-        if (namespace != null) {
-            if (installedExtension.getNamespaces() == null || !installedExtension.getNamespaces().contains(namespace)) {
-                throw new UninstallException(String.format(EXCEPTION_NOTINSTALLEDNAMESPACE, installedExtension,
-                    namespace));
-            }
+        if (!this.plannedExtensions.add(new AbstractMap.SimpleImmutableEntry<ExtensionId, String>(installedExtension
+            .getId(), namespace))) {
+            return false;
         }
 
         ExtensionHandler extensionHandler;
@@ -249,57 +384,22 @@ private void uninstallExtension(InstalledExtension installedExtension, String na
             }
         }
 
-        notifyPushLevelProgress(2);
-
-        try {
-            // Uninstall backward dependencies
-            List<ExtensionPlanNode> children = new ArrayList<ExtensionPlanNode>();
-            try {
-                if (namespace != null) {
-                    uninstallExtensions(this.installedExtensionRepository.getBackwardDependencies(installedExtension
-                        .getId().getId(), namespace), namespace, children);
-                } else {
-                    uninstallBackwardDependencies(installedExtension, children);
-                }
-            } catch (ResolveException e) {
-                throw new UninstallException("Failed to resolve backward dependencies of extension ["
-                    + installedExtension + "]", e);
-            }
-
-            notifyStepPropress();
-
-            DefaultExtensionPlanAction action =
-                new DefaultExtensionPlanAction(installedExtension, Collections.singleton(installedExtension),
-                    Action.UNINSTALL, namespace, false);
-            parentBranch.add(new DefaultExtensionPlanNode(action, children, null));
-        } finally {
-            notifyPopLevelProgress();
-        }
+        return true;
     }
 
     /**
      * @param installedExtension the extension to uninstall
-     * @param parentBranch the children of the parent {@link ExtensionPlanNode}
-     * @throws UninstallException error when trying to uninstall backward dependencies
-     * @throws ResolveException error when trying to resolve backward dependencies
+     * @param namespace the namespace from where to uninstall the extension
+     * @param children the children of the node
+     * @return the node uninstalling the extension
      */
-    private void uninstallBackwardDependencies(InstalledExtension installedExtension,
-        List<ExtensionPlanNode> parentBranch) throws UninstallException, ResolveException
+    private ExtensionPlanNode createNode(InstalledExtension installedExtension, String namespace,
+        List<ExtensionPlanNode> children)
     {
-        Map<String, Collection<InstalledExtension>> backwardDependencies =
-            this.installedExtensionRepository.getBackwardDependencies(installedExtension.getId());
-
-        notifyPushLevelProgress(backwardDependencies.size());
-
-        try {
-            for (Map.Entry<String, Collection<InstalledExtension>> entry : backwardDependencies.entrySet()) {
-                uninstallExtensions(entry.getValue(), entry.getKey(), parentBranch);
+        DefaultExtensionPlanAction action =
+            new DefaultExtensionPlanAction(installedExtension, Collections.singleton(installedExtension),
+                Action.UNINSTALL, namespace, false);
 
-                notifyStepPropress();
-            }
-        } finally {
-            notifyPopLevelProgress();
-        }
+        return new DefaultExtensionPlanNode(action, children, null);
     }
-
 }
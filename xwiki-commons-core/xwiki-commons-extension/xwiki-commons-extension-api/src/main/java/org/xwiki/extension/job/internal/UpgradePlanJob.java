@@ -92,20 +92,31 @@ protected void upgradeExtension(InstalledExtension extension, String namespace)
                     versionList.add(version);
                 }
 
-                for (ListIterator<Version> it = versionList.listIterator(versionList.size()); it.hasPrevious();) {
-                    Version version = it.previous();
+                // Each attempt is a step so that failed attempts don't move the parent progress
+                notifyPushLevelProgress(versionList.size());
 
-                    // Only upgrade if the existing version is greater than the current one
-                    if (extension.getId().getVersion().compareTo(version) >= 0) {
-                        break;
-                    }
+                try {
+                    for (ListIterator<Version> it = versionList.listIterator(versionList.size()); it.hasPrevious();) {
+                        Version version = it.previous();
 
-                    // Only upgrade beta if the current is beta etc.
-                    if (extension.getId().getVersion().getType().ordinal() <= version.getType().ordinal()) {
-                        if (tryInstallExtension(new ExtensionId(extensionId, version), namespace)) {
+                        // Only upgrade if the existing version is greater than the current one
+                        if (extension.getId().getVersion().compareTo(version) >= 0) {
                             break;
                         }
+
+                        // Only upgrade beta if the current is beta etc.
+                        if (extension.getId().getVersion().getType().ordinal() <= version.getType().ordinal()) {
+                            boolean installed = tryInstallExtension(new ExtensionId(extensionId, version), namespace);
+
+                            notifyStepPropress();
+
+                            if (installed) {
+                                break;
+                            }
+                        }
                     }
+                } finally {
+                    notifyPopLevelProgress();
                 }
             } catch (ResolveException e) {
                 this.logger.debug("Failed to resolve versions for extension id [{}]", extensionId, e);
@@ -122,16 +133,24 @@ protected void upgradeExtension(InstalledExtension extension, String namespace)
      */
     protected boolean tryInstallExtension(ExtensionId extensionId, String namespace)
     {
-        ModifableExtensionPlanTree currentTree = this.extensionTree.clone();
+        // Only the new nodes are collected, the current plan is extended if the attempt succeed
+        ModifableExtensionPlanTree attemptTree = new ModifableExtensionPlanTree();
+
+        startAttempt();
 
         try {
-            installExtension(extensionId, namespace, currentTree);
+            installExtension(extensionId, namespace, attemptTree);
+
+            this.extensionTree.addAll(attemptTree);
 
-            setExtensionTree(currentTree);
+            commitAttempt();
 
             return true;
         } catch (InstallException e) {
             this.logger.debug("Can't install extension [{}] on namespace [{}].", extensionId, namespace, e);
+        } finally {
+            // Does nothing if the attempt has been committed
+            rollbackAttempt();
         }
 
         return false;
@@ -20,6 +20,7 @@
 package org.xwiki.extension.repository;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 
 import org.xwiki.component.annotation.Role;
@@ -136,6 +137,23 @@ InstalledExtension installExtension(LocalExtension extension, String namespace,
     Map<String, Collection<InstalledExtension>> getBackwardDependencies(ExtensionId extensionId)
         throws ResolveException;
 
+    /**
+     * Get all the extensions depending directly or indirectly on the provided installed extension, by namespace.
+     * <p>
+     * The extensions of each namespace are sorted so that an extension always comes before the extensions it depends
+     * on, i.e. in an order in which they can be uninstalled. The namespaces are independent from each other except for
+     * the root namespace (null key) which always comes last since extensions from any namespace can depend on it.
+     * 
+     * @param extensionId the extension identifier
+     * @param namespace the namespace where to search for backward dependencies, null for all the namespaces where the
+     *            extension is installed
+     * @return the extension backward dependencies and their own backward dependencies, by namespace
+     * @throws ResolveException error when searching for extension backward dependencies
+     * @since 6.0M1
+     */
+    Map<String, List<InstalledExtension>> getBackwardDependenciesClosure(ExtensionId extensionId, String namespace)
+        throws ResolveException;
+
     // ExtensionRepository
 
     @Override
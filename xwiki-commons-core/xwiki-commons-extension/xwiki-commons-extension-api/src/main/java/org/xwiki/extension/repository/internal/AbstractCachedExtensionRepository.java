@@ -21,10 +21,8 @@
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 
@@ -63,6 +61,35 @@
      */
     protected Map<String, List<E>> extensionsVersions = new ConcurrentHashMap<String, List<E>>();
 
+    /**
+     * The index used to search the cached extensions.
+     * 
+     * @since 6.0M1
+     */
+    protected transient ExtensionSearchIndex<E> searchIndex = new ExtensionSearchIndex<E>();
+
+    /**
+     * Only keep the last version of each id and feature.
+     */
+    private final transient ExtensionSearchIndex.Filter<E> lastVersionFilter = new ExtensionSearchIndex.Filter<E>()
+    {
+        @Override
+        public boolean accept(E extension)
+        {
+            if (isLastVersion(extension.getId().getId(), extension)) {
+                return true;
+            }
+
+            for (String feature : extension.getFeatures()) {
+                if (isLastVersion(feature, extension)) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+    };
+
     /**
      * Register a new extension.
      * 
@@ -79,6 +106,9 @@ protected void addCachedExtension(E extension)
             for (String feature : extension.getFeatures()) {
                 addCachedExtensionVersion(feature, extension);
             }
+
+            // index
+            this.searchIndex.add(extension);
         }
     }
 
@@ -119,6 +149,9 @@ protected void removeCachedExtension(E extension)
         // Remove the extension from the memory.
         this.extensions.remove(extension.getId());
 
+        // index
+        this.searchIndex.remove(extension);
+
         // versions
         removeCachedExtensionVersion(extension.getId().getId(), extension);
         for (String feature : extension.getFeatures()) {
@@ -205,8 +238,26 @@ public IterableResult<Version> resolveVersions(String id, int offset, int nb) th
         return new CollectionIterableResult<Version>(versions.size(), offset, result);
     }
 
+    /**
+     * @param feature the id or feature
+     * @param extension the extension
+     * @return true if the passed extension is the last version associated to the passed feature
+     */
+    private boolean isLastVersion(String feature, E extension)
+    {
+        List<E> versions = this.extensionsVersions.get(feature);
+
+        return versions != null && !versions.isEmpty() && versions.get(0) == extension;
+    }
+
     // Searchable
 
+    /**
+     * @param pattern the pattern to search
+     * @return the compiled regular expression
+     * @deprecated since 6.0M1, the search is done using {@link #searchIndex}
+     */
+    @Deprecated
     protected Pattern createPatternMatcher(String pattern)
     {
         return StringUtils.isEmpty(pattern) ? null : Pattern.compile(RepositoryUtils.SEARCH_PATTERN_SUFFIXNPREFIX
@@ -217,21 +268,6 @@ protected Pattern createPatternMatcher(String pattern)
     @Override
     public IterableResult<Extension> search(String pattern, int offset, int nb) throws SearchException
     {
-        Pattern patternMatcher = createPatternMatcher(pattern);
-
-        Set<Extension> set = new HashSet<Extension>();
-        List<Extension> result = new ArrayList<Extension>(this.extensionsVersions.size());
-
-        for (List<E> versions : this.extensionsVersions.values()) {
-            E extension = versions.get(0);
-
-            if ((patternMatcher == null || RepositoryUtils.matches(patternMatcher, extension))
-                && !set.contains(extension)) {
-                result.add(extension);
-                set.add(extension);
-            }
-        }
-
-        return RepositoryUtils.getIterableResult(offset, nb, result);
+        return this.searchIndex.search(pattern, this.lastVersionFilter, offset, nb);
     }
 }
@@ -19,14 +19,32 @@
  */
 package org.xwiki.extension.repository.internal;
 
+import java.io.File;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
 import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -34,13 +52,19 @@
 import org.slf4j.Logger;
 import org.xwiki.component.annotation.Component;
 import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.component.manager.ComponentLifecycleException;
 import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.component.phase.Disposable;
 import org.xwiki.component.phase.Initializable;
 import org.xwiki.component.phase.InitializationException;
+import org.xwiki.context.Execution;
+import org.xwiki.environment.Environment;
 import org.xwiki.extension.Extension;
 import org.xwiki.extension.ExtensionDependency;
 import org.xwiki.extension.ExtensionId;
 import org.xwiki.extension.ResolveException;
+import org.xwiki.extension.internal.ContextualCallable;
+import org.xwiki.extension.internal.ExtensionThreadFactory;
 import org.xwiki.extension.repository.ExtensionRepository;
 import org.xwiki.extension.repository.ExtensionRepositoryDescriptor;
 import org.xwiki.extension.repository.ExtensionRepositoryException;
@@ -48,23 +72,118 @@
 import org.xwiki.extension.repository.ExtensionRepositoryId;
 import org.xwiki.extension.repository.ExtensionRepositoryManager;
 import org.xwiki.extension.repository.ExtensionRepositorySource;
+import org.xwiki.extension.repository.internal.mirror.MirrorExtensionRepository;
 import org.xwiki.extension.repository.result.AggregatedIterableResult;
 import org.xwiki.extension.repository.result.CollectionIterableResult;
 import org.xwiki.extension.repository.result.IterableResult;
 import org.xwiki.extension.repository.search.SearchException;
 import org.xwiki.extension.repository.search.Searchable;
 import org.xwiki.extension.version.Version;
+import org.xwiki.job.JobContext;
+import org.xwiki.logging.LoggerManager;
 
 /**
  * Default implementation of {@link ExtensionRepositoryManager}.
+ * <p>
+ * The repositories are asked in parallel. When resolving an extension the result of the first repository in the order
+ * the repositories were added wins and the requests still running on the following repositories are cancelled. The
+ * maximum time to wait for a repository can be indicated with the {@value #PROPERTY_TIMEOUT} property of its
+ * descriptor (in milliseconds). The calls are executed by a bounded pool of threads with the execution context of the
+ * caller and their log is captured by the calling job.
+ * <p>
+ * A repository created from a descriptor with the {@value #PROPERTY_MIRROR} property set to {@code true} is replaced by
+ * a {@link MirrorExtensionRepository} so that what was already resolved is served from the permanent directory first.
+ * The versions known by each mirror are synchronized in the background every {@value #PROPERTY_MIRROR_INTERVAL}
+ * milliseconds (one hour by default).
  * 
  * @version $Id$
  * @since 4.0M1
  */
 @Component
 @Singleton
-public class DefaultExtensionRepositoryManager implements ExtensionRepositoryManager, Initializable
+public class DefaultExtensionRepositoryManager implements ExtensionRepositoryManager, Initializable, Disposable
 {
+    /**
+     * The name of the repository descriptor property containing the maximum time to wait for the repository to
+     * answer, in milliseconds.
+     */
+    public static final String PROPERTY_TIMEOUT = "resolve.timeout";
+
+    /**
+     * The name of the repository descriptor property indicating if the repository should be mirrored locally.
+     * 
+     * @since 6.0M1
+     */
+    public static final String PROPERTY_MIRROR = "mirror";
+
+    /**
+     * The name of the repository descriptor property containing the time between two synchronizations of the mirror
+     * of the repository, in milliseconds.
+     * 
+     * @since 6.0M1
+     */
+    public static final String PROPERTY_MIRROR_INTERVAL = "mirror.interval";
+
+    /**
+     * The default time between two synchronizations of a mirror, in milliseconds.
+     */
+    private static final long DEFAULT_MIRROR_INTERVAL = TimeUnit.HOURS.toMillis(1);
+
+    /**
+     * The maximum number of repository calls executed at the same time.
+     */
+    private static final int RESOLVER_THREADS = 10;
+
+    /**
+     * The time after which an idle resolver thread is stopped, in seconds.
+     */
+    private static final long RESOLVER_KEEP_ALIVE = 60;
+
+    /**
+     * A call to execute on a repository.
+     * 
+     * @param <T> the type of the result
+     * @version $Id$
+     */
+    private interface RepositoryCall<T>
+    {
+        /**
+         * @param repository the repository to call
+         * @return the result of the call
+         * @throws Exception when the call failed
+         */
+        T call(ExtensionRepository repository) throws Exception;
+    }
+
+    /**
+     * Execute a repository call in a resolver thread with the context of the caller.
+     * 
+     * @param <T> the type of the result
+     * @version $Id$
+     */
+    private class ResolverCallable<T> extends ContextualCallable<T>
+    {
+        /**
+         * @param callable the repository call
+         */
+        ResolverCallable(Callable<T> callable)
+        {
+            super(callable, execution, jobContext, loggerManager);
+        }
+
+        @Override
+        public T call() throws Exception
+        {
+            resolverThread.set(Boolean.TRUE);
+
+            try {
+                return super.call();
+            } finally {
+                resolverThread.remove();
+            }
+        }
+    }
+
     /**
      * Used to lookup {@link ExtensionRepositoryFactory}s.
      */
@@ -77,6 +196,12 @@ public class DefaultExtensionRepositoryManager implements ExtensionRepositoryMan
     @Inject
     private Logger logger;
 
+    /**
+     * Used to get the permanent directory where to store the mirrors.
+     */
+    @Inject
+    private Environment environment;
+
     /**
      * Used to initialize {@link #repositoryManager}.
      */
@@ -84,13 +209,60 @@ public class DefaultExtensionRepositoryManager implements ExtensionRepositoryMan
     private List<ExtensionRepositorySource> repositoriesSources;
 
     /**
-     * The registered repositories.
+     * Used to execute the repository calls with the execution context of the caller.
+     */
+    @Inject
+    private Execution execution;
+
+    /**
+     * Used to find the job calling the repositories.
+     */
+    @Inject
+    private JobContext jobContext;
+
+    /**
+     * Used to capture the log of the repository calls in the log of the calling job.
+     */
+    @Inject
+    private LoggerManager loggerManager;
+
+    /**
+     * The registered repositories, in the order they have been added. Replaced by a new map when modified.
+     */
+    private volatile Map<String, ExtensionRepository> repositories = Collections.emptyMap();
+
+    /**
+     * Used to call the repositories in parallel.
+     */
+    private ThreadPoolExecutor executor;
+
+    /**
+     * True for the threads executing a repository call.
+     */
+    private final ThreadLocal<Boolean> resolverThread = new ThreadLocal<Boolean>();
+
+    /**
+     * Used to synchronize the mirrors in the background.
+     */
+    private ScheduledExecutorService synchronizer;
+
+    /**
+     * The scheduled synchronizations of the mirrors indexed by repository id.
      */
-    private Map<String, ExtensionRepository> repositories = new ConcurrentHashMap<String, ExtensionRepository>();
+    private final Map<String, Future< ? >> synchronizations = new ConcurrentHashMap<String, Future< ? >>();
 
     @Override
     public void initialize() throws InitializationException
     {
+        this.executor =
+            new ThreadPoolExecutor(RESOLVER_THREADS, RESOLVER_THREADS, RESOLVER_KEEP_ALIVE, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ExtensionThreadFactory("Extension repository resolver"));
+        this.executor.allowCoreThreadTimeOut(true);
+
+        this.synchronizer =
+            Executors.newSingleThreadScheduledExecutor(new ExtensionThreadFactory(
+                "Extension repository mirror synchronizer", Thread.MIN_PRIORITY, false));
+
         // Load extension repositories
         for (ExtensionRepositorySource repositoriesSource : this.repositoriesSources) {
             for (ExtensionRepositoryDescriptor repositoryDescriptor : repositoriesSource
@@ -123,6 +295,12 @@ public ExtensionRepository addRepository(ExtensionRepositoryDescriptor repositor
 
             repository = repositoryFactory.createRepository(repositoryDescriptor);
 
+            if (Boolean.parseBoolean(repositoryDescriptor.getProperty(PROPERTY_MIRROR))) {
+                repository =
+                    new MirrorExtensionRepository(repository, getMirrorFolder(repositoryDescriptor.getId()),
+                        this.componentManager);
+            }
+
             addRepository(repository);
         } catch (ComponentLookupException e) {
             throw new ExtensionRepositoryException("Unsupported repository type [" + repositoryDescriptor.getType()
@@ -132,84 +310,215 @@ public ExtensionRepository addRepository(ExtensionRepositoryDescriptor repositor
         return repository;
     }
 
-    @Override
-    public void addRepository(ExtensionRepository repository)
+    /**
+     * @param repositoryId the identifier of the mirrored repository
+     * @return the folder where to store the mirror
+     */
+    private File getMirrorFolder(String repositoryId)
     {
-        this.repositories.put(repository.getDescriptor().getId(), repository);
+        String folderName;
+        try {
+            folderName = URLEncoder.encode(repositoryId, "UTF-8").replace(".", "%2E").replace("*", "%2A");
+        } catch (UnsupportedEncodingException e) {
+            // Should never happen
+
+            folderName = repositoryId;
+        }
+
+        return new File(this.environment.getPermanentDirectory(), "extension/mirror/" + folderName);
     }
 
     @Override
-    public void removeRepository(String repositoryId)
+    public void dispose() throws ComponentLifecycleException
     {
-        this.repositories.remove(repositoryId);
+        this.executor.shutdownNow();
+        this.synchronizer.shutdownNow();
+
+        for (ExtensionRepository repository : this.repositories.values()) {
+            disposeRepository(repository);
+        }
     }
 
-    @Override
-    public ExtensionRepository getRepository(String repositoryId)
+    /**
+     * Release the resources of a repository which is not part of the manager anymore.
+     * 
+     * @param repository the repository to dispose, can be null
+     */
+    private void disposeRepository(ExtensionRepository repository)
     {
-        return this.repositories.get(repositoryId);
+        if (repository instanceof Disposable) {
+            try {
+                ((Disposable) repository).dispose();
+            } catch (ComponentLifecycleException e) {
+                this.logger.error("Failed to dispose repository [{}]", repository.getDescriptor(), e);
+            }
+        }
     }
 
     @Override
-    public Collection<ExtensionRepository> getRepositories()
+    public synchronized void addRepository(ExtensionRepository repository)
     {
-        return Collections.unmodifiableCollection(this.repositories.values());
+        Map<String, ExtensionRepository> newRepositories = new LinkedHashMap<String, ExtensionRepository>(
+            this.repositories);
+        ExtensionRepository previousRepository = newRepositories.put(repository.getDescriptor().getId(), repository);
+
+        this.repositories = Collections.unmodifiableMap(newRepositories);
+
+        cancelSynchronization(repository.getDescriptor().getId());
+        if (previousRepository != repository) {
+            disposeRepository(previousRepository);
+        }
+        if (repository instanceof MirrorExtensionRepository) {
+            scheduleSynchronization((MirrorExtensionRepository) repository);
+        }
     }
 
     @Override
-    public Extension resolve(ExtensionId extensionId) throws ResolveException
+    public synchronized void removeRepository(String repositoryId)
     {
-        ResolveException lastExtension = null;
+        Map<String, ExtensionRepository> newRepositories = new LinkedHashMap<String, ExtensionRepository>(
+            this.repositories);
+        ExtensionRepository repository = newRepositories.remove(repositoryId);
 
-        for (ExtensionRepository repository : this.repositories.values()) {
-            try {
-                return repository.resolve(extensionId);
-            } catch (ResolveException e) {
-                this.logger.debug("Could not find extension [{}] in repository [{}]", extensionId,
-                    repository.getDescriptor(), e);
+        this.repositories = Collections.unmodifiableMap(newRepositories);
 
-                lastExtension = e;
-            }
+        cancelSynchronization(repositoryId);
+        disposeRepository(repository);
+    }
+
+    /**
+     * Regularly synchronize the passed mirror in the background.
+     * 
+     * @param mirror the mirror to synchronize
+     */
+    private void scheduleSynchronization(final MirrorExtensionRepository mirror)
+    {
+        long interval = getLongProperty(mirror, PROPERTY_MIRROR_INTERVAL, DEFAULT_MIRROR_INTERVAL);
+
+        if (interval > 0) {
+            this.synchronizations.put(mirror.getDescriptor().getId(),
+                this.synchronizer.scheduleWithFixedDelay(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        try {
+                            int added = mirror.synchronize();
+
+                            logger.debug("Found [{}] new version(s) in repository [{}]", added,
+                                mirror.getDescriptor());
+                        } catch (Exception e) {
+                            // Don't stop the following synchronizations
+                            logger.error("Failed to synchronize the mirror of repository [{}]",
+                                mirror.getDescriptor(), e);
+                        }
+                    }
+                }, interval, interval, TimeUnit.MILLISECONDS));
         }
+    }
 
-        throw new ResolveException(MessageFormat.format("Could not find extension [{0}]", extensionId), lastExtension);
+    /**
+     * @param repositoryId the identifier of the repository which is not part of the manager anymore
+     */
+    private void cancelSynchronization(String repositoryId)
+    {
+        Future< ? > synchronization = this.synchronizations.remove(repositoryId);
+
+        if (synchronization != null) {
+            synchronization.cancel(true);
+        }
     }
 
     @Override
-    public Extension resolve(ExtensionDependency extensionDependency) throws ResolveException
+    public ExtensionRepository getRepository(String repositoryId)
     {
-        ResolveException lastExtension = null;
+        return this.repositories.get(repositoryId);
+    }
 
-        for (ExtensionRepository repository : this.repositories.values()) {
-            try {
-                return repository.resolve(extensionDependency);
-            } catch (ResolveException e) {
-                this.logger.debug("Could not find extension dependency [{}] in repository [{}]", extensionDependency,
-                    repository.getDescriptor(), e);
+    @Override
+    public Collection<ExtensionRepository> getRepositories()
+    {
+        return this.repositories.values();
+    }
 
-                lastExtension = e;
-            }
+    @Override
+    public Extension resolve(final ExtensionId extensionId) throws ResolveException
+    {
+        try {
+            return resolveFirst(new RepositoryCall<Extension>()
+            {
+                @Override
+                public Extension call(ExtensionRepository repository) throws ResolveException
+                {
+                    return repository.resolve(extensionId);
+                }
+            }, "Could not find extension [{}] in repository [{}]", extensionId);
+        } catch (ResolveException e) {
+            throw new ResolveException(MessageFormat.format("Could not find extension [{0}]", extensionId),
+                e.getCause());
         }
+    }
 
-        throw new ResolveException(MessageFormat.format("Could not find extension dependency [{0}]",
-            extensionDependency), lastExtension);
+    @Override
+    public Extension resolve(final ExtensionDependency extensionDependency) throws ResolveException
+    {
+        try {
+            return resolveFirst(new RepositoryCall<Extension>()
+            {
+                @Override
+                public Extension call(ExtensionRepository repository) throws ResolveException
+                {
+                    return repository.resolve(extensionDependency);
+                }
+            }, "Could not find extension dependency [{}] in repository [{}]", extensionDependency);
+        } catch (ResolveException e) {
+            throw new ResolveException(MessageFormat.format("Could not find extension dependency [{0}]",
+                extensionDependency), e.getCause());
+        }
     }
 
     @Override
-    public IterableResult<Version> resolveVersions(String id, int offset, int nb) throws ResolveException
+    public IterableResult<Version> resolveVersions(final String id, int offset, int nb) throws ResolveException
     {
         SortedSet<Version> versionSet = new TreeSet<Version>();
 
-        for (ExtensionRepository repository : this.repositories.values()) {
-            try {
-                IterableResult<Version> versions = repository.resolveVersions(id, 0, -1);
+        List<ExtensionRepository> currentRepositories = new ArrayList<ExtensionRepository>(this.repositories.values());
 
-                for (Version version : versions) {
-                    versionSet.add(version);
+        List<Future<IterableResult<Version>>> futures;
+        try {
+            futures = submit(currentRepositories, new RepositoryCall<IterableResult<Version>>()
+            {
+                @Override
+                public IterableResult<Version> call(ExtensionRepository repository) throws ResolveException
+                {
+                    return repository.resolveVersions(id, 0, -1);
+                }
+            });
+        } catch (Exception e) {
+            throw new ResolveException(MessageFormat.format("Could not find versions for extension with id [{0}]",
+                id), e);
+        }
+
+        try {
+            long start = System.nanoTime();
+            for (int i = 0; i < futures.size(); ++i) {
+                try {
+                    IterableResult<Version> versions = get(futures.get(i), currentRepositories.get(i), start);
+
+                    for (Version version : versions) {
+                        versionSet.add(version);
+                    }
+                } catch (ExecutionException e) {
+                    this.logger.debug("Could not find versions for extension with id [{}]", id, e.getCause());
                 }
-            } catch (ResolveException e) {
-                this.logger.debug("Could not find versions for extension with id [{}]", id, e);
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            throw new ResolveException(MessageFormat.format(
+                "Interrupted while resolving versions for extension with id [{0}]", id), e);
+        } finally {
+            cancel(futures);
         }
 
         if (versionSet.isEmpty()) {
@@ -222,91 +531,385 @@ public IterableResult<Version> resolveVersions(String id, int offset, int nb) th
     @Override
     public IterableResult<Extension> search(String pattern, int offset, int nb)
     {
-        IterableResult<Extension> searchResult = null;
-
         int currentOffset = offset > 0 ? offset : 0;
-        int currentNb = nb;
 
-        // A local index would avoid things like this...
+        List<ExtensionRepository> searchableRepositories = new ArrayList<ExtensionRepository>();
         for (ExtensionRepository repository : this.repositories.values()) {
-            try {
-                searchResult = search(repository, pattern, currentOffset, currentNb, searchResult);
+            if (repository instanceof Searchable) {
+                searchableRepositories.add(repository);
+            }
+        }
 
-                if (searchResult != null) {
-                    if (currentOffset > 0) {
-                        currentOffset = offset - searchResult.getTotalHits();
-                        if (currentOffset < 0) {
-                            currentOffset = 0;
-                        }
-                    }
+        int[] offsets = new int[searchableRepositories.size()];
 
-                    if (currentNb > 0) {
-                        currentNb = nb - searchResult.getSize();
-                        if (currentNb < 0) {
-                            currentNb = 0;
-                        }
+        if (currentOffset == 0 || nb == 0) {
+            // The requested page can't contain more than nb results of each repository
+            int[] nbs = new int[searchableRepositories.size()];
+            Arrays.fill(nbs, nb);
+
+            List<IterableResult<Extension>> results =
+                search(searchableRepositories, offsets, nbs, pattern, offset, nb);
+
+            return aggregate(results, offset, 0, nb);
+        }
+
+        // Ask the total hits of each repository first to know where the requested page starts in each of them
+        List<IterableResult<Extension>> counts =
+            search(searchableRepositories, offsets, new int[searchableRepositories.size()], pattern, offset, nb);
+
+        int[] nbs = new int[searchableRepositories.size()];
+        List<ExtensionRepository> pageRepositories = new ArrayList<ExtensionRepository>();
+        int index = 0;
+        int remaining = nb;
+        for (int i = 0; i < counts.size(); ++i) {
+            IterableResult<Extension> count = counts.get(i);
+
+            if (count != null) {
+                int totalHits = count.getTotalHits();
+
+                if (totalHits < 0) {
+                    // Unknown total hits: ask each repository for everything up to the end of the requested page
+                    int[] allNbs = new int[searchableRepositories.size()];
+                    Arrays.fill(allNbs, nb > 0 ? currentOffset + nb : -1);
+
+                    List<IterableResult<Extension>> results =
+                        search(searchableRepositories, new int[searchableRepositories.size()], allNbs, pattern,
+                            offset, nb);
+
+                    return aggregate(results, offset, currentOffset, nb);
+                }
+
+                int start = Math.max(currentOffset - index, 0);
+                if (totalHits > start && remaining != 0) {
+                    offsets[pageRepositories.size()] = start;
+                    nbs[pageRepositories.size()] = remaining > 0 ? Math.min(totalHits - start, remaining) : -1;
+                    pageRepositories.add(searchableRepositories.get(i));
+
+                    if (remaining > 0) {
+                        remaining -= nbs[pageRepositories.size() - 1];
                     }
                 }
-            } catch (SearchException e) {
-                this.logger.error("Failed to search on repository [{}] with pattern=[{}], offset=[{}] and nb=[{}]. "
-                    + "Ignore and go to next repository.", repository.getDescriptor().toString(), pattern, offset, nb, e);
+
+                index += totalHits;
             }
         }
 
-        return searchResult != null ? searchResult : new CollectionIterableResult<Extension>(0, offset,
-            Collections.<Extension> emptyList());
+        List<IterableResult<Extension>> pages = search(pageRepositories, offsets, nbs, pattern, offset, nb);
+
+        // Keep the total hits of the repositories which are not part of the page
+        List<IterableResult<Extension>> results = new ArrayList<IterableResult<Extension>>(counts.size());
+        for (int i = 0; i < counts.size(); ++i) {
+            int pageIndex = pageRepositories.indexOf(searchableRepositories.get(i));
+
+            results.add(pageIndex >= 0 && pages.get(pageIndex) != null ? pages.get(pageIndex) : counts.get(i));
+        }
+
+        return aggregate(results, offset, 0, nb);
     }
 
     /**
-     * Search one repository.
+     * Search in parallel on the passed repositories.
      * 
-     * @param repository the repository to search
+     * @param searchableRepositories the repositories where to search
+     * @param offsets the offset to use for each repository
+     * @param nbs the maximum number of results to ask to each repository
      * @param pattern the pattern to search
-     * @param offset the offset from where to start returning search results
-     * @param nb the maximum number of search results to return
-     * @param previousSearchResult the current search result merged from all previous repositories
-     * @return the updated maximum number of search results to return
-     * @throws SearchException error while searching on provided repository
-     */
-    private IterableResult<Extension> search(ExtensionRepository repository, String pattern, int offset, int nb,
-        IterableResult<Extension> previousSearchResult) throws SearchException
+     * @param offset the requested offset
+     * @param nb the requested maximum number of results
+     * @return the results of each repository, null when the repository failed
+     */
+    private List<IterableResult<Extension>> search(final List<ExtensionRepository> searchableRepositories,
+        final int[] offsets, final int[] nbs, final String pattern, int offset, int nb)
+    {
+        List<IterableResult<Extension>> results =
+            new ArrayList<IterableResult<Extension>>(Collections.<IterableResult<Extension>> nCopies(
+                searchableRepositories.size(), null));
+
+        List<Future<IterableResult<Extension>>> futures;
+        try {
+            futures = submit(searchableRepositories, new RepositoryCall<IterableResult<Extension>>()
+            {
+                @Override
+                public IterableResult<Extension> call(ExtensionRepository repository) throws SearchException
+                {
+                    int index = searchableRepositories.indexOf(repository);
+
+                    return ((Searchable) repository).search(pattern, offsets[index], nbs[index]);
+                }
+            });
+        } catch (Exception e) {
+            this.logger.error("Failed to search with pattern=[{}], offset=[{}] and nb=[{}]", pattern, offset, nb, e);
+
+            return results;
+        }
+
+        try {
+            long start = System.nanoTime();
+            for (int i = 0; i < futures.size(); ++i) {
+                ExtensionRepository repository = searchableRepositories.get(i);
+
+                try {
+                    results.set(i, get(futures.get(i), repository, start));
+                } catch (ExecutionException e) {
+                    this.logger.error("Failed to search on repository [{}] with pattern=[{}], offset=[{}] and nb=[{}]. "
+                        + "Ignore and go to next repository.", repository.getDescriptor().toString(), pattern, offset,
+                        nb, e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            this.logger.warn("Interrupted while searching with pattern [{}]", pattern);
+        } finally {
+            cancel(futures);
+        }
+
+        return results;
+    }
+
+    /**
+     * Combine the results of the repositories without copying them.
+     * 
+     * @param results the results of each repository, null when the repository failed
+     * @param offset the requested offset
+     * @param skip the number of results to skip at the beginning of the results
+     * @param nb the requested maximum number of results
+     * @return the aggregated result
+     */
+    private IterableResult<Extension> aggregate(List<IterableResult<Extension>> results, int offset, int skip, int nb)
+    {
+        AggregatedIterableResult<Extension> aggregatedResult = new AggregatedIterableResult<Extension>(offset);
+
+        int toSkip = skip;
+        int remaining = nb;
+        for (IterableResult<Extension> result : results) {
+            if (result != null) {
+                int size = result.getSize();
+
+                if (toSkip == 0 && (remaining < 0 || size <= remaining)) {
+                    aggregatedResult.addSearchResult(result);
+                } else {
+                    aggregatedResult.addSearchResult(subResult(result, toSkip, remaining));
+                }
+
+                int used = Math.max(size - toSkip, 0);
+                toSkip = Math.max(toSkip - size, 0);
+                if (remaining > 0) {
+                    remaining = Math.max(remaining - used, 0);
+                }
+            }
+        }
+
+        return aggregatedResult;
+    }
+
+    /**
+     * @param result the result
+     * @param from the number of elements to skip
+     * @param nb the maximum number of elements to keep, -1 for all
+     * @return the elements of the passed result between from and from + nb, with the same total hits
+     */
+    private IterableResult<Extension> subResult(IterableResult<Extension> result, int from, int nb)
     {
-        IterableResult<Extension> result;
+        List<Extension> extensions = new ArrayList<Extension>(nb > 0 ? nb : 0);
 
-        if (repository instanceof Searchable) {
-            Searchable searchableRepository = (Searchable) repository;
+        int index = 0;
+        for (Iterator<Extension> it = result.iterator(); it.hasNext() && (nb < 0 || extensions.size() < nb);) {
+            Extension extension = it.next();
 
-            result = searchableRepository.search(pattern, offset, nb);
+            if (index++ >= from) {
+                extensions.add(extension);
+            }
+        }
 
-            if (previousSearchResult != null) {
-                result = appendSearchResults(previousSearchResult, result);
+        return new CollectionIterableResult<Extension>(result.getTotalHits(), result.getOffset() + from, extensions);
+    }
+
+    /**
+     * Call all the repositories in parallel and return the result of the first one in the repositories order which
+     * succeeded. The following repositories are cancelled as soon as a result is found.
+     * 
+     * @param call the call to execute on each repository
+     * @param failureMessage the message to log when a repository fails
+     * @param target what is being resolved
+     * @return the result of the first repository which succeeded
+     * @throws ResolveException when no repository succeeded, the cause is the last repository error
+     * @param <T> the type of the result
+     */
+    private <T> T resolveFirst(RepositoryCall<T> call, String failureMessage, Object target) throws ResolveException
+    {
+        List<ExtensionRepository> currentRepositories = new ArrayList<ExtensionRepository>(this.repositories.values());
+
+        // No need to go through another thread when there is only one repository to ask
+        if (currentRepositories.size() == 1 && getTimeout(currentRepositories.get(0)) <= 0) {
+            try {
+                return call.call(currentRepositories.get(0));
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                this.logger.debug(failureMessage, target, currentRepositories.get(0).getDescriptor(), e);
+
+                throw new ResolveException(e.getMessage(), e);
             }
-        } else {
-            result = previousSearchResult;
         }
 
-        return result;
+        List<Future<T>> futures;
+        try {
+            futures = submit(currentRepositories, call);
+        } catch (Exception e) {
+            throw new ResolveException("Failed to start resolution", e);
+        }
+
+        Throwable lastException = null;
+
+        try {
+            long start = System.nanoTime();
+            for (int i = 0; i < futures.size(); ++i) {
+                try {
+                    return get(futures.get(i), currentRepositories.get(i), start);
+                } catch (ExecutionException e) {
+                    this.logger.debug(failureMessage, target, currentRepositories.get(i).getDescriptor(), e.getCause());
+
+                    lastException = e.getCause();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            lastException = e;
+        } finally {
+            // Cancel the requests which are still running
+            cancel(futures);
+        }
+
+        throw new ResolveException("No repository succeeded", lastException);
     }
 
     /**
-     * @param previousSearchResult all the previous search results
-     * @param result the new search result to append
-     * @return the new aggregated search result
+     * Start the call in parallel on the passed repositories.
+     * 
+     * @param repositories the repositories to call
+     * @param call the call to execute on each repository
+     * @return the calls results, in the same order than the repositories
+     * @throws Exception when failing to submit a call
+     * @param <T> the type of the result
      */
-    private AggregatedIterableResult<Extension> appendSearchResults(IterableResult<Extension> previousSearchResult,
-        IterableResult<Extension> result)
+    private <T> List<Future<T>> submit(List<ExtensionRepository> repositories, final RepositoryCall<T> call)
+        throws Exception
     {
-        AggregatedIterableResult<Extension> newResult;
+        // A repository calling the manager would wait for threads of the same bounded pool
+        boolean nested = this.resolverThread.get() != null;
+
+        List<Future<T>> futures = new ArrayList<Future<T>>(repositories.size());
+        try {
+            for (final ExtensionRepository repository : repositories) {
+                Callable<T> task = new Callable<T>()
+                {
+                    @Override
+                    public T call() throws Exception
+                    {
+                        return call.call(repository);
+                    }
+                };
+
+                if (nested) {
+                    FutureTask<T> future = new FutureTask<T>(task);
+                    future.run();
+                    futures.add(future);
+                } else {
+                    futures.add(this.executor.submit(new ResolverCallable<T>(task)));
+                }
+            }
+        } catch (Exception e) {
+            cancel(futures);
 
-        if (previousSearchResult instanceof AggregatedIterableResult) {
-            newResult = ((AggregatedIterableResult<Extension>) previousSearchResult);
-        } else {
-            newResult = new AggregatedIterableResult<Extension>(previousSearchResult.getOffset());
-            newResult.addSearchResult(previousSearchResult);
+            throw e;
         }
 
-        newResult.addSearchResult(result);
+        return futures;
+    }
 
-        return newResult;
+    /**
+     * Wait for the result of a repository call.
+     * 
+     * @param future the result of the repository call
+     * @param repository the called repository
+     * @param start when the calls started, in nanoseconds
+     * @return the result of the call
+     * @throws ExecutionException when the repository failed or did not answer in time
+     * @throws InterruptedException when interrupted while waiting for the result
+     * @param <T> the type of the result
+     */
+    private <T> T get(Future<T> future, ExtensionRepository repository, long start) throws ExecutionException,
+        InterruptedException
+    {
+        long timeout = getTimeout(repository);
+
+        try {
+            if (timeout > 0) {
+                long remaining = start + TimeUnit.MILLISECONDS.toNanos(timeout) - System.nanoTime();
+
+                return future.get(remaining > 0 ? remaining : 0, TimeUnit.NANOSECONDS);
+            } else {
+                return future.get();
+            }
+        } catch (TimeoutException e) {
+            throw new ExecutionException(new ResolveException(MessageFormat.format(
+                "Repository [{0}] did not answer in less than [{1}] milliseconds", repository.getDescriptor(),
+                timeout), e));
+        } catch (CancellationException e) {
+            throw new ExecutionException(e);
+        } catch (ExecutionException e) {
+            // Propagate unexpected errors like the sequential resolution used to
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            } else if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+
+            throw e;
+        }
+    }
+
+    /**
+     * @param repository the repository
+     * @return the maximum time to wait for an answer from the passed repository in milliseconds, 0 or less if the
+     *         repository should be waited for as long as it takes
+     */
+    private long getTimeout(ExtensionRepository repository)
+    {
+        return getLongProperty(repository, PROPERTY_TIMEOUT, 0);
+    }
+
+    /**
+     * @param repository the repository
+     * @param key the name of the descriptor property
+     * @param defaultValue the value to return when the property is not set or invalid
+     * @return the value of the property
+     */
+    private long getLongProperty(ExtensionRepository repository, String key, long defaultValue)
+    {
+        String value = repository.getDescriptor().getProperty(key);
+
+        if (value != null) {
+            try {
+                return Long.parseLong(value);
+            } catch (NumberFormatException e) {
+                this.logger.warn("Invalid value [{}] for property [{}] of repository [{}]", value, key,
+                    repository.getDescriptor().getId());
+            }
+        }
+
+        return defaultValue;
+    }
+
+    /**
+     * @param futures the calls to cancel if they are not already finished
+     */
+    private void cancel(List< ? extends Future< ? >> futures)
+    {
+        for (Future< ? > future : futures) {
+            future.cancel(true);
+        }
     }
 }
@@ -0,0 +1,485 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.extension.repository.internal;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import org.xwiki.extension.Extension;
+import org.xwiki.extension.repository.result.CollectionIterableResult;
+
+/**
+ * An inverted index of extensions used to search into the id, name, summary, description and features of the
+ * extensions without scanning them all.
+ * <p>
+ * The indexed text is split in lower case trigrams. A search returns the extensions containing the searched pattern
+ * (case insensitive) in one of the indexed fields, the candidates being selected using the least common trigram of the
+ * pattern. The results are ranked: exact id first, then id prefix, id, name and finally other fields; only the
+ * requested page is kept in memory.
+ * 
+ * @param <E> the type of the extension
+ * @version $Id$
+ * @since 6.0M1
+ */
+public class ExtensionSearchIndex<E extends Extension>
+{
+    /**
+     * Filter the extensions found in the index.
+     * 
+     * @param <E> the type of the extension
+     * @version $Id$
+     */
+    public interface Filter<E>
+    {
+        /**
+         * @param extension the extension matching the pattern
+         * @return true if the extension should be part of the result
+         */
+        boolean accept(E extension);
+    }
+
+    /**
+     * The size of the indexed grams.
+     */
+    private static final int GRAM_SIZE = 3;
+
+    /**
+     * Separate the fields in the indexed text so that a pattern can't match across two fields.
+     */
+    private static final char FIELD_SEPARATOR = '\u0000';
+
+    /**
+     * The rank of an extension with an id equals to the pattern.
+     */
+    private static final int RANK_ID_EXACT = 0;
+
+    /**
+     * The rank of an extension with an id starting with the pattern.
+     */
+    private static final int RANK_ID_PREFIX = 1;
+
+    /**
+     * The rank of an extension with an id containing the pattern.
+     */
+    private static final int RANK_ID = 2;
+
+    /**
+     * The rank of an extension with a name containing the pattern.
+     */
+    private static final int RANK_NAME = 3;
+
+    /**
+     * The rank of an extension matching the pattern in any other field.
+     */
+    private static final int RANK_OTHER = 4;
+
+    /**
+     * An indexed extension.
+     * 
+     * @param <E> the type of the extension
+     * @version $Id$
+     */
+    private static class Document<E extends Extension>
+    {
+        /**
+         * The indexed extension.
+         */
+        private final E extension;
+
+        /**
+         * The lower case id of the extension.
+         */
+        private final String id;
+
+        /**
+         * The lower case name of the extension, null if it does not have any.
+         */
+        private final String name;
+
+        /**
+         * The lower case indexed fields separated by {@link #FIELD_SEPARATOR}.
+         */
+        private final String text;
+
+        /**
+         * @param extension the extension to index
+         */
+        Document(E extension)
+        {
+            this.extension = extension;
+            this.id = extension.getId().getId().toLowerCase();
+            this.name = extension.getName() != null ? extension.getName().toLowerCase() : null;
+
+            StringBuilder builder = new StringBuilder();
+            append(builder, extension.getId().getId());
+            append(builder, extension.getName());
+            append(builder, extension.getSummary());
+            append(builder, extension.getDescription());
+            Collection<String> features = extension.getFeatures();
+            if (features != null) {
+                for (String feature : features) {
+                    append(builder, feature);
+                }
+            }
+            this.text = builder.toString();
+        }
+
+        /**
+         * @param builder the indexed text
+         * @param field the field to add to the indexed text, ignored if null
+         */
+        private static void append(StringBuilder builder, String field)
+        {
+            if (field != null) {
+                builder.append(field.toLowerCase());
+                builder.append(FIELD_SEPARATOR);
+            }
+        }
+
+        /**
+         * @param pattern the lower case pattern contained in the document
+         * @return the rank of the document for the passed pattern, the lower the better
+         */
+        int rank(String pattern)
+        {
+            int rank = RANK_OTHER;
+
+            if (!pattern.isEmpty()) {
+                if (this.id.equals(pattern)) {
+                    rank = RANK_ID_EXACT;
+                } else if (this.id.startsWith(pattern)) {
+                    rank = RANK_ID_PREFIX;
+                } else if (this.id.contains(pattern)) {
+                    rank = RANK_ID;
+                } else if (this.name != null && this.name.contains(pattern)) {
+                    rank = RANK_NAME;
+                }
+            }
+
+            return rank;
+        }
+    }
+
+    /**
+     * A matched document and its rank.
+     * 
+     * @param <E> the type of the extension
+     * @version $Id$
+     */
+    private static class Hit<E extends Extension>
+    {
+        /**
+         * The matched document.
+         */
+        private final Document<E> document;
+
+        /**
+         * The rank of the document for the searched pattern, the lower the better.
+         */
+        private final int rank;
+
+        /**
+         * @param document the matched document
+         * @param rank the rank of the document for the searched pattern
+         */
+        Hit(Document<E> document, int rank)
+        {
+            this.document = document;
+            this.rank = rank;
+        }
+    }
+
+    /**
+     * Order the hits from the best to the worst.
+     */
+    private static final Comparator<Hit< ? >> HIT_COMPARATOR = new Comparator<Hit< ? >>()
+    {
+        @Override
+        public int compare(Hit< ? > hit1, Hit< ? > hit2)
+        {
+            int diff = hit1.rank - hit2.rank;
+
+            if (diff == 0) {
+                diff = hit1.document.id.compareTo(hit2.document.id);
+
+                if (diff == 0) {
+                    // Higher version first
+                    diff =
+                        hit2.document.extension.getId().getVersion()
+                            .compareTo(hit1.document.extension.getId().getVersion());
+                }
+            }
+
+            return diff;
+        }
+    };
+
+    /**
+     * Order the hits from the worst to the best.
+     */
+    private static final Comparator<Hit< ? >> REVERSE_HIT_COMPARATOR = Collections.reverseOrder(HIT_COMPARATOR);
+
+    /**
+     * The indexed documents.
+     */
+    private final Map<E, Document<E>> documents = new HashMap<E, Document<E>>();
+
+    /**
+     * The documents containing each gram.
+     */
+    private final Map<String, Set<Document<E>>> grams = new HashMap<String, Set<Document<E>>>();
+
+    /**
+     * Index the passed extension (or re-index it if it's already indexed).
+     * 
+     * @param extension the extension to index
+     */
+    public synchronized void add(E extension)
+    {
+        remove(extension);
+
+        Document<E> document = new Document<E>(extension);
+
+        this.documents.put(extension, document);
+
+        for (String gram : getGrams(document.text)) {
+            Set<Document<E>> gramDocuments = this.grams.get(gram);
+            if (gramDocuments == null) {
+                gramDocuments = new HashSet<Document<E>>();
+                this.grams.put(gram, gramDocuments);
+            }
+            gramDocuments.add(document);
+        }
+    }
+
+    /**
+     * Remove the passed extension from the index.
+     * 
+     * @param extension the extension to remove
+     */
+    public synchronized void remove(E extension)
+    {
+        Document<E> document = this.documents.remove(extension);
+
+        if (document != null) {
+            for (String gram : getGrams(document.text)) {
+                Set<Document<E>> gramDocuments = this.grams.get(gram);
+                if (gramDocuments != null) {
+                    gramDocuments.remove(document);
+                    if (gramDocuments.isEmpty()) {
+                        this.grams.remove(gram);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove all the extensions from the index.
+     */
+    public synchronized void clear()
+    {
+        this.documents.clear();
+        this.grams.clear();
+    }
+
+    /**
+     * @return the number of indexed extensions
+     */
+    public synchronized int size()
+    {
+        return this.documents.size();
+    }
+
+    /**
+     * @param pattern the string to search in the extensions fields, null or empty to return all extensions
+     * @param offset the offset where to start returning elements
+     * @param nb the number of maximum element to return
+     * @return the search result
+     */
+    public CollectionIterableResult<Extension> search(String pattern, int offset, int nb)
+    {
+        return search(pattern, (Filter<E>) null, offset, nb);
+    }
+
+    /**
+     * @param pattern the string to search in the extensions fields, null or empty to return all extensions
+     * @param filter the filter to apply to the matched extensions, null for none
+     * @param offset the offset where to start returning elements
+     * @param nb the number of maximum element to return
+     * @return the search result
+     */
+    public synchronized CollectionIterableResult<Extension> search(String pattern, Filter< ? super E> filter,
+        int offset, int nb)
+    {
+        String lowerPattern = pattern != null ? pattern.toLowerCase() : "";
+
+        return search(lowerPattern, getCandidates(lowerPattern), filter, offset, nb);
+    }
+
+    /**
+     * Search only among the passed extensions. The passed extensions are iterated when there is less of them than
+     * indexed extensions potentially matching the pattern, so the cost is proportional to the smallest of the two.
+     * 
+     * @param pattern the string to search in the extensions fields, null or empty to return all extensions
+     * @param extensions the extensions to search in, should provide a fast {@link Collection#contains(Object)}
+     * @param offset the offset where to start returning elements
+     * @param nb the number of maximum element to return
+     * @return the search result
+     */
+    public synchronized CollectionIterableResult<Extension> search(String pattern,
+        final Collection< ? extends E> extensions, int offset, int nb)
+    {
+        String lowerPattern = pattern != null ? pattern.toLowerCase() : "";
+
+        Collection<Document<E>> candidates = getCandidates(lowerPattern);
+
+        if (extensions.size() < candidates.size()) {
+            candidates = new ArrayList<Document<E>>(extensions.size());
+            for (E extension : extensions) {
+                Document<E> document = this.documents.get(extension);
+                if (document != null) {
+                    candidates.add(document);
+                }
+            }
+
+            return search(lowerPattern, candidates, null, offset, nb);
+        }
+
+        return search(lowerPattern, candidates, new Filter<E>()
+        {
+            @Override
+            public boolean accept(E extension)
+            {
+                return extensions.contains(extension);
+            }
+        }, offset, nb);
+    }
+
+    /**
+     * @param pattern the lower case pattern
+     * @param candidates the documents which might contain the pattern
+     * @param filter the filter to apply to the matched extensions, null for none
+     * @param offset the offset where to start returning elements
+     * @param nb the number of maximum element to return
+     * @return the search result
+     */
+    private CollectionIterableResult<Extension> search(String pattern, Collection<Document<E>> candidates,
+        Filter< ? super E> filter, int offset, int nb)
+    {
+        int fromIndex = offset < 0 ? 0 : offset;
+        int max = nb < 0 ? -1 : fromIndex + nb;
+
+        // Keep only the best hits (the worst first to easily remove it)
+        PriorityQueue<Hit<E>> hits = new PriorityQueue<Hit<E>>(11, REVERSE_HIT_COMPARATOR);
+        int totalHits = 0;
+
+        for (Document<E> document : candidates) {
+            if (document.text.contains(pattern) && (filter == null || filter.accept(document.extension))) {
+                ++totalHits;
+
+                if (max != 0) {
+                    addHit(hits, new Hit<E>(document, document.rank(pattern)), max);
+                }
+            }
+        }
+
+        List<Hit<E>> sortedHits = new ArrayList<Hit<E>>(hits);
+        Collections.sort(sortedHits, HIT_COMPARATOR);
+
+        List<Extension> result;
+        if (fromIndex < sortedHits.size()) {
+            result = new ArrayList<Extension>(sortedHits.size() - fromIndex);
+            for (Hit<E> hit : sortedHits.subList(fromIndex, sortedHits.size())) {
+                result.add(hit.document.extension);
+            }
+        } else {
+            result = Collections.emptyList();
+        }
+
+        return new CollectionIterableResult<Extension>(totalHits, offset, result);
+    }
+
+    /**
+     * @param hits the best hits found so far, the worst first
+     * @param hit the new hit
+     * @param max the maximum number of hits to keep, -1 for no limit
+     */
+    private void addHit(PriorityQueue<Hit<E>> hits, Hit<E> hit, int max)
+    {
+        hits.add(hit);
+        if (max > 0 && hits.size() > max) {
+            hits.poll();
+        }
+    }
+
+    /**
+     * @param pattern the lower case pattern
+     * @return the documents which might contain the pattern
+     */
+    private Collection<Document<E>> getCandidates(String pattern)
+    {
+        if (pattern.length() < GRAM_SIZE) {
+            return this.documents.values();
+        }
+
+        // Use the least common gram of the pattern
+        Set<Document<E>> candidates = null;
+        for (String gram : getGrams(pattern)) {
+            Set<Document<E>> gramDocuments = this.grams.get(gram);
+
+            if (gramDocuments == null) {
+                return Collections.emptyList();
+            }
+
+            if (candidates == null || gramDocuments.size() < candidates.size()) {
+                candidates = gramDocuments;
+            }
+        }
+
+        return candidates;
+    }
+
+    /**
+     * @param text the text to split
+     * @return the grams contained in the text
+     */
+    private static Set<String> getGrams(String text)
+    {
+        Set<String> textGrams = new HashSet<String>();
+
+        for (int i = 0; i + GRAM_SIZE <= text.length(); ++i) {
+            String gram = text.substring(i, i + GRAM_SIZE);
+            if (gram.indexOf(FIELD_SEPARATOR) == -1) {
+                textGrams.add(gram);
+            }
+        }
+
+        return textGrams;
+    }
+}
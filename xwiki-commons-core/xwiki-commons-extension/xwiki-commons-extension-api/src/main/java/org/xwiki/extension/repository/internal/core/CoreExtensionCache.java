@@ -0,0 +1,288 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.extension.repository.internal.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.apache.commons.io.FileUtils;
+import org.xwiki.extension.ExtensionLicenseManager;
+
+/**
+ * Remember the core extensions found in the classpath so that the jars don't have to be scanned and the Maven
+ * descriptors parsed again at each startup.
+ * <p>
+ * The cache is associated to a fingerprint of the classpath (the name, size and last modification date of each jar):
+ * the content is only reused as long as the classpath did not change. The extensions properties (which include the
+ * Maven model) are stored using Java serialization, restricted to the few JDK classes they use and the Maven model
+ * classes.
+ * 
+ * @version $Id$
+ * @since 6.0M1
+ */
+public class CoreExtensionCache
+{
+    /**
+     * The name of the cache file.
+     */
+    public static final String FILENAME = "extensions.cache";
+
+    /**
+     * Identify a core extensions cache file ("XCEC").
+     */
+    private static final int MAGIC = 0x58434543;
+
+    /**
+     * The version of the cache format.
+     */
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * The folder containing Maven descriptors in a jar or a classes folder.
+     */
+    private static final String MAVEN_FOLDER = "META-INF/maven";
+
+    /**
+     * The folder containing the cache file.
+     */
+    private final File folder;
+
+    /**
+     * The cache file.
+     */
+    private final File file;
+
+    /**
+     * Unserialize the cached core extensions.
+     */
+    private final CoreExtensionCacheReader reader;
+
+    /**
+     * Serialize the core extensions to cache.
+     */
+    private final CoreExtensionCacheWriter writer = new CoreExtensionCacheWriter();
+
+    /**
+     * @param folder the folder containing the cache file
+     * @param licenseManager used to get back well known licenses
+     */
+    public CoreExtensionCache(File folder, ExtensionLicenseManager licenseManager)
+    {
+        this.folder = folder;
+        this.file = new File(folder, FILENAME);
+        this.reader = new CoreExtensionCacheReader(licenseManager);
+    }
+
+    /**
+     * @return the cache file
+     */
+    public File getFile()
+    {
+        return this.file;
+    }
+
+    /**
+     * Calculate a fingerprint of the passed classpath.
+     * <p>
+     * The fingerprint is based on the name, size and last modification date of each jar. For folders the Maven
+     * descriptors they contain are taken into account.
+     * 
+     * @param urls the classpath entries
+     * @return the fingerprint of the classpath or null if it can't be calculated (some classpath entries are not
+     *         local files)
+     * @throws IOException when failing to calculate the fingerprint
+     */
+    public static String fingerprint(Collection<URL> urls) throws IOException
+    {
+        List<String> entries = new ArrayList<String>(urls.size());
+        for (URL url : urls) {
+            File entryFile = FileUtils.toFile(url);
+
+            if (entryFile == null) {
+                // Unsupported protocol, impossible to know if the content changed
+                return null;
+            }
+
+            StringBuilder entry = new StringBuilder(url.toString());
+            if (entryFile.isDirectory()) {
+                appendDirectory(new File(entryFile, MAVEN_FOLDER), entry);
+            } else {
+                appendFile(entryFile, entry);
+            }
+
+            entries.add(entry.toString());
+        }
+
+        // The order of the classpath entries depends on the classloader and is not relevant
+        Collections.sort(entries);
+
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("Failed to get SHA-1 digest", e);
+        }
+
+        for (String entry : entries) {
+            digest.update(entry.getBytes("UTF-8"));
+            digest.update((byte) '\n');
+        }
+
+        byte[] bytes = digest.digest();
+        StringBuilder str = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            str.append(Character.forDigit((b >> 4) & 0xF, 16));
+            str.append(Character.forDigit(b & 0xF, 16));
+        }
+
+        return str.toString();
+    }
+
+    private static void appendFile(File file, StringBuilder entry)
+    {
+        entry.append('|');
+        entry.append(file.length());
+        entry.append('|');
+        entry.append(file.lastModified());
+    }
+
+    private static void appendDirectory(File directory, StringBuilder entry)
+    {
+        File[] children = directory.listFiles();
+
+        if (children != null) {
+            // listFiles() order is not guaranteed
+            List<File> sortedChildren = new ArrayList<File>(children.length);
+            Collections.addAll(sortedChildren, children);
+            Collections.sort(sortedChildren);
+
+            for (File child : sortedChildren) {
+                entry.append('|');
+                entry.append(child.getName());
+
+                if (child.isDirectory()) {
+                    appendDirectory(child, entry);
+                } else {
+                    appendFile(child, entry);
+                }
+            }
+        }
+    }
+
+    // Read
+
+    /**
+     * @param fingerprint the fingerprint of the current classpath
+     * @param repository the core extension repository
+     * @return the cached core extensions indexed by id or null if there is no cache for the passed fingerprint
+     * @throws IOException when failing to read the cache (including when it's corrupted)
+     */
+    public synchronized Map<String, DefaultCoreExtension> read(String fingerprint,
+        DefaultCoreExtensionRepository repository) throws IOException
+    {
+        if (!this.file.exists()) {
+            return null;
+        }
+
+        byte[] content;
+
+        DataInputStream stream = new DataInputStream(new BufferedInputStream(new FileInputStream(this.file)));
+        try {
+            if (stream.readInt() != MAGIC || stream.readInt() != FORMAT_VERSION
+                || !stream.readUTF().equals(fingerprint)) {
+                return null;
+            }
+
+            long checksum = stream.readLong();
+            content = new byte[stream.readInt()];
+            stream.readFully(content);
+
+            CRC32 crc = new CRC32();
+            crc.update(content);
+            if (crc.getValue() != checksum) {
+                throw new IOException("Corrupted core extensions cache");
+            }
+        } finally {
+            stream.close();
+        }
+
+        return this.reader.read(content, repository);
+    }
+
+    // Write
+
+    /**
+     * Replace the cache with the passed extensions.
+     * 
+     * @param fingerprint the fingerprint of the classpath the extensions have been found in
+     * @param extensions the core extensions indexed by id
+     * @throws IOException when failing to write the cache
+     */
+    public synchronized void write(String fingerprint, Map<String, ? extends DefaultCoreExtension> extensions)
+        throws IOException
+    {
+        // Serialize everything first to be able to store the checksum before the content
+        byte[] bytes = this.writer.serialize(extensions);
+
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+
+        this.folder.mkdirs();
+
+        File tmpFile = new File(this.folder, FILENAME + ".tmp");
+
+        DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+        try {
+            stream.writeInt(MAGIC);
+            stream.writeInt(FORMAT_VERSION);
+            stream.writeUTF(fingerprint);
+            stream.writeLong(crc.getValue());
+            stream.writeInt(bytes.length);
+            stream.write(bytes);
+        } finally {
+            stream.close();
+        }
+
+        try {
+            Files.move(tmpFile.toPath(), this.file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmpFile.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
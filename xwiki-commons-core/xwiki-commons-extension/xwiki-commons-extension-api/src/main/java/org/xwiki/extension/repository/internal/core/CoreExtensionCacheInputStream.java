@@ -0,0 +1,156 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.extension.repository.internal.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Read the content of the {@link CoreExtensionCache}, refusing to unserialize anything else than the expected JDK and
+ * Maven model classes.
+ * 
+ * @version $Id$
+ * @since 6.0M1
+ */
+class CoreExtensionCacheInputStream extends ObjectInputStream
+{
+    /**
+     * The JDK classes allowed in the serialized properties: the properties values and the fields of the Maven model.
+     */
+    private static final Set<String> ALLOWED_CLASSES = new HashSet<String>(Arrays.asList(Boolean.class.getName(),
+        Number.class.getName(), Integer.class.getName(), Long.class.getName(), URL.class.getName(),
+        HashMap.class.getName(), LinkedHashMap.class.getName(), ArrayList.class.getName(),
+        Hashtable.class.getName(), Properties.class.getName()));
+
+    /**
+     * The packages of the classes allowed in the serialized properties.
+     */
+    private static final String[] ALLOWED_PACKAGES = {"org.apache.maven.model.", "org.codehaus.plexus.util.xml."};
+
+    /**
+     * @param in the stream to read
+     * @throws IOException when failing to read the stream header
+     */
+    CoreExtensionCacheInputStream(InputStream in) throws IOException
+    {
+        super(in);
+    }
+
+    @Override
+    protected Class< ? > resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException
+    {
+        String className = desc.getName();
+
+        if (!isAllowed(className)) {
+            throw new InvalidClassException(className, "Unexpected class in core extensions cache");
+        }
+
+        return super.resolveClass(desc);
+    }
+
+    @Override
+    protected Class< ? > resolveProxyClass(String[] interfaces) throws IOException, ClassNotFoundException
+    {
+        throw new InvalidClassException(Arrays.toString(interfaces), "Unexpected proxy in core extensions cache");
+    }
+
+    /**
+     * @param className the name of the class to unserialize
+     * @return true if the class is expected in the cache
+     */
+    private boolean isAllowed(String className)
+    {
+        // Arrays are allowed when their elements are
+        if (className.startsWith("[")) {
+            int index = className.lastIndexOf('[') + 1;
+
+            // Arrays of primitive types
+            if (className.charAt(index) != 'L') {
+                return true;
+            }
+
+            return isAllowed(className.substring(index + 1, className.length() - 1));
+        }
+
+        if (ALLOWED_CLASSES.contains(className)) {
+            return true;
+        }
+
+        for (String allowedPackage : ALLOWED_PACKAGES) {
+            if (className.startsWith(allowedPackage)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Read a properties map, checking the type of its keys.
+     * 
+     * @return the properties
+     * @throws IOException when failing to read the stream
+     * @throws ClassNotFoundException when the class of a stored object can't be found
+     */
+    Map<String, Object> readProperties() throws IOException, ClassNotFoundException
+    {
+        Map< ? , ? > map = (Map< ? , ? >) readObject();
+
+        Map<String, Object> properties = new LinkedHashMap<String, Object>(map.size());
+        for (Map.Entry< ? , ? > entry : map.entrySet()) {
+            properties.put((String) entry.getKey(), entry.getValue());
+        }
+
+        return properties;
+    }
+
+    /**
+     * Read a list of {@link String}, checking the type of its elements.
+     * 
+     * @return the strings
+     * @throws IOException when failing to read the stream
+     * @throws ClassNotFoundException when the class of a stored object can't be found
+     */
+    List<String> readStrings() throws IOException, ClassNotFoundException
+    {
+        List< ? > list = (List< ? >) readObject();
+
+        List<String> strings = new ArrayList<String>(list.size());
+        for (Object element : list) {
+            strings.add((String) element);
+        }
+
+        return strings;
+    }
+}
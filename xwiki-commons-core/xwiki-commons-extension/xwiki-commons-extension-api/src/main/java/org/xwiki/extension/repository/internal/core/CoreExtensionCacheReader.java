@@ -0,0 +1,165 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.extension.repository.internal.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.Model;
+import org.xwiki.extension.DefaultExtensionAuthor;
+import org.xwiki.extension.DefaultExtensionDependency;
+import org.xwiki.extension.ExtensionDependency;
+import org.xwiki.extension.ExtensionId;
+import org.xwiki.extension.ExtensionLicense;
+import org.xwiki.extension.ExtensionLicenseManager;
+import org.xwiki.extension.version.internal.DefaultVersionConstraint;
+
+/**
+ * Unserialize the core extensions stored in the {@link CoreExtensionCache}.
+ * 
+ * @version $Id$
+ * @since 6.0M1
+ */
+class CoreExtensionCacheReader
+{
+    /**
+     * Used to get back well known licenses.
+     */
+    private final ExtensionLicenseManager licenseManager;
+
+    /**
+     * @param licenseManager used to get back well known licenses
+     */
+    CoreExtensionCacheReader(ExtensionLicenseManager licenseManager)
+    {
+        this.licenseManager = licenseManager;
+    }
+
+    /**
+     * @param content the serialized core extensions
+     * @param repository the core extension repository
+     * @return the core extensions indexed by id
+     * @throws IOException when failing to unserialize the extensions
+     */
+    Map<String, DefaultCoreExtension> read(byte[] content, DefaultCoreExtensionRepository repository)
+        throws IOException
+    {
+        CoreExtensionCacheInputStream stream = new CoreExtensionCacheInputStream(new ByteArrayInputStream(content));
+        try {
+            int size = stream.readInt();
+            Map<String, DefaultCoreExtension> extensions = new HashMap<String, DefaultCoreExtension>(size * 2);
+            for (int i = 0; i < size; ++i) {
+                String key = stream.readUTF();
+
+                extensions.put(key, readExtension(stream, repository));
+            }
+
+            return extensions;
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Failed to unserialize core extension", e);
+        } catch (ClassCastException e) {
+            throw new IOException("Unexpected content in core extensions cache", e);
+        } finally {
+            stream.close();
+        }
+    }
+
+    private DefaultCoreExtension readExtension(CoreExtensionCacheInputStream stream,
+        DefaultCoreExtensionRepository repository) throws IOException, ClassNotFoundException
+    {
+        ExtensionId id = new ExtensionId((String) stream.readObject(), (String) stream.readObject());
+        String type = (String) stream.readObject();
+
+        Map<String, Object> properties = stream.readProperties();
+
+        URL url = (URL) properties.get(DefaultCoreExtension.PKEY_URL);
+        Model model = (Model) properties.get(MavenCoreExtension.PKEY_MAVEN_MODEL);
+
+        DefaultCoreExtension extension;
+        if (model != null) {
+            extension = new MavenCoreExtension(repository, url, id, type, model);
+        } else {
+            extension = new DefaultCoreExtension(repository, url, id, type);
+        }
+        extension.setProperties(properties);
+
+        extension.setName((String) stream.readObject());
+        extension.setSummary((String) stream.readObject());
+        extension.setDescription((String) stream.readObject());
+        extension.setWebsite((String) stream.readObject());
+
+        // Features
+        List<String> features = stream.readStrings();
+        if (!features.isEmpty()) {
+            extension.setFeatures(features);
+        }
+
+        // Authors
+        int size = stream.readInt();
+        for (int i = 0; i < size; ++i) {
+            String name = (String) stream.readObject();
+            String authorURL = (String) stream.readObject();
+
+            extension.addAuthor(new DefaultExtensionAuthor(name, authorURL != null ? new URL(authorURL) : null));
+        }
+
+        // Licenses (only the name, the content is never resolved by the scanner)
+        size = stream.readInt();
+        for (int i = 0; i < size; ++i) {
+            String name = (String) stream.readObject();
+
+            ExtensionLicense license = this.licenseManager.getLicense(name);
+            extension.addLicense(license != null ? license : new ExtensionLicense(name, null));
+        }
+
+        // Dependencies
+        size = stream.readInt();
+        for (int i = 0; i < size; ++i) {
+            extension.addDependency(readDependency(stream));
+        }
+
+        return extension;
+    }
+
+    private ExtensionDependency readDependency(CoreExtensionCacheInputStream stream) throws IOException,
+        ClassNotFoundException
+    {
+        String id = (String) stream.readObject();
+        DefaultVersionConstraint versionConstraint = new DefaultVersionConstraint((String) stream.readObject());
+        Map<String, Object> properties = stream.readProperties();
+
+        Dependency mavenDependency = (Dependency) properties.get(MavenCoreExtensionDependency.PKEY_MAVEN_DEPENDENCY);
+
+        DefaultExtensionDependency dependency;
+        if (mavenDependency != null) {
+            dependency = new MavenCoreExtensionDependency(id, versionConstraint, mavenDependency);
+            dependency.setProperties(properties);
+        } else {
+            dependency = new DefaultExtensionDependency(id, versionConstraint, properties);
+        }
+
+        return dependency;
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.extension.repository.internal.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.xwiki.extension.ExtensionAuthor;
+import org.xwiki.extension.ExtensionDependency;
+import org.xwiki.extension.ExtensionLicense;
+
+/**
+ * Serialize the core extensions stored in the {@link CoreExtensionCache}.
+ * 
+ * @version $Id$
+ * @since 6.0M1
+ */
+class CoreExtensionCacheWriter
+{
+    /**
+     * @param extensions the core extensions indexed by id
+     * @return the serialized core extensions
+     * @throws IOException when failing to serialize the extensions
+     */
+    byte[] serialize(Map<String, ? extends DefaultCoreExtension> extensions) throws IOException
+    {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        ObjectOutputStream stream = new ObjectOutputStream(content);
+        try {
+            stream.writeInt(extensions.size());
+            for (Map.Entry<String, ? extends DefaultCoreExtension> entry : extensions.entrySet()) {
+                stream.writeUTF(entry.getKey());
+
+                writeExtension(stream, entry.getValue());
+            }
+        } finally {
+            stream.close();
+        }
+
+        return content.toByteArray();
+    }
+
+    private void writeExtension(ObjectOutputStream stream, DefaultCoreExtension extension) throws IOException
+    {
+        stream.writeObject(extension.getId().getId());
+        stream.writeObject(extension.getId().getVersion().getValue());
+        stream.writeObject(extension.getType());
+
+        // Contains the URL, the guessed flag and the Maven model
+        stream.writeObject(new LinkedHashMap<String, Object>(extension.getProperties()));
+
+        stream.writeObject(extension.getName());
+        stream.writeObject(extension.getSummary());
+        stream.writeObject(extension.getDescription());
+        stream.writeObject(extension.getWebSite());
+
+        // Features
+        stream.writeObject(new ArrayList<String>(extension.getFeatures()));
+
+        // Authors
+        Collection<ExtensionAuthor> authors = extension.getAuthors();
+        stream.writeInt(authors.size());
+        for (ExtensionAuthor author : authors) {
+            stream.writeObject(author.getName());
+            stream.writeObject(author.getURL() != null ? author.getURL().toString() : null);
+        }
+
+        // Licenses
+        Collection<ExtensionLicense> licenses = extension.getLicenses();
+        stream.writeInt(licenses.size());
+        for (ExtensionLicense license : licenses) {
+            stream.writeObject(license.getName());
+        }
+
+        // Dependencies
+        Collection< ? extends ExtensionDependency> dependencies = extension.getDependencies();
+        stream.writeInt(dependencies.size());
+        for (ExtensionDependency dependency : dependencies) {
+            stream.writeObject(dependency.getId());
+            stream.writeObject(dependency.getVersionConstraint().getValue());
+            stream.writeObject(new LinkedHashMap<String, Object>(dependency.getProperties()));
+        }
+    }
+}
@@ -29,6 +29,7 @@
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
+import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.xwiki.component.annotation.Component;
 import org.xwiki.component.phase.Initializable;
@@ -41,6 +42,7 @@
 import org.xwiki.extension.repository.AbstractExtensionRepository;
 import org.xwiki.extension.repository.CoreExtensionRepository;
 import org.xwiki.extension.repository.DefaultExtensionRepositoryDescriptor;
+import org.xwiki.extension.repository.internal.ExtensionSearchIndex;
 import org.xwiki.extension.repository.internal.RepositoryUtils;
 import org.xwiki.extension.repository.result.CollectionIterableResult;
 import org.xwiki.extension.repository.result.IterableResult;
@@ -59,6 +61,12 @@
 public class DefaultCoreExtensionRepository extends AbstractExtensionRepository implements CoreExtensionRepository,
     Initializable, Searchable
 {
+    /**
+     * The characters indicating that the search pattern is a regular expression (the dot is a common character in
+     * extensions ids so it's not taken into account).
+     */
+    private static final String REGEX_SPECIAL_CHARACTERS = "\\[](){}*+?^$|";
+
     /**
      * The core extensions.
      */
@@ -69,6 +77,12 @@ public class DefaultCoreExtensionRepository extends AbstractExtensionRepository
      */
     protected transient DefaultCoreExtension environmentExtension;
 
+    /**
+     * The index used to search the core extensions.
+     */
+    private final transient ExtensionSearchIndex<DefaultCoreExtension> searchIndex =
+        new ExtensionSearchIndex<DefaultCoreExtension>();
+
     /**
      * The logger to log.
      */
@@ -107,6 +121,8 @@ public void initialize() throws InitializationException
                 }
             }
 
+            indexExtensions();
+
             // Start a background thread to get more details about the found extensions
             Thread thread = new Thread(new Runnable()
             {
@@ -114,6 +130,9 @@ public void initialize() throws InitializationException
                 public void run()
                 {
                     scanner.updateExtensions(extensions.values());
+
+                    // Take into account the new details
+                    indexExtensions();
                 }
             });
 
@@ -126,6 +145,20 @@ public void run()
         }
     }
 
+    /**
+     * Index the core extensions to search them.
+     * 
+     * @since 6.0M1
+     */
+    protected void indexExtensions()
+    {
+        this.searchIndex.clear();
+
+        for (DefaultCoreExtension extension : this.extensions.values()) {
+            this.searchIndex.add(extension);
+        }
+    }
+
     // Repository
 
     @Override
@@ -223,6 +256,10 @@ public CoreExtension getCoreExtension(String feature)
     @Override
     public IterableResult<Extension> search(String pattern, int offset, int nb) throws SearchException
     {
-        return RepositoryUtils.searchInCollection(pattern, offset, nb, this.extensions.values());
+        if (StringUtils.containsAny(pattern, REGEX_SPECIAL_CHARACTERS)) {
+            return RepositoryUtils.searchInCollection(pattern, offset, nb, this.extensions.values());
+        }
+
+        return this.searchIndex.search(pattern, offset, nb);
     }
 }
@@ -19,16 +19,22 @@
  */
 package org.xwiki.extension.repository.internal.core;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.jar.Attributes;
 import java.util.jar.Manifest;
 import java.util.regex.Matcher;
@@ -63,6 +69,7 @@
 import org.xwiki.extension.ExtensionLicense;
 import org.xwiki.extension.ExtensionLicenseManager;
 import org.xwiki.extension.ResolveException;
+import org.xwiki.extension.internal.ExtensionThreadFactory;
 import org.xwiki.extension.repository.ExtensionRepositoryManager;
 import org.xwiki.extension.version.internal.DefaultVersionConstraint;
 import org.xwiki.properties.ConverterManager;
@@ -104,6 +111,11 @@ public class DefaultCoreExtensionScanner implements CoreExtensionScanner
      */
     private static final String MF_EXTENSION_ID = "XWiki-Extension-Id";
 
+    /**
+     * The folder where the core extensions cache is stored, relative to the permanent directory.
+     */
+    private static final String CACHE_FOLDER = "extension/core/";
+
     /**
      * The logger to log.
      */
@@ -131,6 +143,28 @@ public class DefaultCoreExtensionScanner implements CoreExtensionScanner
     @Inject
     private Environment environment;
 
+    /**
+     * The cache of the core extensions found in the classpath.
+     */
+    private CoreExtensionCache cache;
+
+    /**
+     * @return the cache of the core extensions found in the classpath, null if there is no permanent directory
+     */
+    private CoreExtensionCache getCache()
+    {
+        if (this.cache == null) {
+            File permanentDirectory = this.environment.getPermanentDirectory();
+
+            if (permanentDirectory != null) {
+                this.cache =
+                    new CoreExtensionCache(new File(permanentDirectory, CACHE_FOLDER), this.licenseManager);
+            }
+        }
+
+        return this.cache;
+    }
+
     private Dependency toDependency(String id, String version, String type) throws ResolveException
     {
         Matcher matcher = PARSER_ID.matcher(id);
@@ -305,13 +339,91 @@ public void updateExtensions(Collection<DefaultCoreExtension> extensions)
     @Override
     public Map<String, DefaultCoreExtension> loadExtensions(DefaultCoreExtensionRepository repository)
     {
+        Set<URL> mavenURLs = ClasspathHelper.forPackage(MAVENPACKAGE);
+        Set<URL> classLoaderURLs = ClasspathHelper.forClassLoader();
+
+        // The core classpath generally does not change between two restarts
+        String fingerprint = getFingerprint(mavenURLs, classLoaderURLs);
+        if (fingerprint != null) {
+            Map<String, DefaultCoreExtension> extensions = readCache(fingerprint, repository);
+
+            if (extensions != null) {
+                return extensions;
+            }
+        }
+
         Map<String, DefaultCoreExtension> extensions = new HashMap<String, DefaultCoreExtension>();
 
-        loadExtensionsFromClassloaders(extensions, repository);
+        loadExtensionsFromClassloaders(extensions, repository, mavenURLs, classLoaderURLs);
+
+        if (fingerprint != null) {
+            writeCache(fingerprint, extensions);
+        }
 
         return extensions;
     }
 
+    /**
+     * @param mavenURLs the classpath entries containing Maven descriptors
+     * @param classLoaderURLs the classpath entries
+     * @return the fingerprint of the classpath, null if the cache can't be used
+     */
+    private String getFingerprint(Set<URL> mavenURLs, Set<URL> classLoaderURLs)
+    {
+        if (getCache() != null) {
+            Set<URL> urls = new LinkedHashSet<URL>(classLoaderURLs);
+            urls.addAll(mavenURLs);
+
+            try {
+                return CoreExtensionCache.fingerprint(urls);
+            } catch (Exception e) {
+                this.logger.warn("Failed to calculate the classpath fingerprint, core extensions won't be cached: {}",
+                    ExceptionUtils.getRootCauseMessage(e));
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @param fingerprint the fingerprint of the current classpath
+     * @param repository the core extension repository
+     * @return the cached core extensions, null if there is no valid cache for this classpath
+     */
+    private Map<String, DefaultCoreExtension> readCache(String fingerprint, DefaultCoreExtensionRepository repository)
+    {
+        try {
+            Map<String, DefaultCoreExtension> extensions = getCache().read(fingerprint, repository);
+
+            if (extensions != null) {
+                this.logger.debug("Core extensions loaded from cache [{}]", getCache().getFile());
+            }
+
+            return extensions;
+        } catch (Exception e) {
+            this.logger.warn("Failed to read core extensions cache [{}], the classpath will be scanned: {}",
+                getCache().getFile(), ExceptionUtils.getRootCauseMessage(e));
+            this.logger.debug("Cache error", e);
+        }
+
+        return null;
+    }
+
+    /**
+     * @param fingerprint the fingerprint of the current classpath
+     * @param extensions the core extensions found in the classpath
+     */
+    private void writeCache(String fingerprint, Map<String, DefaultCoreExtension> extensions)
+    {
+        try {
+            getCache().write(fingerprint, extensions);
+        } catch (Exception e) {
+            this.logger.warn("Failed to write core extensions cache [{}]: {}", getCache().getFile(),
+                ExceptionUtils.getRootCauseMessage(e));
+            this.logger.debug("Cache error", e);
+        }
+    }
+
     @Override
     public DefaultCoreExtension loadEnvironmentExtensions(DefaultCoreExtensionRepository repository)
     {
@@ -358,10 +470,8 @@ public DefaultCoreExtension loadEnvironmentExtensions(DefaultCoreExtensionReposi
     }
 
     private void loadExtensionsFromClassloaders(Map<String, DefaultCoreExtension> extensions,
-        DefaultCoreExtensionRepository repository)
+        DefaultCoreExtensionRepository repository, Set<URL> mavenURLs, Set<URL> classLoaderURLs)
     {
-        Set<URL> mavenURLs = ClasspathHelper.forPackage(MAVENPACKAGE);
-
         ConfigurationBuilder configurationBuilder = new ConfigurationBuilder();
         configurationBuilder.setScanners(new ResourcesScanner());
         configurationBuilder.setUrls(mavenURLs);
@@ -369,30 +479,96 @@ private void loadExtensionsFromClassloaders(Map<String, DefaultCoreExtension> ex
 
         Reflections reflections = new Reflections(configurationBuilder);
 
-        Set<String> descriptors = reflections.getResources(Predicates.equalTo("pom.xml"));
+        List<String> descriptors = new ArrayList<String>(reflections.getResources(Predicates.equalTo("pom.xml")));
 
-        for (String descriptor : descriptors) {
-            URL descriptorUrl = getClass().getClassLoader().getResource(descriptor);
+        int threads = ExtensionThreadFactory.getParallelism(descriptors.size());
 
-            if (descriptorUrl != null) {
-                try {
-                    DefaultCoreExtension coreExtension = parseMavenPom(descriptorUrl, repository);
-
-                    extensions.put(coreExtension.getId().getId(), coreExtension);
-                } catch (Exception e) {
-                    this.logger.warn("Failed to parse extension descriptor [{}] ([{}])", descriptorUrl, descriptor, e);
-                }
-            } else {
-                this.logger.error("Could not find resource URL for descriptor [{}]", descriptor);
+        if (threads > 1) {
+            parseDescriptors(descriptors, threads, extensions, repository);
+        } else {
+            for (String descriptor : descriptors) {
+                addExtension(parseDescriptor(descriptor, repository), extensions);
             }
         }
 
         // Try to find more
 
-        guess(extensions, repository);
+        guess(extensions, repository, classLoaderURLs);
+    }
+
+    private void addExtension(DefaultCoreExtension coreExtension, Map<String, DefaultCoreExtension> extensions)
+    {
+        if (coreExtension != null) {
+            extensions.put(coreExtension.getId().getId(), coreExtension);
+        }
+    }
+
+    /**
+     * @param descriptor the path of the Maven descriptor in the classloader
+     * @param repository the core extension repository
+     * @return the core extension or null if it could not be parsed
+     */
+    private DefaultCoreExtension parseDescriptor(String descriptor, DefaultCoreExtensionRepository repository)
+    {
+        URL descriptorUrl = getClass().getClassLoader().getResource(descriptor);
+
+        if (descriptorUrl != null) {
+            try {
+                return parseMavenPom(descriptorUrl, repository);
+            } catch (Exception e) {
+                this.logger.warn("Failed to parse extension descriptor [{}] ([{}])", descriptorUrl, descriptor, e);
+            }
+        } else {
+            this.logger.error("Could not find resource URL for descriptor [{}]", descriptor);
+        }
+
+        return null;
+    }
+
+    /**
+     * Parse the Maven descriptors in parallel.
+     * 
+     * @param descriptors the paths of the Maven descriptors in the classloader
+     * @param threads the number of threads to use to parse the descriptors
+     * @param extensions the found core extensions
+     * @param repository the core extension repository
+     */
+    private void parseDescriptors(List<String> descriptors, int threads,
+        Map<String, DefaultCoreExtension> extensions, final DefaultCoreExtensionRepository repository)
+    {
+        List<Callable<DefaultCoreExtension>> tasks = new ArrayList<Callable<DefaultCoreExtension>>(descriptors.size());
+        for (final String descriptor : descriptors) {
+            tasks.add(new Callable<DefaultCoreExtension>()
+            {
+                @Override
+                public DefaultCoreExtension call()
+                {
+                    return parseDescriptor(descriptor, repository);
+                }
+            });
+        }
+
+        try {
+            List<Future<DefaultCoreExtension>> futures =
+                ExtensionThreadFactory.invokeAll("Core extension scanner", threads, tasks);
+
+            // Keep the order of the descriptors in case several of them have the same id
+            for (Future<DefaultCoreExtension> future : futures) {
+                try {
+                    addExtension(future.get(), extensions);
+                } catch (ExecutionException e) {
+                    this.logger.warn("Failed to parse extension descriptor", e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            this.logger.warn("Interrupted while parsing core extensions descriptors", e);
+
+            Thread.currentThread().interrupt();
+        }
     }
 
-    private void guess(Map<String, DefaultCoreExtension> extensions, DefaultCoreExtensionRepository repository)
+    private void guess(Map<String, DefaultCoreExtension> extensions, DefaultCoreExtensionRepository repository,
+        Set<URL> urls)
     {
         Set<ExtensionDependency> dependencies = new HashSet<ExtensionDependency>();
 
@@ -411,7 +587,6 @@ private void guess(Map<String, DefaultCoreExtension> extensions, DefaultCoreExte
 
         Map<String, Object[]> fileNames = new HashMap<String, Object[]>();
         Map<String, Object[]> guessedArtefacts = new HashMap<String, Object[]>();
-        Set<URL> urls = ClasspathHelper.forClassLoader();
 
         for (URL url : urls) {
             if (!validaedFiles.contains(url.toString())) {
@@ -19,21 +19,22 @@
  */
 package org.xwiki.extension.repository.internal.installed;
 
+import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.regex.Pattern;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
-import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.slf4j.Logger;
 import org.xwiki.component.annotation.Component;
@@ -54,7 +55,6 @@
 import org.xwiki.extension.repository.InstalledExtensionRepository;
 import org.xwiki.extension.repository.LocalExtensionRepository;
 import org.xwiki.extension.repository.internal.AbstractCachedExtensionRepository;
-import org.xwiki.extension.repository.internal.RepositoryUtils;
 import org.xwiki.extension.repository.result.IterableResult;
 import org.xwiki.extension.repository.search.SearchException;
 import org.xwiki.extension.version.Version;
@@ -82,8 +82,6 @@ public class DefaultInstalledExtensionRepository extends AbstractCachedExtension
 
         public String namespace;
 
-        public Set<DefaultInstalledExtension> backwardDependencies = new HashSet<DefaultInstalledExtension>();
-
         /**
          * @param feature the feature
          * @param namespace the namespace
@@ -95,6 +93,16 @@ public InstalledFeature(String feature, String namespace)
         }
     }
 
+    private static class BackwardDependenciesClosure
+    {
+        public Map<String, List<InstalledExtension>> extensionsByNamespace =
+            new LinkedHashMap<String, List<InstalledExtension>>();
+
+        public Set<InstalledExtension> extensions = new HashSet<InstalledExtension>();
+
+        public Set<Map.Entry<ExtensionId, String>> visited = new HashSet<Map.Entry<ExtensionId, String>>();
+    }
+
     /**
      * Used to access all local extensions.
      */
@@ -121,6 +129,65 @@ public InstalledFeature(String feature, String namespace)
     private Map<String, Map<String, InstalledFeature>> extensionNamespaceByFeature =
         new ConcurrentHashMap<String, Map<String, InstalledFeature>>();
 
+    /**
+     * The extensions depending on each feature, by namespace. Only contains non empty sets.
+     * <p>
+     * <feature, <namespace, backward dependencies>>
+     */
+    private Map<String, Map<String, Set<DefaultInstalledExtension>>> backwardDependenciesByFeature =
+        new ConcurrentHashMap<String, Map<String, Set<DefaultInstalledExtension>>>();
+
+    /**
+     * The extensions installed on root namespace.
+     */
+    private Set<DefaultInstalledExtension> rootExtensions = Collections
+        .newSetFromMap(new ConcurrentHashMap<DefaultInstalledExtension, Boolean>());
+
+    /**
+     * The extensions installed on each namespace (not including the ones installed on root namespace).
+     * <p>
+     * <namespace, extensions>
+     */
+    private Map<String, Set<DefaultInstalledExtension>> extensionsByNamespace =
+        new ConcurrentHashMap<String, Set<DefaultInstalledExtension>>();
+
+    /**
+     * The namespaces under which each extension is registered in {@link #rootExtensions} and
+     * {@link #extensionsByNamespace} (null for root namespace).
+     */
+    private Map<DefaultInstalledExtension, List<String>> extensionNamespaces =
+        new ConcurrentHashMap<DefaultInstalledExtension, List<String>>();
+
+    /**
+     * The result of the validations done during initialization, null outside of initialization.
+     * <p>
+     * <<extension id, namespace>, exception>, the exception being null when the validation is still in progress
+     */
+    private Map<Map.Entry<ExtensionId, String>, InvalidExtensionException> validations;
+
+    /**
+     * The backward dependencies closures already computed. A closure is removed as soon as the backward dependencies of
+     * one of the extensions it contains change.
+     * <p>
+     * <<extension id, namespace>, closure>
+     */
+    private Map<Map.Entry<ExtensionId, String>, BackwardDependenciesClosure> backwardDependenciesClosures =
+        new ConcurrentHashMap<Map.Entry<ExtensionId, String>, BackwardDependenciesClosure>();
+
+    /**
+     * The keys of the cached closures containing each extension (including the extension the closure is computed for).
+     * Also used to synchronize the modifications of the closures cache.
+     * <p>
+     * <extension id, <<extension id, namespace>>>
+     */
+    private Map<ExtensionId, Set<Map.Entry<ExtensionId, String>>> backwardDependenciesClosuresByExtension =
+        new HashMap<ExtensionId, Set<Map.Entry<ExtensionId, String>>>();
+
+    /**
+     * Incremented each time backward dependencies change to not cache a closure computed in the meantime.
+     */
+    private AtomicLong backwardDependenciesVersion = new AtomicLong();
+
     @Override
     public void initialize() throws InitializationException
     {
@@ -129,10 +196,16 @@ public void initialize() throws InitializationException
 
         // Validate local extension
 
-        for (LocalExtension localExtension : this.localRepository.getLocalExtensions()) {
-            if (DefaultInstalledExtension.isInstalled(localExtension)) {
-                validateExtension(localExtension);
+        this.validations = new HashMap<Map.Entry<ExtensionId, String>, InvalidExtensionException>();
+
+        try {
+            for (LocalExtension localExtension : this.localRepository.getLocalExtensions()) {
+                if (DefaultInstalledExtension.isInstalled(localExtension)) {
+                    validateExtension(localExtension);
+                }
             }
+        } finally {
+            this.validations = null;
         }
     }
 
@@ -260,6 +333,66 @@ private DefaultInstalledExtension validateExtension(LocalExtension localExtensio
             return validateExtension(localExtension, null, register);
         }
 
+        if (register && this.validations != null) {
+            return validateExtensionOnce(localExtension, namespace);
+        }
+
+        return validateExtensionAndDependencies(localExtension, namespace, register);
+    }
+
+    /**
+     * Make sure each extension is validated only once for each namespace during initialization.
+     * 
+     * @param localExtension the extension to validate
+     * @param namespace the namespace
+     * @return the corresponding {@link DefaultInstalledExtension}
+     * @throws InvalidExtensionException when the passed extension is fond invalid
+     */
+    private DefaultInstalledExtension validateExtensionOnce(LocalExtension localExtension, String namespace)
+        throws InvalidExtensionException
+    {
+        Map.Entry<ExtensionId, String> key =
+            new AbstractMap.SimpleImmutableEntry<ExtensionId, String>(localExtension.getId(), namespace);
+
+        if (this.validations.containsKey(key)) {
+            InvalidExtensionException exception = this.validations.get(key);
+
+            if (exception == null) {
+                exception =
+                    new InvalidExtensionException(String.format(
+                        "Extension [%s] is part of a dependency cycle on namespace [%s]", localExtension, namespace));
+            }
+
+            throw exception;
+        }
+
+        // Mark the validation as in progress
+        this.validations.put(key, null);
+
+        try {
+            DefaultInstalledExtension installedExtension =
+                validateExtensionAndDependencies(localExtension, namespace, true);
+
+            this.validations.remove(key);
+
+            return installedExtension;
+        } catch (InvalidExtensionException e) {
+            this.validations.put(key, e);
+
+            throw e;
+        }
+    }
+
+    /**
+     * @param localExtension the extension to validate
+     * @param namespace the namespace
+     * @param register true if the extension should be registered as installed
+     * @return the corresponding {@link DefaultInstalledExtension}
+     * @throws InvalidExtensionException when the passed extension is fond invalid
+     */
+    private DefaultInstalledExtension validateExtensionAndDependencies(LocalExtension localExtension,
+        String namespace, boolean register) throws InvalidExtensionException
+    {
         if (!DefaultInstalledExtension.isInstalled(localExtension, namespace)) {
             throw new InvalidExtensionException(String.format("Extension [%s] is not installed", localExtension));
         }
@@ -337,9 +470,13 @@ private void removeInstalledExtension(DefaultInstalledExtension installedExtensi
 
         removeFromBackwardDependencies(installedExtension, namespace);
 
+        updateNamespaceCache(installedExtension);
+
         if (!installedExtension.isInstalled()) {
             removeCachedExtension(installedExtension);
         }
+
+        invalidateBackwardDependenciesClosures(installedExtension);
     }
 
     /**
@@ -355,10 +492,20 @@ private void removeInstalledFeature(String feature, String namespace)
 
         if (namespace == null) {
             this.extensionNamespaceByFeature.remove(feature);
+            this.backwardDependenciesByFeature.remove(feature);
         } else {
             Map<String, InstalledFeature> namespaceInstalledExtension = this.extensionNamespaceByFeature.get(feature);
 
             namespaceInstalledExtension.remove(namespace);
+
+            Map<String, Set<DefaultInstalledExtension>> namespaceBackwardDependencies =
+                this.backwardDependenciesByFeature.get(feature);
+            if (namespaceBackwardDependencies != null) {
+                namespaceBackwardDependencies.remove(namespace);
+                if (namespaceBackwardDependencies.isEmpty()) {
+                    this.backwardDependenciesByFeature.remove(feature);
+                }
+            }
         }
     }
 
@@ -404,12 +551,269 @@ private void removeFromBackwardDependencies(DefaultInstalledExtension installedE
                 InstalledFeature installedFeature = getInstalledFeatureFromCache(dependency.getId(), namespace);
 
                 if (installedFeature != null) {
-                    installedFeature.backwardDependencies.remove(installedExtension);
+                    removeBackwardDependency(installedFeature, installedExtension);
                 }
             }
         }
     }
 
+    /**
+     * @param installedFeature the installed feature
+     * @param backwardDependency the extension depending on the passed feature
+     */
+    private void addBackwardDependency(InstalledFeature installedFeature, DefaultInstalledExtension backwardDependency)
+    {
+        Map<String, Set<DefaultInstalledExtension>> namespaceBackwardDependencies =
+            this.backwardDependenciesByFeature.get(installedFeature.feature);
+        if (namespaceBackwardDependencies == null) {
+            namespaceBackwardDependencies = new HashMap<String, Set<DefaultInstalledExtension>>();
+            this.backwardDependenciesByFeature.put(installedFeature.feature, namespaceBackwardDependencies);
+        }
+
+        Set<DefaultInstalledExtension> backwardDependencies =
+            namespaceBackwardDependencies.get(installedFeature.namespace);
+        if (backwardDependencies == null) {
+            backwardDependencies = new HashSet<DefaultInstalledExtension>();
+            namespaceBackwardDependencies.put(installedFeature.namespace, backwardDependencies);
+        }
+
+        backwardDependencies.add(backwardDependency);
+
+        invalidateBackwardDependenciesClosures(installedFeature.extension);
+    }
+
+    /**
+     * @param installedFeature the installed feature
+     * @param backwardDependency the extension not depending anymore on the passed feature
+     */
+    private void removeBackwardDependency(InstalledFeature installedFeature,
+        DefaultInstalledExtension backwardDependency)
+    {
+        Map<String, Set<DefaultInstalledExtension>> namespaceBackwardDependencies =
+            this.backwardDependenciesByFeature.get(installedFeature.feature);
+
+        if (namespaceBackwardDependencies != null) {
+            Set<DefaultInstalledExtension> backwardDependencies =
+                namespaceBackwardDependencies.get(installedFeature.namespace);
+
+            if (backwardDependencies != null) {
+                backwardDependencies.remove(backwardDependency);
+
+                if (backwardDependencies.isEmpty()) {
+                    namespaceBackwardDependencies.remove(installedFeature.namespace);
+                    if (namespaceBackwardDependencies.isEmpty()) {
+                        this.backwardDependenciesByFeature.remove(installedFeature.feature);
+                    }
+                }
+
+                invalidateBackwardDependenciesClosures(installedFeature.extension);
+            }
+        }
+    }
+
+    /**
+     * Forget the backward dependencies closures affected by a change of the passed extension backward dependencies.
+     * <p>
+     * Must be called after the change.
+     * 
+     * @param extension the extension for which backward dependencies changed
+     */
+    private void invalidateBackwardDependenciesClosures(DefaultInstalledExtension extension)
+    {
+        synchronized (this.backwardDependenciesClosuresByExtension) {
+            this.backwardDependenciesVersion.incrementAndGet();
+
+            if (extension != null) {
+                Set<Map.Entry<ExtensionId, String>> keys =
+                    this.backwardDependenciesClosuresByExtension.remove(extension.getId());
+
+                if (keys != null) {
+                    for (Map.Entry<ExtensionId, String> key : keys) {
+                        BackwardDependenciesClosure closure = this.backwardDependenciesClosures.remove(key);
+
+                        if (closure != null) {
+                            unindexBackwardDependenciesClosure(key.getKey(), key);
+                            for (InstalledExtension closureExtension : closure.extensions) {
+                                unindexBackwardDependenciesClosure(closureExtension.getId(), key);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Cache a computed backward dependencies closure unless backward dependencies changed since it started to be
+     * computed.
+     * 
+     * @param key the extension and namespace of the closure
+     * @param closure the closure
+     * @param version the version of the backward dependencies used to compute the closure
+     */
+    private void cacheBackwardDependenciesClosure(Map.Entry<ExtensionId, String> key,
+        BackwardDependenciesClosure closure, long version)
+    {
+        synchronized (this.backwardDependenciesClosuresByExtension) {
+            // Don't keep a closure which might have missed a change
+            if (this.backwardDependenciesVersion.get() == version) {
+                this.backwardDependenciesClosures.put(key, closure);
+
+                indexBackwardDependenciesClosure(key.getKey(), key);
+                for (InstalledExtension closureExtension : closure.extensions) {
+                    indexBackwardDependenciesClosure(closureExtension.getId(), key);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param extensionId the id of an extension contained in the closure
+     * @param key the key of the closure
+     */
+    private void indexBackwardDependenciesClosure(ExtensionId extensionId, Map.Entry<ExtensionId, String> key)
+    {
+        Set<Map.Entry<ExtensionId, String>> keys = this.backwardDependenciesClosuresByExtension.get(extensionId);
+        if (keys == null) {
+            keys = new HashSet<Map.Entry<ExtensionId, String>>();
+            this.backwardDependenciesClosuresByExtension.put(extensionId, keys);
+        }
+
+        keys.add(key);
+    }
+
+    /**
+     * @param extensionId the id of an extension contained in the closure
+     * @param key the key of the closure
+     */
+    private void unindexBackwardDependenciesClosure(ExtensionId extensionId, Map.Entry<ExtensionId, String> key)
+    {
+        Set<Map.Entry<ExtensionId, String>> keys = this.backwardDependenciesClosuresByExtension.get(extensionId);
+        if (keys != null) {
+            keys.remove(key);
+
+            if (keys.isEmpty()) {
+                this.backwardDependenciesClosuresByExtension.remove(extensionId);
+            }
+        }
+    }
+
+    /**
+     * Add the passed extension backward dependencies and their own backward dependencies to the closure, each
+     * extension after the extensions depending on it.
+     * 
+     * @param extension the extension
+     * @param namespace the namespace where to search for backward dependencies, null for all the namespaces where the
+     *            extension is installed
+     * @param closure the closure to fill
+     * @throws ResolveException error when searching for backward dependencies
+     */
+    private void addBackwardDependencies(InstalledExtension extension, String namespace,
+        BackwardDependenciesClosure closure) throws ResolveException
+    {
+        Map<String, Collection<InstalledExtension>> backwardDependencies;
+        if (namespace == null) {
+            backwardDependencies = getBackwardDependencies(extension.getId());
+        } else {
+            backwardDependencies =
+                Collections.singletonMap(namespace, getBackwardDependencies(extension.getId().getId(), namespace));
+        }
+
+        for (Map.Entry<String, Collection<InstalledExtension>> entry : backwardDependencies.entrySet()) {
+            String backwardDependencyNamespace = entry.getKey();
+
+            for (InstalledExtension backwardDependency : entry.getValue()) {
+                if (closure.visited.add(new AbstractMap.SimpleImmutableEntry<ExtensionId, String>(backwardDependency
+                    .getId(), backwardDependencyNamespace))) {
+                    addBackwardDependencies(backwardDependency, backwardDependencyNamespace, closure);
+
+                    List<InstalledExtension> namespaceExtensions =
+                        closure.extensionsByNamespace.get(backwardDependencyNamespace);
+                    if (namespaceExtensions == null) {
+                        namespaceExtensions = new ArrayList<InstalledExtension>();
+                        closure.extensionsByNamespace.put(backwardDependencyNamespace, namespaceExtensions);
+                    }
+                    namespaceExtensions.add(backwardDependency);
+
+                    closure.extensions.add(backwardDependency);
+                }
+            }
+        }
+    }
+
+    /**
+     * Synchronize the namespace views with the namespaces in which the passed extension is currently installed.
+     * 
+     * @param installedExtension the extension
+     */
+    private void updateNamespaceCache(DefaultInstalledExtension installedExtension)
+    {
+        // Unregister previous namespaces
+        List<String> previousNamespaces = this.extensionNamespaces.remove(installedExtension);
+        if (previousNamespaces != null) {
+            for (String namespace : previousNamespaces) {
+                if (namespace == null) {
+                    this.rootExtensions.remove(installedExtension);
+                } else {
+                    Set<DefaultInstalledExtension> namespaceExtensions = this.extensionsByNamespace.get(namespace);
+                    if (namespaceExtensions != null) {
+                        namespaceExtensions.remove(installedExtension);
+                        if (namespaceExtensions.isEmpty()) {
+                            this.extensionsByNamespace.remove(namespace);
+                        }
+                    }
+                }
+            }
+        }
+
+        // Register current namespaces
+        if (installedExtension.isInstalled()) {
+            Collection<String> namespaces = installedExtension.getNamespaces();
+
+            List<String> currentNamespaces;
+            if (namespaces == null) {
+                currentNamespaces = Collections.singletonList(null);
+
+                this.rootExtensions.add(installedExtension);
+            } else {
+                currentNamespaces = new ArrayList<String>(namespaces);
+
+                for (String namespace : currentNamespaces) {
+                    Set<DefaultInstalledExtension> namespaceExtensions = this.extensionsByNamespace.get(namespace);
+                    if (namespaceExtensions == null) {
+                        namespaceExtensions =
+                            Collections.newSetFromMap(new ConcurrentHashMap<DefaultInstalledExtension, Boolean>());
+                        this.extensionsByNamespace.put(namespace, namespaceExtensions);
+                    }
+                    namespaceExtensions.add(installedExtension);
+                }
+            }
+
+            this.extensionNamespaces.put(installedExtension, currentNamespaces);
+        }
+    }
+
+    /**
+     * @param namespace the namespace
+     * @return the extensions installed on the passed namespace (including the ones installed on root namespace)
+     */
+    private Set<DefaultInstalledExtension> getNamespaceExtensions(String namespace)
+    {
+        Set<DefaultInstalledExtension> namespaceExtensions =
+            namespace != null ? this.extensionsByNamespace.get(namespace) : null;
+
+        if (namespaceExtensions == null || namespaceExtensions.isEmpty()) {
+            return this.rootExtensions;
+        }
+
+        Set<DefaultInstalledExtension> result =
+            new HashSet<DefaultInstalledExtension>(this.rootExtensions.size() + namespaceExtensions.size());
+        result.addAll(this.rootExtensions);
+        result.addAll(namespaceExtensions);
+
+        return result;
+    }
+
     /**
      * Register a newly installed extension in backward dependencies map.
      * 
@@ -444,6 +848,8 @@ private void addInstalledExtension(DefaultInstalledExtension installedExtension,
     {
         addCachedExtension(installedExtension);
 
+        updateNamespaceCache(installedExtension);
+
         // Register the extension in the installed extensions for the provided namespace
         addInstalledFeatureToCache(installedExtension.getId().getId(), namespace, installedExtension);
 
@@ -464,10 +870,12 @@ private void addInstalledExtension(DefaultInstalledExtension installedExtension,
                     InstalledFeature dependencyInstalledExtension =
                         addInstalledFeatureToCache(dependency.getId(), namespace, dependencyLocalExtension);
 
-                    dependencyInstalledExtension.backwardDependencies.add(installedExtension);
+                    addBackwardDependency(dependencyInstalledExtension, installedExtension);
                 }
             }
         }
+
+        invalidateBackwardDependenciesClosures(installedExtension);
     }
 
     /**
@@ -540,14 +948,7 @@ public int countExtensions()
     @Override
     public Collection<InstalledExtension> getInstalledExtensions(String namespace)
     {
-        List<InstalledExtension> result = new ArrayList<InstalledExtension>(this.extensions.size());
-        for (InstalledExtension installedExtension : this.extensions.values()) {
-            if (installedExtension.isInstalled(namespace)) {
-                result.add(installedExtension);
-            }
-        }
-
-        return result;
+        return new ArrayList<InstalledExtension>(getNamespaceExtensions(namespace));
     }
 
     @Override
@@ -654,17 +1055,15 @@ public Collection<InstalledExtension> getBackwardDependencies(String feature, St
                 namespace));
         }
 
-        Map<String, InstalledFeature> installedExtensionsByFeature = this.extensionNamespaceByFeature.get(feature);
-        if (installedExtensionsByFeature != null) {
-            InstalledFeature installedExtension = installedExtensionsByFeature.get(namespace);
-
-            if (installedExtension != null) {
-                Set<DefaultInstalledExtension> backwardDependencies = installedExtension.backwardDependencies;
+        Map<String, Set<DefaultInstalledExtension>> namespaceBackwardDependencies =
+            this.backwardDependenciesByFeature.get(feature);
+        if (namespaceBackwardDependencies != null) {
+            Set<DefaultInstalledExtension> backwardDependencies = namespaceBackwardDependencies.get(namespace);
 
+            if (backwardDependencies != null) {
                 // copy the list to allow use cases like uninstalling all backward dependencies without getting a
                 // concurrent issue on the list
-                return backwardDependencies != null ? new ArrayList<InstalledExtension>(backwardDependencies)
-                    : Collections.<InstalledExtension> emptyList();
+                return new ArrayList<InstalledExtension>(backwardDependencies);
             }
         }
 
@@ -681,18 +1080,28 @@ public Map<String, Collection<InstalledExtension>> getBackwardDependencies(Exten
 
         Collection<String> namespaces = installedExtension.getNamespaces();
 
-        Map<String, InstalledFeature> featureExtensions =
-            this.extensionNamespaceByFeature.get(installedExtension.getId().getId());
+        Map<String, Set<DefaultInstalledExtension>> namespaceBackwardDependencies =
+            this.backwardDependenciesByFeature.get(installedExtension.getId().getId());
 
-        if (featureExtensions != null) {
+        if (namespaceBackwardDependencies != null) {
             result = new HashMap<String, Collection<InstalledExtension>>();
-            for (InstalledFeature festureExtension : featureExtensions.values()) {
-                if ((namespaces == null || namespaces.contains(festureExtension.namespace))
-                    && !festureExtension.backwardDependencies.isEmpty()) {
-                    // copy the list to allow use cases like uninstalling all backward dependencies without getting a
-                    // concurrent issue on the list
-                    result.put(festureExtension.namespace, new ArrayList<InstalledExtension>(
-                        festureExtension.backwardDependencies));
+            if (namespaces == null || namespaces.size() > namespaceBackwardDependencies.size()) {
+                for (Map.Entry<String, Set<DefaultInstalledExtension>> entry : namespaceBackwardDependencies
+                    .entrySet()) {
+                    if (namespaces == null || namespaces.contains(entry.getKey())) {
+                        // copy the list to allow use cases like uninstalling all backward dependencies without
+                        // getting a concurrent issue on the list
+                        result.put(entry.getKey(), new ArrayList<InstalledExtension>(entry.getValue()));
+                    }
+                }
+            } else {
+                for (String namespace : namespaces) {
+                    Set<DefaultInstalledExtension> backwardDependencies = namespaceBackwardDependencies.get(namespace);
+                    if (backwardDependencies != null) {
+                        // copy the list to allow use cases like uninstalling all backward dependencies without
+                        // getting a concurrent issue on the list
+                        result.put(namespace, new ArrayList<InstalledExtension>(backwardDependencies));
+                    }
                 }
             }
         } else {
@@ -702,29 +1111,52 @@ public Map<String, Collection<InstalledExtension>> getBackwardDependencies(Exten
         return result;
     }
 
-    // Search
-
     @Override
-    public IterableResult<Extension> searchInstalledExtensions(String pattern, String namespace, int offset, int nb)
-        throws SearchException
+    public Map<String, List<InstalledExtension>> getBackwardDependenciesClosure(ExtensionId extensionId,
+        String namespace) throws ResolveException
     {
-        Pattern patternMatcher =
-            StringUtils.isEmpty(pattern) ? null : Pattern.compile(RepositoryUtils.SEARCH_PATTERN_SUFFIXNPREFIX
-                + Pattern.quote(pattern.toLowerCase()) + RepositoryUtils.SEARCH_PATTERN_SUFFIXNPREFIX);
+        Map.Entry<ExtensionId, String> key =
+            new AbstractMap.SimpleImmutableEntry<ExtensionId, String>(extensionId, namespace);
+
+        BackwardDependenciesClosure closure = this.backwardDependenciesClosures.get(key);
 
-        Set<Extension> set = new HashSet<Extension>();
-        List<Extension> result = new ArrayList<Extension>(this.extensionsVersions.size());
+        if (closure == null) {
+            long version = this.backwardDependenciesVersion.get();
 
-        for (InstalledExtension installedExtension : this.extensions.values()) {
-            if (installedExtension.isInstalled(namespace)) {
-                if ((patternMatcher == null || RepositoryUtils.matches(patternMatcher, installedExtension))
-                    && !set.contains(installedExtension)) {
-                    result.add(installedExtension);
-                    set.add(installedExtension);
+            BackwardDependenciesClosure newClosure = new BackwardDependenciesClosure();
+            newClosure.visited.add(key);
+            addBackwardDependencies(resolve(extensionId), namespace, newClosure);
+
+            // Any namespace can depend on root namespace so it always comes last
+            Map<String, List<InstalledExtension>> extensionsByNamespace =
+                new LinkedHashMap<String, List<InstalledExtension>>(newClosure.extensionsByNamespace.size());
+            for (Map.Entry<String, List<InstalledExtension>> entry : newClosure.extensionsByNamespace.entrySet()) {
+                if (entry.getKey() != null) {
+                    extensionsByNamespace.put(entry.getKey(), Collections.unmodifiableList(entry.getValue()));
                 }
             }
+            if (newClosure.extensionsByNamespace.containsKey(null)) {
+                extensionsByNamespace.put(null,
+                    Collections.unmodifiableList(newClosure.extensionsByNamespace.get(null)));
+            }
+
+            newClosure.extensionsByNamespace = Collections.unmodifiableMap(extensionsByNamespace);
+            newClosure.visited = null;
+
+            cacheBackwardDependenciesClosure(key, newClosure, version);
+
+            closure = newClosure;
         }
 
-        return RepositoryUtils.getIterableResult(offset, nb, result);
+        return closure.extensionsByNamespace;
+    }
+
+    // Search
+
+    @Override
+    public IterableResult<Extension> searchInstalledExtensions(String pattern, String namespace, int offset, int nb)
+        throws SearchException
+    {
+        return this.searchIndex.search(pattern, getNamespaceExtensions(namespace), offset, nb);
     }
 }
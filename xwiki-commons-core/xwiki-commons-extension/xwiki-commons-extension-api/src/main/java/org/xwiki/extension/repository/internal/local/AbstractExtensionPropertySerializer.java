@@ -19,6 +19,9 @@
  */
 package org.xwiki.extension.repository.internal.local;
 
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
@@ -30,6 +33,13 @@
  */
 public abstract class AbstractExtensionPropertySerializer<T> implements ExtensionPropertySerializer<T>
 {
+    /**
+     * The attribute containing the type identifier of the property.
+     * 
+     * @since 6.0M1
+     */
+    protected static final String ATTRIBUTE_TYPE = "type";
+
     /**
      * The simple type identifier. Used to recognize the type when unserializing.
      */
@@ -61,7 +71,7 @@ protected Element createRootElement(Document document, String elementName)
         Element element = document.createElement(elementName);
 
         if (getType() != null) {
-            element.setAttribute("type", getType());
+            element.setAttribute(ATTRIBUTE_TYPE, getType());
         }
 
         return element;
@@ -76,4 +86,29 @@ public Element toElement(Document document, String elementName, T elementValue)
 
         return element;
     }
+
+    /**
+     * @param writer the XML stream where to write the element
+     * @param elementName the name of the element to start
+     * @throws XMLStreamException when failing to write the element
+     * @since 6.0M1
+     */
+    protected void writeStartElement(XMLStreamWriter writer, String elementName) throws XMLStreamException
+    {
+        writer.writeStartElement(elementName);
+
+        if (getType() != null) {
+            writer.writeAttribute(ATTRIBUTE_TYPE, getType());
+        }
+    }
+
+    @Override
+    public void write(XMLStreamWriter writer, String elementName, T elementValue) throws XMLStreamException
+    {
+        writeStartElement(writer, elementName);
+
+        writer.writeCharacters(elementValue.toString());
+
+        writer.writeEndElement();
+    }
 }
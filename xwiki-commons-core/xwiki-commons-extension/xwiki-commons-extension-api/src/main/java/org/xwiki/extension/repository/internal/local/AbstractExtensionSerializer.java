@@ -0,0 +1,211 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.extension.repository.internal.local;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import javax.inject.Inject;
+
+import org.xwiki.extension.ExtensionLicenseManager;
+
+/**
+ * Base class for {@link ExtensionSerializer} implementations: the name of the elements of the descriptor and the
+ * property serializers.
+ * 
+ * @version $Id$
+ * @since 6.0M1
+ */
+public abstract class AbstractExtensionSerializer implements ExtensionSerializer
+{
+    /**
+     * The element containing the extension id.
+     */
+    protected static final String ELEMENT_ID = "id";
+
+    /**
+     * The element containing the extension version.
+     */
+    protected static final String ELEMENT_VERSION = "version";
+
+    /**
+     * The element containing the extension type.
+     */
+    protected static final String ELEMENT_TYPE = "type";
+
+    /**
+     * The element containing the extension name.
+     */
+    protected static final String ELEMENT_NAME = "name";
+
+    /**
+     * The element containing the extension licenses.
+     */
+    protected static final String ELEMENT_LICENSES = "licenses";
+
+    /**
+     * The element containing the license.
+     */
+    protected static final String ELEMENT_LLICENSE = "license";
+
+    /**
+     * The element containing the license name.
+     */
+    protected static final String ELEMENT_LLNAME = ELEMENT_NAME;
+
+    /**
+     * The element containing the license content.
+     */
+    protected static final String ELEMENT_LLCONTENT = "content";
+
+
+    /**
+     * The element containing the extension summary.
+     */
+    protected static final String ELEMENT_SUMMARY = "summary";
+
+    /**
+     * The element containing the extension description.
+     */
+    protected static final String ELEMENT_DESCRIPTION = "description";
+
+    /**
+     * The element containing the extension website.
+     */
+    protected static final String ELEMENT_WEBSITE = "website";
+
+    /**
+     * The element containing the extension authors.
+     */
+    protected static final String ELEMENT_AUTHORS = "authors";
+
+    /**
+     * The element containing the author.
+     */
+    protected static final String ELEMENT_AAUTHOR = "author";
+
+    /**
+     * The element containing the author name.
+     */
+    protected static final String ELEMENT_AANAME = ELEMENT_NAME;
+
+    /**
+     * The element containing the author URL.
+     */
+    protected static final String ELEMENT_AAURL = "url";
+
+    /**
+     * The element containing the extension dependencies.
+     */
+    protected static final String ELEMENT_DEPENDENCIES = "dependencies";
+
+    /**
+     * The element containing the dependency.
+     */
+    protected static final String ELEMENT_DDEPENDENCY = "dependency";
+
+    /**
+     * The element containing the extension features.
+     */
+    protected static final String ELEMENT_FEATURES = "features";
+
+    /**
+     * The element containing the feature.
+     */
+    protected static final String ELEMENT_FFEATURE = "feature";
+
+    /**
+     * The element containing the custom properties.
+     */
+    protected static final String ELEMENT_PROPERTIES = "properties";
+
+    /**
+     * The element containing the installed flag.
+     * 
+     * @deprecated the install informations are now stored in the properties
+     */
+    @Deprecated
+    protected static final String ELEMENT_INSTALLED = "installed";
+
+    /**
+     * The element containing the namespaces where the extension is installed.
+     * 
+     * @deprecated the install informations are now stored in the properties
+     */
+    @Deprecated
+    protected static final String ELEMENT_NAMESPACES = "namespaces";
+
+    /**
+     * The element containing the namespace.
+     * 
+     * @deprecated the install informations are now stored in the properties
+     */
+    @Deprecated
+    protected static final String ELEMENT_NNAMESPACE = "namespace";
+
+    /**
+     * Used to get well known licenses.
+     */
+    @Inject
+    protected ExtensionLicenseManager licenseManager;
+
+    /**
+     * The property serializers by type id.
+     */
+    protected Map<String, ExtensionPropertySerializer> serializerById;
+
+    /**
+     * The property serializers by class.
+     */
+    protected Map<Class< ? >, ExtensionPropertySerializer> serializerByClass;
+
+    {
+        this.serializerById = new HashMap<String, ExtensionPropertySerializer>();
+        this.serializerByClass = new LinkedHashMap<Class< ? >, ExtensionPropertySerializer>();
+
+        StringExtensionPropertySerializer stringSerializer = new StringExtensionPropertySerializer();
+        IntegerExtensionPropertySerializer integerSerializer = new IntegerExtensionPropertySerializer();
+        BooleanExtensionPropertySerializer booleanSerializer = new BooleanExtensionPropertySerializer();
+        CollectionExtensionPropertySerializer collectionSerializer =
+            new CollectionExtensionPropertySerializer(this.serializerById, this.serializerByClass);
+        SetExtensionPropertySerializer setSerializer =
+            new SetExtensionPropertySerializer(this.serializerById, this.serializerByClass);
+        StringKeyMapExtensionPropertySerializer mapSerializer =
+            new StringKeyMapExtensionPropertySerializer(this.serializerById, this.serializerByClass);
+
+        this.serializerById.put(null, stringSerializer);
+        this.serializerById.put("", stringSerializer);
+        this.serializerById.put(integerSerializer.getType(), integerSerializer);
+        this.serializerById.put(booleanSerializer.getType(), booleanSerializer);
+        this.serializerById.put(collectionSerializer.getType(), collectionSerializer);
+        this.serializerById.put(setSerializer.getType(), setSerializer);
+        this.serializerById.put(mapSerializer.getType(), mapSerializer);
+
+        this.serializerByClass.put(String.class, stringSerializer);
+        this.serializerByClass.put(Integer.class, integerSerializer);
+        this.serializerByClass.put(Boolean.class, booleanSerializer);
+        this.serializerByClass.put(Set.class, setSerializer);
+        this.serializerByClass.put(Collection.class, collectionSerializer);
+        this.serializerByClass.put(Map.class, mapSerializer);
+    }
+}
@@ -19,6 +19,9 @@
  */
 package org.xwiki.extension.repository.internal.local;
 
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
 import org.w3c.dom.Element;
 
 /**
@@ -41,4 +44,10 @@ public Boolean toValue(Element element)
     {
         return Boolean.valueOf(element.getTextContent());
     }
+
+    @Override
+    public Boolean toValue(XMLStreamReader reader) throws XMLStreamException
+    {
+        return Boolean.valueOf(XMLStreamUtils.readText(reader));
+    }
 }
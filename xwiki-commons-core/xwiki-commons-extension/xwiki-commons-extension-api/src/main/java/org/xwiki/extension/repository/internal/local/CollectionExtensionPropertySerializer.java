@@ -23,6 +23,10 @@
 import java.util.Collection;
 import java.util.Map;
 
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
@@ -88,7 +92,7 @@ protected C createCollection()
     public static <T> T toValue(Element element, Map<String, ExtensionPropertySerializer> serializerById)
     {
         if (element != null) {
-            String type = element.getAttribute("type");
+            String type = element.getAttribute(ATTRIBUTE_TYPE);
 
             ExtensionPropertySerializer< ? > serializer = serializerById.get(type);
 
@@ -100,6 +104,29 @@ public static <T> T toValue(Element element, Map<String, ExtensionPropertySerial
         return null;
     }
 
+    /**
+     * @param <T> the type of the expected value
+     * @param reader the XML stream, positioned on the start of the element to unserialize and left on its end
+     * @param serializerById the serializers by type id
+     * @return the unserialized property value
+     * @throws XMLStreamException when failing to read the XML
+     * @since 6.0M1
+     */
+    public static <T> T toValue(XMLStreamReader reader, Map<String, ExtensionPropertySerializer> serializerById)
+        throws XMLStreamException
+    {
+        ExtensionPropertySerializer< ? > serializer =
+            serializerById.get(reader.getAttributeValue(null, ATTRIBUTE_TYPE));
+
+        if (serializer != null) {
+            return (T) serializer.toValue(reader);
+        }
+
+        XMLStreamUtils.skipElement(reader);
+
+        return null;
+    }
+
     /**
      * @param valueClass the class of the value to serialize
      * @param serializerByClass the serializers by class
@@ -138,6 +165,90 @@ public static Element toElement(Object value, Document document, String elementN
         return null;
     }
 
+    /**
+     * Indicate if the passed value can be written, the streaming serializer can't go back on an element already
+     * written so everything (including sub values) need to be checked first.
+     * 
+     * @param value the value to serialize
+     * @param elementName the name of the element to create
+     * @param serializerByClass the serializers by class
+     * @return true if the value can be serialized
+     * @since 6.0M1
+     */
+    public static boolean isSerializable(Object value, String elementName,
+        Map<Class< ? >, ExtensionPropertySerializer> serializerByClass)
+    {
+        if (value == null || !XMLStreamUtils.isValidElementName(elementName)
+            || getSerializerByClass(value.getClass(), serializerByClass) == null) {
+            return false;
+        }
+
+        return isContentSerializable(value, elementName, serializerByClass);
+    }
+
+    /**
+     * @param value the value to serialize
+     * @param elementName the name of the element to create
+     * @param serializerByClass the serializers by class
+     * @return true if all the sub values of the passed value can be serialized
+     */
+    private static boolean isContentSerializable(Object value, String elementName,
+        Map<Class< ? >, ExtensionPropertySerializer> serializerByClass)
+    {
+        if (value instanceof Collection) {
+            for (Object subValue : (Collection) value) {
+                if (!isSerializable(subValue, elementName, serializerByClass)) {
+                    return false;
+                }
+            }
+        } else if (value instanceof Map) {
+            for (Map.Entry entry : ((Map< ? , ? >) value).entrySet()) {
+                if (entry.getKey() != null
+                    && !isSerializable(entry.getValue(), entry.getKey().toString(), serializerByClass)) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @param value the value to serialize
+     * @param writer the XML stream where to write the property
+     * @param elementName the name of the element to create
+     * @param serializerByClass the serializers by class
+     * @return true if the value has been written, false if it's not serializable
+     * @throws XMLStreamException when failing to write the XML
+     * @since 6.0M1
+     */
+    public static boolean write(Object value, XMLStreamWriter writer, String elementName,
+        Map<Class< ? >, ExtensionPropertySerializer> serializerByClass) throws XMLStreamException
+    {
+        if (isSerializable(value, elementName, serializerByClass)) {
+            writeSerializable(value, writer, elementName, serializerByClass);
+
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * @param value the value to serialize, already validated with
+     *            {@link #isSerializable(Object, String, Map)}
+     * @param writer the XML stream where to write the property
+     * @param elementName the name of the element to create
+     * @param serializerByClass the serializers by class
+     * @throws XMLStreamException when failing to write the XML
+     * @since 6.0M1
+     */
+    static void writeSerializable(Object value, XMLStreamWriter writer, String elementName,
+        Map<Class< ? >, ExtensionPropertySerializer> serializerByClass) throws XMLStreamException
+    {
+        getSerializerByClass(value.getClass(), serializerByClass).write(writer, elementName, value);
+    }
+
     @Override
     public C toValue(Element element)
     {
@@ -179,4 +290,35 @@ public Element toElement(Document document, String elementName, C elementValue)
 
         return element;
     }
+
+    @Override
+    public C toValue(XMLStreamReader reader) throws XMLStreamException
+    {
+        C collection = createCollection();
+
+        while (XMLStreamUtils.nextElement(reader)) {
+            Object value = toValue(reader, this.serializerById);
+
+            if (value == null) {
+                // Consume the remaining elements to leave the stream at the end of the collection
+                collection = null;
+            } else if (collection != null) {
+                collection.add(value);
+            }
+        }
+
+        return collection;
+    }
+
+    @Override
+    public void write(XMLStreamWriter writer, String elementName, C elementValue) throws XMLStreamException
+    {
+        writeStartElement(writer, elementName);
+
+        for (Object subValue : elementValue) {
+            writeSerializable(subValue, writer, elementName, this.serializerByClass);
+        }
+
+        writer.writeEndElement();
+    }
 }
@@ -26,32 +26,23 @@
 import java.io.StringWriter;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
-import javax.inject.Inject;
 import javax.inject.Singleton;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Result;
-import javax.xml.transform.Transformer;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
 import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
 
 import org.apache.commons.io.IOUtils;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 import org.xwiki.component.annotation.Component;
 import org.xwiki.extension.DefaultExtensionAuthor;
 import org.xwiki.extension.DefaultExtensionDependency;
@@ -60,7 +51,6 @@
 import org.xwiki.extension.ExtensionDependency;
 import org.xwiki.extension.ExtensionId;
 import org.xwiki.extension.ExtensionLicense;
-import org.xwiki.extension.ExtensionLicenseManager;
 import org.xwiki.extension.InvalidExtensionException;
 import org.xwiki.extension.LocalExtension;
 import org.xwiki.extension.repository.internal.installed.DefaultInstalledExtension;
@@ -68,104 +58,111 @@
 
 /**
  * Local repository storage serialization tool.
+ * <p>
+ * Stream the descriptor with StAX instead of building a DOM tree: the format is exactly the same as the one produced
+ * and understood by the previous DOM based implementation but a lot less memory is allocated, which matters when
+ * loading a local repository containing hundreds of extensions.
  * 
  * @version $Id$
  * @since 4.0M1
  */
 @Component
 @Singleton
-public class DefaultExtensionSerializer implements ExtensionSerializer
+public class DefaultExtensionSerializer extends AbstractExtensionSerializer
 {
-    private static final String ELEMENT_ID = "id";
-
-    private static final String ELEMENT_VERSION = "version";
-
-    private static final String ELEMENT_TYPE = "type";
-
-    private static final String ELEMENT_LICENSES = "licenses";
-
-    private static final String ELEMENT_LLICENSE = "license";
-
-    private static final String ELEMENT_LLNAME = "name";
+    /**
+     * The root element of the descriptor.
+     */
+    private static final String ELEMENT_EXTENSION = "extension";
 
-    private static final String ELEMENT_LLCONTENT = "content";
+    /**
+     * The encoding of the saved descriptors.
+     */
+    private static final String ENCODING = "UTF-8";
 
-    private static final String ELEMENT_NAME = "name";
+    /**
+     * The string used to indent elements.
+     */
+    private static final String INDENT = "  ";
 
-    private static final String ELEMENT_SUMMARY = "summary";
+    /**
+     * Used to parse XML descriptor file.
+     */
+    private XMLInputFactory inputFactory;
 
-    private static final String ELEMENT_DESCRIPTION = "description";
+    /**
+     * Used to write XML descriptor file.
+     */
+    private XMLOutputFactory outputFactory = XMLOutputFactory.newInstance();
 
-    private static final String ELEMENT_WEBSITE = "website";
+    /**
+     * The content of a descriptor gathered while reading it, the mandatory fields are not necessarily the first ones.
+     * 
+     * @version $Id$
+     */
+    private static class Descriptor
+    {
+        private String id;
 
-    private static final String ELEMENT_AUTHORS = "authors";
+        private String version;
 
-    private static final String ELEMENT_AAUTHOR = "author";
+        private String type;
 
-    private static final String ELEMENT_AANAME = "name";
+        private String name;
 
-    private static final String ELEMENT_AAURL = "url";
+        private String summary;
 
-    private static final String ELEMENT_DEPENDENCIES = "dependencies";
+        private String description;
 
-    private static final String ELEMENT_DDEPENDENCY = "dependency";
+        private String website;
 
-    private static final String ELEMENT_FEATURES = "features";
+        private List<ExtensionLicense> licenses;
 
-    private static final String ELEMENT_FFEATURE = "feature";
+        private List<ExtensionAuthor> authors;
 
-    private static final String ELEMENT_PROPERTIES = "properties";
+        private List<String> features;
 
-    @Deprecated
-    private static final String ELEMENT_INSTALLED = "installed";
+        private List<ExtensionDependency> dependencies;
 
-    @Deprecated
-    private static final String ELEMENT_NAMESPACES = "namespaces";
+        private Map<String, Object> properties;
 
-    @Deprecated
-    private static final String ELEMENT_NNAMESPACE = "namespace";
+        private String installed;
 
-    @Inject
-    private ExtensionLicenseManager licenseManager;
+        private List<String> namespaces;
+    }
 
     /**
-     * Used to parse XML descriptor file.
+     * Default constructor.
      */
-    private DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
-
-    protected Map<String, ExtensionPropertySerializer> serializerById;
+    public DefaultExtensionSerializer()
+    {
+        this.inputFactory = XMLInputFactory.newInstance();
+        this.inputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+        this.inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
 
-    protected Map<Class< ? >, ExtensionPropertySerializer> serializerByClass;
+    /**
+     * @param descriptor the descriptor content
+     * @return a new {@link XMLStreamReader}
+     * @throws XMLStreamException when failing to create the {@link XMLStreamReader}
+     */
+    private XMLStreamReader createXMLStreamReader(InputStream descriptor) throws XMLStreamException
+    {
+        // The factory configuration is not guaranteed to be thread safe and descriptors are loaded in parallel
+        synchronized (this.inputFactory) {
+            return this.inputFactory.createXMLStreamReader(descriptor);
+        }
+    }
 
+    /**
+     * @param os the stream where to write the descriptor
+     * @return a new {@link XMLStreamWriter}
+     * @throws XMLStreamException when failing to create the {@link XMLStreamWriter}
+     */
+    private XMLStreamWriter createXMLStreamWriter(OutputStream os) throws XMLStreamException
     {
-        {
-            this.serializerById = new HashMap<String, ExtensionPropertySerializer>();
-            this.serializerByClass = new LinkedHashMap<Class< ? >, ExtensionPropertySerializer>();
-
-            StringExtensionPropertySerializer stringSerializer = new StringExtensionPropertySerializer();
-            IntegerExtensionPropertySerializer integerSerializer = new IntegerExtensionPropertySerializer();
-            BooleanExtensionPropertySerializer booleanSerializer = new BooleanExtensionPropertySerializer();
-            CollectionExtensionPropertySerializer collectionSerializer =
-                new CollectionExtensionPropertySerializer(this.serializerById, this.serializerByClass);
-            SetExtensionPropertySerializer setSerializer =
-                new SetExtensionPropertySerializer(this.serializerById, this.serializerByClass);
-            StringKeyMapExtensionPropertySerializer mapSerializer =
-                new StringKeyMapExtensionPropertySerializer(this.serializerById, this.serializerByClass);
-
-            this.serializerById.put(null, stringSerializer);
-            this.serializerById.put("", stringSerializer);
-            this.serializerById.put(integerSerializer.getType(), integerSerializer);
-            this.serializerById.put(booleanSerializer.getType(), booleanSerializer);
-            this.serializerById.put(collectionSerializer.getType(), collectionSerializer);
-            this.serializerById.put(setSerializer.getType(), setSerializer);
-            this.serializerById.put(mapSerializer.getType(), mapSerializer);
-
-            this.serializerByClass.put(String.class, stringSerializer);
-            this.serializerByClass.put(Integer.class, integerSerializer);
-            this.serializerByClass.put(Boolean.class, booleanSerializer);
-            this.serializerByClass.put(Set.class, setSerializer);
-            this.serializerByClass.put(Collection.class, collectionSerializer);
-            this.serializerByClass.put(Map.class, mapSerializer);
+        synchronized (this.outputFactory) {
+            return this.outputFactory.createXMLStreamWriter(os, ENCODING);
         }
     }
 
@@ -173,264 +170,327 @@ public class DefaultExtensionSerializer implements ExtensionSerializer
     public DefaultLocalExtension loadDescriptor(DefaultLocalExtensionRepository repository, InputStream descriptor)
         throws InvalidExtensionException
     {
-        DocumentBuilder documentBuilder;
+        Descriptor content;
         try {
-            documentBuilder = this.documentBuilderFactory.newDocumentBuilder();
-        } catch (ParserConfigurationException e) {
-            throw new InvalidExtensionException("Failed to create new DocumentBuilder", e);
-        }
+            XMLStreamReader reader = createXMLStreamReader(descriptor);
 
-        Document document;
-        try {
-            document = documentBuilder.parse(descriptor);
-        } catch (Exception e) {
+            try {
+                content = parseDescriptor(reader);
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
             throw new InvalidExtensionException("Failed to parse descriptor", e);
         }
 
-        Element extensionElement = document.getDocumentElement();
-
         // Mandatory fields
 
-        Node idNode = extensionElement.getElementsByTagName(ELEMENT_ID).item(0);
-        Node versionNode = extensionElement.getElementsByTagName(ELEMENT_VERSION).item(0);
-        Node typeNode = extensionElement.getElementsByTagName(ELEMENT_TYPE).item(0);
+        if (content.id == null || content.version == null || content.type == null) {
+            throw new InvalidExtensionException("The descriptor does not contain an extension id, version and type");
+        }
 
         DefaultLocalExtension localExtension =
-            new DefaultLocalExtension(repository,
-                new ExtensionId(idNode.getTextContent(), versionNode.getTextContent()), typeNode.getTextContent());
+            new DefaultLocalExtension(repository, new ExtensionId(content.id, content.version), content.type);
 
         // Optional fields
 
-        Node nameNode = getNode(extensionElement, ELEMENT_NAME);
-        if (nameNode != null) {
-            localExtension.setName(nameNode.getTextContent());
+        if (content.name != null) {
+            localExtension.setName(content.name);
+        }
+        if (content.summary != null) {
+            localExtension.setSummary(content.summary);
+        }
+        if (content.description != null) {
+            localExtension.setDescription(content.description);
         }
-        Node summaryNode = getNode(extensionElement, ELEMENT_SUMMARY);
-        if (summaryNode != null) {
-            localExtension.setSummary(summaryNode.getTextContent());
+        if (content.website != null) {
+            localExtension.setWebsite(content.website);
         }
-        Node descriptionNode = getNode(extensionElement, ELEMENT_DESCRIPTION);
-        if (descriptionNode != null) {
-            localExtension.setDescription(descriptionNode.getTextContent());
+        if (content.licenses != null) {
+            localExtension.setLicenses(content.licenses);
         }
-        Node websiteNode = getNode(extensionElement, ELEMENT_WEBSITE);
-        if (websiteNode != null) {
-            localExtension.setWebsite(websiteNode.getTextContent());
+        if (content.authors != null) {
+            localExtension.setAuthors(content.authors);
+        }
+        if (content.features != null) {
+            localExtension.setFeatures(content.features);
+        }
+        if (content.dependencies != null) {
+            localExtension.setDependencies(content.dependencies);
+        }
+        if (content.properties != null) {
+            localExtension.setProperties(content.properties);
         }
 
-        // Licenses
-        Node licensesNode = getNode(extensionElement, ELEMENT_LICENSES);
-        if (licensesNode != null) {
-            NodeList licenseNodeList = licensesNode.getChildNodes();
-            for (int i = 0; i < licenseNodeList.getLength(); ++i) {
-                Node licenseNode = licenseNodeList.item(i);
-
-                if (licenseNode.getNodeName().equals(ELEMENT_LLICENSE)) {
-                    Node licenseNameNode = getNode(licenseNode, ELEMENT_LLNAME);
-                    Node licenceContentNode = getNode(licenseNode, ELEMENT_LLCONTENT);
-
-                    String licenseName = licenseNameNode.getTextContent();
-                    ExtensionLicense license = this.licenseManager.getLicense(licenseName);
-                    if (license == null) {
-                        try {
-                            license =
-                                new ExtensionLicense(licenseName, licenceContentNode != null
-                                    ? IOUtils.readLines(new StringReader(licenceContentNode.getTextContent())) : null);
-                        } catch (IOException e) {
-                            // That should never happen
-                            throw new InvalidExtensionException("Failed to write license content", e);
-                        }
-                    }
+        // Deprecated Install fields
 
-                    localExtension.addLicense(license);
-                }
-            }
+        if (content.installed != null) {
+            localExtension.putProperty(DefaultInstalledExtension.PKEY_INSTALLED, Boolean.valueOf(content.installed));
         }
 
-        // Authors
-        Node authorsNode = getNode(extensionElement, ELEMENT_AUTHORS);
-        if (authorsNode != null) {
-            NodeList authors = authorsNode.getChildNodes();
-            for (int i = 0; i < authors.getLength(); ++i) {
-                Node authorNode = authors.item(i);
-
-                if (authorNode.getNodeName().equals(ELEMENT_AAUTHOR)) {
-                    Node authorNameNode = getNode(authorNode, ELEMENT_AANAME);
-                    Node authorURLNode = getNode(authorNode, ELEMENT_AAURL);
+        // Deprecated Namespaces
+        if (content.namespaces != null) {
+            localExtension.putProperty(DefaultInstalledExtension.PKEY_NAMESPACES, content.namespaces);
+        }
 
-                    String authorName = authorNameNode != null ? authorNameNode.getTextContent() : null;
-                    URL authorURL;
-                    try {
-                        authorURL = authorURLNode != null ? new URL(authorURLNode.getTextContent()) : null;
-                    } catch (MalformedURLException e) {
-                        // That should never happen
-                        throw new InvalidExtensionException("Malformed URL [" + authorURLNode.getTextContent() + "]", e);
-                    }
+        return localExtension;
+    }
 
-                    localExtension.addAuthor(new DefaultExtensionAuthor(authorName, authorURL));
-                }
+    private Descriptor parseDescriptor(XMLStreamReader reader) throws XMLStreamException, InvalidExtensionException
+    {
+        Descriptor content = new Descriptor();
+
+        // Move to the root element
+        reader.nextTag();
+
+        // Only the first element of each kind is taken into account
+        while (XMLStreamUtils.nextElement(reader)) {
+            String elementName = reader.getLocalName();
+
+            if (elementName.equals(ELEMENT_ID)) {
+                content.id = readFirstText(reader, content.id);
+            } else if (elementName.equals(ELEMENT_VERSION)) {
+                content.version = readFirstText(reader, content.version);
+            } else if (elementName.equals(ELEMENT_TYPE)) {
+                content.type = readFirstText(reader, content.type);
+            } else if (elementName.equals(ELEMENT_NAME)) {
+                content.name = readFirstText(reader, content.name);
+            } else if (elementName.equals(ELEMENT_SUMMARY)) {
+                content.summary = readFirstText(reader, content.summary);
+            } else if (elementName.equals(ELEMENT_DESCRIPTION)) {
+                content.description = readFirstText(reader, content.description);
+            } else if (elementName.equals(ELEMENT_WEBSITE)) {
+                content.website = readFirstText(reader, content.website);
+            } else if (elementName.equals(ELEMENT_INSTALLED)) {
+                content.installed = readFirstText(reader, content.installed);
+            } else {
+                parseListElement(reader, elementName, content);
             }
         }
 
-        // Features
-        List<String> features = parseList(extensionElement, ELEMENT_FEATURES, ELEMENT_FFEATURE);
-        if (features != null) {
-            localExtension.setFeatures(features);
-        }
+        return content;
+    }
 
-        // Dependencies
-        Node dependenciesNode = getNode(extensionElement, ELEMENT_DEPENDENCIES);
-        if (dependenciesNode != null) {
-            NodeList dependenciesNodeList = dependenciesNode.getChildNodes();
-            for (int i = 0; i < dependenciesNodeList.getLength(); ++i) {
-                Node dependency = dependenciesNodeList.item(i);
+    private void parseListElement(XMLStreamReader reader, String elementName, Descriptor content)
+        throws XMLStreamException, InvalidExtensionException
+    {
+        if (elementName.equals(ELEMENT_LICENSES) && content.licenses == null) {
+            content.licenses = parseLicenses(reader);
+        } else if (elementName.equals(ELEMENT_AUTHORS) && content.authors == null) {
+            content.authors = parseAuthors(reader);
+        } else if (elementName.equals(ELEMENT_FEATURES) && content.features == null) {
+            content.features = parseList(reader, ELEMENT_FFEATURE);
+        } else if (elementName.equals(ELEMENT_DEPENDENCIES) && content.dependencies == null) {
+            content.dependencies = parseDependencies(reader);
+        } else if (elementName.equals(ELEMENT_PROPERTIES) && content.properties == null) {
+            content.properties = parseProperties(reader);
+        } else if (elementName.equals(ELEMENT_NAMESPACES) && content.namespaces == null) {
+            content.namespaces = parseList(reader, ELEMENT_NNAMESPACE);
+        } else {
+            XMLStreamUtils.skipElement(reader);
+        }
+    }
 
-                if (dependency.getNodeName().equals(ELEMENT_DDEPENDENCY)) {
-                    Node dependencyIdNode = getNode(dependency, ELEMENT_ID);
-                    Node dependencyVersionNode = getNode(dependency, ELEMENT_VERSION);
+    private String readFirstText(XMLStreamReader reader, String currentValue) throws XMLStreamException
+    {
+        if (currentValue != null) {
+            XMLStreamUtils.skipElement(reader);
 
-                    localExtension.addDependency(new DefaultExtensionDependency(dependencyIdNode.getTextContent(),
-                        new DefaultVersionConstraint(dependencyVersionNode.getTextContent()),
-                        parseProperties((Element) dependency)));
-                }
-            }
+            return currentValue;
         }
 
-        // Properties
-        Map<String, Object> properties = parseProperties(extensionElement);
-        if (properties != null) {
-            localExtension.setProperties(properties);
-        }
+        return XMLStreamUtils.readText(reader);
+    }
 
-        // Deprecated Install fields
+    private List<ExtensionLicense> parseLicenses(XMLStreamReader reader) throws XMLStreamException,
+        InvalidExtensionException
+    {
+        List<ExtensionLicense> licenses = new ArrayList<ExtensionLicense>();
+
+        while (XMLStreamUtils.nextElement(reader)) {
+            if (reader.getLocalName().equals(ELEMENT_LLICENSE)) {
+                String licenseName = null;
+                String licenseContent = null;
+                while (XMLStreamUtils.nextElement(reader)) {
+                    String elementName = reader.getLocalName();
+                    if (elementName.equals(ELEMENT_LLNAME)) {
+                        licenseName = readFirstText(reader, licenseName);
+                    } else if (elementName.equals(ELEMENT_LLCONTENT)) {
+                        licenseContent = readFirstText(reader, licenseContent);
+                    } else {
+                        XMLStreamUtils.skipElement(reader);
+                    }
+                }
 
-        Node enabledNode = getNode(extensionElement, ELEMENT_INSTALLED);
-        if (enabledNode != null) {
-            localExtension.putProperty(DefaultInstalledExtension.PKEY_INSTALLED,
-                Boolean.valueOf(enabledNode.getTextContent()));
-        }
+                ExtensionLicense license = this.licenseManager.getLicense(licenseName);
+                if (license == null) {
+                    try {
+                        license =
+                            new ExtensionLicense(licenseName, licenseContent != null ? IOUtils.readLines(new StringReader(
+                                licenseContent)) : null);
+                    } catch (IOException e) {
+                        // That should never happen
+                        throw new InvalidExtensionException("Failed to write license content", e);
+                    }
+                }
 
-        // Deprecated Namespaces
-        List<String> namespaces = parseList(extensionElement, ELEMENT_NAMESPACES, ELEMENT_NNAMESPACE);
-        if (namespaces != null) {
-            localExtension.putProperty(DefaultInstalledExtension.PKEY_NAMESPACES, namespaces);
+                licenses.add(license);
+            } else {
+                XMLStreamUtils.skipElement(reader);
+            }
         }
 
-        return localExtension;
+        return licenses;
     }
 
-    private List<String> parseList(Element extensionElement, String rootElement, String childElement)
+    private List<ExtensionAuthor> parseAuthors(XMLStreamReader reader) throws XMLStreamException,
+        InvalidExtensionException
     {
-        List<String> list;
-
-        Node featuresNode = getNode(extensionElement, rootElement);
-        if (featuresNode != null) {
-            list = new LinkedList<String>();
-
-            NodeList features = featuresNode.getChildNodes();
-            for (int i = 0; i < features.getLength(); ++i) {
-                Node featureNode = features.item(i);
+        List<ExtensionAuthor> authors = new ArrayList<ExtensionAuthor>();
+
+        while (XMLStreamUtils.nextElement(reader)) {
+            if (reader.getLocalName().equals(ELEMENT_AAUTHOR)) {
+                String authorName = null;
+                String authorURL = null;
+                while (XMLStreamUtils.nextElement(reader)) {
+                    String elementName = reader.getLocalName();
+                    if (elementName.equals(ELEMENT_AANAME)) {
+                        authorName = readFirstText(reader, authorName);
+                    } else if (elementName.equals(ELEMENT_AAURL)) {
+                        authorURL = readFirstText(reader, authorURL);
+                    } else {
+                        XMLStreamUtils.skipElement(reader);
+                    }
+                }
 
-                if (featureNode.getNodeName() == childElement) {
-                    list.add(featureNode.getTextContent());
+                try {
+                    authors.add(new DefaultExtensionAuthor(authorName, authorURL != null ? new URL(authorURL) : null));
+                } catch (MalformedURLException e) {
+                    // That should never happen
+                    throw new InvalidExtensionException("Malformed URL [" + authorURL + "]", e);
                 }
+            } else {
+                XMLStreamUtils.skipElement(reader);
             }
-        } else {
-            list = null;
         }
 
-        return list;
+        return authors;
     }
 
-    private Map<String, Object> parseProperties(Element parentElement)
+    private List<ExtensionDependency> parseDependencies(XMLStreamReader reader) throws XMLStreamException
     {
-        Map<String, Object> properties = null;
+        List<ExtensionDependency> dependencies = new ArrayList<ExtensionDependency>();
+
+        while (XMLStreamUtils.nextElement(reader)) {
+            if (reader.getLocalName().equals(ELEMENT_DDEPENDENCY)) {
+                String dependencyId = null;
+                String dependencyVersion = null;
+                Map<String, Object> dependencyProperties = null;
+                while (XMLStreamUtils.nextElement(reader)) {
+                    String elementName = reader.getLocalName();
+                    if (elementName.equals(ELEMENT_ID)) {
+                        dependencyId = readFirstText(reader, dependencyId);
+                    } else if (elementName.equals(ELEMENT_VERSION)) {
+                        dependencyVersion = readFirstText(reader, dependencyVersion);
+                    } else if (elementName.equals(ELEMENT_PROPERTIES) && dependencyProperties == null) {
+                        dependencyProperties = parseProperties(reader);
+                    } else {
+                        XMLStreamUtils.skipElement(reader);
+                    }
+                }
 
-        Node propertiesNode = getNode(parentElement, ELEMENT_PROPERTIES);
-        if (propertiesNode != null) {
-            properties = new HashMap<String, Object>();
-            NodeList propertyNodeList = propertiesNode.getChildNodes();
-            for (int i = 0; i < propertyNodeList.getLength(); ++i) {
-                Node propertyNode = propertyNodeList.item(i);
+                dependencies.add(new DefaultExtensionDependency(dependencyId, new DefaultVersionConstraint(
+                    dependencyVersion), dependencyProperties));
+            } else {
+                XMLStreamUtils.skipElement(reader);
+            }
+        }
 
-                if (propertyNode.getNodeType() == Node.ELEMENT_NODE) {
-                    Object value =
-                        CollectionExtensionPropertySerializer.toValue((Element) propertyNode, serializerById);
+        return dependencies;
+    }
 
-                    if (value != null) {
-                        properties.put(propertyNode.getNodeName(), value);
-                    }
-                }
+    private List<String> parseList(XMLStreamReader reader, String childElement) throws XMLStreamException
+    {
+        List<String> list = new LinkedList<String>();
+
+        while (XMLStreamUtils.nextElement(reader)) {
+            if (reader.getLocalName().equals(childElement)) {
+                list.add(XMLStreamUtils.readText(reader));
+            } else {
+                XMLStreamUtils.skipElement(reader);
             }
         }
 
-        return properties;
+        return list;
     }
 
-    private Node getNode(Node parentNode, String elementName)
+    private Map<String, Object> parseProperties(XMLStreamReader reader) throws XMLStreamException
     {
-        NodeList children = parentNode.getChildNodes();
-        for (int i = 0; i < children.getLength(); ++i) {
-            Node node = children.item(i);
+        Map<String, Object> properties = new HashMap<String, Object>();
+
+        while (XMLStreamUtils.nextElement(reader)) {
+            String propertyName = reader.getLocalName();
+            Object value = CollectionExtensionPropertySerializer.toValue(reader, this.serializerById);
 
-            if (node.getNodeName().equals(elementName)) {
-                return node;
+            if (value != null) {
+                properties.put(propertyName, value);
             }
         }
 
-        return null;
+        return properties;
     }
 
     @Override
     public void saveDescriptor(LocalExtension extension, OutputStream fos) throws ParserConfigurationException,
         TransformerException
     {
-        DocumentBuilder documentBuilder = this.documentBuilderFactory.newDocumentBuilder();
-        Document document = documentBuilder.newDocument();
+        try {
+            XMLStreamWriter writer = createXMLStreamWriter(fos);
 
-        Element extensionElement = document.createElement("extension");
-        document.appendChild(extensionElement);
+            writer.writeStartDocument(ENCODING, "1.0");
+            writer.writeCharacters("\n");
 
-        addElement(document, extensionElement, ELEMENT_ID, extension.getId().getId());
-        addElement(document, extensionElement, ELEMENT_VERSION, extension.getId().getVersion().getValue());
-        addElement(document, extensionElement, ELEMENT_TYPE, extension.getType());
-        addElement(document, extensionElement, ELEMENT_NAME, extension.getName());
-        addElement(document, extensionElement, ELEMENT_SUMMARY, extension.getSummary());
-        addElement(document, extensionElement, ELEMENT_DESCRIPTION, extension.getDescription());
-        addElement(document, extensionElement, ELEMENT_WEBSITE, extension.getWebSite());
+            writer.writeStartElement(ELEMENT_EXTENSION);
 
-        addFeatures(document, extensionElement, extension);
+            addElement(writer, 1, ELEMENT_ID, extension.getId().getId());
+            addElement(writer, 1, ELEMENT_VERSION, extension.getId().getVersion().getValue());
+            addElement(writer, 1, ELEMENT_TYPE, extension.getType());
+            addElement(writer, 1, ELEMENT_NAME, extension.getName());
+            addElement(writer, 1, ELEMENT_SUMMARY, extension.getSummary());
+            addElement(writer, 1, ELEMENT_DESCRIPTION, extension.getDescription());
+            addElement(writer, 1, ELEMENT_WEBSITE, extension.getWebSite());
 
-        addAuthors(document, extensionElement, extension);
+            addFeatures(writer, extension);
 
-        addLicenses(document, extensionElement, extension);
+            addAuthors(writer, extension);
 
-        addDependencies(document, extensionElement, extension);
+            addLicenses(writer, extension);
 
-        addProperties(document, extensionElement, extension.getProperties());
+            addDependencies(writer, extension);
 
-        // save
+            addProperties(writer, 1, extension.getProperties());
 
-        TransformerFactory transfac = TransformerFactory.newInstance();
-        Transformer trans = transfac.newTransformer();
-        trans.setOutputProperty(OutputKeys.INDENT, "yes");
+            writeEndElement(writer, 0);
 
-        DOMSource source = new DOMSource(document);
-        Result result = new StreamResult(fos);
-        trans.transform(source, result);
+            writer.writeEndDocument();
+            writer.writeCharacters("\n");
+
+            // Does not close the underlying stream
+            writer.close();
+        } catch (XMLStreamException e) {
+            throw new TransformerException("Failed to write descriptor for extension [" + extension.getId() + "]", e);
+        }
     }
 
-    private void addLicenses(Document document, Element parentElement, Extension extension)
+    private void addLicenses(XMLStreamWriter writer, Extension extension) throws XMLStreamException
     {
         if (extension.getLicenses() != null && !extension.getLicenses().isEmpty()) {
-            Element licensesElement = document.createElement(ELEMENT_LICENSES);
-            parentElement.appendChild(licensesElement);
+            writeStartElement(writer, 1, ELEMENT_LICENSES);
 
             for (ExtensionLicense license : extension.getLicenses()) {
-                Element licenseElement = document.createElement(ELEMENT_LLICENSE);
-                licensesElement.appendChild(licenseElement);
+                writeStartElement(writer, 2, ELEMENT_LLICENSE);
 
-                addElement(document, licenseElement, ELEMENT_LLNAME, license.getName());
+                addElement(writer, 3, ELEMENT_LLNAME, license.getName());
                 if (this.licenseManager.getLicense(license.getName()) == null && license.getContent() != null) {
                     // Only store content if it's a custom license (license content is pretty big generally)
                     StringWriter content = new StringWriter();
@@ -439,85 +499,116 @@ private void addLicenses(Document document, Element parentElement, Extension ext
                     } catch (IOException e) {
                         // That should never happen
                     }
-                    addElement(document, licenseElement, ELEMENT_LLCONTENT, content.toString());
+                    addElement(writer, 3, ELEMENT_LLCONTENT, content.toString());
                 }
+
+                writeEndElement(writer, 2);
             }
+
+            writeEndElement(writer, 1);
         }
     }
 
-    private void addFeatures(Document document, Element parentElement, Extension extension)
+    private void addFeatures(XMLStreamWriter writer, Extension extension) throws XMLStreamException
     {
         Collection<String> features = extension.getFeatures();
         if (!features.isEmpty()) {
-            Element featuresElement = document.createElement(ELEMENT_FEATURES);
-            parentElement.appendChild(featuresElement);
+            writeStartElement(writer, 1, ELEMENT_FEATURES);
 
             for (String feature : features) {
-                addElement(document, featuresElement, ELEMENT_FFEATURE, feature);
+                addElement(writer, 2, ELEMENT_FFEATURE, feature);
             }
+
+            writeEndElement(writer, 1);
         }
     }
 
-    private void addAuthors(Document document, Element parentElement, Extension extension)
+    private void addAuthors(XMLStreamWriter writer, Extension extension) throws XMLStreamException
     {
         Collection<ExtensionAuthor> authors = extension.getAuthors();
         if (!authors.isEmpty()) {
-            Element authorsElement = document.createElement(ELEMENT_AUTHORS);
-            parentElement.appendChild(authorsElement);
+            writeStartElement(writer, 1, ELEMENT_AUTHORS);
 
             for (ExtensionAuthor author : authors) {
-                Element authorElement = document.createElement(ELEMENT_AAUTHOR);
-                authorsElement.appendChild(authorElement);
+                writeStartElement(writer, 2, ELEMENT_AAUTHOR);
 
-                addElement(document, authorElement, ELEMENT_AANAME, author.getName());
+                addElement(writer, 3, ELEMENT_AANAME, author.getName());
 
                 URL authorURL = author.getURL();
                 if (authorURL != null) {
-                    addElement(document, authorElement, ELEMENT_AAURL, authorURL.toString());
+                    addElement(writer, 3, ELEMENT_AAURL, authorURL.toString());
                 }
+
+                writeEndElement(writer, 2);
             }
+
+            writeEndElement(writer, 1);
         }
     }
 
-    private void addDependencies(Document document, Element parentElement, Extension extension)
+    private void addDependencies(XMLStreamWriter writer, Extension extension) throws XMLStreamException
     {
         if (extension.getDependencies() != null && !extension.getDependencies().isEmpty()) {
-            Element dependenciesElement = document.createElement(ELEMENT_DEPENDENCIES);
-            parentElement.appendChild(dependenciesElement);
+            writeStartElement(writer, 1, ELEMENT_DEPENDENCIES);
 
             for (ExtensionDependency dependency : extension.getDependencies()) {
-                Element dependencyElement = document.createElement(ELEMENT_DDEPENDENCY);
-                dependenciesElement.appendChild(dependencyElement);
+                writeStartElement(writer, 2, ELEMENT_DDEPENDENCY);
 
-                addElement(document, dependencyElement, ELEMENT_ID, dependency.getId());
-                addElement(document, dependencyElement, ELEMENT_VERSION, dependency.getVersionConstraint().getValue());
-                addProperties(document, dependencyElement, dependency.getProperties());
+                addElement(writer, 3, ELEMENT_ID, dependency.getId());
+                addElement(writer, 3, ELEMENT_VERSION, dependency.getVersionConstraint().getValue());
+                addProperties(writer, 3, dependency.getProperties());
+
+                writeEndElement(writer, 2);
             }
+
+            writeEndElement(writer, 1);
         }
     }
 
-    private void addProperties(Document document, Element parentElement, Map<String, Object> properties)
+    private void addProperties(XMLStreamWriter writer, int depth, Map<String, Object> properties)
+        throws XMLStreamException
     {
         if (!properties.isEmpty()) {
-            Element propertiesElement = document.createElement(ELEMENT_PROPERTIES);
-            parentElement.appendChild(propertiesElement);
+            writeStartElement(writer, depth, ELEMENT_PROPERTIES);
 
             for (Map.Entry<String, Object> entry : properties.entrySet()) {
-                addElement(document, propertiesElement, entry.getKey(), entry.getValue());
+                addElement(writer, depth + 1, entry.getKey(), entry.getValue());
             }
+
+            writeEndElement(writer, depth);
         }
     }
 
     // Tools
 
-    private void addElement(Document document, Element parentElement, String elementName, Object elementValue)
+    private void addElement(XMLStreamWriter writer, int depth, String elementName, Object elementValue)
+        throws XMLStreamException
+    {
+        // Unsupported values are skipped, exactly like the DOM based implementation did
+        if (CollectionExtensionPropertySerializer.isSerializable(elementValue, elementName, this.serializerByClass)) {
+            writeIndent(writer, depth);
+            CollectionExtensionPropertySerializer.writeSerializable(elementValue, writer, elementName,
+                this.serializerByClass);
+        }
+    }
+
+    private void writeStartElement(XMLStreamWriter writer, int depth, String elementName) throws XMLStreamException
     {
-        Element element =
-            CollectionExtensionPropertySerializer
-                .toElement(elementValue, document, elementName, this.serializerByClass);
+        writeIndent(writer, depth);
+        writer.writeStartElement(elementName);
+    }
 
-        if (element != null) {
-            parentElement.appendChild(element);
+    private void writeEndElement(XMLStreamWriter writer, int depth) throws XMLStreamException
+    {
+        writeIndent(writer, depth);
+        writer.writeEndElement();
+    }
+
+    private void writeIndent(XMLStreamWriter writer, int depth) throws XMLStreamException
+    {
+        writer.writeCharacters("\n");
+        for (int i = 0; i < depth; ++i) {
+            writer.writeCharacters(INDENT);
         }
     }
 }
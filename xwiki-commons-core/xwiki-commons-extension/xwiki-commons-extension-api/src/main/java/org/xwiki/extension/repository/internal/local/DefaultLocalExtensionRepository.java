@@ -19,28 +19,33 @@
  */
 package org.xwiki.extension.repository.internal.local;
 
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Map;
 
 import javax.inject.Inject;
+import javax.inject.Provider;
 import javax.inject.Singleton;
 
-import org.apache.commons.io.FileUtils;
 import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.xwiki.component.annotation.Component;
 import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.component.manager.ComponentLifecycleException;
 import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.component.phase.Disposable;
 import org.xwiki.component.phase.Initializable;
 import org.xwiki.component.phase.InitializationException;
+import org.xwiki.configuration.ConfigurationSource;
 import org.xwiki.extension.Extension;
 import org.xwiki.extension.ExtensionId;
 import org.xwiki.extension.ExtensionManagerConfiguration;
 import org.xwiki.extension.LocalExtension;
 import org.xwiki.extension.ResolveException;
 import org.xwiki.extension.repository.DefaultExtensionRepositoryDescriptor;
+import org.xwiki.extension.repository.ExtensionRepositoryDescriptor;
 import org.xwiki.extension.repository.LocalExtensionRepository;
 import org.xwiki.extension.repository.LocalExtensionRepositoryException;
 import org.xwiki.extension.repository.internal.AbstractCachedExtensionRepository;
@@ -55,14 +60,28 @@
 @Singleton
 // TODO: make it threadsafe bulletproofs
 public class DefaultLocalExtensionRepository extends AbstractCachedExtensionRepository<DefaultLocalExtension> implements
-    LocalExtensionRepository, Initializable
+    LocalExtensionRepository, Initializable, Disposable
 {
+    /**
+     * The name of the extension property containing the hexadecimal SHA-256 checksum of the extension file. A
+     * repository providing it allows the local repository to skip the download of an already stored content.
+     * 
+     * @since 6.0M1
+     */
+    public static final String PKEY_FILE_SHA256 = "file.sha256";
+
     /**
      * Used to get repository path.
      */
     @Inject
     private transient ExtensionManagerConfiguration configuration;
 
+    /**
+     * Used to know if the extension files should be deduplicated.
+     */
+    @Inject
+    private transient Provider<ConfigurationSource> configurationSource;
+
     /**
      * The logger to log.
      */
@@ -80,6 +99,40 @@ public class DefaultLocalExtensionRepository extends AbstractCachedExtensionRepo
      */
     private transient ExtensionStorage storage;
 
+    /**
+     * Used to download the extension files.
+     */
+    private transient ExtensionFileStore files;
+
+    /**
+     * Default constructor, used by the component manager.
+     */
+    public DefaultLocalExtensionRepository()
+    {
+    }
+
+    /**
+     * Create a repository stored in the provided folder, independently from the component manager.
+     * 
+     * @param descriptor the repository descriptor
+     * @param rootFolder the repository folder
+     * @param componentManager used to lookup needed components
+     * @throws ComponentLookupException can't find the storage components
+     * @since 6.0M1
+     */
+    public DefaultLocalExtensionRepository(ExtensionRepositoryDescriptor descriptor, File rootFolder,
+        ComponentManager componentManager) throws ComponentLookupException
+    {
+        setDescriptor(descriptor);
+
+        this.componentManager = componentManager;
+        this.logger = LoggerFactory.getLogger(DefaultLocalExtensionRepository.class);
+
+        this.storage = new ExtensionStorage(this, rootFolder, componentManager);
+        this.files = new ExtensionFileStore(rootFolder, null, componentManager, this.logger);
+        this.storage.loadExtensions();
+    }
+
     @Override
     public void initialize() throws InitializationException
     {
@@ -91,7 +144,29 @@ public void initialize() throws InitializationException
 
         setDescriptor(new DefaultExtensionRepositoryDescriptor("local", "xwiki", this.storage.getRootFolder().toURI()));
 
+        this.files =
+            new ExtensionFileStore(this.storage.getRootFolder(), this.configurationSource, this.componentManager,
+                this.logger);
+
         this.storage.loadExtensions();
+
+        collectGarbage();
+    }
+
+    @Override
+    public void dispose() throws ComponentLifecycleException
+    {
+        this.storage.dispose();
+    }
+
+    /**
+     * Remove the stored contents which are not used by any extension anymore.
+     * 
+     * @return the number of removed contents
+     */
+    int collectGarbage()
+    {
+        return this.files.collectGarbage(this.extensions.values());
     }
 
     /**
@@ -154,33 +229,48 @@ public LocalExtension storeExtension(Extension extension) throws LocalExtensionR
         DefaultLocalExtension localExtension = this.extensions.get(extension.getId());
 
         if (localExtension == null) {
+            localExtension = createExtension(extension);
+
+            // Download the file outside of the lock so that several extensions can be stored at the same time
             try {
-                localExtension = createExtension(extension);
+                this.files.download(extension, localExtension);
+            } catch (IOException e) {
+                throw new LocalExtensionRepositoryException("Failed to download extension [" + extension + "] file",
+                    e);
+            }
+
+            synchronized (this) {
+                if (this.extensions.containsKey(extension.getId())) {
+                    throw createAlreadyExistsException(extension);
+                }
 
-                InputStream is = extension.getFile().openStream();
                 try {
-                    FileUtils.copyInputStreamToFile(is, localExtension.getFile().getFile());
-                } finally {
-                    is.close();
+                    this.storage.saveDescriptor(localExtension);
+                } catch (Exception e) {
+                    throw new LocalExtensionRepositoryException("Failed to save extensoin [" + extension
+                        + "] descriptor", e);
                 }
-                this.storage.saveDescriptor(localExtension);
 
                 // Cache extension
                 addLocalExtension(localExtension);
-            } catch (Exception e) {
-                // TODO: clean
-
-                throw new LocalExtensionRepositoryException("Failed to save extensoin [" + extension + "] descriptor",
-                    e);
             }
         } else {
-            throw new LocalExtensionRepositoryException("Extension [" + extension
-                + "] already exists in local repository");
+            throw createAlreadyExistsException(extension);
         }
 
         return localExtension;
     }
 
+    /**
+     * @param extension the extension which can't be stored
+     * @return the exception to throw when the extension is already stored in the local repository
+     */
+    private LocalExtensionRepositoryException createAlreadyExistsException(Extension extension)
+    {
+        return new LocalExtensionRepositoryException("Extension [" + extension
+            + "] already exists in local repository");
+    }
+
     @Override
     public void setProperties(LocalExtension localExtension, Map<String, Object> properties)
         throws LocalExtensionRepositoryException
@@ -213,5 +303,28 @@ public void removeExtension(LocalExtension extension) throws ResolveException
 
         // Remove the extension from the caches
         removeCachedExtension(localExtension);
+
+        // Remove the file content if no other extension use it (the descriptor might have been modified so the
+        // checksum is validated before being used as a path)
+        String checksum = this.files.getChecksum(localExtension);
+        if (checksum != null) {
+            removeBlob(checksum);
+        }
+    }
+
+    /**
+     * Remove a stored content if it's not used by any extension anymore.
+     * 
+     * @param checksum the checksum of the content
+     */
+    private synchronized void removeBlob(String checksum)
+    {
+        for (DefaultLocalExtension localExtension : this.extensions.values()) {
+            if (checksum.equals(localExtension.getProperty(PKEY_FILE_SHA256))) {
+                return;
+            }
+        }
+
+        this.files.remove(checksum);
     }
 }
@@ -0,0 +1,169 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.extension.repository.internal.local;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Store the content of the extension files only once, indexed by SHA-256 checksum.
+ * <p>
+ * The extension files are hard links to the stored content (or copies when the filesystem does not support hard
+ * links) so that they can still be manipulated as regular files. Since a hard link keeps the content alive, removing
+ * an unreferenced content is always safe.
+ * 
+ * @version $Id$
+ * @since 6.0M1
+ */
+class ExtensionBlobStore
+{
+    /**
+     * Logging tool.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(ExtensionBlobStore.class);
+
+    /**
+     * The folder containing the contents.
+     */
+    private final File rootFolder;
+
+    /**
+     * @param rootFolder the folder containing the contents
+     */
+    ExtensionBlobStore(File rootFolder)
+    {
+        this.rootFolder = rootFolder;
+    }
+
+    /**
+     * @param checksum the hexadecimal SHA-256 checksum of the content
+     * @return the file containing the content
+     */
+    File getBlob(String checksum)
+    {
+        return new File(new File(this.rootFolder, checksum.substring(0, 2)), checksum);
+    }
+
+    /**
+     * Make the passed file point to an already stored content.
+     * 
+     * @param checksum the hexadecimal SHA-256 checksum of the content
+     * @param file the extension file
+     * @return true if the content is known, false otherwise
+     * @throws IOException when failing to create the file
+     */
+    synchronized boolean link(String checksum, File file) throws IOException
+    {
+        File blob = getBlob(checksum);
+
+        if (!blob.exists()) {
+            return false;
+        }
+
+        file.getParentFile().mkdirs();
+        Files.deleteIfExists(file.toPath());
+
+        try {
+            Files.createLink(file.toPath(), blob.toPath());
+        } catch (UnsupportedOperationException e) {
+            Files.copy(blob.toPath(), file.toPath());
+        } catch (IOException e) {
+            // Hard links are not supported by all filesystems
+            LOGGER.debug("Failed to create hard link [{}], copying the file instead", file, e);
+
+            Files.copy(blob.toPath(), file.toPath());
+        }
+
+        return true;
+    }
+
+    /**
+     * Store a downloaded content and make the extension file point to it.
+     * 
+     * @param downloadedFile the downloaded content, moved or deleted by this method
+     * @param checksum the hexadecimal SHA-256 checksum of the content
+     * @param file the extension file
+     * @throws IOException when failing to store the content
+     */
+    synchronized void store(File downloadedFile, String checksum, File file) throws IOException
+    {
+        File blob = getBlob(checksum);
+
+        if (blob.exists()) {
+            // Already downloaded for another extension
+            downloadedFile.delete();
+        } else {
+            blob.getParentFile().mkdirs();
+
+            try {
+                Files.move(downloadedFile.toPath(), blob.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(downloadedFile.toPath(), blob.toPath());
+            }
+        }
+
+        link(checksum, file);
+    }
+
+    /**
+     * Remove a content.
+     * 
+     * @param checksum the hexadecimal SHA-256 checksum of the content
+     * @return true if the content was removed, false if it did not exist
+     */
+    synchronized boolean remove(String checksum)
+    {
+        return getBlob(checksum).delete();
+    }
+
+    /**
+     * Remove the contents which are not referenced anymore.
+     * 
+     * @param checksums the checksums of the referenced contents
+     * @return the number of removed contents
+     */
+    synchronized int collectGarbage(Set<String> checksums)
+    {
+        int removed = 0;
+
+        File[] folders = this.rootFolder.listFiles();
+        if (folders != null) {
+            for (File folder : folders) {
+                File[] blobs = folder.listFiles();
+                if (blobs != null) {
+                    for (File blob : blobs) {
+                        if (!checksums.contains(blob.getName()) && blob.delete()) {
+                            ++removed;
+                        }
+                    }
+                }
+            }
+        }
+
+        return removed;
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.extension.repository.internal.local;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xwiki.extension.InvalidExtensionException;
+import org.xwiki.extension.internal.ExtensionThreadFactory;
+
+/**
+ * Parse the descriptors of the {@link ExtensionStorage}, in parallel when there is enough of them.
+ * 
+ * @version $Id$
+ * @since 6.0M1
+ */
+class ExtensionDescriptorLoader
+{
+    /**
+     * Logging tool.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(ExtensionDescriptorLoader.class);
+
+    /**
+     * The storage, used to set the extension files.
+     */
+    private final ExtensionStorage storage;
+
+    /**
+     * The repository of the extensions.
+     */
+    private final DefaultLocalExtensionRepository repository;
+
+    /**
+     * Used to parse the descriptors.
+     */
+    private final ExtensionSerializer extensionSerializer;
+
+    /**
+     * @param storage the storage, used to set the extension files
+     * @param repository the repository of the extensions
+     * @param extensionSerializer used to parse the descriptors
+     */
+    ExtensionDescriptorLoader(ExtensionStorage storage, DefaultLocalExtensionRepository repository,
+        ExtensionSerializer extensionSerializer)
+    {
+        this.storage = storage;
+        this.repository = repository;
+        this.extensionSerializer = extensionSerializer;
+    }
+
+    /**
+     * Parse the descriptors, in parallel if there is enough of them.
+     * 
+     * @param descriptors the descriptor files
+     * @param extensions the loaded extensions indexed by descriptor file
+     */
+    void loadDescriptors(List<File> descriptors, Map<File, DefaultLocalExtension> extensions)
+    {
+        int threads = ExtensionThreadFactory.getParallelism(descriptors.size());
+
+        if (threads > 1) {
+            loadDescriptors(descriptors, threads, extensions);
+        } else {
+            for (File descriptor : descriptors) {
+                try {
+                    extensions.put(descriptor, loadDescriptor(descriptor));
+                } catch (Exception e) {
+                    logLoadError(descriptor, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param descriptor the descriptor which failed to be loaded
+     * @param cause the cause of the failure
+     */
+    private void logLoadError(File descriptor, Throwable cause)
+    {
+        LOGGER.warn("Failed to load extension from file [" + descriptor + "] in local repository", cause);
+    }
+
+    /**
+     * Parse the descriptors in parallel.
+     * 
+     * @param descriptors the descriptor files
+     * @param threads the number of threads to use to parse the descriptors
+     * @param extensions the loaded extensions indexed by descriptor file
+     */
+    private void loadDescriptors(List<File> descriptors, int threads, Map<File, DefaultLocalExtension> extensions)
+    {
+        List<Callable<DefaultLocalExtension>> tasks =
+            new ArrayList<Callable<DefaultLocalExtension>>(descriptors.size());
+        for (final File descriptor : descriptors) {
+            tasks.add(new Callable<DefaultLocalExtension>()
+            {
+                @Override
+                public DefaultLocalExtension call() throws Exception
+                {
+                    return loadDescriptor(descriptor);
+                }
+            });
+        }
+
+        try {
+            List<Future<DefaultLocalExtension>> futures =
+                ExtensionThreadFactory.invokeAll("Local extension loader", threads, tasks);
+
+            for (int i = 0; i < descriptors.size(); ++i) {
+                try {
+                    extensions.put(descriptors.get(i), futures.get(i).get());
+                } catch (ExecutionException e) {
+                    logLoadError(descriptors.get(i), e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            LOGGER.warn("Interrupted while loading local extensions", e);
+
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Local extension descriptor from a file.
+     * 
+     * @param descriptor the descriptor file
+     * @return the extension descriptor
+     * @throws InvalidExtensionException error when trying to load extension descriptor
+     */
+    private DefaultLocalExtension loadDescriptor(File descriptor) throws InvalidExtensionException
+    {
+        FileInputStream fis;
+        try {
+            fis = new FileInputStream(descriptor);
+        } catch (FileNotFoundException e) {
+            throw new InvalidExtensionException("Failed to open descriptor for reading", e);
+        }
+
+        try {
+            DefaultLocalExtension localExtension = this.extensionSerializer.loadDescriptor(this.repository, fis);
+
+            this.storage.setFiles(localExtension, descriptor);
+
+            return localExtension;
+        } finally {
+            try {
+                fis.close();
+            } catch (IOException e) {
+                LOGGER.error("Failed to close stream for file [" + descriptor + "]", e);
+            }
+        }
+    }
+}
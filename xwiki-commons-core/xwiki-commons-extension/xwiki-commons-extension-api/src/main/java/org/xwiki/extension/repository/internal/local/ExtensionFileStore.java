@@ -0,0 +1,270 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.extension.repository.internal.local;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import javax.inject.Provider;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.extension.Extension;
+
+/**
+ * Download the files of the {@link DefaultLocalExtensionRepository} extensions, validating their checksum and storing
+ * identical contents only once when deduplication is enabled.
+ * 
+ * @version $Id$
+ * @since 6.0M1
+ */
+class ExtensionFileStore
+{
+    /**
+     * The name of the configuration property indicating if identical extension files should be stored only once.
+     */
+    private static final String CK_DEDUPLICATION = "extension.localRepository.deduplication";
+
+    /**
+     * The name of the folder containing the deduplicated contents.
+     */
+    private static final String BLOBS_FOLDER = ".blobs";
+
+    /**
+     * The format of a valid hexadecimal SHA-256 checksum.
+     */
+    private static final Pattern CHECKSUM_PATTERN = Pattern.compile("[0-9a-f]{64}");
+
+    /**
+     * Used to know if the extension files should be deduplicated, null when the repository is created outside of the
+     * component manager.
+     */
+    private final Provider<ConfigurationSource> configurationSource;
+
+    /**
+     * Used to lookup the configuration when there is no provider.
+     */
+    private final ComponentManager componentManager;
+
+    /**
+     * The logger to log.
+     */
+    private final Logger logger;
+
+    /**
+     * Used to store identical extension files only once.
+     */
+    private final ExtensionBlobStore blobs;
+
+    /**
+     * @param rootFolder the repository folder
+     * @param configurationSource used to know if the extension files should be deduplicated, null if there is none
+     * @param componentManager used to lookup the configuration when there is no provider
+     * @param logger the logger to log
+     */
+    ExtensionFileStore(File rootFolder, Provider<ConfigurationSource> configurationSource,
+        ComponentManager componentManager, Logger logger)
+    {
+        this.configurationSource = configurationSource;
+        this.componentManager = componentManager;
+        this.logger = logger;
+
+        this.blobs = new ExtensionBlobStore(new File(rootFolder, BLOBS_FOLDER));
+    }
+
+    /**
+     * @return true if identical extension files should be stored only once
+     */
+    private boolean isDeduplicated()
+    {
+        ConfigurationSource source = getConfigurationSource();
+
+        return source != null && source.getProperty(CK_DEDUPLICATION, Boolean.FALSE);
+    }
+
+    /**
+     * @return the configuration, null if there is none
+     */
+    private ConfigurationSource getConfigurationSource()
+    {
+        if (this.configurationSource != null) {
+            return this.configurationSource.get();
+        }
+
+        // Created outside of the component manager (for example to store the files of a mirror)
+        if (this.componentManager.hasComponent(ConfigurationSource.class)) {
+            try {
+                return this.componentManager.getInstance(ConfigurationSource.class);
+            } catch (ComponentLookupException e) {
+                this.logger.warn("Failed to get the configuration, the extension files won't be deduplicated", e);
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Remove the stored contents which are not used by any of the passed extensions.
+     * 
+     * @param extensions the extensions of the repository
+     * @return the number of removed contents
+     */
+    int collectGarbage(Collection<? extends Extension> extensions)
+    {
+        Set<String> checksums = new HashSet<String>();
+        for (Extension extension : extensions) {
+            Object checksum = extension.getProperty(DefaultLocalExtensionRepository.PKEY_FILE_SHA256);
+            if (checksum != null) {
+                checksums.add(checksum.toString());
+            }
+        }
+
+        return this.blobs.collectGarbage(checksums);
+    }
+
+    /**
+     * Remove a stored content, the caller is responsible for checking that no extension use it anymore.
+     * 
+     * @param checksum the checksum of the content
+     */
+    void remove(String checksum)
+    {
+        this.blobs.remove(checksum);
+    }
+
+    /**
+     * Download the extension file in a temporary file next to the target file and move it when complete so that an
+     * interrupted download never leave a partial extension file in the repository.
+     * <p>
+     * The SHA-256 checksum of the file is calculated during the download and stored in the
+     * {@value DefaultLocalExtensionRepository#PKEY_FILE_SHA256} property. When deduplication is enabled the download is
+     * skipped if the checksum provided by the remote extension is already known.
+     * 
+     * @param extension the extension to download
+     * @param localExtension the local extension
+     * @throws IOException failed to download the extension file
+     */
+    void download(Extension extension, DefaultLocalExtension localExtension) throws IOException
+    {
+        File file = localExtension.getFile().getFile();
+
+        String expectedChecksum = getChecksum(extension);
+        boolean deduplicated = isDeduplicated();
+
+        if (deduplicated && expectedChecksum != null && this.blobs.link(expectedChecksum, file)) {
+            // Already stored for another extension
+            localExtension.putProperty(DefaultLocalExtensionRepository.PKEY_FILE_SHA256, expectedChecksum);
+
+            return;
+        }
+
+        file.getParentFile().mkdirs();
+
+        File partFile = File.createTempFile(file.getName() + '.', ".part", file.getParentFile());
+
+        try {
+            MessageDigest digest;
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IOException("Failed to get SHA-256 digest", e);
+            }
+
+            InputStream is = new DigestInputStream(extension.getFile().openStream(), digest);
+            try {
+                FileUtils.copyInputStreamToFile(is, partFile);
+            } finally {
+                is.close();
+            }
+
+            String checksum = toHex(digest.digest());
+
+            if (expectedChecksum != null && !checksum.equals(expectedChecksum)) {
+                throw new IOException("The checksum [" + checksum + "] of the downloaded file does not match the "
+                    + "expected checksum [" + expectedChecksum + "]");
+            }
+
+            localExtension.putProperty(DefaultLocalExtensionRepository.PKEY_FILE_SHA256, checksum);
+
+            if (deduplicated) {
+                this.blobs.store(partFile, checksum, file);
+            } else {
+                try {
+                    Files.move(partFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(partFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+        } finally {
+            partFile.delete();
+        }
+    }
+
+    /**
+     * @param extension the extension
+     * @return the checksum of the extension file provided by the extension, null if there is none or if it's invalid
+     */
+    String getChecksum(Extension extension)
+    {
+        Object value = extension.getProperty(DefaultLocalExtensionRepository.PKEY_FILE_SHA256);
+
+        if (value != null) {
+            String checksum = value.toString().toLowerCase();
+
+            if (CHECKSUM_PATTERN.matcher(checksum).matches()) {
+                return checksum;
+            }
+
+            this.logger.warn("Ignoring invalid checksum [{}] of extension [{}]", value, extension.getId());
+        }
+
+        return null;
+    }
+
+    /**
+     * @param bytes the bytes to encode
+     * @return the hexadecimal representation of the bytes
+     */
+    private static String toHex(byte[] bytes)
+    {
+        StringBuilder str = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            str.append(Character.forDigit((b >> 4) & 0xF, 16));
+            str.append(Character.forDigit(b & 0xF, 16));
+        }
+
+        return str.toString();
+    }
+}
@@ -19,6 +19,10 @@
  */
 package org.xwiki.extension.repository.internal.local;
 
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
@@ -43,4 +47,21 @@
      * @return the serialized property {@link Element}
      */
     Element toElement(Document document, String elementName, T elementValue);
+
+    /**
+     * @param reader the XML stream, positioned on the start of the property element and left on its end
+     * @return the unserialized property value
+     * @throws XMLStreamException when failing to read the XML
+     * @since 6.0M1
+     */
+    T toValue(XMLStreamReader reader) throws XMLStreamException;
+
+    /**
+     * @param writer the XML stream where to write the property
+     * @param elementName the name of the property
+     * @param elementValue the value of the property
+     * @throws XMLStreamException when failing to write the XML
+     * @since 6.0M1
+     */
+    void write(XMLStreamWriter writer, String elementName, T elementValue) throws XMLStreamException;
 }
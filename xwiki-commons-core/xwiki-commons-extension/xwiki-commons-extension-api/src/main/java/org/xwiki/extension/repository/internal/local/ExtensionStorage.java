@@ -20,21 +20,26 @@
 package org.xwiki.extension.repository.internal.local;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.TransformerException;
 
+import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xwiki.component.manager.ComponentLookupException;
 import org.xwiki.component.manager.ComponentManager;
 import org.xwiki.extension.ExtensionId;
+import org.xwiki.extension.ExtensionLicenseManager;
 import org.xwiki.extension.InvalidExtensionException;
 
 /**
@@ -75,11 +80,21 @@
      */
     private File rootFolder;
 
+    /**
+     * Used to load the extensions without parsing every descriptor.
+     */
+    private ExtensionStorageSnapshot snapshot;
+
+    /**
+     * Used to parse the descriptors which are not in the snapshot.
+     */
+    private ExtensionDescriptorLoader loader;
+
     /**
      * @param repository the repository
      * @param rootFolder the repository folder
      * @param componentManager used to lookup needed components
-     * @throws ComponentLookupException can't find ExtensionSerializer
+     * @throws ComponentLookupException can't find ExtensionSerializer or ExtensionLicenseManager
      */
     public ExtensionStorage(DefaultLocalExtensionRepository repository, File rootFolder,
         ComponentManager componentManager) throws ComponentLookupException
@@ -88,6 +103,20 @@ public ExtensionStorage(DefaultLocalExtensionRepository repository, File rootFol
         this.rootFolder = rootFolder;
 
         this.extensionSerializer = componentManager.getInstance(ExtensionSerializer.class);
+        this.snapshot =
+            new ExtensionStorageSnapshot(rootFolder,
+                componentManager.<ExtensionLicenseManager> getInstance(ExtensionLicenseManager.class));
+        this.loader = new ExtensionDescriptorLoader(this, repository, this.extensionSerializer);
+    }
+
+    /**
+     * Release the snapshot writer thread. A pending snapshot update is still written.
+     * 
+     * @since 6.0M1
+     */
+    public void dispose()
+    {
+        this.snapshot.dispose();
     }
 
     /**
@@ -117,55 +146,144 @@ protected void loadExtensions()
      */
     protected void loadExtensions(File folder)
     {
-        for (File child : folder.listFiles()) {
-            if (child.isDirectory()) {
-                loadExtensions(child);
-            } else if (child.getName().endsWith(DESCRIPTOR_SUFFIX)) {
-                try {
-                    DefaultLocalExtension localExtension = loadDescriptor(child);
+        List<File> descriptors = new ArrayList<File>();
+        findDescriptors(folder, descriptors);
+
+        // Get what we can from the snapshot
+        Map<String, ExtensionStorageSnapshot.Entry> snapshotEntries = readSnapshot();
+
+        Map<File, DefaultLocalExtension> extensions = new HashMap<File, DefaultLocalExtension>(descriptors.size() * 2);
+        List<File> outdatedDescriptors = new ArrayList<File>();
+        for (File descriptor : descriptors) {
+            DefaultLocalExtension localExtension =
+                getSnapshotExtension(snapshotEntries.get(this.snapshot.getPath(descriptor)), descriptor);
+
+            if (localExtension != null) {
+                extensions.put(descriptor, localExtension);
+            } else {
+                outdatedDescriptors.add(descriptor);
+            }
+        }
 
-                    this.repository.addLocalExtension(localExtension);
-                } catch (Exception e) {
-                    LOGGER.warn("Failed to load extension from file [" + child + "] in local repository", e);
-                }
+        // Parse the other descriptors
+        this.loader.loadDescriptors(outdatedDescriptors, extensions);
+
+        // Register the extensions in the order of the descriptor files
+        for (File descriptor : descriptors) {
+            DefaultLocalExtension localExtension = extensions.get(descriptor);
+            if (localExtension != null) {
+                this.repository.addLocalExtension(localExtension);
             }
         }
+
+        if (!outdatedDescriptors.isEmpty() || snapshotEntries.size() != descriptors.size()) {
+            updateSnapshot();
+        }
     }
 
     /**
-     * Local extension descriptor from a file.
-     * 
+     * @param entry the snapshot entry of the descriptor, null if there is none
      * @param descriptor the descriptor file
-     * @return the extension descriptor
-     * @throws InvalidExtensionException error when trying to load extension descriptor
+     * @return the extension stored in the snapshot, null if the descriptor need to be parsed
      */
-    private DefaultLocalExtension loadDescriptor(File descriptor) throws InvalidExtensionException
+    private DefaultLocalExtension getSnapshotExtension(ExtensionStorageSnapshot.Entry entry, File descriptor)
     {
-        FileInputStream fis;
-        try {
-            fis = new FileInputStream(descriptor);
-        } catch (FileNotFoundException e) {
-            throw new InvalidExtensionException("Failed to open descriptor for reading", e);
-        }
+        DefaultLocalExtension localExtension = null;
 
-        try {
-            DefaultLocalExtension localExtension = this.extensionSerializer.loadDescriptor(this.repository, fis);
+        if (entry != null && entry.isUpToDate(descriptor)) {
+            localExtension = entry.getExtension();
+            try {
+                setFiles(localExtension, descriptor);
+            } catch (InvalidExtensionException e) {
+                // Let the descriptor parsing report the issue
+                localExtension = null;
+            }
+        }
 
-            localExtension.setDescriptorFile(descriptor);
-            localExtension.setFile(getFile(descriptor, DESCRIPTOR_EXT, localExtension.getType()));
+        return localExtension;
+    }
 
-            if (!localExtension.getFile().getFile().exists()) {
-                throw new InvalidExtensionException("Failed to load local extension [" + descriptor + "]: ["
-                    + localExtension.getFile() + "] file does not exists");
+    /**
+     * @param folder the folder where to search
+     * @param descriptors the found descriptor files
+     */
+    private void findDescriptors(File folder, List<File> descriptors)
+    {
+        for (File child : folder.listFiles()) {
+            if (child.isDirectory()) {
+                // Skip the internal folders like the deduplicated contents, an encoded extension id never starts with
+                // a dot
+                if (child.getName().charAt(0) != '.') {
+                    findDescriptors(child, descriptors);
+                }
+            } else if (child.getName().endsWith(DESCRIPTOR_SUFFIX)) {
+                descriptors.add(child);
             }
+        }
+    }
 
-            return localExtension;
-        } finally {
+    /**
+     * @return the content of the snapshot, empty if there is no valid snapshot
+     */
+    private Map<String, ExtensionStorageSnapshot.Entry> readSnapshot()
+    {
+        try {
+            return this.snapshot.read(this.repository);
+        } catch (Exception e) {
+            LOGGER.warn("Failed to read local extensions snapshot [{}], the descriptors will be parsed ({})",
+                this.snapshot.getFile(), ExceptionUtils.getRootCauseMessage(e));
+            LOGGER.debug("Snapshot read error", e);
+        }
+
+        return Collections.emptyMap();
+    }
+
+    /**
+     * Update the snapshot in the background. The extensions are serialized under the repository lock and only the
+     * latest content waiting to be written is kept.
+     */
+    private void updateSnapshot()
+    {
+        synchronized (this.repository) {
+            byte[] content;
             try {
-                fis.close();
+                content = this.snapshot.serialize(this.repository.getLocalExtensions());
             } catch (IOException e) {
-                LOGGER.error("Failed to close stream for file [" + descriptor + "]", e);
+                logSnapshotWriteError(e);
+
+                return;
             }
+
+            this.snapshot.writeLater(content);
+        }
+    }
+
+    /**
+     * @param e the error which prevented the snapshot to be serialized
+     */
+    private void logSnapshotWriteError(IOException e)
+    {
+        // The descriptors will be parsed at next startup
+        LOGGER.warn("Failed to serialize local extensions snapshot [{}] ({})", this.snapshot.getFile(),
+            ExceptionUtils.getRootCauseMessage(e));
+        LOGGER.debug("Snapshot serialization error", e);
+    }
+
+    /**
+     * Set the descriptor and extension files.
+     * 
+     * @param localExtension the extension
+     * @param descriptor the descriptor file
+     * @throws InvalidExtensionException when the extension file does not exist
+     */
+    void setFiles(DefaultLocalExtension localExtension, File descriptor) throws InvalidExtensionException
+    {
+        localExtension.setDescriptorFile(descriptor);
+        localExtension.setFile(getFile(descriptor, DESCRIPTOR_EXT, localExtension.getType()));
+
+        if (!localExtension.getFile().getFile().exists()) {
+            throw new InvalidExtensionException("Failed to load local extension [" + descriptor + "]: ["
+                + localExtension.getFile() + "] file does not exists");
         }
     }
 
@@ -194,6 +312,8 @@ public void saveDescriptor(DefaultLocalExtension extension) throws ParserConfigu
         } finally {
             fos.close();
         }
+
+        updateSnapshot();
     }
 
     /**
@@ -292,5 +412,7 @@ public void removeExtension(DefaultLocalExtension extension) throws IOException
         DefaultLocalExtensionFile extensionFile = extension.getFile();
 
         extensionFile.getFile().delete();
+
+        updateSnapshot();
     }
 }
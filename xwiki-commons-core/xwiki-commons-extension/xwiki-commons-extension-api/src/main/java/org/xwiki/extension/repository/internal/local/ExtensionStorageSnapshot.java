@@ -0,0 +1,394 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.extension.repository.internal.local;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xwiki.extension.ExtensionLicenseManager;
+import org.xwiki.extension.LocalExtension;
+import org.xwiki.extension.internal.ExtensionThreadFactory;
+
+/**
+ * A binary snapshot of all the descriptors of the local extension repository, used to avoid parsing each XML
+ * descriptor at startup.
+ * <p>
+ * Each entry remembers the last modification date, the size and a checksum of the descriptor file it has been created
+ * from so that a modified descriptor is detected and parsed again, even when it's modified without changing its size
+ * in the same file system timestamp unit. The whole file is protected by a checksum and written atomically.
+ * <p>
+ * The properties are stored with the same types and the same limitations as the XML descriptor: only {@link String},
+ * {@link Integer}, {@link Boolean}, {@link java.util.Set}, {@link Collection} and {@link Map} values are kept.
+ * 
+ * @version $Id$
+ * @since 6.0M1
+ */
+public class ExtensionStorageSnapshot
+{
+    /**
+     * The name of the snapshot file in the repository folder.
+     */
+    public static final String FILENAME = "extensions.snapshot";
+
+    /**
+     * Identify a snapshot file ("XEDS").
+     */
+    static final int MAGIC = 0x58454453;
+
+    /**
+     * The version of the snapshot format.
+     */
+    static final int FORMAT_VERSION = 2;
+
+    /**
+     * The encoding of the stored strings.
+     */
+    static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * The type of a {@link String} property value.
+     */
+    static final byte TYPE_STRING = 1;
+
+    /**
+     * The type of an {@link Integer} property value.
+     */
+    static final byte TYPE_INTEGER = 2;
+
+    /**
+     * The type of a {@link Boolean} property value.
+     */
+    static final byte TYPE_BOOLEAN = 3;
+
+    /**
+     * The type of a {@link java.util.Set} property value.
+     */
+    static final byte TYPE_SET = 4;
+
+    /**
+     * The type of a {@link Collection} property value which is not a {@link java.util.Set}.
+     */
+    static final byte TYPE_COLLECTION = 5;
+
+    /**
+     * The type of a {@link Map} property value.
+     */
+    static final byte TYPE_MAP = 6;
+
+    /**
+     * Logging tool.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(ExtensionStorageSnapshot.class);
+
+    /**
+     * The time in seconds the background writer thread is kept alive when there is nothing to write.
+     */
+    private static final long KEEP_ALIVE = 10;
+
+    /**
+     * An extension stored in the snapshot.
+     * 
+     * @version $Id$
+     */
+    public static class Entry
+    {
+        /**
+         * The last modification date of the descriptor file when the entry has been stored.
+         */
+        private final long descriptorLastModified;
+
+        /**
+         * The size of the descriptor file when the entry has been stored.
+         */
+        private final long descriptorLength;
+
+        /**
+         * The CRC32 checksum of the descriptor file when the entry has been stored.
+         */
+        private final long descriptorChecksum;
+
+        /**
+         * The stored extension.
+         */
+        private final DefaultLocalExtension extension;
+
+        /**
+         * @param descriptorLastModified the last modification date of the descriptor file when the entry has been
+         *            stored
+         * @param descriptorLength the size of the descriptor file when the entry has been stored
+         * @param descriptorChecksum the CRC32 checksum of the descriptor file when the entry has been stored
+         * @param extension the stored extension
+         */
+        Entry(long descriptorLastModified, long descriptorLength, long descriptorChecksum,
+            DefaultLocalExtension extension)
+        {
+            this.descriptorLastModified = descriptorLastModified;
+            this.descriptorLength = descriptorLength;
+            this.descriptorChecksum = descriptorChecksum;
+            this.extension = extension;
+        }
+
+        /**
+         * @param descriptor the descriptor file
+         * @return true if the passed descriptor did not changed since the entry has been stored
+         */
+        public boolean isUpToDate(File descriptor)
+        {
+            if (descriptor.lastModified() != this.descriptorLastModified
+                || descriptor.length() != this.descriptorLength) {
+                return false;
+            }
+
+            // Reading the descriptor is still a lot cheaper than parsing it
+            try {
+                return getChecksum(descriptor) == this.descriptorChecksum;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+
+        /**
+         * @return the extension (without descriptor and extension files)
+         */
+        public DefaultLocalExtension getExtension()
+        {
+            return this.extension;
+        }
+    }
+
+    /**
+     * The repository folder.
+     */
+    private final File rootFolder;
+
+    /**
+     * The snapshot file.
+     */
+    private final File file;
+
+    /**
+     * Read the snapshot file.
+     */
+    private final ExtensionStorageSnapshotReader reader;
+
+    /**
+     * Serialize the snapshot file content.
+     */
+    private final ExtensionStorageSnapshotWriter writer;
+
+    /**
+     * Write the snapshot in the background. The thread is released when idle so that a repository which is rarely
+     * modified (like a mirror) does not keep a thread.
+     */
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * The content of the snapshot waiting to be written, null if there is none.
+     */
+    private final AtomicReference<byte[]> pendingContent = new AtomicReference<byte[]>();
+
+    /**
+     * @param rootFolder the repository folder
+     * @param licenseManager used to avoid storing the content of well known licenses
+     */
+    public ExtensionStorageSnapshot(File rootFolder, ExtensionLicenseManager licenseManager)
+    {
+        this.rootFolder = rootFolder;
+        this.file = new File(rootFolder, FILENAME);
+        this.reader = new ExtensionStorageSnapshotReader(licenseManager);
+        this.writer = new ExtensionStorageSnapshotWriter(this, licenseManager);
+
+        this.executor =
+            new ThreadPoolExecutor(1, 1, KEEP_ALIVE, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new ExtensionThreadFactory("Local extensions snapshot writer", Thread.MIN_PRIORITY, false));
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Release the background writer thread. A pending snapshot content is still written.
+     */
+    void dispose()
+    {
+        this.executor.shutdown();
+    }
+
+    /**
+     * @return the snapshot file
+     */
+    public File getFile()
+    {
+        return this.file;
+    }
+
+    /**
+     * @param descriptor the descriptor file
+     * @return the CRC32 checksum of the descriptor content
+     * @throws IOException when failing to read the descriptor
+     */
+    static long getChecksum(File descriptor) throws IOException
+    {
+        return FileUtils.checksumCRC32(descriptor);
+    }
+
+    /**
+     * @param descriptor the descriptor file
+     * @return the path of the descriptor relative to the repository folder
+     */
+    public String getPath(File descriptor)
+    {
+        String rootPath = this.rootFolder.getAbsolutePath();
+        String path = descriptor.getAbsolutePath();
+
+        if (path.startsWith(rootPath) && path.length() > rootPath.length()) {
+            return path.substring(rootPath.length() + 1);
+        }
+
+        return path;
+    }
+
+    // Read
+
+    /**
+     * @param repository the repository of the extensions
+     * @return the stored extensions indexed by descriptor path
+     * @throws IOException when failing to read the snapshot (including when it's corrupted)
+     */
+    public synchronized Map<String, Entry> read(DefaultLocalExtensionRepository repository) throws IOException
+    {
+        if (!this.file.exists()) {
+            return new HashMap<String, Entry>();
+        }
+
+        return this.reader.read(this.file, repository);
+    }
+
+    // Write
+
+    /**
+     * Replace the snapshot with the passed extensions.
+     * 
+     * @param extensions the extensions to store
+     * @throws IOException when failing to write the snapshot
+     */
+    public void write(Collection< ? extends LocalExtension> extensions) throws IOException
+    {
+        write(serialize(extensions));
+    }
+
+    /**
+     * Serialize the passed extensions in memory so that the snapshot content can be written later without accessing
+     * the extensions (which might be modified in the meantime).
+     * 
+     * @param extensions the extensions to store
+     * @return the content of the snapshot file
+     * @throws IOException when failing to serialize the extensions
+     */
+    public byte[] serialize(Collection< ? extends LocalExtension> extensions) throws IOException
+    {
+        return this.writer.serialize(extensions);
+    }
+
+    /**
+     * Replace the snapshot with the passed content.
+     * 
+     * @param content the content of the snapshot file, as returned by {@link #serialize(Collection)}
+     * @throws IOException when failing to write the snapshot
+     */
+    public synchronized void write(byte[] content) throws IOException
+    {
+        File tmpFile = new File(this.rootFolder, FILENAME + ".tmp");
+
+        OutputStream stream = new FileOutputStream(tmpFile);
+        try {
+            stream.write(content);
+        } finally {
+            stream.close();
+        }
+
+        try {
+            Files.move(tmpFile.toPath(), this.file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmpFile.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Replace the snapshot with the passed content in the background. Only the latest content waiting to be written
+     * is kept.
+     * 
+     * @param content the content of the snapshot file, as returned by {@link #serialize(Collection)}
+     */
+    void writeLater(byte[] content)
+    {
+        if (this.pendingContent.getAndSet(content) == null) {
+            try {
+                this.executor.execute(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        writePending();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // The storage is disposed, the descriptors will be parsed at next startup
+                this.pendingContent.set(null);
+            }
+        }
+    }
+
+    /**
+     * Write the pending snapshot content, if any.
+     */
+    private void writePending()
+    {
+        byte[] content = this.pendingContent.getAndSet(null);
+
+        if (content != null) {
+            try {
+                write(content);
+            } catch (IOException e) {
+                // The descriptors will be parsed at next startup
+                LOGGER.warn("Failed to write local extensions snapshot [{}] ({})", this.file,
+                    ExceptionUtils.getRootCauseMessage(e));
+                LOGGER.debug("Snapshot write error", e);
+            }
+        }
+    }
+}
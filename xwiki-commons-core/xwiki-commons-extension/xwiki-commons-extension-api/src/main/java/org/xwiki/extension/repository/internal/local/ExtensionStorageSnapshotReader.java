@@ -0,0 +1,312 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.extension.repository.internal.local;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+
+import org.xwiki.extension.DefaultExtensionAuthor;
+import org.xwiki.extension.DefaultExtensionDependency;
+import org.xwiki.extension.ExtensionId;
+import org.xwiki.extension.ExtensionLicense;
+import org.xwiki.extension.ExtensionLicenseManager;
+import org.xwiki.extension.version.internal.DefaultVersionConstraint;
+
+/**
+ * Read the content of an {@link ExtensionStorageSnapshot} file.
+ * 
+ * @version $Id$
+ * @since 6.0M1
+ */
+class ExtensionStorageSnapshotReader
+{
+    /**
+     * Used to get back well known licenses.
+     */
+    private final ExtensionLicenseManager licenseManager;
+
+    /**
+     * @param licenseManager used to get back well known licenses
+     */
+    ExtensionStorageSnapshotReader(ExtensionLicenseManager licenseManager)
+    {
+        this.licenseManager = licenseManager;
+    }
+
+    /**
+     * @param file the snapshot file
+     * @param repository the repository of the extensions
+     * @return the stored extensions indexed by descriptor path
+     * @throws IOException when failing to read the snapshot (including when it's corrupted)
+     */
+    Map<String, ExtensionStorageSnapshot.Entry> read(File file, DefaultLocalExtensionRepository repository)
+        throws IOException
+    {
+        CheckedInputStream checkedStream =
+            new CheckedInputStream(new BufferedInputStream(new FileInputStream(file)), new CRC32());
+        DataInputStream stream = new DataInputStream(checkedStream);
+
+        try {
+            if (stream.readInt() != ExtensionStorageSnapshot.MAGIC
+                || stream.readInt() != ExtensionStorageSnapshot.FORMAT_VERSION) {
+                throw new IOException("Unsupported extension snapshot format");
+            }
+
+            int size = stream.readInt();
+            Map<String, ExtensionStorageSnapshot.Entry> entries =
+                new HashMap<String, ExtensionStorageSnapshot.Entry>(size * 2);
+            for (int i = 0; i < size; ++i) {
+                String path = readString(stream);
+                long lastModified = stream.readLong();
+                long length = stream.readLong();
+                long descriptorChecksum = stream.readLong();
+
+                entries.put(path, new ExtensionStorageSnapshot.Entry(lastModified, length, descriptorChecksum,
+                    readExtension(stream, repository)));
+            }
+
+            long checksum = checkedStream.getChecksum().getValue();
+            if (stream.readLong() != checksum) {
+                throw new IOException("Corrupted extension snapshot");
+            }
+
+            return entries;
+        } finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * @param stream the stream to read
+     * @param repository the repository of the extension
+     * @return the stored extension
+     * @throws IOException when failing to read the extension
+     */
+    private DefaultLocalExtension readExtension(DataInputStream stream, DefaultLocalExtensionRepository repository)
+        throws IOException
+    {
+        String id = readString(stream);
+        String version = readString(stream);
+        String type = readString(stream);
+
+        DefaultLocalExtension extension = new DefaultLocalExtension(repository, new ExtensionId(id, version), type);
+
+        extension.setName(readString(stream));
+        extension.setSummary(readString(stream));
+        extension.setDescription(readString(stream));
+        extension.setWebsite(readString(stream));
+
+        readFeatures(stream, extension);
+        readAuthors(stream, extension);
+        readLicenses(stream, extension);
+        readDependencies(stream, extension);
+
+        // Properties
+        Map<String, Object> properties = readProperties(stream);
+        if (properties != null) {
+            extension.setProperties(properties);
+        }
+
+        return extension;
+    }
+
+    /**
+     * @param stream the stream to read
+     * @param extension the extension to fill
+     * @throws IOException when failing to read the features
+     */
+    private void readFeatures(DataInputStream stream, DefaultLocalExtension extension) throws IOException
+    {
+        int size = stream.readInt();
+        if (size > 0) {
+            List<String> features = new ArrayList<String>(size);
+            for (int i = 0; i < size; ++i) {
+                features.add(readString(stream));
+            }
+            extension.setFeatures(features);
+        }
+    }
+
+    /**
+     * @param stream the stream to read
+     * @param extension the extension to fill
+     * @throws IOException when failing to read the authors
+     */
+    private void readAuthors(DataInputStream stream, DefaultLocalExtension extension) throws IOException
+    {
+        int size = stream.readInt();
+        for (int i = 0; i < size; ++i) {
+            String name = readString(stream);
+            String url = readString(stream);
+            extension.addAuthor(new DefaultExtensionAuthor(name, url != null ? new URL(url) : null));
+        }
+    }
+
+    /**
+     * @param stream the stream to read
+     * @param extension the extension to fill
+     * @throws IOException when failing to read the licenses
+     */
+    private void readLicenses(DataInputStream stream, DefaultLocalExtension extension) throws IOException
+    {
+        int size = stream.readInt();
+        for (int i = 0; i < size; ++i) {
+            String name = readString(stream);
+            List<String> content = null;
+            int contentSize = stream.readInt();
+            if (contentSize >= 0) {
+                content = new ArrayList<String>(contentSize);
+                for (int j = 0; j < contentSize; ++j) {
+                    content.add(readString(stream));
+                }
+            }
+
+            ExtensionLicense license = this.licenseManager.getLicense(name);
+            if (license == null) {
+                license = new ExtensionLicense(name, content);
+            }
+
+            extension.addLicense(license);
+        }
+    }
+
+    /**
+     * @param stream the stream to read
+     * @param extension the extension to fill
+     * @throws IOException when failing to read the dependencies
+     */
+    private void readDependencies(DataInputStream stream, DefaultLocalExtension extension) throws IOException
+    {
+        int size = stream.readInt();
+        for (int i = 0; i < size; ++i) {
+            String dependencyId = readString(stream);
+            String versionConstraint = readString(stream);
+            Map<String, Object> properties = readProperties(stream);
+
+            extension.addDependency(new DefaultExtensionDependency(dependencyId, new DefaultVersionConstraint(
+                versionConstraint), properties));
+        }
+    }
+
+    /**
+     * @param stream the stream to read
+     * @return the stored properties, null if none were stored
+     * @throws IOException when failing to read the properties
+     */
+    private Map<String, Object> readProperties(DataInputStream stream) throws IOException
+    {
+        int size = stream.readInt();
+
+        if (size < 0) {
+            return null;
+        }
+
+        Map<String, Object> properties = new HashMap<String, Object>(size * 2);
+        for (int i = 0; i < size; ++i) {
+            properties.put(readString(stream), readValue(stream));
+        }
+
+        return properties;
+    }
+
+    /**
+     * @param stream the stream to read
+     * @return the stored property value
+     * @throws IOException when failing to read the value or when its type is unknown
+     */
+    private Object readValue(DataInputStream stream) throws IOException
+    {
+        byte type = stream.readByte();
+
+        Object value;
+        switch (type) {
+            case ExtensionStorageSnapshot.TYPE_STRING:
+                value = readString(stream);
+                break;
+            case ExtensionStorageSnapshot.TYPE_INTEGER:
+                value = stream.readInt();
+                break;
+            case ExtensionStorageSnapshot.TYPE_BOOLEAN:
+                value = stream.readBoolean();
+                break;
+            case ExtensionStorageSnapshot.TYPE_SET:
+                value = readCollection(stream, new HashSet<Object>());
+                break;
+            case ExtensionStorageSnapshot.TYPE_COLLECTION:
+                value = readCollection(stream, new ArrayList<Object>());
+                break;
+            case ExtensionStorageSnapshot.TYPE_MAP:
+                value = readProperties(stream);
+                break;
+            default:
+                throw new IOException("Unknown property type [" + type + "]");
+        }
+
+        return value;
+    }
+
+    /**
+     * @param stream the stream to read
+     * @param collection the collection to fill
+     * @return the passed collection
+     * @throws IOException when failing to read the collection elements
+     */
+    private Collection<Object> readCollection(DataInputStream stream, Collection<Object> collection)
+        throws IOException
+    {
+        int size = stream.readInt();
+        for (int i = 0; i < size; ++i) {
+            collection.add(readValue(stream));
+        }
+
+        return collection;
+    }
+
+    /**
+     * @param stream the stream to read
+     * @return the stored string, possibly null
+     * @throws IOException when failing to read the string
+     */
+    private String readString(DataInputStream stream) throws IOException
+    {
+        int length = stream.readInt();
+
+        if (length < 0) {
+            return null;
+        }
+
+        byte[] bytes = new byte[length];
+        stream.readFully(bytes);
+
+        return new String(bytes, ExtensionStorageSnapshot.UTF8);
+    }
+}
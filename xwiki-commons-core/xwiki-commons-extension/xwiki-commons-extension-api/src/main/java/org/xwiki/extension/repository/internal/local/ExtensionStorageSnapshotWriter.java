@@ -0,0 +1,318 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.extension.repository.internal.local;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import org.xwiki.extension.ExtensionAuthor;
+import org.xwiki.extension.ExtensionDependency;
+import org.xwiki.extension.ExtensionLicense;
+import org.xwiki.extension.ExtensionLicenseManager;
+import org.xwiki.extension.LocalExtension;
+
+/**
+ * Serialize the content of an {@link ExtensionStorageSnapshot} file.
+ * 
+ * @version $Id$
+ * @since 6.0M1
+ */
+class ExtensionStorageSnapshotWriter
+{
+    /**
+     * The snapshot, used to get the descriptors path.
+     */
+    private final ExtensionStorageSnapshot snapshot;
+
+    /**
+     * Used to avoid storing the content of well known licenses.
+     */
+    private final ExtensionLicenseManager licenseManager;
+
+    /**
+     * @param snapshot the snapshot, used to get the descriptors path
+     * @param licenseManager used to avoid storing the content of well known licenses
+     */
+    ExtensionStorageSnapshotWriter(ExtensionStorageSnapshot snapshot, ExtensionLicenseManager licenseManager)
+    {
+        this.snapshot = snapshot;
+        this.licenseManager = licenseManager;
+    }
+
+    /**
+     * @param extensions the extensions to store
+     * @return the content of the snapshot file
+     * @throws IOException when failing to serialize the extensions
+     */
+    byte[] serialize(Collection< ? extends LocalExtension> extensions) throws IOException
+    {
+        List<DefaultLocalExtension> storedExtensions = new ArrayList<DefaultLocalExtension>(extensions.size());
+        for (LocalExtension extension : extensions) {
+            if (extension instanceof DefaultLocalExtension
+                && ((DefaultLocalExtension) extension).getDescriptorFile() != null
+                && ((DefaultLocalExtension) extension).getDescriptorFile().exists()) {
+                storedExtensions.add((DefaultLocalExtension) extension);
+            }
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        CheckedOutputStream checkedStream = new CheckedOutputStream(bytes, new CRC32());
+        DataOutputStream stream = new DataOutputStream(checkedStream);
+
+        stream.writeInt(ExtensionStorageSnapshot.MAGIC);
+        stream.writeInt(ExtensionStorageSnapshot.FORMAT_VERSION);
+
+        stream.writeInt(storedExtensions.size());
+        for (DefaultLocalExtension extension : storedExtensions) {
+            File descriptor = extension.getDescriptorFile();
+
+            // Get the descriptor file state before the extension so that any later modification is detected
+            writeString(stream, this.snapshot.getPath(descriptor));
+            stream.writeLong(descriptor.lastModified());
+            stream.writeLong(descriptor.length());
+            stream.writeLong(ExtensionStorageSnapshot.getChecksum(descriptor));
+
+            writeExtension(stream, extension);
+        }
+
+        stream.flush();
+        stream.writeLong(checkedStream.getChecksum().getValue());
+        stream.close();
+
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @param stream the stream to write to
+     * @param extension the extension to store
+     * @throws IOException when failing to write the extension
+     */
+    private void writeExtension(DataOutputStream stream, DefaultLocalExtension extension) throws IOException
+    {
+        writeString(stream, extension.getId().getId());
+        writeString(stream, extension.getId().getVersion().getValue());
+        writeString(stream, extension.getType());
+
+        writeString(stream, extension.getName());
+        writeString(stream, extension.getSummary());
+        writeString(stream, extension.getDescription());
+        writeString(stream, extension.getWebSite());
+
+        // Features
+        Collection<String> features = extension.getFeatures();
+        stream.writeInt(features.size());
+        for (String feature : features) {
+            writeString(stream, feature);
+        }
+
+        // Authors
+        Collection<ExtensionAuthor> authors = extension.getAuthors();
+        stream.writeInt(authors.size());
+        for (ExtensionAuthor author : authors) {
+            writeString(stream, author.getName());
+            writeString(stream, author.getURL() != null ? author.getURL().toString() : null);
+        }
+
+        writeLicenses(stream, extension.getLicenses());
+        writeDependencies(stream, extension.getDependencies());
+
+        // Properties
+        Map<String, Object> properties = extension.getProperties();
+        writeProperties(stream, properties.isEmpty() ? null : properties);
+    }
+
+    /**
+     * @param stream the stream to write to
+     * @param licenses the licenses to store, possibly null
+     * @throws IOException when failing to write the licenses
+     */
+    private void writeLicenses(DataOutputStream stream, Collection<ExtensionLicense> licenses) throws IOException
+    {
+        if (licenses == null) {
+            stream.writeInt(0);
+
+            return;
+        }
+
+        stream.writeInt(licenses.size());
+        for (ExtensionLicense license : licenses) {
+            writeString(stream, license.getName());
+
+            // Only store content if it's a custom license (license content is pretty big generally)
+            if (this.licenseManager.getLicense(license.getName()) == null && license.getContent() != null) {
+                stream.writeInt(license.getContent().size());
+                for (String line : license.getContent()) {
+                    writeString(stream, line);
+                }
+            } else {
+                stream.writeInt(-1);
+            }
+        }
+    }
+
+    /**
+     * @param stream the stream to write to
+     * @param dependencies the dependencies to store, possibly null
+     * @throws IOException when failing to write the dependencies
+     */
+    private void writeDependencies(DataOutputStream stream, Collection< ? extends ExtensionDependency> dependencies)
+        throws IOException
+    {
+        if (dependencies == null) {
+            stream.writeInt(0);
+
+            return;
+        }
+
+        stream.writeInt(dependencies.size());
+        for (ExtensionDependency dependency : dependencies) {
+            writeString(stream, dependency.getId());
+            writeString(stream, dependency.getVersionConstraint().getValue());
+            writeProperties(stream, dependency.getProperties());
+        }
+    }
+
+    /**
+     * @param stream the stream to write to
+     * @param properties the properties to store, null to store a null map, the values with an unsupported type are
+     *            skipped
+     * @throws IOException when failing to write the properties
+     */
+    private void writeProperties(DataOutputStream stream, Map< ? , ? > properties) throws IOException
+    {
+        if (properties == null) {
+            stream.writeInt(-1);
+        } else {
+            List<Map.Entry< ? , ? >> supportedEntries = new ArrayList<Map.Entry< ? , ? >>(properties.size());
+            for (Map.Entry< ? , ? > entry : properties.entrySet()) {
+                if (getType(entry.getValue()) != 0) {
+                    supportedEntries.add(entry);
+                }
+            }
+
+            stream.writeInt(supportedEntries.size());
+            for (Map.Entry< ? , ? > entry : supportedEntries) {
+                writeString(stream, String.valueOf(entry.getKey()));
+                writeValue(stream, entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * @param stream the stream to write to
+     * @param value the property value to store, with a supported type
+     * @throws IOException when failing to write the value
+     */
+    private void writeValue(DataOutputStream stream, Object value) throws IOException
+    {
+        byte type = getType(value);
+
+        stream.writeByte(type);
+
+        switch (type) {
+            case ExtensionStorageSnapshot.TYPE_STRING:
+                writeString(stream, (String) value);
+                break;
+            case ExtensionStorageSnapshot.TYPE_INTEGER:
+                stream.writeInt((Integer) value);
+                break;
+            case ExtensionStorageSnapshot.TYPE_BOOLEAN:
+                stream.writeBoolean((Boolean) value);
+                break;
+            case ExtensionStorageSnapshot.TYPE_SET:
+            case ExtensionStorageSnapshot.TYPE_COLLECTION:
+                writeCollection(stream, (Collection< ? >) value);
+                break;
+            default:
+                writeProperties(stream, (Map< ? , ? >) value);
+                break;
+        }
+    }
+
+    /**
+     * @param stream the stream to write to
+     * @param collection the collection to store, the elements with an unsupported type are skipped
+     * @throws IOException when failing to write the collection
+     */
+    private void writeCollection(DataOutputStream stream, Collection< ? > collection) throws IOException
+    {
+        List<Object> supportedElements = new ArrayList<Object>(collection.size());
+        for (Object element : collection) {
+            if (getType(element) != 0) {
+                supportedElements.add(element);
+            }
+        }
+
+        stream.writeInt(supportedElements.size());
+        for (Object element : supportedElements) {
+            writeValue(stream, element);
+        }
+    }
+
+    /**
+     * @param value the value
+     * @return the type of the value, 0 if it's not supported
+     */
+    private byte getType(Object value)
+    {
+        byte type = 0;
+
+        if (value instanceof String) {
+            type = ExtensionStorageSnapshot.TYPE_STRING;
+        } else if (value instanceof Integer) {
+            type = ExtensionStorageSnapshot.TYPE_INTEGER;
+        } else if (value instanceof Boolean) {
+            type = ExtensionStorageSnapshot.TYPE_BOOLEAN;
+        } else if (value instanceof Set) {
+            type = ExtensionStorageSnapshot.TYPE_SET;
+        } else if (value instanceof Collection) {
+            type = ExtensionStorageSnapshot.TYPE_COLLECTION;
+        } else if (value instanceof Map) {
+            type = ExtensionStorageSnapshot.TYPE_MAP;
+        }
+
+        return type;
+    }
+
+    /**
+     * @param stream the stream to write to
+     * @param value the string to store, possibly null
+     * @throws IOException when failing to write the string
+     */
+    private void writeString(DataOutputStream stream, String value) throws IOException
+    {
+        if (value == null) {
+            stream.writeInt(-1);
+        } else {
+            byte[] bytes = value.getBytes(ExtensionStorageSnapshot.UTF8);
+            stream.writeInt(bytes.length);
+            stream.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.extension.repository.internal.local;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Helpers to navigate extension descriptors with a {@link XMLStreamReader}.
+ * <p>
+ * All the methods expect the reader to be positioned on a {@link XMLStreamConstants#START_ELEMENT} or
+ * {@link XMLStreamConstants#END_ELEMENT} event and leave it on a {@link XMLStreamConstants#END_ELEMENT} event, so that
+ * consuming an element never consumes anything from its siblings.
+ * 
+ * @version $Id$
+ * @since 6.0M1
+ */
+public final class XMLStreamUtils
+{
+    /**
+     * The characters other than letters allowed at the start of an element name.
+     */
+    private static final String NAME_START_CHARS = "_:";
+
+    /**
+     * The characters other than letters and digits allowed in an element name.
+     */
+    private static final String NAME_CHARS = "_:-.";
+
+    /**
+     * Utility class.
+     */
+    private XMLStreamUtils()
+    {
+        // Utility class
+    }
+
+    /**
+     * Move to the next child element of the current element.
+     * 
+     * @param reader the reader, positioned on the start of the parent element or on the end of a previous child
+     * @return true if the reader is now positioned on the start of a child element, false if it reached the end of
+     *         the parent element
+     * @throws XMLStreamException when failing to read the XML
+     */
+    public static boolean nextElement(XMLStreamReader reader) throws XMLStreamException
+    {
+        while (reader.hasNext()) {
+            int event = reader.next();
+
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                return true;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                return false;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Read all the text contained in the current element and its descendants (the equivalent of
+     * {@link org.w3c.dom.Node#getTextContent()}).
+     * 
+     * @param reader the reader, positioned on the start of the element
+     * @return the text content of the element
+     * @throws XMLStreamException when failing to read the XML
+     */
+    public static String readText(XMLStreamReader reader) throws XMLStreamException
+    {
+        String text = null;
+        StringBuilder builder = null;
+
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                ++depth;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                --depth;
+            } else if (isText(event)) {
+                // Most elements contain a single chunk of text: only create a builder when really needed
+                if (text == null) {
+                    text = reader.getText();
+                } else {
+                    if (builder == null) {
+                        builder = new StringBuilder(text);
+                    }
+                    builder.append(reader.getText());
+                }
+            }
+        }
+
+        if (builder != null) {
+            return builder.toString();
+        }
+
+        return text != null ? text : "";
+    }
+
+    /**
+     * @param event the type of the event
+     * @return true if the event is part of the text content of an element
+     */
+    private static boolean isText(int event)
+    {
+        return event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA
+            || event == XMLStreamConstants.SPACE || event == XMLStreamConstants.ENTITY_REFERENCE;
+    }
+
+    /**
+     * Skip the current element and all its descendants.
+     * 
+     * @param reader the reader, positioned on the start of the element
+     * @throws XMLStreamException when failing to read the XML
+     */
+    public static void skipElement(XMLStreamReader reader) throws XMLStreamException
+    {
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                ++depth;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                --depth;
+            }
+        }
+    }
+
+    /**
+     * @param name the name to validate
+     * @return true if the passed name can be used as XML element name
+     */
+    public static boolean isValidElementName(String name)
+    {
+        if (name == null || name.isEmpty()) {
+            return false;
+        }
+
+        char first = name.charAt(0);
+        if (!Character.isLetter(first) && NAME_START_CHARS.indexOf(first) == -1) {
+            return false;
+        }
+
+        for (int i = 1; i < name.length(); ++i) {
+            char c = name.charAt(i);
+            if (!Character.isLetterOrDigit(c) && NAME_CHARS.indexOf(c) == -1) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.extension.repository.internal.mirror;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xwiki.extension.Extension;
+import org.xwiki.extension.ExtensionId;
+import org.xwiki.extension.repository.internal.local.DefaultLocalExtension;
+import org.xwiki.extension.repository.internal.local.DefaultLocalExtensionRepository;
+import org.xwiki.extension.repository.internal.local.ExtensionSerializer;
+
+/**
+ * The descriptors of the mirrored extensions, persisted in a folder independently from the extension files.
+ * 
+ * @version $Id$
+ * @since 6.0M1
+ */
+class ExtensionDescriptorStore
+{
+    /**
+     * Logging tool.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(ExtensionDescriptorStore.class);
+
+    /**
+     * The extension of the descriptor files prefixed with dot.
+     */
+    private static final String DESCRIPTOR_SUFFIX = ".xed";
+
+    /**
+     * The folder where the descriptors are stored.
+     */
+    private final File folder;
+
+    /**
+     * The repository associated to the parsed descriptors, only used to read and write them.
+     */
+    private final DefaultLocalExtensionRepository repository;
+
+    /**
+     * Used to read and write the descriptors.
+     */
+    private final ExtensionSerializer serializer;
+
+    /**
+     * @param folder the folder where the descriptors are stored
+     * @param repository the repository associated to the parsed descriptors
+     * @param serializer used to read and write the descriptors
+     */
+    ExtensionDescriptorStore(File folder, DefaultLocalExtensionRepository repository, ExtensionSerializer serializer)
+    {
+        this.folder = folder;
+        this.repository = repository;
+        this.serializer = serializer;
+    }
+
+    /**
+     * Read all the stored descriptors. The descriptors which can't be read are skipped.
+     * 
+     * @return the stored descriptors
+     */
+    List<Extension> load()
+    {
+        List<Extension> extensions = new ArrayList<Extension>();
+
+        File[] idFolders = this.folder.listFiles();
+        if (idFolders != null) {
+            for (File idFolder : idFolders) {
+                File[] descriptors = idFolder.listFiles();
+                if (descriptors != null) {
+                    for (File descriptor : descriptors) {
+                        if (descriptor.getName().endsWith(DESCRIPTOR_SUFFIX)) {
+                            load(descriptor, extensions);
+                        }
+                    }
+                }
+            }
+        }
+
+        return extensions;
+    }
+
+    /**
+     * @param descriptor the descriptor file
+     * @param extensions the list where to add the parsed descriptor
+     */
+    private void load(File descriptor, List<Extension> extensions)
+    {
+        try {
+            InputStream stream = new FileInputStream(descriptor);
+            try {
+                extensions.add(this.serializer.loadDescriptor(this.repository, stream));
+            } finally {
+                stream.close();
+            }
+        } catch (Exception e) {
+            LOGGER.warn("Failed to read mirrored extension descriptor [{}] ({})", descriptor,
+                ExceptionUtils.getRootCauseMessage(e));
+        }
+    }
+
+    /**
+     * Write the descriptor of an extension. The file is replaced atomically so that an interrupted write never leaves
+     * a partial descriptor.
+     * 
+     * @param extension the extension
+     * @throws IOException when failing to write the descriptor
+     */
+    void save(Extension extension) throws IOException
+    {
+        File file = getFile(extension.getId());
+
+        file.getParentFile().mkdirs();
+
+        File partFile = File.createTempFile(file.getName() + '.', ".part", file.getParentFile());
+
+        try {
+            OutputStream stream = new FileOutputStream(partFile);
+            try {
+                this.serializer.saveDescriptor(new DefaultLocalExtension(this.repository, extension), stream);
+            } catch (Exception e) {
+                throw new IOException("Failed to serialize the descriptor of extension [" + extension.getId() + "]",
+                    e);
+            } finally {
+                stream.close();
+            }
+
+            try {
+                Files.move(partFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(partFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            partFile.delete();
+        }
+    }
+
+    /**
+     * @param id the extension id
+     * @return the file containing the descriptor of the extension
+     */
+    private File getFile(ExtensionId id)
+    {
+        return new File(new File(this.folder, encode(id.getId())), encode(id.getVersion().getValue())
+            + DESCRIPTOR_SUFFIX);
+    }
+
+    /**
+     * @param name the file or directory name to encode
+     * @return the encoded name
+     */
+    private static String encode(String name)
+    {
+        try {
+            return URLEncoder.encode(name, "UTF-8").replace(".", "%2E").replace("*", "%2A");
+        } catch (UnsupportedEncodingException e) {
+            // Should never happen
+            return name;
+        }
+    }
+}
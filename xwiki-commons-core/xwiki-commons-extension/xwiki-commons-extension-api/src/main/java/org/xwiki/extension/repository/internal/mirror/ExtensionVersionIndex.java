@@ -0,0 +1,181 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.extension.repository.internal.mirror;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.lang3.StringUtils;
+import org.xwiki.extension.version.Version;
+import org.xwiki.extension.version.internal.DefaultVersion;
+
+/**
+ * The versions of each mirrored extension id, as known from the remote repository, persisted in a file.
+ * 
+ * @version $Id$
+ * @since 6.0M1
+ */
+class ExtensionVersionIndex
+{
+    /**
+     * The separator between the versions of an id in the index file.
+     */
+    private static final String SEPARATOR = "\n";
+
+    /**
+     * The file where the index is stored.
+     */
+    private final File file;
+
+    /**
+     * The versions in ascending order indexed by extension id. The lists are never modified, they are replaced.
+     */
+    private final Map<String, List<Version>> versions = new ConcurrentHashMap<String, List<Version>>();
+
+    /**
+     * @param file the file where the index is stored
+     */
+    ExtensionVersionIndex(File file)
+    {
+        this.file = file;
+    }
+
+    /**
+     * Read the index file if it exists.
+     * 
+     * @throws IOException when failing to read the index file
+     */
+    void load() throws IOException
+    {
+        if (this.file.exists()) {
+            Properties properties = new Properties();
+
+            InputStream stream = new FileInputStream(this.file);
+            try {
+                properties.load(stream);
+            } finally {
+                stream.close();
+            }
+
+            for (String id : properties.stringPropertyNames()) {
+                SortedSet<Version> idVersions = new TreeSet<Version>();
+                for (String version : StringUtils.split(properties.getProperty(id), SEPARATOR)) {
+                    idVersions.add(new DefaultVersion(version));
+                }
+
+                this.versions.put(id, Collections.unmodifiableList(new ArrayList<Version>(idVersions)));
+            }
+        }
+    }
+
+    /**
+     * @return the indexed extension ids
+     */
+    Set<String> getIds()
+    {
+        return this.versions.keySet();
+    }
+
+    /**
+     * @param id the extension id
+     * @return the known versions in ascending order, null if the id is not indexed
+     */
+    List<Version> getVersions(String id)
+    {
+        return this.versions.get(id);
+    }
+
+    /**
+     * Add versions to the index, the already known versions are kept.
+     * 
+     * @param id the extension id
+     * @param newVersions the versions to add
+     * @return the number of versions which were not already known
+     */
+    synchronized int addVersions(String id, Collection<Version> newVersions)
+    {
+        List<Version> currentVersions = this.versions.get(id);
+
+        SortedSet<Version> idVersions =
+            currentVersions != null ? new TreeSet<Version>(currentVersions) : new TreeSet<Version>();
+        idVersions.addAll(newVersions);
+
+        int added = idVersions.size() - (currentVersions != null ? currentVersions.size() : 0);
+
+        if (currentVersions == null || added > 0) {
+            this.versions.put(id, Collections.unmodifiableList(new ArrayList<Version>(idVersions)));
+        }
+
+        return added;
+    }
+
+    /**
+     * Write the index in its file. The file is replaced atomically so that an interrupted write never leaves a
+     * partial index.
+     * 
+     * @throws IOException when failing to write the index
+     */
+    synchronized void save() throws IOException
+    {
+        Properties properties = new Properties();
+        for (Map.Entry<String, List<Version>> entry : this.versions.entrySet()) {
+            properties.setProperty(entry.getKey(), StringUtils.join(entry.getValue(), SEPARATOR));
+        }
+
+        this.file.getParentFile().mkdirs();
+
+        File partFile = File.createTempFile(this.file.getName() + '.', ".part", this.file.getParentFile());
+
+        try {
+            OutputStream stream = new FileOutputStream(partFile);
+            try {
+                properties.store(stream, null);
+            } finally {
+                stream.close();
+            }
+
+            try {
+                Files.move(partFile.toPath(), this.file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(partFile.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            partFile.delete();
+        }
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.extension.repository.internal.mirror;
+
+import org.xwiki.extension.AbstractExtension;
+import org.xwiki.extension.Extension;
+import org.xwiki.extension.version.Version;
+
+/**
+ * An extension served by a {@link MirrorExtensionRepository} from its local copy. The file is only copied from the
+ * remote repository when it's opened. The file of a SNAPSHOT is never copied and always read from the remote
+ * repository.
+ * 
+ * @version $Id$
+ * @since 6.0M1
+ */
+public class MirrorExtension extends AbstractExtension
+{
+    /**
+     * @param repository the mirror repository
+     * @param extension the descriptor of the remote extension
+     */
+    public MirrorExtension(MirrorExtensionRepository repository, Extension extension)
+    {
+        super(repository, extension);
+
+        if (getId().getVersion().getType() == Version.Type.SNAPSHOT) {
+            setFile(extension.getFile());
+        } else {
+            setFile(new MirrorExtensionFile(repository, getId()));
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.extension.repository.internal.mirror;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.xwiki.extension.ExtensionFile;
+import org.xwiki.extension.ExtensionId;
+import org.xwiki.extension.LocalExtension;
+
+/**
+ * The file of a {@link MirrorExtension}, copied from the remote repository the first time it's opened.
+ * 
+ * @version $Id$
+ * @since 6.0M1
+ */
+class MirrorExtensionFile implements ExtensionFile
+{
+    /**
+     * The mirror repository.
+     */
+    private final MirrorExtensionRepository repository;
+
+    /**
+     * The id of the extension.
+     */
+    private final ExtensionId extensionId;
+
+    /**
+     * @param repository the mirror repository
+     * @param extensionId the id of the extension
+     */
+    MirrorExtensionFile(MirrorExtensionRepository repository, ExtensionId extensionId)
+    {
+        this.repository = repository;
+        this.extensionId = extensionId;
+    }
+
+    @Override
+    public long getLength()
+    {
+        LocalExtension localExtension = this.repository.getStorage().getLocalExtension(this.extensionId);
+
+        // The length is not known until the file is mirrored
+        return localExtension != null ? localExtension.getFile().getLength() : -1;
+    }
+
+    @Override
+    public InputStream openStream() throws IOException
+    {
+        return this.repository.getStorage().storeExtension(this.extensionId).getFile().openStream();
+    }
+}
@@ -0,0 +1,351 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.extension.repository.internal.mirror;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xwiki.component.manager.ComponentLifecycleException;
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.extension.Extension;
+import org.xwiki.extension.ExtensionDependency;
+import org.xwiki.extension.ExtensionId;
+import org.xwiki.extension.ResolveException;
+import org.xwiki.extension.repository.ExtensionRepository;
+import org.xwiki.extension.repository.ExtensionRepositoryException;
+import org.xwiki.extension.repository.internal.AbstractCachedExtensionRepository;
+import org.xwiki.extension.repository.internal.RepositoryUtils;
+import org.xwiki.extension.repository.result.IterableResult;
+import org.xwiki.extension.repository.search.SearchException;
+import org.xwiki.extension.repository.search.Searchable;
+import org.xwiki.extension.version.Version;
+import org.xwiki.extension.version.VersionConstraint;
+
+/**
+ * Keep a local copy of what is resolved from a remote repository and serve it from there first.
+ * <p>
+ * The descriptors of the extensions are copied the first time they are resolved while the files are only downloaded
+ * in a local repository when they are opened (i.e. when the extension is installed). The versions of each resolved
+ * extension id are indexed so that dependencies can be resolved without asking the remote repository. The index is
+ * refreshed by {@link #synchronize()} which only fetch the versions and is supposed to be called regularly in the
+ * background. When the remote repository can't be reached what was already mirrored is used.
+ * <p>
+ * SNAPSHOT versions can be redeployed at any time so they are never mirrored and always resolved from the remote
+ * repository.
+ * 
+ * @version $Id$
+ * @since 6.0M1
+ */
+public class MirrorExtensionRepository extends AbstractCachedExtensionRepository<MirrorExtension> implements
+    Disposable
+{
+    /**
+     * Logging tool.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(MirrorExtensionRepository.class);
+
+    /**
+     * The name of the file containing the versions index.
+     */
+    private static final String INDEX_FILE = "versions.properties";
+
+    /**
+     * The mirrored repository.
+     */
+    private final ExtensionRepository remoteRepository;
+
+    /**
+     * The local copy of the extension descriptors and files.
+     */
+    private final MirrorExtensionStorage storage;
+
+    /**
+     * The versions of the mirrored extension ids.
+     */
+    private final ExtensionVersionIndex index;
+
+    /**
+     * @param remoteRepository the repository to mirror
+     * @param rootFolder the folder where to store the mirror
+     * @param componentManager used to lookup the storage components
+     * @throws ExtensionRepositoryException when failing to initialize the local storage
+     */
+    public MirrorExtensionRepository(ExtensionRepository remoteRepository, File rootFolder,
+        ComponentManager componentManager) throws ExtensionRepositoryException
+    {
+        setDescriptor(remoteRepository.getDescriptor());
+
+        this.remoteRepository = remoteRepository;
+
+        this.storage = new MirrorExtensionStorage(remoteRepository, rootFolder, componentManager);
+
+        for (Extension extension : this.storage.loadDescriptors()) {
+            if (!isSnapshot(extension.getId())) {
+                addCachedExtension(new MirrorExtension(this, extension));
+            }
+        }
+
+        this.index = new ExtensionVersionIndex(new File(rootFolder, INDEX_FILE));
+        try {
+            this.index.load();
+        } catch (IOException e) {
+            LOGGER.warn("Failed to read the versions index of the mirror of repository [{}], it will be rebuilt ({})",
+                getDescriptor(), ExceptionUtils.getRootCauseMessage(e));
+        }
+    }
+
+    @Override
+    public void dispose() throws ComponentLifecycleException
+    {
+        this.storage.dispose();
+
+        if (this.remoteRepository instanceof Disposable) {
+            ((Disposable) this.remoteRepository).dispose();
+        }
+    }
+
+    /**
+     * @return the mirrored repository
+     */
+    public ExtensionRepository getRemoteRepository()
+    {
+        return this.remoteRepository;
+    }
+
+    /**
+     * @return the local copy of the extension descriptors and files
+     */
+    MirrorExtensionStorage getStorage()
+    {
+        return this.storage;
+    }
+
+    /**
+     * Fetch from the remote repository the versions of all the mirrored extension ids and add the new ones to the
+     * index.
+     * 
+     * @return the number of new versions
+     */
+    public int synchronize()
+    {
+        int added = 0;
+
+        for (String id : this.index.getIds()) {
+            if (Thread.currentThread().isInterrupted()) {
+                break;
+            }
+
+            try {
+                added += this.index.addVersions(id, getRemoteVersions(id));
+            } catch (ResolveException e) {
+                LOGGER.debug("Failed to synchronize the versions of extension [{}] with repository [{}]", id,
+                    getDescriptor(), e);
+            }
+        }
+
+        if (added > 0) {
+            saveIndex();
+        }
+
+        return added;
+    }
+
+    /**
+     * @param id the extension id
+     * @return all the versions known by the remote repository
+     * @throws ResolveException when failing to get the versions from the remote repository
+     */
+    private List<Version> getRemoteVersions(String id) throws ResolveException
+    {
+        List<Version> versions = new ArrayList<Version>();
+        for (Version version : this.remoteRepository.resolveVersions(id, 0, -1)) {
+            versions.add(version);
+        }
+
+        return versions;
+    }
+
+    /**
+     * @param id the extension id
+     * @return the known versions in ascending order
+     * @throws ResolveException when the id is not indexed yet and the remote repository failed to provide its versions
+     */
+    private List<Version> getVersions(String id) throws ResolveException
+    {
+        List<Version> versions = this.index.getVersions(id);
+
+        if (versions == null) {
+            this.index.addVersions(id, getRemoteVersions(id));
+            saveIndex();
+
+            versions = this.index.getVersions(id);
+        }
+
+        return versions;
+    }
+
+    /**
+     * Write the versions index, a failure only means that the versions will be asked again to the remote repository.
+     */
+    private void saveIndex()
+    {
+        try {
+            this.index.save();
+        } catch (IOException e) {
+            LOGGER.warn("Failed to write the versions index of the mirror of repository [{}] ({})", getDescriptor(),
+                ExceptionUtils.getRootCauseMessage(e));
+        }
+    }
+
+    /**
+     * @param extensionId the extension id
+     * @return true if the extension version is a SNAPSHOT
+     */
+    private boolean isSnapshot(ExtensionId extensionId)
+    {
+        return extensionId.getVersion().getType() == Version.Type.SNAPSHOT;
+    }
+
+    /**
+     * Copy the descriptor of a remote extension in the mirror, unless it's a SNAPSHOT.
+     * 
+     * @param extension the remote extension
+     * @return the mirrored extension
+     */
+    private MirrorExtension mirror(Extension extension)
+    {
+        // The content of a SNAPSHOT can change at any time so it's never kept
+        if (isSnapshot(extension.getId())) {
+            return new MirrorExtension(this, extension);
+        }
+
+        return mirrorRelease(extension);
+    }
+
+    /**
+     * Copy the descriptor of a remote extension in the mirror.
+     * 
+     * @param extension the remote extension
+     * @return the mirrored extension
+     */
+    private synchronized MirrorExtension mirrorRelease(Extension extension)
+    {
+        // Maybe mirrored by another thread in the meantime
+        MirrorExtension mirrorExtension = this.extensions.get(extension.getId());
+
+        if (mirrorExtension == null) {
+            try {
+                this.storage.saveDescriptor(extension);
+            } catch (IOException e) {
+                // Still served from memory until restart
+                LOGGER.warn("Failed to mirror the descriptor of extension [{}] ({})", extension.getId(),
+                    ExceptionUtils.getRootCauseMessage(e));
+            }
+
+            mirrorExtension = new MirrorExtension(this, extension);
+            addCachedExtension(mirrorExtension);
+        }
+
+        return mirrorExtension;
+    }
+
+    // ExtensionRepository
+
+    @Override
+    public MirrorExtension resolve(ExtensionId extensionId) throws ResolveException
+    {
+        MirrorExtension extension = this.extensions.get(extensionId);
+
+        if (extension != null) {
+            return extension;
+        }
+
+        return mirror(this.remoteRepository.resolve(extensionId));
+    }
+
+    @Override
+    public MirrorExtension resolve(ExtensionDependency extensionDependency) throws ResolveException
+    {
+        String id = extensionDependency.getId();
+        VersionConstraint versionConstraint = extensionDependency.getVersionConstraint();
+
+        // Resolve the higher indexed version which satisfy the version constraint
+        try {
+            List<Version> versions = getVersions(id);
+            for (int i = versions.size() - 1; i >= 0; --i) {
+                Version version = versions.get(i);
+
+                if (versionConstraint.containsVersion(version)) {
+                    return resolve(new ExtensionId(id, version));
+                }
+            }
+        } catch (ResolveException e) {
+            LOGGER.debug("Failed to resolve extension dependency [{}] from the versions index", extensionDependency,
+                e);
+        }
+
+        // Let the remote repository decide (feature, version published since last synchronization, etc.)
+        try {
+            return mirror(this.remoteRepository.resolve(extensionDependency));
+        } catch (ResolveException e) {
+            try {
+                return super.resolve(extensionDependency);
+            } catch (ResolveException e2) {
+                throw e;
+            }
+        }
+    }
+
+    @Override
+    public boolean exists(ExtensionId extensionId)
+    {
+        return super.exists(extensionId) || this.remoteRepository.exists(extensionId);
+    }
+
+    @Override
+    public IterableResult<Version> resolveVersions(String id, int offset, int nb) throws ResolveException
+    {
+        return RepositoryUtils.getIterableResult(offset, nb, getVersions(id));
+    }
+
+    // Searchable
+
+    @Override
+    public IterableResult<Extension> search(String pattern, int offset, int nb) throws SearchException
+    {
+        // The remote repository is the only one to know about the extensions which were never resolved
+        if (this.remoteRepository instanceof Searchable) {
+            try {
+                return ((Searchable) this.remoteRepository).search(pattern, offset, nb);
+            } catch (SearchException e) {
+                LOGGER.warn("Failed to search in repository [{}], searching in its mirror instead ({})",
+                    getDescriptor(), ExceptionUtils.getRootCauseMessage(e));
+            }
+        }
+
+        return super.search(pattern, offset, nb);
+    }
+}
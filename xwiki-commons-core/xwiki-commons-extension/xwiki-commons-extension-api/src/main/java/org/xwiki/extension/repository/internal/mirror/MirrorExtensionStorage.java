@@ -0,0 +1,169 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.extension.repository.internal.mirror;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import org.xwiki.component.manager.ComponentLifecycleException;
+import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.extension.Extension;
+import org.xwiki.extension.ExtensionId;
+import org.xwiki.extension.LocalExtension;
+import org.xwiki.extension.ResolveException;
+import org.xwiki.extension.repository.DefaultExtensionRepositoryDescriptor;
+import org.xwiki.extension.repository.ExtensionRepository;
+import org.xwiki.extension.repository.ExtensionRepositoryException;
+import org.xwiki.extension.repository.LocalExtensionRepositoryException;
+import org.xwiki.extension.repository.internal.local.DefaultLocalExtensionRepository;
+import org.xwiki.extension.repository.internal.local.ExtensionSerializer;
+
+/**
+ * The local copy of the descriptors and files of the extensions of a {@link MirrorExtensionRepository}.
+ * 
+ * @version $Id$
+ * @since 6.0M1
+ */
+class MirrorExtensionStorage
+{
+    /**
+     * The name of the folder containing the mirrored extension files.
+     */
+    private static final String REPOSITORY_FOLDER = "repository";
+
+    /**
+     * The name of the folder containing the mirrored extension descriptors.
+     */
+    private static final String DESCRIPTORS_FOLDER = "descriptors";
+
+    /**
+     * The mirrored repository.
+     */
+    private final ExtensionRepository remoteRepository;
+
+    /**
+     * The local copy of the extension files.
+     */
+    private final DefaultLocalExtensionRepository files;
+
+    /**
+     * The local copy of the extension descriptors.
+     */
+    private final ExtensionDescriptorStore descriptors;
+
+    /**
+     * @param remoteRepository the mirrored repository
+     * @param rootFolder the folder where to store the mirror
+     * @param componentManager used to lookup the storage components
+     * @throws ExtensionRepositoryException when failing to initialize the storage
+     */
+    MirrorExtensionStorage(ExtensionRepository remoteRepository, File rootFolder, ComponentManager componentManager)
+        throws ExtensionRepositoryException
+    {
+        this.remoteRepository = remoteRepository;
+
+        File repositoryFolder = new File(rootFolder, REPOSITORY_FOLDER);
+        try {
+            this.files =
+                new DefaultLocalExtensionRepository(new DefaultExtensionRepositoryDescriptor(remoteRepository
+                    .getDescriptor().getId() + "-mirror", "xwiki", repositoryFolder.toURI()), repositoryFolder,
+                    componentManager);
+            this.descriptors =
+                new ExtensionDescriptorStore(new File(rootFolder, DESCRIPTORS_FOLDER), this.files,
+                    componentManager.<ExtensionSerializer> getInstance(ExtensionSerializer.class));
+        } catch (ComponentLookupException e) {
+            throw new ExtensionRepositoryException("Failed to initialize the storage of the mirror of repository ["
+                + remoteRepository.getDescriptor() + "]", e);
+        }
+    }
+
+    /**
+     * Release the local copy of the extension files.
+     * 
+     * @throws ComponentLifecycleException when failing to release the storage
+     */
+    void dispose() throws ComponentLifecycleException
+    {
+        this.files.dispose();
+    }
+
+    /**
+     * @return the mirrored extension descriptors
+     */
+    List<Extension> loadDescriptors()
+    {
+        return this.descriptors.load();
+    }
+
+    /**
+     * @param extension the remote extension to copy the descriptor of
+     * @throws IOException when failing to write the descriptor
+     */
+    void saveDescriptor(Extension extension) throws IOException
+    {
+        this.descriptors.save(extension);
+    }
+
+    /**
+     * @param extensionId the extension id
+     * @return the local copy of the extension file, null if it's not mirrored yet
+     */
+    LocalExtension getLocalExtension(ExtensionId extensionId)
+    {
+        return this.files.getLocalExtension(extensionId);
+    }
+
+    /**
+     * Copy the file of an extension in the mirror if it's not already there.
+     * 
+     * @param extensionId the extension id
+     * @return the local copy of the extension file
+     * @throws IOException when failing to download the extension file
+     */
+    LocalExtension storeExtension(ExtensionId extensionId) throws IOException
+    {
+        LocalExtension localExtension = this.files.getLocalExtension(extensionId);
+
+        if (localExtension == null) {
+            Extension extension;
+            try {
+                extension = this.remoteRepository.resolve(extensionId);
+            } catch (ResolveException e) {
+                throw new IOException("Failed to resolve extension [" + extensionId + "] from repository ["
+                    + this.remoteRepository.getDescriptor() + "]", e);
+            }
+
+            try {
+                localExtension = this.files.storeExtension(extension);
+            } catch (LocalExtensionRepositoryException e) {
+                // Maybe stored by another thread in the meantime
+                localExtension = this.files.getLocalExtension(extensionId);
+
+                if (localExtension == null) {
+                    throw new IOException("Failed to mirror the file of extension [" + extensionId + "]", e);
+                }
+            }
+        }
+
+        return localExtension;
+    }
+}
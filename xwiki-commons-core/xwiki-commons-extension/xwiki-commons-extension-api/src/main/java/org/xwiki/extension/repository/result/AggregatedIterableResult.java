@@ -109,7 +109,7 @@ public int getSize()
         if (this.size == null) {
             this.size = 0;
             for (IterableResult<T> result : this.results) {
-                this.size += result.getTotalHits();
+                this.size += result.getSize();
             }
         }
 
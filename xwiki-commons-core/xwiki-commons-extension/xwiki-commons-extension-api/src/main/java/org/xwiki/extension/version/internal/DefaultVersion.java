@@ -22,13 +22,15 @@
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Locale;
 import java.util.Map;
+import java.util.WeakHashMap;
 
 import org.apache.commons.lang3.builder.HashCodeBuilder;
 import org.slf4j.Logger;
@@ -61,19 +63,22 @@ public class DefaultVersion implements Version
     private static final Logger LOGGER = LoggerFactory.getLogger(DefaultVersion.class);
 
     /**
-     * The original version string representation.
+     * The already parsed versions indexed by string representation. The same versions are generally parsed many times
+     * (dependencies, installed extensions, core extensions, etc.) so they share the same parsed version as long as
+     * one of them is in use.
      */
-    private String rawVersion;
+    private static final Map<String, WeakReference<ParsedVersion>> PARSED = Collections
+        .synchronizedMap(new WeakHashMap<String, WeakReference<ParsedVersion>>());
 
     /**
-     * The version cut in peaces for easier comparison.
+     * The original version string representation.
      */
-    private List<Element> elements;
+    private String rawVersion;
 
     /**
-     * @see #getType()
+     * The version cut in peaces for easier comparison.
      */
-    private Type type = Type.STABLE;
+    private transient ParsedVersion parsed;
 
     /**
      * Used to parse the string representation of the version.
@@ -386,6 +391,55 @@ public String toString()
 
     }
 
+    /**
+     * The result of the parsing of a version string representation.
+     * 
+     * @version $Id$
+     */
+    static final class ParsedVersion
+    {
+        /**
+         * The version cut in peaces.
+         */
+        private final Element[] elements;
+
+        /**
+         * The values of the first elements of the version as long as they are integers (which is generally the case
+         * of all the elements). Used to compare most of the versions without looking at the elements.
+         */
+        private final int[] numbers;
+
+        /**
+         * The type of the version.
+         */
+        private final Type type;
+
+        /**
+         * The hash code of the version.
+         */
+        private final int hashCode;
+
+        /**
+         * @param elements the version cut in peaces
+         * @param type the type of the version
+         */
+        ParsedVersion(List<Element> elements, Type type)
+        {
+            this.elements = elements.toArray(new Element[elements.size()]);
+            this.type = type;
+            this.hashCode = elements.hashCode();
+
+            int length = 0;
+            while (length < this.elements.length && this.elements[length].elementType == Element.ElementType.INT) {
+                ++length;
+            }
+            this.numbers = new int[length];
+            for (int i = 0; i < length; ++i) {
+                this.numbers[i] = (Integer) this.elements[i].value;
+            }
+        }
+    }
+
     /**
      * @param rawVersion the original string representation of the version
      */
@@ -405,13 +459,24 @@ public DefaultVersion(Version version)
     }
 
     /**
-     * Make sure the version has been parsed.
+     * @return the parsed version
      */
-    private void initElements()
+    private ParsedVersion getParsed()
     {
-        if (this.elements == null) {
-            parse();
+        if (this.parsed == null) {
+            WeakReference<ParsedVersion> reference = PARSED.get(this.rawVersion);
+            ParsedVersion parsedVersion = reference != null ? reference.get() : null;
+
+            if (parsedVersion == null) {
+                parsedVersion = parse(this.rawVersion);
+
+                PARSED.put(this.rawVersion, new WeakReference<ParsedVersion>(parsedVersion));
+            }
+
+            this.parsed = parsedVersion;
         }
+
+        return this.parsed;
     }
 
     /**
@@ -424,26 +489,32 @@ private void setVersion(String rawVersion)
 
     /**
      * Parse the string representation of the version into separated elements.
+     * 
+     * @param rawVersion the string representation to parse
+     * @return the parsed version
      */
-    private void parse()
+    private static ParsedVersion parse(String rawVersion)
     {
-        this.elements = new ArrayList<Element>();
+        List<Element> elements = new ArrayList<Element>();
+        Type type = Type.STABLE;
 
         try {
-            for (Tokenizer tokenizer = new Tokenizer(this.rawVersion); tokenizer.next();) {
+            for (Tokenizer tokenizer = new Tokenizer(rawVersion); tokenizer.next();) {
                 Element element = new Element(tokenizer);
-                this.elements.add(element);
+                elements.add(element);
                 if (element.getVersionType() != Type.STABLE) {
-                    this.type = element.getVersionType();
+                    type = element.getVersionType();
                 }
             }
 
-            trimPadding(this.elements);
+            trimPadding(elements);
         } catch (Exception e) {
             // Make sure to never fail no matter what
-            LOGGER.error("Failed to parse version [" + this.rawVersion + "]", e);
-            this.elements.add(new Element(this.rawVersion));
+            LOGGER.error("Failed to parse version [" + rawVersion + "]", e);
+            elements.add(new Element(rawVersion));
         }
+
+        return new ParsedVersion(elements, type);
     }
 
     /**
@@ -467,9 +538,7 @@ private static void trimPadding(List<Element> elements)
     @Override
     public Type getType()
     {
-        initElements();
-
-        return this.type;
+        return getParsed().type;
     }
 
     // Version
@@ -491,9 +560,7 @@ public String toString()
     @Override
     public int hashCode()
     {
-        initElements();
-
-        return this.elements.hashCode();
+        return getParsed().hashCode;
     }
 
     @Override
@@ -546,30 +613,56 @@ public int compareTo(Version version)
      */
     public int compareTo(DefaultVersion version)
     {
-        initElements();
-        version.initElements();
+        ParsedVersion thisVersion = getParsed();
+        ParsedVersion otherVersion = version.getParsed();
 
-        final List<Element> otherElements = version.elements;
+        if (thisVersion == otherVersion) {
+            return 0;
+        }
 
+        // Compare the integers at the beginning of the versions
+        final int[] numbers = thisVersion.numbers;
+        final int[] otherNumbers = otherVersion.numbers;
+
+        int length = Math.min(numbers.length, otherNumbers.length);
+        for (int index = 0; index < length; ++index) {
+            if (numbers[index] != otherNumbers[index]) {
+                return numbers[index] - otherNumbers[index];
+            }
+        }
+
+        // Compare the rest of the elements
+        return compareTo(thisVersion.elements, otherVersion.elements, length);
+    }
+
+    /**
+     * @param elements the elements of the version
+     * @param otherElements the elements of the version to compare
+     * @param start the index of the first element to compare, all the previous ones are equal integers
+     * @return a negative integer, zero, or a positive integer as the first version is less than, equal to, or greater
+     *         than the second version
+     */
+    private static int compareTo(Element[] elements, Element[] otherElements, int start)
+    {
         boolean number = true;
 
         int rel;
 
-        for (int index = 0;; index++) {
-            if (index >= this.elements.size() && index >= otherElements.size()) {
+        for (int index = start;; index++) {
+            if (index >= elements.length && index >= otherElements.length) {
                 return 0;
-            } else if (index >= this.elements.size()) {
+            } else if (index >= elements.length) {
                 return -comparePadding(otherElements, index, null);
-            } else if (index >= otherElements.size()) {
-                return comparePadding(this.elements, index, null);
+            } else if (index >= otherElements.length) {
+                return comparePadding(elements, index, null);
             }
 
-            Element thisElement = this.elements.get(index);
-            Element thatElement = otherElements.get(index);
+            Element thisElement = elements[index];
+            Element thatElement = otherElements[index];
 
             if (thisElement.isNumber() != thatElement.isNumber()) {
                 if (number == thisElement.isNumber()) {
-                    rel = comparePadding(this.elements, index, Boolean.valueOf(number));
+                    rel = comparePadding(elements, index, Boolean.valueOf(number));
                 } else {
                     rel = -comparePadding(otherElements, index, Boolean.valueOf(number));
                 }
@@ -595,12 +688,12 @@ public int compareTo(DefaultVersion version)
      * @param number indicate of the previous element is a number
      * @return the comparison result
      */
-    private static int comparePadding(List<Element> elements, int index, Boolean number)
+    private static int comparePadding(Element[] elements, int index, Boolean number)
     {
         int rel = 0;
 
-        for (Iterator<Element> it = elements.listIterator(index); it.hasNext();) {
-            Element element = it.next();
+        for (int i = index; i < elements.length; ++i) {
+            Element element = elements[i];
             if (number != null && number.booleanValue() != element.isNumber()) {
                 break;
             }
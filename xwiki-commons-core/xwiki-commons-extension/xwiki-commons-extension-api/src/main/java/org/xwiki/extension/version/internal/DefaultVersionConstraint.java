@@ -22,11 +22,14 @@
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.WeakHashMap;
 
 import org.apache.commons.lang3.builder.HashCodeBuilder;
 import org.xwiki.extension.version.IncompatibleVersionConstraintException;
@@ -62,11 +65,28 @@ public class DefaultVersionConstraint implements VersionConstraint
      */
     private static final char RANGE_SEPARATOR = ',';
 
+    /**
+     * The ranges of the already parsed constraints indexed by string representation. The same constraints are
+     * generally parsed many times (extensions descriptors, dependencies, etc.).
+     */
+    private static final Map<String, WeakReference<List<VersionRangeCollection>>> PARSED = Collections
+        .synchronizedMap(new WeakHashMap<String, WeakReference<List<VersionRangeCollection>>>());
+
     /**
      * @see #getRanges()
      */
     private List<VersionRangeCollection> ranges;
 
+    /**
+     * @see #getIntervals()
+     */
+    private transient VersionIntervals intervals;
+
+    /**
+     * Indicate if {@link #intervals} has been initialized.
+     */
+    private transient boolean intervalsInitialized;
+
     /**
      * @see #getVersion()
      */
@@ -118,16 +138,23 @@ private void setConstraint(String rawConstraint)
 
         // Parse
 
-        List<VersionRangeCollection> newRanges = null;
-        try {
-            newRanges = parseRanges(rawConstraint);
-        } catch (InvalidVersionConstraintException e) {
-            // Invalid range syntax, lets use it as version
+        WeakReference<List<VersionRangeCollection>> reference = PARSED.get(rawConstraint);
+        List<VersionRangeCollection> newRanges = reference != null ? reference.get() : null;
+
+        if (newRanges == null) {
+            try {
+                newRanges = Collections.unmodifiableList(parseRanges(rawConstraint));
+            } catch (InvalidVersionConstraintException e) {
+                // Invalid range syntax, lets use it as version
+                newRanges = Collections.emptyList();
+            }
+
+            PARSED.put(rawConstraint, new WeakReference<List<VersionRangeCollection>>(newRanges));
         }
 
         // Version
 
-        if (newRanges == null || newRanges.isEmpty()) {
+        if (newRanges.isEmpty()) {
             this.version = new DefaultVersion(rawConstraint);
             this.ranges = Collections.emptyList();
         } else {
@@ -198,12 +225,55 @@ public Version getVersion()
         return this.version;
     }
 
+    /**
+     * @return the ranges compiled in sorted intervals or null if some of the ranges are not supported or there is no
+     *         range
+     */
+    VersionIntervals getIntervals()
+    {
+        if (!this.intervalsInitialized) {
+            this.intervals = compileRanges();
+            this.intervalsInitialized = true;
+        }
+
+        return this.intervals;
+    }
+
+    /**
+     * @return the ranges compiled in sorted intervals or null if some of the ranges are not supported or there is no
+     *         range
+     */
+    private VersionIntervals compileRanges()
+    {
+        VersionIntervals rangesIntervals = null;
+
+        for (VersionRangeCollection range : this.ranges) {
+            if (!(range instanceof DefaultVersionRangeCollection)) {
+                return null;
+            }
+
+            VersionIntervals rangeIntervals = ((DefaultVersionRangeCollection) range).getIntervals();
+            if (rangeIntervals == null) {
+                return null;
+            }
+
+            rangesIntervals = rangesIntervals == null ? rangeIntervals : rangesIntervals.intersect(rangeIntervals);
+        }
+
+        return rangesIntervals;
+    }
+
     @Override
     public boolean containsVersion(Version version)
     {
         if (this.ranges.isEmpty()) {
             return this.version != null && this.version.equals(version);
         } else {
+            VersionIntervals versionIntervals = getIntervals();
+            if (versionIntervals != null) {
+                return versionIntervals.containsVersion(version);
+            }
+
             for (VersionRange range : this.ranges) {
                 if (!range.containsVersion(version)) {
                     return false;
@@ -236,7 +306,7 @@ public VersionConstraint merge(VersionConstraint versionConstraint) throws Incom
         } else {
             VersionConstraint mergedConstraint = mergeVersions(versionConstraint);
 
-            return mergedConstraint == null ? mergeRanges(versionConstraint.getRanges()) : mergedConstraint;
+            return mergedConstraint == null ? mergeRanges(versionConstraint) : mergedConstraint;
         }
     }
 
@@ -284,24 +354,48 @@ private VersionConstraint mergeVersions(VersionConstraint versionConstraintWithV
      * Create a new {@link DefaultVersionConstraint} instance which is the combination of the provided version ranges
      * and this version ranges.
      * 
-     * @param otherRanges the version ranges to merge with this version ranges
+     * @param versionConstraint the version constraint containing the version ranges to merge with this version ranges
      * @return the new {@link DefaultVersionConstraint}
      * @throws IncompatibleVersionConstraintException the provided version and version ranges are not compatible with
      *             this version constraint
      */
-    // TODO: some optimizations to do like removing unnecessary ranges and avoid validating twice the same ranges
-    private DefaultVersionConstraint mergeRanges(Collection<VersionRangeCollection> otherRanges)
+    // TODO: avoid validating twice the same ranges
+    private DefaultVersionConstraint mergeRanges(VersionConstraint versionConstraint)
         throws IncompatibleVersionConstraintException
     {
+        Collection<VersionRangeCollection> otherRanges = versionConstraint.getRanges();
+
         // Validate
         validateCompatibility(otherRanges);
 
-        Collection<VersionRangeCollection> newRanges =
+        List<VersionRangeCollection> newRanges =
             new ArrayList<VersionRangeCollection>(this.ranges.size() + otherRanges.size());
         newRanges.addAll(this.ranges);
-        newRanges.addAll(otherRanges);
+        for (VersionRangeCollection otherRange : otherRanges) {
+            // Skip ranges already part of the constraint
+            if (!newRanges.contains(otherRange)) {
+                newRanges.add(otherRange);
+            }
+        }
+
+        if (newRanges.size() == this.ranges.size()) {
+            return this;
+        }
+
+        DefaultVersionConstraint mergedConstraint = new DefaultVersionConstraint(newRanges, null);
+
+        // Reuse already compiled ranges
+        if (versionConstraint instanceof DefaultVersionConstraint) {
+            VersionIntervals thisIntervals = getIntervals();
+            VersionIntervals otherIntervals = ((DefaultVersionConstraint) versionConstraint).getIntervals();
+
+            if (thisIntervals != null && otherIntervals != null) {
+                mergedConstraint.intervals = thisIntervals.intersect(otherIntervals);
+                mergedConstraint.intervalsInitialized = true;
+            }
+        }
 
-        return new DefaultVersionConstraint(newRanges, null);
+        return mergedConstraint;
     }
 
     /**
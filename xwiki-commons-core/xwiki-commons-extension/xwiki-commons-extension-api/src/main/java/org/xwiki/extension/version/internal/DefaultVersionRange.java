@@ -189,6 +189,38 @@ private boolean findUpperBoundInclusive(String range) throws InvalidVersionRange
         }
     }
 
+    /**
+     * @return the minimum version, null if there is no minimum
+     */
+    Version getLowerBound()
+    {
+        return this.lowerBound;
+    }
+
+    /**
+     * @return true if the minimum version is included in the range
+     */
+    boolean isLowerBoundInclusive()
+    {
+        return this.lowerBoundInclusive;
+    }
+
+    /**
+     * @return the maximum version, null if there is no maximum
+     */
+    Version getUpperBound()
+    {
+        return this.upperBound;
+    }
+
+    /**
+     * @return true if the maximum version is included in the range
+     */
+    boolean isUpperBoundInclusive()
+    {
+        return this.upperBoundInclusive;
+    }
+
     @Override
     public boolean containsVersion(Version version)
     {
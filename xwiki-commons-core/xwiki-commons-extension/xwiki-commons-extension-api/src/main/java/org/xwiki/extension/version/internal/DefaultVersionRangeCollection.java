@@ -65,6 +65,16 @@ public class DefaultVersionRangeCollection implements VersionRangeCollection
      */
     private String value;
 
+    /**
+     * @see #getIntervals()
+     */
+    private transient VersionIntervals intervals;
+
+    /**
+     * Indicate if {@link #intervals} has been initialized.
+     */
+    private transient boolean intervalsInitialized;
+
     /**
      * @param rawRanges the version ranges to parse
      * @throws InvalidVersionRangeException error when parsing version range
@@ -161,9 +171,27 @@ public Collection<VersionRange> getRanges()
         return this.ranges;
     }
 
+    /**
+     * @return the ranges compiled in sorted intervals or null if some of the ranges are not supported
+     */
+    VersionIntervals getIntervals()
+    {
+        if (!this.intervalsInitialized) {
+            this.intervals = VersionIntervals.union(this.ranges);
+            this.intervalsInitialized = true;
+        }
+
+        return this.intervals;
+    }
+
     @Override
     public boolean containsVersion(Version version)
     {
+        VersionIntervals versionIntervals = getIntervals();
+        if (versionIntervals != null) {
+            return versionIntervals.containsVersion(version);
+        }
+
         for (VersionRange range : getRanges()) {
             if (range.containsVersion(version)) {
                 return true;
@@ -0,0 +1,328 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.extension.version.internal;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.xwiki.extension.version.Version;
+import org.xwiki.extension.version.VersionRange;
+
+/**
+ * A sorted list of disjoint version intervals, the compiled form of {@link DefaultVersionRangeCollection} and
+ * {@link DefaultVersionConstraint} used to quickly find if a version is part of them.
+ * 
+ * @version $Id$
+ * @since 6.0M1
+ */
+final class VersionIntervals
+{
+    /**
+     * Sort intervals by minimum version.
+     */
+    private static final Comparator<Interval> LOWER_COMPARATOR = new Comparator<Interval>()
+    {
+        @Override
+        public int compare(Interval interval1, Interval interval2)
+        {
+            return compareLower(interval1, interval2);
+        }
+    };
+
+    /**
+     * A continuous interval of versions.
+     * 
+     * @version $Id$
+     */
+    private static final class Interval
+    {
+        /**
+         * The minimum version, null if there is no minimum.
+         */
+        private final DefaultVersion lower;
+
+        /**
+         * Indicate if the minimum version is included in the interval.
+         */
+        private final boolean lowerInclusive;
+
+        /**
+         * The maximum version, null if there is no maximum.
+         */
+        private final DefaultVersion upper;
+
+        /**
+         * Indicate if the maximum version is included in the interval.
+         */
+        private final boolean upperInclusive;
+
+        /**
+         * @param lower the minimum version
+         * @param lowerInclusive indicate if the minimum version is included in the interval
+         * @param upper the maximum version
+         * @param upperInclusive indicate if the maximum version is included in the interval
+         */
+        Interval(DefaultVersion lower, boolean lowerInclusive, DefaultVersion upper, boolean upperInclusive)
+        {
+            this.lower = lower;
+            this.lowerInclusive = lowerInclusive;
+            this.upper = upper;
+            this.upperInclusive = upperInclusive;
+        }
+
+        /**
+         * @return true if no version can be part of the interval
+         */
+        boolean isEmpty()
+        {
+            if (this.lower != null && this.upper != null) {
+                int comparison = this.lower.compareTo(this.upper);
+
+                return comparison > 0 || (comparison == 0 && !(this.lowerInclusive && this.upperInclusive));
+            }
+
+            return false;
+        }
+
+        /**
+         * @param version the version to search
+         * @return true if the version is part of the interval
+         */
+        boolean containsVersion(DefaultVersion version)
+        {
+            if (this.lower != null) {
+                int comparison = this.lower.compareTo(version);
+
+                if (comparison > 0 || (comparison == 0 && !this.lowerInclusive)) {
+                    return false;
+                }
+            }
+
+            if (this.upper != null) {
+                int comparison = this.upper.compareTo(version);
+
+                if (comparison < 0 || (comparison == 0 && !this.upperInclusive)) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+    }
+
+    /**
+     * The intervals sorted by minimum version.
+     */
+    private final Interval[] intervals;
+
+    /**
+     * @param intervals the intervals sorted by minimum version
+     */
+    private VersionIntervals(List<Interval> intervals)
+    {
+        this.intervals = intervals.toArray(new Interval[intervals.size()]);
+    }
+
+    /**
+     * @param ranges the ranges linked with OR logic operation
+     * @return the compiled ranges or null if some of them are not supported
+     */
+    static VersionIntervals union(Collection< ? extends VersionRange> ranges)
+    {
+        List<Interval> sortedIntervals = new ArrayList<Interval>(ranges.size());
+        for (VersionRange range : ranges) {
+            if (!(range instanceof DefaultVersionRange)) {
+                return null;
+            }
+
+            DefaultVersionRange defaultRange = (DefaultVersionRange) range;
+            Interval interval =
+                new Interval(toDefaultVersion(defaultRange.getLowerBound()), defaultRange.isLowerBoundInclusive(),
+                    toDefaultVersion(defaultRange.getUpperBound()), defaultRange.isUpperBoundInclusive());
+            if (!interval.isEmpty()) {
+                sortedIntervals.add(interval);
+            }
+        }
+
+        Collections.sort(sortedIntervals, LOWER_COMPARATOR);
+
+        // Merge overlapping intervals
+        List<Interval> intervals = new ArrayList<Interval>(sortedIntervals.size());
+        Interval current = null;
+        for (Interval interval : sortedIntervals) {
+            if (current == null) {
+                current = interval;
+            } else if (isContinuous(current, interval)) {
+                if (compareUpper(interval, current) > 0) {
+                    current = new Interval(current.lower, current.lowerInclusive, interval.upper,
+                        interval.upperInclusive);
+                }
+            } else {
+                intervals.add(current);
+                current = interval;
+            }
+        }
+        if (current != null) {
+            intervals.add(current);
+        }
+
+        return new VersionIntervals(intervals);
+    }
+
+    /**
+     * @param version the version
+     * @return the {@link DefaultVersion} corresponding to the passed version
+     */
+    private static DefaultVersion toDefaultVersion(Version version)
+    {
+        if (version == null || version instanceof DefaultVersion) {
+            return (DefaultVersion) version;
+        }
+
+        return new DefaultVersion(version.getValue());
+    }
+
+    /**
+     * @param interval1 the first interval
+     * @param interval2 the second interval
+     * @return a negative integer, zero, or a positive integer as the first interval starts before, with, or after
+     *         the second interval
+     */
+    private static int compareLower(Interval interval1, Interval interval2)
+    {
+        if (interval1.lower == null) {
+            return interval2.lower == null ? 0 : -1;
+        } else if (interval2.lower == null) {
+            return 1;
+        }
+
+        int comparison = interval1.lower.compareTo(interval2.lower);
+        if (comparison == 0 && interval1.lowerInclusive != interval2.lowerInclusive) {
+            comparison = interval1.lowerInclusive ? -1 : 1;
+        }
+
+        return comparison;
+    }
+
+    /**
+     * @param interval1 the first interval
+     * @param interval2 the second interval
+     * @return a negative integer, zero, or a positive integer as the first interval ends before, with, or after the
+     *         second interval
+     */
+    private static int compareUpper(Interval interval1, Interval interval2)
+    {
+        if (interval1.upper == null) {
+            return interval2.upper == null ? 0 : 1;
+        } else if (interval2.upper == null) {
+            return -1;
+        }
+
+        int comparison = interval1.upper.compareTo(interval2.upper);
+        if (comparison == 0 && interval1.upperInclusive != interval2.upperInclusive) {
+            comparison = interval1.upperInclusive ? 1 : -1;
+        }
+
+        return comparison;
+    }
+
+    /**
+     * @param interval the first interval
+     * @param nextInterval an interval which does not start before the first interval
+     * @return true if the two intervals overlap or there is no version between them
+     */
+    private static boolean isContinuous(Interval interval, Interval nextInterval)
+    {
+        if (interval.upper == null || nextInterval.lower == null) {
+            return true;
+        }
+
+        int comparison = interval.upper.compareTo(nextInterval.lower);
+
+        return comparison > 0 || (comparison == 0 && (interval.upperInclusive || nextInterval.lowerInclusive));
+    }
+
+    /**
+     * @param otherIntervals the intervals to combine with these intervals with AND logic operation
+     * @return the versions part of both intervals
+     */
+    VersionIntervals intersect(VersionIntervals otherIntervals)
+    {
+        List<Interval> newIntervals = new ArrayList<Interval>();
+
+        int index = 0;
+        int otherIndex = 0;
+        while (index < this.intervals.length && otherIndex < otherIntervals.intervals.length) {
+            Interval interval = this.intervals[index];
+            Interval otherInterval = otherIntervals.intervals[otherIndex];
+
+            Interval lowerInterval = compareLower(interval, otherInterval) >= 0 ? interval : otherInterval;
+            int upperComparison = compareUpper(interval, otherInterval);
+            Interval upperInterval = upperComparison <= 0 ? interval : otherInterval;
+
+            Interval newInterval =
+                new Interval(lowerInterval.lower, lowerInterval.lowerInclusive, upperInterval.upper,
+                    upperInterval.upperInclusive);
+            if (!newInterval.isEmpty()) {
+                newIntervals.add(newInterval);
+            }
+
+            // Move forward the interval which ends first
+            if (upperComparison <= 0) {
+                ++index;
+            }
+            if (upperComparison >= 0) {
+                ++otherIndex;
+            }
+        }
+
+        return new VersionIntervals(newIntervals);
+    }
+
+    /**
+     * @param version the version to search
+     * @return true if the version is part of one of the intervals
+     */
+    boolean containsVersion(Version version)
+    {
+        DefaultVersion defaultVersion = toDefaultVersion(version);
+
+        // Find the last interval starting before the version
+        int low = 0;
+        int high = this.intervals.length - 1;
+        int index = -1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            Interval interval = this.intervals[middle];
+
+            if (interval.lower == null || interval.lower.compareTo(defaultVersion) <= 0) {
+                index = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+
+        return index >= 0 && this.intervals[index].containsVersion(defaultVersion);
+    }
+}
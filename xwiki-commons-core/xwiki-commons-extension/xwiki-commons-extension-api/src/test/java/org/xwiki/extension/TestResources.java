@@ -63,6 +63,11 @@
     public static final ExtensionId REMOTE_WITHRANDCDEPENDENCIES_ID = new ExtensionId("rwithrandcdependencies",
         "version");
 
+    public static final ExtensionId REMOTE_MISSINGFILE_ID = new ExtensionId("rmissingfile", "version");
+
+    public static final ExtensionId REMOTE_WITHMISSINGFILEDEPENDENCY_ID = new ExtensionId(
+        "rwithmissingfiledependency", "version");
+
     public static final ExtensionId REMOTE_UPGRADE10_ID = new ExtensionId("upgrade", "1.0");
 
     public static final ExtensionId REMOTE_UPGRADE20_ID = new ExtensionId("upgrade", "2.0");
@@ -73,6 +78,10 @@
     public static final ExtensionId REMOTE_UPGRADEWITHDEPENDENCY20_ID =
         new ExtensionId("upgrade-withdependency", "2.0");
 
+    public static final ExtensionId REMOTE_UPGRADEATTEMPT10_ID = new ExtensionId("attemptupgrade", "1.0");
+
+    public static final ExtensionId REMOTE_UPGRADEATTEMPT20_ID = new ExtensionId("attemptupgrade", "2.0");
+
     public static final ExtensionId REMOTE_UNSUPPORTED_ID = new ExtensionId("unsupported", "version");
 
     public static final ExtensionId REMOTE_NOTINSTALLED_ID = new ExtensionId("notinstalledextension", "2.0");
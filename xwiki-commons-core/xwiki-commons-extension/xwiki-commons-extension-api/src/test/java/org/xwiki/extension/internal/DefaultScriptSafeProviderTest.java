@@ -19,6 +19,11 @@
  */
 package org.xwiki.extension.internal;
 
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.LinkedHashMap;
@@ -30,10 +35,14 @@
 import org.junit.Assert;
 import org.junit.Rule;
 import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.xwiki.component.util.DefaultParameterizedType;
 import org.xwiki.extension.internal.safe.CollectionScriptSafeProvider;
 import org.xwiki.extension.internal.safe.DefaultScriptSafeProvider;
 import org.xwiki.extension.internal.safe.MapScriptSafeProvider;
 import org.xwiki.extension.internal.safe.ScriptSafeProvider;
+import org.xwiki.extension.wrap.AbstractWrappingObject;
 import org.xwiki.test.annotation.ComponentList;
 import org.xwiki.test.mockito.MockitoComponentMockingRule;
 
@@ -95,4 +104,62 @@ public void testGetMap() throws Exception
         // Make sure order is kept
         Assert.assertEquals(unsafe.toString(), safe.toString());
     }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testGetWrapperIsReused() throws Exception
+    {
+        ScriptSafeProvider<Object> provider =
+            this.mocker.registerMockComponent(new DefaultParameterizedType(null, ScriptSafeProvider.class,
+                UnsafeObject.class));
+        when(provider.get(any())).thenAnswer(new Answer<Object>()
+        {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable
+            {
+                return new SafeObject((UnsafeObject) invocation.getArguments()[0]);
+            }
+        });
+
+        UnsafeObject unsafe = new UnsafeObject();
+        Object safe = this.mocker.getComponentUnderTest().get(unsafe);
+
+        Assert.assertTrue(safe instanceof SafeObject);
+        Assert.assertSame(safe, this.mocker.getComponentUnderTest().get(unsafe));
+        Assert.assertNotSame(safe, this.mocker.getComponentUnderTest().get(new UnsafeObject()));
+
+        verify(provider, times(2)).get(any());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testGetWithNewProvider() throws Exception
+    {
+        DefaultScriptSafeProvider safeProvider = (DefaultScriptSafeProvider) this.mocker.getComponentUnderTest();
+
+        UnsafeObject unsafe = new UnsafeObject();
+
+        Assert.assertSame(unsafe, safeProvider.get(unsafe));
+
+        ScriptSafeProvider<Object> provider =
+            this.mocker.registerMockComponent(new DefaultParameterizedType(null, ScriptSafeProvider.class,
+                UnsafeObject.class));
+        when(provider.get(unsafe)).thenReturn(new SafeObject(unsafe));
+
+        safeProvider.clearCache();
+
+        Assert.assertTrue(safeProvider.get(unsafe) instanceof SafeObject);
+    }
+
+    public static class UnsafeObject
+    {
+    }
+
+    public static class SafeObject extends AbstractWrappingObject<UnsafeObject>
+    {
+        public SafeObject(UnsafeObject unsafe)
+        {
+            super(unsafe);
+        }
+    }
 }
@@ -0,0 +1,89 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.extension.internal;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import javax.inject.Provider;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.xwiki.component.event.ComponentDescriptorAddedEvent;
+import org.xwiki.component.util.DefaultParameterizedType;
+import org.xwiki.extension.ExtensionId;
+import org.xwiki.extension.event.ExtensionUninstalledEvent;
+import org.xwiki.extension.internal.safe.DefaultScriptSafeProvider;
+import org.xwiki.extension.internal.safe.ScriptSafeProvider;
+import org.xwiki.extension.internal.safe.ScriptSafeProviderCacheListener;
+import org.xwiki.observation.EventListener;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+/**
+ * Unit tests for {@link ScriptSafeProviderCacheListener}.
+ * 
+ * @version $Id$
+ */
+public class ScriptSafeProviderCacheListenerTest
+{
+    @Rule
+    public MockitoComponentMockingRule<EventListener> mocker = new MockitoComponentMockingRule<EventListener>(
+        ScriptSafeProviderCacheListener.class);
+
+    private DefaultScriptSafeProvider safeProvider;
+
+    @Before
+    public void before() throws Exception
+    {
+        this.safeProvider = mock(DefaultScriptSafeProvider.class);
+
+        Provider<ScriptSafeProvider< ? >> provider =
+            this.mocker.getInstance(new DefaultParameterizedType(null, Provider.class, ScriptSafeProvider.class));
+        when(provider.get()).thenReturn(this.safeProvider);
+    }
+
+    @Test
+    public void testOnComponentEvents() throws Exception
+    {
+        this.mocker.getComponentUnderTest().onEvent(new ComponentDescriptorAddedEvent(String.class, "default"), null,
+            null);
+
+        verify(this.safeProvider, never()).clearCache();
+
+        this.mocker.getComponentUnderTest().onEvent(
+            new ComponentDescriptorAddedEvent(new DefaultParameterizedType(null, ScriptSafeProvider.class,
+                String.class), "default"), null, null);
+
+        verify(this.safeProvider, times(1)).clearCache();
+    }
+
+    @Test
+    public void testOnExtensionUninstalled() throws Exception
+    {
+        this.mocker.getComponentUnderTest().onEvent(new ExtensionUninstalledEvent(new ExtensionId("id", "1.0"), null),
+            null, null);
+
+        verify(this.safeProvider, times(1)).clearCache();
+    }
+}
@@ -25,6 +25,7 @@
 import org.xwiki.extension.LocalExtension;
 import org.xwiki.extension.TestResources;
 import org.xwiki.extension.handler.ExtensionHandler;
+import org.xwiki.extension.repository.LocalExtensionRepositoryException;
 import org.xwiki.extension.test.AbstractExtensionHandlerTest;
 import org.xwiki.extension.test.TestExtensionHandler;
 
@@ -180,4 +181,29 @@ public void testDowngradeFirstOnRoot() throws Throwable
         Assert.assertNotNull(this.installedExtensionRepository.getInstalledExtension(
             TestResources.REMOTE_UPGRADE20_ID.getId(), "namespace"));
     }
+
+    @Test
+    public void testInstallWithFailingDownload() throws Throwable
+    {
+        try {
+            install(TestResources.REMOTE_WITHMISSINGFILEDEPENDENCY_ID);
+
+            Assert.fail("Install should have failed");
+        } catch (LocalExtensionRepositoryException expected) {
+            // expected
+        }
+
+        // The actions preceding the failed download are applied
+        InstalledExtension installedExtension =
+            this.installedExtensionRepository.getInstalledExtension(TestResources.REMOTE_SIMPLE_ID.getId(), null);
+        Assert.assertNotNull(installedExtension);
+        Assert.assertTrue(this.handler.getExtensions().get(null).contains(installedExtension));
+
+        // The failed extension and the following ones are not installed
+        Assert.assertFalse(this.localExtensionRepository.exists(TestResources.REMOTE_MISSINGFILE_ID));
+        Assert.assertNull(this.installedExtensionRepository.getInstalledExtension(
+            TestResources.REMOTE_MISSINGFILE_ID.getId(), null));
+        Assert.assertNull(this.installedExtensionRepository.getInstalledExtension(
+            TestResources.REMOTE_WITHMISSINGFILEDEPENDENCY_ID.getId(), null));
+    }
 }
@@ -0,0 +1,76 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.extension.job.internal;
+
+import java.util.Iterator;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xwiki.extension.ExtensionId;
+import org.xwiki.extension.TestResources;
+import org.xwiki.extension.job.plan.ExtensionPlan;
+import org.xwiki.extension.job.plan.ExtensionPlanAction;
+import org.xwiki.extension.job.plan.ExtensionPlanAction.Action;
+import org.xwiki.extension.job.plan.ExtensionPlanNode;
+import org.xwiki.extension.test.AbstractExtensionHandlerTest;
+
+public class UninstallPlanJobTest extends AbstractExtensionHandlerTest
+{
+    private void assertNode(ExtensionId extensionId, String namespace, ExtensionPlanNode node)
+    {
+        Assert.assertEquals(extensionId, node.getAction().getExtension().getId());
+        Assert.assertEquals(Action.UNINSTALL, node.getAction().getAction());
+        Assert.assertEquals(namespace, node.getAction().getNamespace());
+    }
+
+    @Test
+    public void testUninstallPlanWithBackwardDependencies() throws Throwable
+    {
+        ExtensionPlan plan = uninstallPlan(TestResources.INSTALLED_DEPENDENCY_ID, null);
+
+        // Tree
+
+        Assert.assertEquals(1, plan.getTree().size());
+
+        ExtensionPlanNode node = plan.getTree().iterator().next();
+
+        assertNode(TestResources.INSTALLED_DEPENDENCY_ID, null, node);
+        Assert.assertEquals(1, node.getChildren().size());
+
+        // The extensions depending on the backward dependency are its own children
+        node = node.getChildren().iterator().next();
+
+        assertNode(TestResources.INSTALLED_ID, null, node);
+        Assert.assertEquals(1, node.getChildren().size());
+
+        ExtensionPlanNode childNode = node.getChildren().iterator().next();
+
+        assertNode(TestResources.INSTALLED_ONNAMESPACEWITHROOTDEPENDENCY_ID, "namespace", childNode);
+        Assert.assertTrue(childNode.getChildren().isEmpty());
+
+        // Actions
+
+        Assert.assertEquals(3, plan.getActions().size());
+
+        Iterator<ExtensionPlanAction> actions = plan.getActions().iterator();
+        Assert.assertSame(childNode.getAction(), actions.next());
+        Assert.assertSame(node.getAction(), actions.next());
+    }
+}
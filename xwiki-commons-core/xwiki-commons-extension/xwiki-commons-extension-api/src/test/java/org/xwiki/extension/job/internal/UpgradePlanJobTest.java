@@ -135,6 +135,75 @@ public void testUpgradePlanWithDependencyOnRoot() throws Throwable
         Assert.assertSame(action, actionIterator.next());
     }
 
+    @Test
+    public void testUpgradePlanAfterFailedAttempt() throws Throwable
+    {
+        // install first version
+        install(TestResources.REMOTE_UPGRADEATTEMPT10_ID);
+
+        // check upgrade: 3.0 depends on a missing extension so 2.0 is selected
+
+        ExtensionPlan plan = upgradePlan(null);
+
+        // Tree
+        // ////////
+
+        Assert.assertEquals(1, plan.getTree().size());
+
+        ExtensionPlanNode node = plan.getTree().iterator().next();
+
+        ExtensionPlanAction action = node.getAction();
+
+        Assert.assertEquals(TestResources.REMOTE_UPGRADEATTEMPT20_ID, action.getExtension().getId());
+        Assert.assertEquals(Action.UPGRADE, action.getAction());
+        Assert.assertNull(action.getNamespace());
+
+        // Only the dependency of the successful attempt is part of the plan
+        Assert.assertEquals(1, node.getChildren().size());
+
+        ExtensionPlanNode childNode = node.getChildren().iterator().next();
+
+        ExtensionPlanAction childAction = childNode.getAction();
+
+        Assert.assertEquals(TestResources.REMOTE_SIMPLE_ID, childAction.getExtension().getId());
+        Assert.assertEquals(Action.INSTALL, childAction.getAction());
+        Assert.assertEquals(0, childNode.getChildren().size());
+
+        // Actions
+        // ////////
+
+        Assert.assertEquals(2, plan.getActions().size());
+
+        Iterator<ExtensionPlanAction> actionIterator = plan.getActions().iterator();
+
+        Assert.assertSame(childAction, actionIterator.next());
+        Assert.assertSame(action, actionIterator.next());
+    }
+
+    @Test
+    public void testUpgradePlanAfterFailedAttemptWithOtherUpgrade() throws Throwable
+    {
+        // install first versions
+        install(TestResources.REMOTE_UPGRADEATTEMPT10_ID);
+        install(TestResources.REMOTE_UPGRADE10_ID);
+
+        // check upgrade: the failed attempt on attemptupgrade 3.0 does not affect the other upgrades
+
+        ExtensionPlan plan = upgradePlan(null);
+
+        Assert.assertEquals(2, plan.getTree().size());
+        Assert.assertEquals(3, plan.getActions().size());
+
+        Iterator<ExtensionPlanNode> iterator = plan.getTree().iterator();
+        while (iterator.hasNext()) {
+            ExtensionPlanAction action = iterator.next().getAction();
+
+            Assert.assertEquals(Action.UPGRADE, action.getAction());
+            Assert.assertTrue(action.getExtension().getId().equals(TestResources.REMOTE_UPGRADEATTEMPT20_ID)
+                || action.getExtension().getId().equals(TestResources.REMOTE_UPGRADE20_ID));
+        }
+    }
+
     @Test
     public void testUpgradePlanWithDependencyOnNamespace() throws Throwable
     {
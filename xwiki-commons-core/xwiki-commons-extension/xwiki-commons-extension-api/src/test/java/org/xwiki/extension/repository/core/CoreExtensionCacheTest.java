@@ -0,0 +1,262 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.extension.repository.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.Model;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.xwiki.extension.DefaultExtensionAuthor;
+import org.xwiki.extension.ExtensionDependency;
+import org.xwiki.extension.ExtensionId;
+import org.xwiki.extension.ExtensionLicense;
+import org.xwiki.extension.internal.DefaultExtensionLicenseManager;
+import org.xwiki.extension.repository.internal.core.CoreExtensionCache;
+import org.xwiki.extension.repository.internal.core.DefaultCoreExtension;
+import org.xwiki.extension.repository.internal.core.MavenCoreExtension;
+import org.xwiki.extension.repository.internal.core.MavenCoreExtensionDependency;
+import org.xwiki.extension.version.internal.DefaultVersionConstraint;
+
+/**
+ * Unit tests for {@link CoreExtensionCache}.
+ * 
+ * @version $Id$
+ */
+public class CoreExtensionCacheTest
+{
+    private static class SerializableInvocationHandler implements InvocationHandler, Serializable
+    {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args)
+        {
+            return null;
+        }
+    }
+
+    private File folder;
+
+    private DefaultExtensionLicenseManager licenseManager;
+
+    private CoreExtensionCache cache;
+
+    @Before
+    public void before()
+    {
+        this.folder = new File("target/test-corecache-" + new Date().getTime());
+        this.folder.mkdirs();
+
+        this.licenseManager = new DefaultExtensionLicenseManager();
+        this.licenseManager.addLicense(new ExtensionLicense("knownlicense", Arrays.asList("known content")));
+
+        this.cache = new CoreExtensionCache(this.folder, this.licenseManager);
+    }
+
+    @After
+    public void after() throws IOException
+    {
+        FileUtils.deleteDirectory(this.folder);
+    }
+
+    private Map<String, DefaultCoreExtension> createExtensions() throws Exception
+    {
+        Map<String, DefaultCoreExtension> extensions = new HashMap<String, DefaultCoreExtension>();
+
+        Dependency mavenDependency = new Dependency();
+        mavenDependency.setGroupId("groupid");
+        mavenDependency.setArtifactId("dependency");
+        mavenDependency.setVersion("1.0");
+
+        Model model = new Model();
+        model.setGroupId("groupid");
+        model.setArtifactId("artifactid");
+        model.setVersion("1.0");
+        model.addDependency(mavenDependency);
+
+        MavenCoreExtension mavenExtension =
+            new MavenCoreExtension(null, new URL("file:/lib/artifactid-1.0.jar"), new ExtensionId(
+                "groupid:artifactid", "1.0"), "jar", model);
+        mavenExtension.setName("name");
+        mavenExtension.setSummary("summary");
+        mavenExtension.setWebsite("http://website");
+        mavenExtension.setFeatures(Arrays.asList("feature"));
+        mavenExtension.addAuthor(new DefaultExtensionAuthor("author", new URL("http://author")));
+        mavenExtension.addAuthor(new DefaultExtensionAuthor("author2", null));
+        mavenExtension.addLicense(this.licenseManager.getLicense("knownlicense"));
+        mavenExtension.addLicense(new ExtensionLicense("customlicense", null));
+        mavenExtension.putProperty("maven.groupId", "groupid");
+        mavenExtension.addDependency(new MavenCoreExtensionDependency("groupid:dependency",
+            new DefaultVersionConstraint("1.0"), mavenDependency));
+        extensions.put(mavenExtension.getId().getId(), mavenExtension);
+
+        DefaultCoreExtension guessedExtension =
+            new DefaultCoreExtension(null, new URL("file:/lib/dependency-1.0.jar"), new ExtensionId(
+                "groupid:dependency", "1.0"), "jar");
+        guessedExtension.setGuessed(true);
+        extensions.put(guessedExtension.getId().getId(), guessedExtension);
+
+        return extensions;
+    }
+
+    // Tests
+
+    @Test
+    public void testWriteRead() throws Exception
+    {
+        Map<String, DefaultCoreExtension> extensions = createExtensions();
+
+        this.cache.write("fingerprint", extensions);
+
+        Map<String, DefaultCoreExtension> cachedExtensions = this.cache.read("fingerprint", null);
+
+        Assert.assertEquals(extensions.keySet(), cachedExtensions.keySet());
+
+        for (DefaultCoreExtension extension : extensions.values()) {
+            DefaultCoreExtension cachedExtension = cachedExtensions.get(extension.getId().getId());
+
+            Assert.assertEquals(extension.getId(), cachedExtension.getId());
+            Assert.assertEquals(extension.getType(), cachedExtension.getType());
+            Assert.assertEquals(extension.getName(), cachedExtension.getName());
+            Assert.assertEquals(extension.getSummary(), cachedExtension.getSummary());
+            Assert.assertEquals(extension.getWebSite(), cachedExtension.getWebSite());
+            Assert.assertEquals(extension.getURL(), cachedExtension.getURL());
+            Assert.assertEquals(extension.isGuessed(), cachedExtension.isGuessed());
+            Assert.assertEquals(extension.getClass(), cachedExtension.getClass());
+            Assert.assertEquals(extension.getFeatures(), cachedExtension.getFeatures());
+            Assert.assertEquals(extension.getAuthors(), cachedExtension.getAuthors());
+            Assert.assertEquals(extension.getLicenses(), cachedExtension.getLicenses());
+            Assert.assertEquals(extension.getDependencies(), cachedExtension.getDependencies());
+            Assert.assertEquals(extension.getProperties().keySet(), cachedExtension.getProperties().keySet());
+        }
+
+        MavenCoreExtension cachedMavenExtension = (MavenCoreExtension) cachedExtensions.get("groupid:artifactid");
+        Assert.assertEquals("artifactid", cachedMavenExtension.getMavenModel().getArtifactId());
+        Assert.assertEquals("groupid", cachedMavenExtension.getProperty("maven.groupId"));
+
+        // The Maven dependency is still the one from the Maven model
+        ExtensionDependency cachedDependency = cachedMavenExtension.getDependencies().iterator().next();
+        Assert.assertSame(cachedMavenExtension.getMavenModel().getDependencies().get(0),
+            ((MavenCoreExtensionDependency) cachedDependency).getMavenDependency());
+
+        // Well known licenses are taken from the license manager
+        Assert.assertEquals(Arrays.asList("known content"), cachedMavenExtension.getLicenses().iterator().next()
+            .getContent());
+    }
+
+    @Test(expected = InvalidClassException.class)
+    public void testReadUnexpectedClass() throws Exception
+    {
+        Map<String, DefaultCoreExtension> extensions = createExtensions();
+        extensions.get("groupid:dependency").putProperty("unexpected", new Date());
+
+        this.cache.write("fingerprint", extensions);
+
+        this.cache.read("fingerprint", null);
+    }
+
+    @Test(expected = InvalidClassException.class)
+    public void testReadProxy() throws Exception
+    {
+        Map<String, DefaultCoreExtension> extensions = createExtensions();
+        extensions.get("groupid:dependency").putProperty("proxy",
+            Proxy.newProxyInstance(getClass().getClassLoader(), new Class< ? >[] {Serializable.class},
+                new SerializableInvocationHandler()));
+
+        this.cache.write("fingerprint", extensions);
+
+        this.cache.read("fingerprint", null);
+    }
+
+    @Test
+    public void testReadWithDifferentFingerprint() throws Exception
+    {
+        Assert.assertNull(this.cache.read("fingerprint", null));
+
+        this.cache.write("fingerprint", createExtensions());
+
+        Assert.assertNull(this.cache.read("otherfingerprint", null));
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadCorrupted() throws Exception
+    {
+        this.cache.write("fingerprint", createExtensions());
+
+        RandomAccessFile file = new RandomAccessFile(this.cache.getFile(), "rw");
+        try {
+            file.seek(file.length() - 10);
+            int b = file.read();
+            file.seek(file.length() - 10);
+            file.write(b ^ 0xFF);
+        } finally {
+            file.close();
+        }
+
+        this.cache.read("fingerprint", null);
+    }
+
+    @Test
+    public void testFingerprint() throws Exception
+    {
+        File jar = new File(this.folder, "lib/extension-1.0.jar");
+        FileUtils.writeStringToFile(jar, "content");
+        File classes = new File(this.folder, "classes");
+        File pom = new File(classes, "META-INF/maven/groupid/artifactid/pom.xml");
+        FileUtils.writeStringToFile(pom, "<project/>");
+
+        URL jarURL = jar.toURI().toURL();
+        URL classesURL = classes.toURI().toURL();
+
+        String fingerprint = CoreExtensionCache.fingerprint(Arrays.asList(jarURL, classesURL));
+
+        Assert.assertNotNull(fingerprint);
+        Assert.assertEquals(fingerprint, CoreExtensionCache.fingerprint(Arrays.asList(classesURL, jarURL)));
+
+        FileUtils.writeStringToFile(jar, "modified content");
+        String jarModifiedFingerprint = CoreExtensionCache.fingerprint(Arrays.asList(jarURL, classesURL));
+        Assert.assertFalse(fingerprint.equals(jarModifiedFingerprint));
+
+        FileUtils.writeStringToFile(pom, "<project></project>");
+        Assert.assertFalse(jarModifiedFingerprint.equals(CoreExtensionCache.fingerprint(Arrays.asList(jarURL,
+            classesURL))));
+
+        Assert.assertNull(CoreExtensionCache.fingerprint(Collections.singletonList(new URL(
+            "http://host/extension.jar"))));
+    }
+}
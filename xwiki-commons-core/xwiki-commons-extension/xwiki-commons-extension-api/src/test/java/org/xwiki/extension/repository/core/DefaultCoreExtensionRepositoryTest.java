@@ -49,6 +49,9 @@ public void setUp() throws Exception
             {
                 allowing(environment).getResourceAsStream(with(any(String.class)));
                 will(returnValue(null));
+                // Don't cache the core extensions
+                allowing(environment).getPermanentDirectory();
+                will(returnValue(null));
             }
         });
 
@@ -19,13 +19,17 @@
  */
 package org.xwiki.extension.repository.installed;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
+import org.apache.commons.io.FileUtils;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Rule;
@@ -49,6 +53,7 @@
 import org.xwiki.extension.repository.search.SearchException;
 import org.xwiki.extension.test.MockitoRepositoryUtilsRule;
 import org.xwiki.extension.test.TestExtensionHandler;
+import org.xwiki.component.descriptor.ComponentDescriptor;
 import org.xwiki.extension.version.internal.DefaultVersionConstraint;
 import org.xwiki.test.annotation.AllComponents;
 import org.xwiki.test.mockito.MockitoComponentManagerRule;
@@ -166,6 +171,82 @@ public void testInit()
         Assert.assertFalse(this.handler.getExtensions().get("namespace").contains(extension));
     }
 
+    private void addInstalledExtension(String id, String... dependencies) throws IOException
+    {
+        StringBuilder xml = new StringBuilder();
+        xml.append("<extension><id>").append(id).append("</id><version>version</version><type>test</type>");
+        xml.append("<installed>true</installed><dependencies>");
+        for (String dependency : dependencies) {
+            xml.append("<dependency><id>").append(dependency).append("</id><version>version</version></dependency>");
+        }
+        xml.append("</dependencies></extension>");
+
+        File folder = this.repositoryUtil.getLocalRepository();
+        FileUtils.write(new File(folder, id + "-version.xed"), xml.toString(), "UTF-8");
+        FileUtils.write(new File(folder, id + "-version.test"), "", "UTF-8");
+    }
+
+    private void reloadRepositories() throws Exception
+    {
+        reloadComponent(LocalExtensionRepository.class);
+        reloadComponent(InstalledExtensionRepository.class);
+
+        this.installedExtensionRepository = this.mocker.getInstance(InstalledExtensionRepository.class);
+    }
+
+    private void reloadComponent(Class< ? > role) throws Exception
+    {
+        ComponentDescriptor< ? > descriptor = this.mocker.getComponentDescriptor(role, "default");
+
+        this.mocker.unregisterComponent(descriptor);
+        this.mocker.registerComponent(descriptor);
+    }
+
+    private void assertInvalid(String id)
+    {
+        InstalledExtension extension = this.installedExtensionRepository.getInstalledExtension(id, null);
+
+        Assert.assertNotNull(extension);
+        Assert.assertFalse(extension.isValid(null));
+    }
+
+    @Test
+    public void testInitWithDependencyCycle() throws Exception
+    {
+        addInstalledExtension("cyclea", "cycleb");
+        addInstalledExtension("cycleb", "cyclea");
+        addInstalledExtension("cycledependent", "cyclea");
+
+        reloadRepositories();
+
+        assertInvalid("cyclea");
+        assertInvalid("cycleb");
+        assertInvalid("cycledependent");
+
+        // Make sure the other extensions are not affected
+        Assert.assertTrue(this.installedExtensionRepository.getInstalledExtension(TestResources.INSTALLED_ID)
+            .isValid(null));
+    }
+
+    @Test
+    public void testInitWithSharedInvalidDependency() throws Exception
+    {
+        addInstalledExtension("sharedinvalid", "missingdependency");
+        addInstalledExtension("shareddependent1", "sharedinvalid");
+        addInstalledExtension("shareddependent2", "sharedinvalid");
+        addInstalledExtension("shareddependent3", "shareddependent1", "shareddependent2");
+
+        reloadRepositories();
+
+        assertInvalid("sharedinvalid");
+        assertInvalid("shareddependent1");
+        assertInvalid("shareddependent2");
+        assertInvalid("shareddependent3");
+
+        Assert.assertTrue(this.installedExtensionRepository.getInstalledExtension(TestResources.INSTALLED_ID)
+            .isValid(null));
+    }
+
     @Test
     public void testGetLocalExtension()
     {
@@ -379,6 +460,40 @@ public void testBackwardDependenciesAfterUninstall() throws ResolveException, Un
             TestResources.INSTALLED_DEPENDENCY_ID.getId(), null));
     }
 
+    @Test
+    public void testBackwardDependenciesClosure() throws ResolveException, UninstallException
+    {
+        InstalledExtension installedonnemspacewithrootdependency =
+            this.installedExtensionRepository
+                .getInstalledExtension(TestResources.INSTALLED_ONNAMESPACEWITHROOTDEPENDENCY_ID);
+
+        Map<String, List<InstalledExtension>> closure =
+            this.installedExtensionRepository.getBackwardDependenciesClosure(TestResources.INSTALLED_DEPENDENCY_ID,
+                null);
+
+        // Root namespace comes last
+        Assert.assertEquals(Arrays.asList("namespace", null), new ArrayList<String>(closure.keySet()));
+        Assert.assertEquals(Arrays.asList(installedonnemspacewithrootdependency), closure.get("namespace"));
+        Assert.assertEquals(Arrays.asList(this.resources.installed), closure.get(null));
+
+        Assert.assertEquals(
+            Collections.singletonMap("namespace", Arrays.asList(installedonnemspacewithrootdependency)),
+            this.installedExtensionRepository.getBackwardDependenciesClosure(TestResources.INSTALLED_ID, "namespace"));
+
+        Map<String, List<InstalledExtension>> unrelatedClosure =
+            this.installedExtensionRepository.getBackwardDependenciesClosure(
+                TestResources.INSTALLED_ONNAMESPACEWITHROOTDEPENDENCY_ID, "namespace");
+
+        this.installedExtensionRepository.uninstallExtension(this.resources.installed, null);
+
+        Assert.assertEquals(Collections.EMPTY_MAP, this.installedExtensionRepository.getBackwardDependenciesClosure(
+            TestResources.INSTALLED_DEPENDENCY_ID, null));
+
+        // Only the closures containing the uninstalled extension are computed again
+        Assert.assertSame(unrelatedClosure, this.installedExtensionRepository.getBackwardDependenciesClosure(
+            TestResources.INSTALLED_ONNAMESPACEWITHROOTDEPENDENCY_ID, "namespace"));
+    }
+
     @Test
     public void testBackwardDependenciesWithExtensionAndDepOnRoot() throws ResolveException
     {
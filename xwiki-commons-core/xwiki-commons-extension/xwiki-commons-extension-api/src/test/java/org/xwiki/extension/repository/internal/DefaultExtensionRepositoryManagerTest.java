@@ -19,22 +19,33 @@
  */
 package org.xwiki.extension.repository.internal;
 
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.mockito.Mockito.withSettings;
 
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
 
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContext;
 import org.xwiki.component.manager.ComponentLookupException;
 import org.xwiki.extension.Extension;
+import org.xwiki.extension.ExtensionId;
 import org.xwiki.extension.ResolveException;
 import org.xwiki.extension.repository.DefaultExtensionRepositoryDescriptor;
 import org.xwiki.extension.repository.ExtensionRepository;
@@ -46,6 +57,12 @@
 import org.xwiki.extension.test.ExtensionUtils;
 import org.xwiki.extension.version.Version;
 import org.xwiki.extension.version.internal.DefaultVersion;
+import org.xwiki.job.Job;
+import org.xwiki.job.JobContext;
+import org.xwiki.job.event.status.JobStatus;
+import org.xwiki.logging.LogQueue;
+import org.xwiki.logging.LoggerManager;
+import org.xwiki.logging.event.LoggerListener;
 import org.xwiki.test.mockito.MockitoComponentMockingRule;
 
 import com.google.common.collect.Lists;
@@ -61,6 +78,8 @@
     public MockitoComponentMockingRule<ExtensionRepositoryManager> mock =
         new MockitoComponentMockingRule<ExtensionRepositoryManager>(DefaultExtensionRepositoryManager.class);
 
+    private DefaultExtensionRepositoryDescriptor descriptor1;
+
     private ExtensionRepository mockRepository1;
 
     private Searchable mockSearchableRepository1;
@@ -83,8 +102,8 @@ public void configure() throws Exception
         this.mockRepository1 =
             mock(ExtensionRepository.class, withSettings().extraInterfaces(Searchable.class).name("repository1"));
         this.mockSearchableRepository1 = (Searchable) this.mockRepository1;
-        when(this.mockRepository1.getDescriptor()).thenReturn(
-            new DefaultExtensionRepositoryDescriptor("repository1", "type", new URI("uri:uri")));
+        this.descriptor1 = new DefaultExtensionRepositoryDescriptor("repository1", "type", new URI("uri:uri"));
+        when(this.mockRepository1.getDescriptor()).thenReturn(this.descriptor1);
         this.mock.getComponentUnderTest().addRepository(this.mockRepository1);
 
         this.mockRepository2 =
@@ -123,20 +142,6 @@ private IterableResult<Extension> toIterableExtensions(Extension... extensions)
         return new CollectionIterableResult<Extension>(extensions.length, 0, Arrays.asList(extensions));
     }
 
-    private void assertSameElements(Iterable< ? > it1, Iterable< ? > it2)
-    {
-        Iterator< ? > i1 = it1.iterator();
-        Iterator< ? > i2 = it2.iterator();
-
-        while (i1.hasNext() && i2.hasNext()) {
-            Object element1 = i1.next();
-            Object element2 = i2.next();
-            if (element1 != element2) {
-                Assert.fail("[" + element1 + "] is not the same as [" + element2 + "]");
-            }
-        }
-    }
-
     private void assertResolveVersions(String id, int offset, int nb, String... versions) throws ResolveException,
         ComponentLookupException
     {
@@ -144,9 +149,28 @@ private void assertResolveVersions(String id, int offset, int nb, String... vers
             Lists.newArrayList(this.mock.getComponentUnderTest().resolveVersions("id", offset, nb)));
     }
 
-    private void assertSearch(String id, int offset, int nb, Extension... extensions) throws ComponentLookupException
+    private void mockSearch(Searchable repository, final Extension... extensions) throws SearchException
     {
-        assertSameElements(Arrays.asList(extensions), this.mock.getComponentUnderTest().search("id", offset, nb));
+        when(repository.search(eq("pattern"), anyInt(), anyInt())).thenAnswer(new Answer<IterableResult<Extension>>()
+        {
+            @Override
+            public IterableResult<Extension> answer(InvocationOnMock invocation) throws Throwable
+            {
+                return RepositoryUtils.getIterableResult((Integer) invocation.getArguments()[1],
+                    (Integer) invocation.getArguments()[2], Arrays.asList(extensions));
+            }
+        });
+    }
+
+    private void assertSearch(String pattern, int offset, int nb, int totalHits, Extension... extensions)
+        throws ComponentLookupException
+    {
+        IterableResult<Extension> result = this.mock.getComponentUnderTest().search(pattern, offset, nb);
+
+        Assert.assertEquals(Arrays.asList(extensions), Lists.newArrayList(result));
+        Assert.assertEquals(extensions.length, result.getSize());
+        Assert.assertEquals(totalHits, result.getTotalHits());
+        Assert.assertEquals(offset, result.getOffset());
     }
 
     // Tests
@@ -165,31 +189,139 @@ public void resolveVersions() throws ResolveException, ComponentLookupException
     @Test
     public void search() throws SearchException, ComponentLookupException
     {
-        when(this.mockSearchableRepository1.search("pattern", 0, -1)).thenReturn(
-            toIterableExtensions(this.extension1, this.extension2));
-        when(this.mockSearchableRepository2.search("pattern", 0, -1)).thenReturn(
-            toIterableExtensions(this.extension3, this.extension4));
-
-        assertSearch("pattern", 0, -1, this.extension1, this.extension2, this.extension3, this.extension4);
-        assertSearch("pattern", 0, 1, this.extension1);
-        assertSearch("pattern", 1, -1, this.extension2, this.extension3, this.extension4);
-
-        when(this.mockSearchableRepository1.search("pattern", 0, -1)).thenReturn(toIterableExtensions());
-        when(this.mockSearchableRepository2.search("pattern", 0, -1)).thenReturn(
-            toIterableExtensions(this.extension3, this.extension4));
-
-        assertSearch("pattern", 0, -1, this.extension3, this.extension4);
-        assertSearch("pattern", 0, 1, this.extension3);
-        assertSearch("pattern", 1, -1, this.extension4);
-
-        when(this.mockSearchableRepository1.search("pattern", 0, -1)).thenReturn(
-            toIterableExtensions(this.extension1, this.extension2));
-        when(this.mockSearchableRepository2.search("pattern", 0, -1)).thenReturn(
-            toIterableExtensions());
-
-        assertSearch("pattern", 0, -1, this.extension1, this.extension2, this.extension3, this.extension4);
-        assertSearch("pattern", 0, 1, this.extension1);
-        assertSearch("pattern", 1, -1, this.extension2, this.extension3, this.extension4);
-        
+        mockSearch(this.mockSearchableRepository1, this.extension1, this.extension2);
+        mockSearch(this.mockSearchableRepository2, this.extension3, this.extension4);
+
+        assertSearch("pattern", 0, -1, 4, this.extension1, this.extension2, this.extension3, this.extension4);
+        assertSearch("pattern", 0, 1, 4, this.extension1);
+        assertSearch("pattern", 0, 3, 4, this.extension1, this.extension2, this.extension3);
+        assertSearch("pattern", 1, -1, 4, this.extension2, this.extension3, this.extension4);
+        assertSearch("pattern", 1, 2, 4, this.extension2, this.extension3);
+        assertSearch("pattern", 3, 1, 4, this.extension4);
+        assertSearch("pattern", 4, 1, 4);
+        assertSearch("pattern", 0, 0, 4);
+
+        mockSearch(this.mockSearchableRepository1);
+        mockSearch(this.mockSearchableRepository2, this.extension3, this.extension4);
+
+        assertSearch("pattern", 0, -1, 2, this.extension3, this.extension4);
+        assertSearch("pattern", 0, 1, 2, this.extension3);
+        assertSearch("pattern", 1, -1, 2, this.extension4);
+
+        mockSearch(this.mockSearchableRepository1, this.extension1, this.extension2);
+        mockSearch(this.mockSearchableRepository2);
+
+        assertSearch("pattern", 0, -1, 2, this.extension1, this.extension2);
+        assertSearch("pattern", 0, 1, 2, this.extension1);
+        assertSearch("pattern", 1, -1, 2, this.extension2);
+    }
+
+    @Test
+    public void searchPageAsksOnlyTheRepositoriesOfThePage() throws SearchException, ComponentLookupException
+    {
+        mockSearch(this.mockSearchableRepository1, this.extension1, this.extension2);
+        mockSearch(this.mockSearchableRepository2, this.extension3, this.extension4);
+
+        assertSearch("pattern", 3, 1, 4, this.extension4);
+
+        // The first repository is only asked for its total hits
+        verify(this.mockSearchableRepository1).search("pattern", 0, 0);
+        verify(this.mockSearchableRepository1, never()).search(eq("pattern"), anyInt(), eq(1));
+        // The second repository is directly asked for the result the page needs
+        verify(this.mockSearchableRepository2).search("pattern", 1, 1);
+    }
+
+    @Test
+    public void searchWithFailingRepository() throws SearchException, ComponentLookupException
+    {
+        when(this.mockSearchableRepository1.search(eq("pattern"), anyInt(), anyInt())).thenThrow(
+            new SearchException("failed"));
+        mockSearch(this.mockSearchableRepository2, this.extension3, this.extension4);
+
+        assertSearch("pattern", 0, -1, 2, this.extension3, this.extension4);
+        assertSearch("pattern", 1, 1, 2, this.extension4);
+    }
+
+    @Test
+    public void resolveReturnsFirstRepositoryResult() throws ResolveException, ComponentLookupException
+    {
+        ExtensionId extensionId = new ExtensionId("id", "version");
+
+        when(this.mockRepository1.resolve(extensionId)).thenReturn(this.extension1);
+        when(this.mockRepository2.resolve(extensionId)).thenReturn(this.extension2);
+
+        Assert.assertSame(this.extension1, this.mock.getComponentUnderTest().resolve(extensionId));
+
+        when(this.mockRepository1.resolve(extensionId)).thenThrow(new ResolveException("not found"));
+
+        Assert.assertSame(this.extension2, this.mock.getComponentUnderTest().resolve(extensionId));
+
+        when(this.mockRepository2.resolve(extensionId)).thenThrow(new ResolveException("not found"));
+
+        try {
+            this.mock.getComponentUnderTest().resolve(extensionId);
+
+            Assert.fail("Should have failed");
+        } catch (ResolveException expected) {
+            // expected
+        }
+    }
+
+    @Test
+    public void resolveWithTimeout() throws ResolveException, ComponentLookupException
+    {
+        this.descriptor1.putProperty(DefaultExtensionRepositoryManager.PROPERTY_TIMEOUT, "100");
+
+        final CountDownLatch answered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        when(this.mockRepository1.resolve(any(ExtensionId.class))).thenAnswer(new Answer<Extension>()
+        {
+            @Override
+            public Extension answer(InvocationOnMock invocation) throws Throwable
+            {
+                release.await();
+                answered.countDown();
+
+                return extension1;
+            }
+        });
+        when(this.mockRepository2.resolve(any(ExtensionId.class))).thenReturn(this.extension2);
+
+        try {
+            Assert.assertSame(this.extension2,
+                this.mock.getComponentUnderTest().resolve(new ExtensionId("id", "version")));
+
+            // The first repository did not answer
+            Assert.assertEquals(1, answered.getCount());
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void resolveWithCallerContext() throws Exception
+    {
+        ExecutionContext context = new ExecutionContext();
+        Execution execution = this.mock.getInstance(Execution.class);
+        when(execution.getContext()).thenReturn(context);
+
+        Job job = mock(Job.class);
+        JobStatus status = mock(JobStatus.class);
+        when(job.getStatus()).thenReturn(status);
+        when(status.getLog()).thenReturn(new LogQueue());
+        when(this.mock.<JobContext>getInstance(JobContext.class).getCurrentJob()).thenReturn(job);
+
+        ExtensionId extensionId = new ExtensionId("id", "version");
+        when(this.mockRepository1.resolve(extensionId)).thenReturn(this.extension1);
+
+        Assert.assertSame(this.extension1, this.mock.getComponentUnderTest().resolve(extensionId));
+
+        // The repository calls are executed with the context and the log capture of the caller
+        verify(execution, atLeastOnce()).setContext(context);
+        verify(execution, atLeastOnce()).removeContext();
+        LoggerManager loggerManager = this.mock.getInstance(LoggerManager.class);
+        verify(loggerManager, atLeastOnce()).pushLogListener(any(LoggerListener.class));
+        verify(loggerManager, atLeastOnce()).popLogListener();
     }
 }
@@ -0,0 +1,197 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.extension.repository.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.xwiki.extension.AbstractExtension;
+import org.xwiki.extension.Extension;
+import org.xwiki.extension.ExtensionId;
+import org.xwiki.extension.repository.result.CollectionIterableResult;
+import org.xwiki.extension.repository.result.IterableResult;
+
+/**
+ * Unit tests for {@link ExtensionSearchIndex}.
+ * 
+ * @version $Id$
+ */
+public class ExtensionSearchIndexTest
+{
+    private ExtensionSearchIndex<Extension> index;
+
+    private TestExtension extension1;
+
+    private TestExtension extension2;
+
+    private TestExtension extension3;
+
+    private static class TestExtension extends AbstractExtension
+    {
+        public TestExtension(String id, String version, String name, String description)
+        {
+            super(null, new ExtensionId(id, version), "type");
+
+            setName(name);
+            setDescription(description);
+        }
+    }
+
+    private static List<Extension> toList(IterableResult<Extension> result)
+    {
+        List<Extension> list = new ArrayList<Extension>();
+        for (Extension extension : result) {
+            list.add(extension);
+        }
+
+        return list;
+    }
+
+    @Before
+    public void setUp()
+    {
+        this.index = new ExtensionSearchIndex<Extension>();
+
+        this.extension1 = new TestExtension("org.xwiki:blog", "1.0", "Blog Application", "Publish\nnews");
+        this.extension2 = new TestExtension("org.xwiki:news", "1.0", "News", "Display the company news");
+        this.extension3 = new TestExtension("org.xwiki:other", "1.0", "Other", "Something else");
+        this.extension3.setFeatures(Arrays.asList("feature-blog"));
+
+        this.index.add(this.extension1);
+        this.index.add(this.extension2);
+        this.index.add(this.extension3);
+    }
+
+    @Test
+    public void searchAll()
+    {
+        CollectionIterableResult<Extension> result = this.index.search(null, 0, -1);
+
+        Assert.assertEquals(3, result.getTotalHits());
+        Assert.assertEquals(Arrays.<Extension> asList(this.extension1, this.extension2, this.extension3),
+            toList(result));
+
+        result = this.index.search("", 1, 1);
+
+        Assert.assertEquals(3, result.getTotalHits());
+        Assert.assertEquals(1, result.getOffset());
+        Assert.assertEquals(Arrays.<Extension> asList(this.extension2), toList(result));
+    }
+
+    @Test
+    public void searchIsCaseInsensitiveAndRanked()
+    {
+        CollectionIterableResult<Extension> result = this.index.search("NEWS", 0, -1);
+
+        Assert.assertEquals(2, result.getTotalHits());
+        // The id match comes first
+        Assert.assertEquals(Arrays.<Extension> asList(this.extension2, this.extension1), toList(result));
+
+        result = this.index.search("blog", 0, -1);
+
+        Assert.assertEquals(Arrays.<Extension> asList(this.extension1, this.extension3), toList(result));
+    }
+
+    @Test
+    public void searchShortAndUnknownPattern()
+    {
+        Assert.assertEquals(3, this.index.search("o", 0, -1).getTotalHits());
+        Assert.assertEquals(0, this.index.search("unknown", 0, -1).getTotalHits());
+        // The pattern must be contained in a single field
+        Assert.assertEquals(0, this.index.search("blogpublish", 0, -1).getTotalHits());
+    }
+
+    @Test
+    public void searchWithPage()
+    {
+        CollectionIterableResult<Extension> result = this.index.search("xwiki", 1, 1);
+
+        Assert.assertEquals(3, result.getTotalHits());
+        Assert.assertEquals(Arrays.<Extension> asList(this.extension2), toList(result));
+
+        result = this.index.search("xwiki", 0, 0);
+
+        Assert.assertEquals(3, result.getTotalHits());
+        Assert.assertTrue(toList(result).isEmpty());
+
+        result = this.index.search("xwiki", 5, 2);
+
+        Assert.assertEquals(3, result.getTotalHits());
+        Assert.assertTrue(toList(result).isEmpty());
+    }
+
+    @Test
+    public void searchWithFilter()
+    {
+        CollectionIterableResult<Extension> result =
+            this.index.search("xwiki", new ExtensionSearchIndex.Filter<Extension>()
+            {
+                @Override
+                public boolean accept(Extension extension)
+                {
+                    return extension != extension2;
+                }
+            }, 0, -1);
+
+        Assert.assertEquals(2, result.getTotalHits());
+        Assert.assertEquals(Arrays.<Extension> asList(this.extension1, this.extension3), toList(result));
+    }
+
+    @Test
+    public void searchInExtensions()
+    {
+        Set<Extension> extensions = new HashSet<Extension>(Arrays.<Extension> asList(this.extension1));
+
+        // Less extensions than candidates
+        CollectionIterableResult<Extension> result = this.index.search("xwiki", extensions, 0, -1);
+
+        Assert.assertEquals(1, result.getTotalHits());
+        Assert.assertEquals(Arrays.<Extension> asList(this.extension1), toList(result));
+
+        // More extensions than candidates
+        extensions.add(this.extension2);
+        extensions.add(this.extension3);
+
+        result = this.index.search("company", extensions, 0, -1);
+
+        Assert.assertEquals(1, result.getTotalHits());
+        Assert.assertEquals(Arrays.<Extension> asList(this.extension2), toList(result));
+    }
+
+    @Test
+    public void remove()
+    {
+        this.index.remove(this.extension1);
+
+        Assert.assertEquals(2, this.index.size());
+        Assert.assertEquals(Arrays.<Extension> asList(this.extension3),
+            toList(this.index.search("blog", 0, -1)));
+
+        this.index.clear();
+
+        Assert.assertEquals(0, this.index.search(null, 0, -1).getTotalHits());
+    }
+}
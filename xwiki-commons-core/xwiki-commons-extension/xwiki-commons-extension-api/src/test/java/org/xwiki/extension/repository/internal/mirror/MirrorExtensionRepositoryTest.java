@@ -0,0 +1,253 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.extension.repository.internal.mirror;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.configuration.internal.MemoryConfigurationSource;
+import org.xwiki.extension.DefaultExtensionDependency;
+import org.xwiki.extension.Extension;
+import org.xwiki.extension.ExtensionId;
+import org.xwiki.extension.ResolveException;
+import org.xwiki.extension.TestResources;
+import org.xwiki.extension.repository.result.IterableResult;
+import org.xwiki.extension.test.FileExtensionRepository;
+import org.xwiki.extension.test.MockitoRepositoryUtilsRule;
+import org.xwiki.extension.version.Version;
+import org.xwiki.extension.version.internal.DefaultVersion;
+import org.xwiki.extension.version.internal.DefaultVersionConstraint;
+import org.xwiki.test.annotation.AllComponents;
+import org.xwiki.test.mockito.MockitoComponentManagerRule;
+
+/**
+ * Unit tests for {@link MirrorExtensionRepository}.
+ * 
+ * @version $Id$
+ */
+@AllComponents
+public class MirrorExtensionRepositoryTest
+{
+    private MockitoComponentManagerRule mocker = new MockitoComponentManagerRule();
+
+    @Rule
+    public MockitoRepositoryUtilsRule repositoryUtil = new MockitoRepositoryUtilsRule(this.mocker);
+
+    private File mirrorFolder;
+
+    private MirrorExtensionRepository mirror;
+
+    @Before
+    public void before() throws Exception
+    {
+        this.mirrorFolder = new File(this.repositoryUtil.getPermanentDirectory(), "extension/mirror/test-file");
+
+        this.mirror = createMirror();
+    }
+
+    private MirrorExtensionRepository createMirror() throws Exception
+    {
+        return new MirrorExtensionRepository(new FileExtensionRepository(this.repositoryUtil.getRemoteRepository(),
+            this.mocker), this.mirrorFolder, this.mocker);
+    }
+
+    private void goOffline() throws Exception
+    {
+        FileUtils.cleanDirectory(this.repositoryUtil.getRemoteRepository());
+
+        this.mirror = createMirror();
+    }
+
+    private String read(Extension extension) throws IOException
+    {
+        InputStream stream = extension.getFile().openStream();
+        try {
+            return IOUtils.toString(stream, "UTF-8");
+        } finally {
+            stream.close();
+        }
+    }
+
+    private List<Version> toList(IterableResult<Version> result)
+    {
+        List<Version> list = new ArrayList<Version>();
+        for (Version version : result) {
+            list.add(version);
+        }
+
+        return list;
+    }
+
+    @Test
+    public void resolveIsServedFromMirrorWhenRemoteIsOffline() throws Exception
+    {
+        Extension extension = this.mirror.resolve(TestResources.REMOTE_SIMPLE_ID);
+
+        Assert.assertSame(this.mirror, extension.getRepository());
+        Assert.assertEquals("test-file", extension.getRepository().getDescriptor().getId());
+
+        // Mirror the file
+        read(extension);
+
+        goOffline();
+
+        extension = this.mirror.resolve(TestResources.REMOTE_SIMPLE_ID);
+
+        Assert.assertEquals(TestResources.REMOTE_SIMPLE_ID, extension.getId());
+        Assert.assertTrue(this.mirror.exists(TestResources.REMOTE_SIMPLE_ID));
+        Assert.assertNotNull(extension.getFile().openStream());
+
+        try {
+            this.mirror.resolve(TestResources.REMOTE_NOTINSTALLED_ID);
+
+            Assert.fail("Resolve should have failed");
+        } catch (ResolveException expected) {
+            // expected
+        }
+    }
+
+    @Test
+    public void resolveOnlyMirrorsTheDescriptor() throws Exception
+    {
+        Extension extension = this.mirror.resolve(TestResources.REMOTE_SIMPLE_ID);
+
+        Assert.assertEquals(-1, extension.getFile().getLength());
+
+        goOffline();
+
+        extension = this.mirror.resolve(TestResources.REMOTE_SIMPLE_ID);
+
+        Assert.assertEquals(TestResources.REMOTE_SIMPLE_ID, extension.getId());
+        Assert.assertTrue(extension.getFeatures().contains("rsimple-feature"));
+
+        try {
+            read(extension);
+
+            Assert.fail("The file should not have been mirrored");
+        } catch (IOException expected) {
+            // expected
+        }
+    }
+
+    @Test
+    public void openStreamMirrorsTheFileDeduplicated() throws Exception
+    {
+        MemoryConfigurationSource configuration = this.mocker.getInstance(ConfigurationSource.class);
+        configuration.setProperty("extension.localRepository.deduplication", true);
+
+        Extension extension = this.mirror.resolve(TestResources.REMOTE_SIMPLE_ID);
+
+        read(extension);
+
+        Assert.assertTrue(extension.getFile().getLength() >= 0);
+        Assert.assertTrue(new File(this.mirrorFolder, "repository/.blobs").isDirectory());
+    }
+
+    @Test
+    public void resolveDependencyFromVersionsIndex() throws Exception
+    {
+        // The file repository only understands exact versions
+        Extension extension =
+            this.mirror.resolve(new DefaultExtensionDependency("upgrade", new DefaultVersionConstraint("[1.0,2.0)")));
+
+        Assert.assertEquals(TestResources.REMOTE_UPGRADE10_ID, extension.getId());
+
+        goOffline();
+
+        // 2.0 is known but was never mirrored
+        extension =
+            this.mirror.resolve(new DefaultExtensionDependency("upgrade", new DefaultVersionConstraint("[1.0,)")));
+
+        Assert.assertEquals(TestResources.REMOTE_UPGRADE10_ID, extension.getId());
+
+        Assert.assertEquals(Arrays.asList(new DefaultVersion("1.0"), new DefaultVersion("2.0")),
+            toList(this.mirror.resolveVersions("upgrade", 0, -1)));
+    }
+
+    @Test
+    public void resolveDoesNotMirrorSnapshots() throws Exception
+    {
+        ExtensionId snapshotId = new ExtensionId("rsimple", "1.0-SNAPSHOT");
+
+        // Publish a SNAPSHOT
+        File remoteFolder = this.repositoryUtil.getRemoteRepository();
+        String descriptor = FileUtils.readFileToString(new File(remoteFolder, "rsimple-version.xed"), "UTF-8");
+        File snapshotDescriptor = new File(remoteFolder, "rsimple-1.0-SNAPSHOT.xed");
+        FileUtils.writeStringToFile(snapshotDescriptor,
+            descriptor.replace("<version>version</version>", "<version>1.0-SNAPSHOT</version>"), "UTF-8");
+        File snapshotFile = new File(remoteFolder, "rsimple-1.0-SNAPSHOT.test");
+        FileUtils.writeStringToFile(snapshotFile, "first", "UTF-8");
+
+        Extension extension = this.mirror.resolve(snapshotId);
+
+        Assert.assertSame(this.mirror, extension.getRepository());
+        Assert.assertEquals("first", read(extension));
+
+        // Redeploy the SNAPSHOT
+        FileUtils.writeStringToFile(snapshotDescriptor, descriptor.replace("<version>version</version>",
+            "<version>1.0-SNAPSHOT</version>").replace("rsimple-feature", "rsimple-feature2"), "UTF-8");
+        FileUtils.writeStringToFile(snapshotFile, "second", "UTF-8");
+
+        extension = this.mirror.resolve(snapshotId);
+
+        Assert.assertTrue(extension.getFeatures().contains("rsimple-feature2"));
+        Assert.assertEquals("second", read(extension));
+
+        goOffline();
+
+        Assert.assertFalse(this.mirror.exists(snapshotId));
+    }
+
+    @Test
+    public void synchronizeFetchesNewVersions() throws Exception
+    {
+        Assert.assertEquals(Arrays.asList(new DefaultVersion("2.0")),
+            toList(this.mirror.resolveVersions("notinstalledextension", 0, -1)));
+
+        Assert.assertEquals(0, this.mirror.synchronize());
+
+        // Publish a new version
+        File remoteFolder = this.repositoryUtil.getRemoteRepository();
+        String descriptor =
+            FileUtils.readFileToString(new File(remoteFolder, "notinstalledextension-2.0.xed"), "UTF-8");
+        FileUtils.writeStringToFile(new File(remoteFolder, "notinstalledextension-3.0.xed"),
+            descriptor.replace("<version>2.0</version>", "<version>3.0</version>"), "UTF-8");
+        FileUtils.copyFile(new File(remoteFolder, "notinstalledextension-2.0.test"), new File(remoteFolder,
+            "notinstalledextension-3.0.test"));
+
+        Assert.assertEquals(1, this.mirror.synchronize());
+
+        goOffline();
+
+        Assert.assertEquals(Arrays.asList(new DefaultVersion("2.0"), new DefaultVersion("3.0")),
+            toList(this.mirror.resolveVersions("notinstalledextension", 0, -1)));
+    }
+}
@@ -21,6 +21,10 @@
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.Arrays;
@@ -30,6 +34,7 @@
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.TransformerException;
 
+import org.apache.commons.io.IOUtils;
 import org.junit.Assert;
 import org.junit.Rule;
 import org.junit.Test;
@@ -39,6 +44,7 @@
 import org.xwiki.extension.ExtensionId;
 import org.xwiki.extension.ExtensionLicense;
 import org.xwiki.extension.InvalidExtensionException;
+import org.xwiki.extension.repository.internal.local.DOMExtensionSerializer;
 import org.xwiki.extension.repository.internal.local.DefaultExtensionSerializer;
 import org.xwiki.extension.repository.internal.local.DefaultLocalExtension;
 import org.xwiki.extension.repository.internal.local.ExtensionSerializer;
@@ -51,6 +57,10 @@
     public final MockitoComponentMockingRule<ExtensionSerializer> componentManager =
         new MockitoComponentMockingRule<ExtensionSerializer>(DefaultExtensionSerializer.class);
 
+    @Rule
+    public final MockitoComponentMockingRule<ExtensionSerializer> domComponentManager =
+        new MockitoComponentMockingRule<ExtensionSerializer>(DOMExtensionSerializer.class);
+
     private DefaultLocalExtension serializeAndUnserialize(DefaultLocalExtension extension)
         throws ParserConfigurationException, TransformerException, InvalidExtensionException, ComponentLookupException
     {
@@ -63,6 +73,13 @@ private DefaultLocalExtension serializeAndUnserialize(DefaultLocalExtension exte
         DefaultLocalExtension unserializedExtension =
             this.componentManager.getComponentUnderTest().loadDescriptor(null, is);
 
+        assertEquals(extension, unserializedExtension);
+
+        return unserializedExtension;
+    }
+
+    private void assertEquals(DefaultLocalExtension extension, DefaultLocalExtension unserializedExtension)
+    {
         Assert.assertEquals(extension, unserializedExtension);
         Assert.assertEquals(extension.getDescription(), unserializedExtension.getDescription());
         Assert.assertEquals(extension.getName(), unserializedExtension.getName());
@@ -78,8 +95,49 @@ private DefaultLocalExtension serializeAndUnserialize(DefaultLocalExtension exte
             Assert.assertEquals(extension.getDependencies().get(i).getProperties(), unserializedExtension
                 .getDependencies().get(i).getProperties());
         }
+    }
 
-        return unserializedExtension;
+    private DefaultLocalExtension createCompleteExtension() throws MalformedURLException
+    {
+        DefaultLocalExtension extension =
+            new DefaultLocalExtension(null, new ExtensionId("extensionid", "extensionversion"), "type");
+
+        DefaultExtensionDependency dependency =
+            new DefaultExtensionDependency("dependencyid", new DefaultVersionConstraint("dependencyversion"));
+        dependency.setProperties(Collections.<String, Object> singletonMap("dependencykey", "dependencyvalue"));
+        extension.addDependency(dependency);
+
+        extension.setDescription("description <with> & special characters");
+        extension.setSummary("summary");
+        extension.setWebsite("website");
+        extension.setName("name");
+
+        extension.putProperty("key1", "value1");
+        extension.putProperty("key2", true);
+        extension.putProperty("key3", 42);
+        extension.putProperty("key4", Arrays.asList("list1", "list2"));
+        extension.putProperty("key5", new HashSet<String>(Arrays.asList("list1", "list2")));
+        extension.putProperty(
+            "key6",
+            Collections.<String, Object> singletonMap("key",
+                Collections.<String, Object> singletonMap("subkey", "subvalue")));
+
+        extension.addAuthor(new DefaultExtensionAuthor("authorname", new URL("http://authorurl")));
+        extension.addFeature("feature1");
+        extension.addLicense(new ExtensionLicense("licensename", Arrays.asList("license content")));
+
+        return extension;
+    }
+
+    private DefaultLocalExtension load(ExtensionSerializer serializer, File descriptor) throws IOException,
+        InvalidExtensionException
+    {
+        InputStream is = new FileInputStream(descriptor);
+        try {
+            return serializer.loadDescriptor(null, is);
+        } finally {
+            IOUtils.closeQuietly(is);
+        }
     }
 
     // Tests
@@ -125,4 +183,67 @@ Collections.<String, Object> singletonMap("key",
         // Complete extension
         serializeAndUnserialize(extension);
     }
+
+    @Test
+    public void testSerializeWithUnsupportedProperty() throws ParserConfigurationException, TransformerException,
+        InvalidExtensionException, ComponentLookupException
+    {
+        DefaultLocalExtension extension =
+            new DefaultLocalExtension(null, new ExtensionId("extensionid", "extensionversion"), "type");
+
+        extension.putProperty("supported", "value");
+        extension.putProperty("unsupported", new Object());
+        extension.putProperty("unsupportedlist", Arrays.asList("value", new Object()));
+        extension.putProperty("invalid name", "value");
+
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        this.componentManager.getComponentUnderTest().saveDescriptor(extension, os);
+
+        DefaultLocalExtension unserializedExtension =
+            this.componentManager.getComponentUnderTest().loadDescriptor(null,
+                new ByteArrayInputStream(os.toByteArray()));
+
+        Assert.assertEquals(Collections.singletonMap("supported", "value"), unserializedExtension.getProperties());
+    }
+
+    @Test
+    public void testCompatibilityWithDOMSerializer() throws ParserConfigurationException, TransformerException,
+        InvalidExtensionException, MalformedURLException, ComponentLookupException
+    {
+        DefaultLocalExtension extension = createCompleteExtension();
+
+        ExtensionSerializer serializer = this.componentManager.getComponentUnderTest();
+        ExtensionSerializer domSerializer = this.domComponentManager.getComponentUnderTest();
+
+        // StAX -> DOM
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        serializer.saveDescriptor(extension, os);
+        assertEquals(extension, domSerializer.loadDescriptor(null, new ByteArrayInputStream(os.toByteArray())));
+
+        // DOM -> StAX
+        os = new ByteArrayOutputStream();
+        domSerializer.saveDescriptor(extension, os);
+        assertEquals(extension, serializer.loadDescriptor(null, new ByteArrayInputStream(os.toByteArray())));
+    }
+
+    @Test
+    public void testLoadExistingDescriptors() throws IOException, InvalidExtensionException,
+        ComponentLookupException
+    {
+        File[] files = new File(getClass().getResource("/repository/remote/").getFile()).listFiles();
+
+        int nbDescriptors = 0;
+        for (File file : files) {
+            if (file.getName().endsWith(".xed")) {
+                DefaultLocalExtension expected = load(this.domComponentManager.getComponentUnderTest(), file);
+                DefaultLocalExtension actual = load(this.componentManager.getComponentUnderTest(), file);
+
+                assertEquals(expected, actual);
+
+                ++nbDescriptors;
+            }
+        }
+
+        Assert.assertTrue(nbDescriptors > 0);
+    }
 }
@@ -19,20 +19,42 @@
  */
 package org.xwiki.extension.repository.local;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.configuration.internal.MemoryConfigurationSource;
+import org.xwiki.extension.AbstractExtension;
 import org.xwiki.extension.DefaultExtensionDependency;
 import org.xwiki.extension.Extension;
+import org.xwiki.extension.ExtensionFile;
 import org.xwiki.extension.ExtensionId;
 import org.xwiki.extension.LocalExtension;
 import org.xwiki.extension.ResolveException;
 import org.xwiki.extension.TestResources;
 import org.xwiki.extension.repository.LocalExtensionRepository;
+import org.xwiki.extension.repository.LocalExtensionRepositoryException;
+import org.xwiki.extension.repository.internal.local.DefaultLocalExtensionFile;
+import org.xwiki.extension.repository.internal.local.DefaultLocalExtensionRepository;
 import org.xwiki.extension.repository.result.CollectionIterableResult;
 import org.xwiki.extension.repository.search.SearchException;
+import org.xwiki.extension.test.EmptyExtension;
 import org.xwiki.extension.test.MockitoRepositoryUtilsRule;
 import org.xwiki.extension.version.internal.DefaultVersionConstraint;
 import org.xwiki.test.annotation.AllComponents;
@@ -205,4 +227,141 @@ public void testRemove() throws ResolveException, SearchException
         Assert.assertFalse(this.localExtensionRepository.getLocalExtensionVersions(
             TestResources.INSTALLED_ID.getId() + "-feature").contains(localExtension));
     }
+
+    @Test
+    public void testStoreDeduplicated() throws Exception
+    {
+        MemoryConfigurationSource configuration = this.mocker.getInstance(ConfigurationSource.class);
+        configuration.setProperty("extension.localRepository.deduplication", true);
+
+        LocalExtension extension1 =
+            this.localExtensionRepository.storeExtension(new EmptyExtension(new ExtensionId("empty1", "1.0"), "test"));
+        LocalExtension extension2 =
+            this.localExtensionRepository.storeExtension(new EmptyExtension(new ExtensionId("empty2", "1.0"), "test"));
+
+        String checksum = (String) extension1.getProperty(DefaultLocalExtensionRepository.PKEY_FILE_SHA256);
+
+        Assert.assertEquals("e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855", checksum);
+        Assert.assertEquals(checksum, extension2.getProperty(DefaultLocalExtensionRepository.PKEY_FILE_SHA256));
+        Assert.assertTrue(Files.isSameFile(((DefaultLocalExtensionFile) extension1.getFile()).getFile().toPath(),
+            ((DefaultLocalExtensionFile) extension2.getFile()).getFile().toPath()));
+
+        // Known checksum: the file is not downloaded
+        AbstractExtension remoteExtension = new AbstractExtension(null, new ExtensionId("empty3", "1.0"), "test")
+        {
+            {
+                setFile(new ExtensionFile()
+                {
+                    @Override
+                    public long getLength()
+                    {
+                        return 0;
+                    }
+
+                    @Override
+                    public InputStream openStream() throws IOException
+                    {
+                        throw new IOException("Should not be downloaded");
+                    }
+                });
+            }
+        };
+        remoteExtension.putProperty(DefaultLocalExtensionRepository.PKEY_FILE_SHA256, checksum);
+
+        LocalExtension extension3 = this.localExtensionRepository.storeExtension(remoteExtension);
+
+        Assert.assertTrue(((DefaultLocalExtensionFile) extension3.getFile()).getFile().exists());
+
+        // The content is removed with the last extension using it
+        File blob = new File(this.repositoryUtil.getLocalRepository(), ".blobs/e3/" + checksum);
+
+        this.localExtensionRepository.removeExtension(extension1);
+        this.localExtensionRepository.removeExtension(extension2);
+
+        Assert.assertTrue(blob.exists());
+
+        this.localExtensionRepository.removeExtension(extension3);
+
+        Assert.assertFalse(blob.exists());
+    }
+
+    @Test
+    public void testRemoveWithInvalidChecksum() throws Exception
+    {
+        MemoryConfigurationSource configuration = this.mocker.getInstance(ConfigurationSource.class);
+        configuration.setProperty("extension.localRepository.deduplication", true);
+
+        LocalExtension extension1 =
+            this.localExtensionRepository.storeExtension(new EmptyExtension(new ExtensionId("invalid1", "1.0"), "test"));
+        LocalExtension extension2 =
+            this.localExtensionRepository.storeExtension(new EmptyExtension(new ExtensionId("invalid2", "1.0"), "test"));
+
+        // A file outside of the stored contents which would be targeted by the checksum
+        File outsideFile = new File(this.repositoryUtil.getLocalRepository().getParentFile(), "outside");
+        outsideFile.createNewFile();
+
+        this.localExtensionRepository.setProperties(extension1,
+            Collections.<String, Object> singletonMap(DefaultLocalExtensionRepository.PKEY_FILE_SHA256, "x"));
+        this.localExtensionRepository.setProperties(extension2, Collections.<String, Object> singletonMap(
+            DefaultLocalExtensionRepository.PKEY_FILE_SHA256, "../outside"));
+
+        this.localExtensionRepository.removeExtension(extension1);
+        this.localExtensionRepository.removeExtension(extension2);
+
+        Assert.assertFalse(this.localExtensionRepository.exists(extension1.getId()));
+        Assert.assertFalse(this.localExtensionRepository.exists(extension2.getId()));
+        Assert.assertTrue(outsideFile.exists());
+    }
+
+    @Test
+    public void testStoreConcurrently() throws Exception
+    {
+        int count = this.localExtensionRepository.countExtensions();
+
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Callable<LocalExtension>> tasks = new ArrayList<Callable<LocalExtension>>();
+        for (int i = 0; i < 10; ++i) {
+            // The last two tasks store the same extension
+            final Extension extension =
+                new EmptyExtension(new ExtensionId("concurrent" + Math.min(i, 8), "1.0"), "test");
+            tasks.add(new Callable<LocalExtension>()
+            {
+                @Override
+                public LocalExtension call() throws Exception
+                {
+                    start.await();
+
+                    return localExtensionRepository.storeExtension(extension);
+                }
+            });
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(tasks.size());
+        try {
+            List<Future<LocalExtension>> futures = new ArrayList<Future<LocalExtension>>();
+            for (Callable<LocalExtension> task : tasks) {
+                futures.add(executor.submit(task));
+            }
+
+            start.countDown();
+
+            int failures = 0;
+            for (Future<LocalExtension> future : futures) {
+                try {
+                    LocalExtension localExtension = future.get();
+
+                    Assert.assertTrue(((DefaultLocalExtensionFile) localExtension.getFile()).getFile().exists());
+                    Assert.assertSame(localExtension, this.localExtensionRepository.resolve(localExtension.getId()));
+                } catch (ExecutionException e) {
+                    Assert.assertTrue(e.getCause() instanceof LocalExtensionRepositoryException);
+                    ++failures;
+                }
+            }
+
+            Assert.assertEquals(1, failures);
+            Assert.assertEquals(count + 9, this.localExtensionRepository.countExtensions());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
 }
@@ -0,0 +1,185 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.extension.repository.local;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xwiki.extension.DefaultExtensionAuthor;
+import org.xwiki.extension.DefaultExtensionDependency;
+import org.xwiki.extension.ExtensionId;
+import org.xwiki.extension.ExtensionLicense;
+import org.xwiki.extension.repository.internal.local.DOMExtensionSerializer;
+import org.xwiki.extension.repository.internal.local.DefaultExtensionSerializer;
+import org.xwiki.extension.repository.internal.local.DefaultLocalExtension;
+import org.xwiki.extension.repository.internal.local.ExtensionSerializer;
+import org.xwiki.extension.version.internal.DefaultVersionConstraint;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+/**
+ * Parse the same generated descriptors with {@link DefaultExtensionSerializer} (StAX) and
+ * {@link DOMExtensionSerializer}, check that both give the same extensions and log the time and memory they needed.
+ * <p>
+ * The size of the benchmark can be increased with the {@code benchmark.descriptors} and {@code benchmark.iterations}
+ * system properties, for example {@code mvn test -Dtest=ExtensionSerializerBenchmarkTest -Dbenchmark.descriptors=500
+ * -Dbenchmark.iterations=20}.
+ * 
+ * @version $Id$
+ */
+public class ExtensionSerializerBenchmarkTest
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(ExtensionSerializerBenchmarkTest.class);
+
+    @Rule
+    public final MockitoComponentMockingRule<ExtensionSerializer> componentManager =
+        new MockitoComponentMockingRule<ExtensionSerializer>(DefaultExtensionSerializer.class);
+
+    @Rule
+    public final MockitoComponentMockingRule<ExtensionSerializer> domComponentManager =
+        new MockitoComponentMockingRule<ExtensionSerializer>(DOMExtensionSerializer.class);
+
+    private final int nbDescriptors = Integer.getInteger("benchmark.descriptors", 100);
+
+    private final int iterations = Integer.getInteger("benchmark.iterations", 5);
+
+    private static byte[] createDescriptor(ExtensionSerializer serializer, int index) throws Exception
+    {
+        DefaultLocalExtension extension =
+            new DefaultLocalExtension(null, new ExtensionId("org.xwiki.test:extension" + index, "1.0." + index),
+                "xar");
+
+        extension.setName("Extension " + index);
+        extension.setSummary("The summary of the extension " + index);
+        extension.setDescription("The description of the extension " + index);
+        extension.setWebsite("http://extensions.xwiki.org/extension" + index);
+        extension.addFeature("org.xwiki.test:feature" + index);
+        extension.addAuthor(new DefaultExtensionAuthor("Author " + index, new URL("http://www.xwiki.org")));
+        extension.addLicense(new ExtensionLicense("Custom license", Arrays.asList("line 1", "line 2")));
+
+        for (int i = 0; i < 10; ++i) {
+            extension.addDependency(new DefaultExtensionDependency("org.xwiki.test:dependency" + i,
+                new DefaultVersionConstraint("[1.0,2.0)")));
+        }
+
+        extension.putProperty("installed", true);
+        extension.putProperty("namespaces", Arrays.asList("wiki:xwiki", "wiki:subwiki" + index));
+        extension.putProperty("installeddate", String.valueOf(index));
+
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        serializer.saveDescriptor(extension, os);
+
+        return os.toByteArray();
+    }
+
+    private static long getAllocatedBytes(ThreadMXBean threadBean)
+    {
+        if (threadBean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threadBean).getThreadAllocatedBytes(Thread.currentThread()
+                .getId());
+        }
+
+        return -1;
+    }
+
+    private List<DefaultLocalExtension> load(ExtensionSerializer serializer, List<byte[]> descriptors)
+        throws Exception
+    {
+        List<DefaultLocalExtension> extensions = new ArrayList<DefaultLocalExtension>(descriptors.size());
+        for (byte[] descriptor : descriptors) {
+            extensions.add(serializer.loadDescriptor(null, new ByteArrayInputStream(descriptor)));
+        }
+
+        return extensions;
+    }
+
+    private List<DefaultLocalExtension> run(String name, ExtensionSerializer serializer, List<byte[]> descriptors)
+        throws Exception
+    {
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+
+        // Warm up
+        List<DefaultLocalExtension> extensions = load(serializer, descriptors);
+
+        long allocated = getAllocatedBytes(threadBean);
+        long time = System.nanoTime();
+
+        for (int i = 0; i < this.iterations; ++i) {
+            load(serializer, descriptors);
+        }
+
+        time = System.nanoTime() - time;
+        allocated = getAllocatedBytes(threadBean) - allocated;
+
+        long loaded = (long) this.iterations * descriptors.size();
+        LOGGER.info("{}: {} ns/descriptor, {} bytes allocated/descriptor", name, time / loaded, allocated / loaded);
+
+        return extensions;
+    }
+
+    private void assertSameExtension(DefaultLocalExtension expected, DefaultLocalExtension actual)
+    {
+        Assert.assertEquals(expected.getId(), actual.getId());
+        Assert.assertEquals(expected.getType(), actual.getType());
+        Assert.assertEquals(expected.getName(), actual.getName());
+        Assert.assertEquals(expected.getSummary(), actual.getSummary());
+        Assert.assertEquals(expected.getDescription(), actual.getDescription());
+        Assert.assertEquals(expected.getWebSite(), actual.getWebSite());
+        Assert.assertEquals(new ArrayList<String>(expected.getFeatures()), new ArrayList<String>(actual.getFeatures()));
+        Assert.assertEquals(new ArrayList<Object>(expected.getAuthors()), new ArrayList<Object>(actual.getAuthors()));
+        Assert.assertEquals(new ArrayList<Object>(expected.getLicenses()),
+            new ArrayList<Object>(actual.getLicenses()));
+        Assert.assertEquals(expected.getDependencies().size(), actual.getDependencies().size());
+        Assert.assertEquals(expected.getProperties(), actual.getProperties());
+    }
+
+    @Test
+    public void testLoadDescriptorsWithStAXAndDOM() throws Exception
+    {
+        ExtensionSerializer staxSerializer = this.componentManager.getComponentUnderTest();
+        ExtensionSerializer domSerializer = this.domComponentManager.getComponentUnderTest();
+
+        List<byte[]> descriptors = new ArrayList<byte[]>(this.nbDescriptors);
+        for (int i = 0; i < this.nbDescriptors; ++i) {
+            descriptors.add(createDescriptor(domSerializer, i));
+        }
+
+        List<DefaultLocalExtension> domExtensions = run("DOM", domSerializer, descriptors);
+        List<DefaultLocalExtension> staxExtensions = run("StAX", staxSerializer, descriptors);
+
+        Assert.assertEquals(this.nbDescriptors, staxExtensions.size());
+        for (int i = 0; i < this.nbDescriptors; ++i) {
+            assertSameExtension(domExtensions.get(i), staxExtensions.get(i));
+        }
+
+        Assert.assertEquals("Extension 0", staxExtensions.get(0).getName());
+        Assert.assertEquals(10, staxExtensions.get(0).getDependencies().size());
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.extension.repository.local;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.xwiki.extension.DefaultExtensionAuthor;
+import org.xwiki.extension.DefaultExtensionDependency;
+import org.xwiki.extension.ExtensionId;
+import org.xwiki.extension.ExtensionLicense;
+import org.xwiki.extension.internal.DefaultExtensionLicenseManager;
+import org.xwiki.extension.repository.internal.local.DefaultLocalExtension;
+import org.xwiki.extension.repository.internal.local.ExtensionStorageSnapshot;
+import org.xwiki.extension.version.internal.DefaultVersionConstraint;
+
+/**
+ * Unit tests for {@link ExtensionStorageSnapshot}.
+ * 
+ * @version $Id$
+ */
+public class ExtensionStorageSnapshotTest
+{
+    private File folder;
+
+    private DefaultExtensionLicenseManager licenseManager;
+
+    private ExtensionStorageSnapshot snapshot;
+
+    @Before
+    public void before()
+    {
+        this.folder = new File("target/test-snapshot-" + new Date().getTime());
+        this.folder.mkdirs();
+
+        this.licenseManager = new DefaultExtensionLicenseManager();
+        this.licenseManager.addLicense(new ExtensionLicense("knownlicense", Arrays.asList("known content")));
+
+        this.snapshot = new ExtensionStorageSnapshot(this.folder, this.licenseManager);
+    }
+
+    @After
+    public void after() throws IOException
+    {
+        FileUtils.deleteDirectory(this.folder);
+    }
+
+    private File createDescriptor(String name) throws IOException
+    {
+        File descriptor = new File(this.folder, name);
+
+        FileOutputStream stream = new FileOutputStream(descriptor);
+        try {
+            stream.write(name.getBytes());
+        } finally {
+            stream.close();
+        }
+
+        return descriptor;
+    }
+
+    @Test
+    public void writeAndRead() throws IOException
+    {
+        DefaultLocalExtension extension =
+            new DefaultLocalExtension(null, new ExtensionId("extensionid", "extensionversion"), "type");
+
+        DefaultExtensionDependency dependency =
+            new DefaultExtensionDependency("dependencyid", new DefaultVersionConstraint("[1.0,2.0)"));
+        dependency.setProperties(Collections.<String, Object> singletonMap("dependencykey", "dependencyvalue"));
+        extension.addDependency(dependency);
+
+        extension.setDescription("description");
+        extension.setSummary("summary");
+        extension.setWebsite("website");
+        extension.setName("name");
+
+        extension.putProperty("key1", "value1");
+        extension.putProperty("key2", true);
+        extension.putProperty("key3", 42);
+        extension.putProperty("key4", Arrays.asList("list1", "list2"));
+        extension.putProperty("key5", new HashSet<String>(Arrays.asList("list1", "list2")));
+        extension.putProperty("key6", Collections.<String, Object> singletonMap("key", "value"));
+        extension.putProperty(
+            "key7",
+            Collections.<String, Object> singletonMap("key",
+                Collections.<String, Object> singletonMap("subkey", "subvalue")));
+        extension.putProperty("unsupported", new Object());
+
+        extension.addAuthor(new DefaultExtensionAuthor("authorname", new URL("http://authorurl")));
+        extension.addFeature("feature1");
+        extension.addLicense(new ExtensionLicense("licensename", Arrays.asList("license content")));
+        extension.addLicense(this.licenseManager.getLicense("knownlicense"));
+
+        File descriptor = createDescriptor("extension.xed");
+        extension.setDescriptorFile(descriptor);
+
+        this.snapshot.write(Arrays.asList(extension));
+
+        Map<String, ExtensionStorageSnapshot.Entry> entries = this.snapshot.read(null);
+
+        Assert.assertEquals(1, entries.size());
+
+        ExtensionStorageSnapshot.Entry entry = entries.get(this.snapshot.getPath(descriptor));
+
+        Assert.assertTrue(entry.isUpToDate(descriptor));
+
+        DefaultLocalExtension storedExtension = entry.getExtension();
+
+        Assert.assertEquals(extension, storedExtension);
+        Assert.assertEquals(extension.getType(), storedExtension.getType());
+        Assert.assertEquals(extension.getDescription(), storedExtension.getDescription());
+        Assert.assertEquals(extension.getName(), storedExtension.getName());
+        Assert.assertEquals(extension.getSummary(), storedExtension.getSummary());
+        Assert.assertEquals(extension.getWebSite(), storedExtension.getWebSite());
+        Assert.assertEquals(extension.getAuthors(), storedExtension.getAuthors());
+        Assert.assertEquals(extension.getFeatures(), storedExtension.getFeatures());
+        Assert.assertEquals(extension.getLicenses(), storedExtension.getLicenses());
+        Assert.assertSame(this.licenseManager.getLicense("knownlicense"), storedExtension.getLicenses()
+            .toArray()[1]);
+        Assert.assertEquals(extension.getDependencies(), storedExtension.getDependencies());
+        Assert.assertEquals(extension.getDependencies().get(0).getProperties(), storedExtension.getDependencies()
+            .get(0).getProperties());
+
+        Map<String, Object> properties = new HashMap<String, Object>(extension.getProperties());
+        properties.remove("unsupported");
+        Assert.assertEquals(properties, storedExtension.getProperties());
+    }
+
+    @Test
+    public void readModifiedDescriptor() throws IOException
+    {
+        DefaultLocalExtension extension = new DefaultLocalExtension(null, new ExtensionId("id", "version"), "type");
+
+        File descriptor = createDescriptor("extension.xed");
+        extension.setDescriptorFile(descriptor);
+
+        this.snapshot.write(Arrays.asList(extension));
+
+        createDescriptor("extension.xed-modified");
+        FileUtils.copyFile(new File(this.folder, "extension.xed-modified"), descriptor);
+
+        Assert.assertFalse(this.snapshot.read(null).get(this.snapshot.getPath(descriptor)).isUpToDate(descriptor));
+    }
+
+    @Test
+    public void readModifiedDescriptorWithSameSizeAndDate() throws IOException
+    {
+        DefaultLocalExtension extension = new DefaultLocalExtension(null, new ExtensionId("id", "version"), "type");
+
+        File descriptor = createDescriptor("extension.xed");
+        extension.setDescriptorFile(descriptor);
+
+        this.snapshot.write(Arrays.asList(extension));
+
+        long lastModified = descriptor.lastModified();
+        FileUtils.writeStringToFile(descriptor, "extension.XED");
+        descriptor.setLastModified(lastModified);
+
+        Assert.assertFalse(this.snapshot.read(null).get(this.snapshot.getPath(descriptor)).isUpToDate(descriptor));
+    }
+
+    @Test
+    public void writeSerializedState() throws IOException
+    {
+        DefaultLocalExtension extension = new DefaultLocalExtension(null, new ExtensionId("id", "version"), "type");
+        extension.setName("name");
+
+        File descriptor = createDescriptor("extension.xed");
+        extension.setDescriptorFile(descriptor);
+
+        byte[] content = this.snapshot.serialize(Arrays.asList(extension));
+
+        // Modifications done after the serialization are not part of the snapshot
+        extension.setName("modified name");
+
+        this.snapshot.write(content);
+
+        Assert.assertEquals("name", this.snapshot.read(null).get(this.snapshot.getPath(descriptor)).getExtension()
+            .getName());
+    }
+
+    @Test
+    public void writeSkipsRemovedDescriptor() throws IOException
+    {
+        DefaultLocalExtension extension = new DefaultLocalExtension(null, new ExtensionId("id", "version"), "type");
+
+        File descriptor = createDescriptor("extension.xed");
+        extension.setDescriptorFile(descriptor);
+        descriptor.delete();
+
+        this.snapshot.write(Arrays.asList(extension));
+
+        Assert.assertTrue(this.snapshot.read(null).isEmpty());
+    }
+
+    @Test
+    public void readMissingSnapshot() throws IOException
+    {
+        Assert.assertTrue(this.snapshot.read(null).isEmpty());
+    }
+
+    @Test(expected = IOException.class)
+    public void readCorruptedSnapshot() throws IOException
+    {
+        DefaultLocalExtension extension = new DefaultLocalExtension(null, new ExtensionId("id", "version"), "type");
+        extension.setDescriptorFile(createDescriptor("extension.xed"));
+
+        this.snapshot.write(Arrays.asList(extension));
+
+        byte[] bytes = FileUtils.readFileToByteArray(this.snapshot.getFile());
+        bytes[bytes.length / 2] ^= 1;
+        FileUtils.writeByteArrayToFile(this.snapshot.getFile(), bytes);
+
+        this.snapshot.read(null);
+    }
+}
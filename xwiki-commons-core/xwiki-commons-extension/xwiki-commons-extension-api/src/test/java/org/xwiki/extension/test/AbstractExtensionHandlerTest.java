@@ -154,10 +154,16 @@ protected LocalExtension uninstall(ExtensionId extensionId, String namespace, Lo
         return this.localExtensionRepository.resolve(extensionId);
     }
 
+    protected DefaultExtensionPlan<UninstallRequest> uninstallPlan(ExtensionId extensionId, String namespace)
+        throws Throwable
+    {
+        return uninstallPlan(extensionId, namespace, LogLevel.WARN);
+    }
+
     protected DefaultExtensionPlan<UninstallRequest> uninstallPlan(ExtensionId extensionId, String namespace,
         LogLevel failFrom) throws Throwable
     {
-        Job uninstallJob = uninstall("installplan", extensionId, namespace, failFrom);
+        Job uninstallJob = uninstall("uninstallplan", extensionId, namespace, failFrom);
 
         return (DefaultExtensionPlan<UninstallRequest>) uninstallJob.getStatus();
     }
@@ -36,6 +36,8 @@ public class ConfigurableDefaultCoreExtensionRepository extends DefaultCoreExten
     public void addExtensions(DefaultCoreExtension extension)
     {
         this.extensions.put(extension.getId().getId(), extension);
+
+        indexExtensions();
     }
 
     public void addExtensions(String id, Version version)
@@ -57,5 +59,7 @@ public void addExtensions(String id, Version version, Collection<String> feature
         for (String feature : coreExtension.getFeatures()) {
             this.extensions.put(feature, coreExtension);
         }
+
+        indexExtensions();
     }
 }
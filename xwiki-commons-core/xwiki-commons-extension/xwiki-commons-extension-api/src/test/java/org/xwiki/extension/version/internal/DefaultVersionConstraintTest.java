@@ -26,9 +26,51 @@
 import org.junit.Test;
 import org.xwiki.extension.version.IncompatibleVersionConstraintException;
 import org.xwiki.extension.version.InvalidVersionRangeException;
+import org.xwiki.extension.version.Version;
+import org.xwiki.extension.version.VersionConstraint;
+import org.xwiki.extension.version.VersionRange;
+import org.xwiki.extension.version.VersionRangeCollection;
 
 public class DefaultVersionConstraintTest
 {
+    private static final String[] CONSTRAINTS = {"[1.0]", "[1.0,2.0]", "[1.0,2.0)", "(1.0,2.0]", "(1.0,2.0)",
+        "(,1.0]", "(,1.0)", "[1.0,)", "(1.0,)", "(,1.0],[1.2,)", "(,1.0),(1.0,)", "[1.0,2.0),[2.0,3.0]",
+        "[2.0,3.0],[1.0,2.0)", "[1.0,1.5],[1.2,2.0)", "[1.0,3.0],[1.5,2.0]", "(1.0,1.0)", "[5.4,6.0-milestone-1)",
+        "{[1.0,2.0]},{[1.5,)}", "{(,1.0],[2.0,)},{[0.5,2.5]}", "{[1.0,3.0]},{(,1.5),(2.0,)},{[1.2,2.5]}",
+        "{[1.0]},{[2.0]}"};
+
+    private static final String[] VERSIONS = {"0.1", "0.5", "1.0-SNAPSHOT", "1.0", "1.0.1", "1.1", "1.2", "1.5",
+        "1.9", "2.0-milestone-1", "2.0", "2.0.1", "2.5", "3.0", "3.1", "5.4", "6.0-milestone-1", "6.0"};
+
+    /**
+     * Constraints similar to the ones found in XWiki extensions dependencies.
+     */
+    private static final String[] EXTENSION_CONSTRAINTS = {"[5.4.5]", "[5.4,)", "[5.0,6.0)", "[6.0-milestone-1,)",
+        "[1.7.6,1.8)", "(,2.0]", "[3.1,3.2),[3.3,)", "{[5.0,6.0)},{[5.4,)}", "{[2.4,)},{(,3.0),[3.1,4.0)}",
+        "[1.0,1.1),[1.2,1.3),[1.4,1.5),[1.6,1.7),[1.8,1.9),[2.0,)"};
+
+    private static final String[] EXTENSION_VERSIONS = {"1.0", "1.7.7", "2.4", "3.1.1", "5.3", "5.4", "5.4.5",
+        "5.4.6", "6.0-milestone-1", "6.0-SNAPSHOT", "6.0", "6.1-rc-1"};
+
+    /**
+     * Check the version against each range without the compiled intervals.
+     */
+    private boolean containsVersion(VersionConstraint constraint, Version version)
+    {
+        for (VersionRangeCollection rangeCollection : constraint.getRanges()) {
+            boolean contains = false;
+            for (VersionRange range : rangeCollection.getRanges()) {
+                contains |= range.containsVersion(version);
+            }
+
+            if (!contains) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
     @Test
     public void testMerge() throws IncompatibleVersionConstraintException
     {
@@ -38,6 +80,10 @@ public void testMerge() throws IncompatibleVersionConstraintException
             new DefaultVersionConstraint("[1.0,2.0]").merge(new DefaultVersionConstraint("[2.0]")).getValue());
         Assert.assertEquals("2.0", new DefaultVersionConstraint("[1.0,2.0]").merge(new DefaultVersionConstraint("2.0"))
             .getValue());
+        Assert.assertEquals("{[1.0,2.0]},{[1.5,)}", new DefaultVersionConstraint("{[1.0,2.0]},{[1.5,)}")
+            .merge(new DefaultVersionConstraint("[1.5,)")).getValue());
+        Assert.assertEquals("{[1.0,2.0]},{[1.5,)},{(,1.8]}", new DefaultVersionConstraint("{[1.0,2.0]},{[1.5,)}")
+            .merge(new DefaultVersionConstraint("{[1.5,)},{(,1.8]}")).getValue());
 
         // Invalid
 
@@ -78,6 +124,54 @@ public void testContainsVersion()
     {
         Assert.assertTrue(new DefaultVersionConstraint("1.0").containsVersion(new DefaultVersion("1.0")));
         Assert.assertFalse(new DefaultVersionConstraint("1.0").containsVersion(new DefaultVersion("2.0")));
+
+        Assert.assertTrue(new DefaultVersionConstraint("{[1.0,3.0]},{(,1.5),(2.0,)}").containsVersion(
+            new DefaultVersion("2.5")));
+        Assert.assertFalse(new DefaultVersionConstraint("{[1.0,3.0]},{(,1.5),(2.0,)}").containsVersion(
+            new DefaultVersion("2.0")));
+    }
+
+    @Test
+    public void testContainsVersionAllRanges() throws IncompatibleVersionConstraintException
+    {
+        for (String constraint : CONSTRAINTS) {
+            VersionConstraint versionConstraint = new DefaultVersionConstraint(constraint);
+
+            for (String version : VERSIONS) {
+                Assert.assertEquals("Wrong result for version [" + version + "] in constraint [" + constraint + "]",
+                    containsVersion(versionConstraint, new DefaultVersion(version)),
+                    versionConstraint.containsVersion(new DefaultVersion(version)));
+            }
+
+            for (String otherConstraint : CONSTRAINTS) {
+                VersionConstraint mergedConstraint;
+                try {
+                    mergedConstraint = versionConstraint.merge(new DefaultVersionConstraint(otherConstraint));
+                } catch (IncompatibleVersionConstraintException e) {
+                    continue;
+                }
+
+                for (String version : VERSIONS) {
+                    Assert.assertEquals("Wrong result for version [" + version + "] in constraint ["
+                        + mergedConstraint + "]", containsVersion(mergedConstraint, new DefaultVersion(version)),
+                        mergedConstraint.containsVersion(new DefaultVersion(version)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testContainsVersionExtensionConstraints()
+    {
+        for (String constraint : EXTENSION_CONSTRAINTS) {
+            VersionConstraint versionConstraint = new DefaultVersionConstraint(constraint);
+
+            for (String version : EXTENSION_VERSIONS) {
+                Assert.assertEquals("Wrong result for version [" + version + "] in constraint [" + constraint + "]",
+                    containsVersion(versionConstraint, new DefaultVersion(version)),
+                    versionConstraint.containsVersion(new DefaultVersion(version)));
+            }
+        }
     }
 
     @Test
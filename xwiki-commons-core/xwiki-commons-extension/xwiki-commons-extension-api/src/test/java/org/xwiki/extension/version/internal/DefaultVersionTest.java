@@ -24,11 +24,15 @@
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.junit.Assert;
 
 import org.junit.Test;
 import org.xwiki.extension.version.Version;
+import org.xwiki.extension.version.internal.DefaultVersion.Element;
+import org.xwiki.extension.version.internal.DefaultVersion.Tokenizer;
 
 public class DefaultVersionTest
 {
@@ -47,6 +51,74 @@ private void validateSerialize(Version version) throws IOException, ClassNotFoun
         inputStream.close();
     }
 
+    private List<Element> parse(String version)
+    {
+        List<Element> elements = new ArrayList<Element>();
+        for (Tokenizer tokenizer = new Tokenizer(version); tokenizer.next();) {
+            elements.add(new Element(tokenizer));
+        }
+
+        while (!elements.isEmpty() && elements.get(elements.size() - 1).compareTo(null) == 0) {
+            elements.remove(elements.size() - 1);
+        }
+
+        return elements;
+    }
+
+    private int comparePadding(List<Element> elements, int index, Boolean number)
+    {
+        for (int i = index; i < elements.size(); ++i) {
+            Element element = elements.get(i);
+            if (number != null && number.booleanValue() != element.isNumber()) {
+                break;
+            }
+
+            int rel = element.compareTo(null);
+            if (rel != 0) {
+                return rel;
+            }
+        }
+
+        return 0;
+    }
+
+    /**
+     * Compare the versions element by element.
+     */
+    private int compareElements(String version1, String version2)
+    {
+        List<Element> elements1 = parse(version1);
+        List<Element> elements2 = parse(version2);
+
+        boolean number = true;
+        for (int index = 0;; index++) {
+            if (index >= elements1.size() && index >= elements2.size()) {
+                return 0;
+            } else if (index >= elements1.size()) {
+                return -comparePadding(elements2, index, null);
+            } else if (index >= elements2.size()) {
+                return comparePadding(elements1, index, null);
+            }
+
+            Element element1 = elements1.get(index);
+            Element element2 = elements2.get(index);
+
+            if (element1.isNumber() != element2.isNumber()) {
+                if (number == element1.isNumber()) {
+                    return comparePadding(elements1, index, Boolean.valueOf(number));
+                } else {
+                    return -comparePadding(elements2, index, Boolean.valueOf(number));
+                }
+            } else {
+                int rel = element1.compareTo(element2);
+                if (rel != 0) {
+                    return rel;
+                }
+                number = element1.isNumber();
+            }
+        }
+    }
+
     @Test
     public void testCompareTo()
     {
@@ -58,6 +130,33 @@ public void testCompareTo()
 
         Assert.assertTrue(new DefaultVersion("1.1").compareTo(new DefaultVersion("1.1-milestone-1")) > 0);
         Assert.assertTrue(new DefaultVersion("1.1.1").compareTo(new DefaultVersion("1.1-milestone-1")) > 0);
+
+        Assert.assertTrue(new DefaultVersion("1.10").compareTo(new DefaultVersion("1.9")) > 0);
+        Assert.assertTrue(new DefaultVersion("1.1.0").compareTo(new DefaultVersion("1.1")) == 0);
+        Assert.assertTrue(new DefaultVersion("1.1.0.1").compareTo(new DefaultVersion("1.1")) > 0);
+    }
+
+    @Test
+    public void testCompareToAllElements()
+    {
+        String[] versions =
+            {"1", "1.0", "1.0.0", "1.1", "1.1.0", "1.1.1", "1.01", "1.10", "1.9", "2", "2.0-SNAPSHOT", "2.0-alpha",
+            "2.0-alpha-1", "2.0-beta-2", "2.0-milestone-1", "2.0M1", "2.0RC1", "2.0-rc-2", "2.0-ga", "2.0-final",
+            "2.0-sp", "2.0-sp-1", "2.0.1-SNAPSHOT", "2.0.0.1", "2.0a", "2.0-xyz", "2.0-XYZ", "2.0.abc", "abc",
+            "1.2147483648", "10.1.3", "10.1.3-1", "10.1.3.0.0", "5.4.5", "5.4.6", "6.0-milestone-1", "6.0M1", ""};
+
+        for (String version1 : versions) {
+            for (String version2 : versions) {
+                Assert.assertEquals("Wrong comparison between [" + version1 + "] and [" + version2 + "]",
+                    Integer.signum(compareElements(version1, version2)),
+                    Integer.signum(new DefaultVersion(version1).compareTo(new DefaultVersion(version2))));
+
+                if (new DefaultVersion(version1).equals(new DefaultVersion(version2))) {
+                    Assert.assertEquals(new DefaultVersion(version1).hashCode(),
+                        new DefaultVersion(version2).hashCode());
+                }
+            }
+        }
     }
 
     @Test
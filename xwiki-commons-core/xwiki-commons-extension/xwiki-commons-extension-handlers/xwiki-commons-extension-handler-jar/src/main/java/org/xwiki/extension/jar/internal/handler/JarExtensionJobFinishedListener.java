@@ -38,14 +38,16 @@
 import org.xwiki.component.annotation.Component;
 import org.xwiki.context.Execution;
 import org.xwiki.context.ExecutionContext;
+import org.xwiki.extension.ExtensionDependency;
+import org.xwiki.extension.ExtensionException;
 import org.xwiki.extension.ExtensionId;
 import org.xwiki.extension.InstalledExtension;
 import org.xwiki.extension.ResolveException;
 import org.xwiki.extension.UninstallException;
 import org.xwiki.extension.event.ExtensionUninstalledEvent;
 import org.xwiki.extension.handler.ExtensionHandler;
-import org.xwiki.extension.handler.ExtensionInitializer;
 import org.xwiki.extension.job.internal.UninstallJob;
+import org.xwiki.extension.repository.CoreExtensionRepository;
 import org.xwiki.extension.repository.InstalledExtensionRepository;
 import org.xwiki.job.event.JobFinishedEvent;
 import org.xwiki.job.event.JobStartedEvent;
@@ -97,16 +99,16 @@ public void add(String namespace)
     private ClassLoaderManager jarExtensionClassLoader;
 
     /**
-     * Extension initializer used to reinstall extensions in a new ClassLoader
+     * The local extension repository from which extension are initialized.
      */
     @Inject
-    private ExtensionInitializer extensionInitializer;
+    private InstalledExtensionRepository installedExtensionRepository;
 
     /**
-     * The local extension repository from which extension are initialized.
+     * The core extension repository to check extension dependency availability.
      */
     @Inject
-    private InstalledExtensionRepository installedExtensionRepository;
+    private CoreExtensionRepository coreExtensionRepository;
 
     @Inject
     @Named("jar")
@@ -211,7 +213,7 @@ private void addUninstalledExtension(ExtensionId id, String namespace)
     public void onEvent(Event event, Object o, Object o1)
     {
         if (event instanceof ExtensionUninstalledEvent) {
-            onExtensionUninstalledEvent(event);
+            onExtensionUninstalledEvent(event, o);
         } else if (event instanceof JobStartedEvent) {
             onJobStartedEvent(event);
         } else {
@@ -219,11 +221,14 @@ public void onEvent(Event event, Object o, Object o1)
         }
     }
 
-    private void onExtensionUninstalledEvent(Event event)
+    private void onExtensionUninstalledEvent(Event event, Object source)
     {
-        ExtensionUninstalledEvent uninstallEvent = (ExtensionUninstalledEvent) event;
+        // Only JAR extensions require to refresh the ClassLoader
+        if (!(source instanceof InstalledExtension) || "jar".equals(((InstalledExtension) source).getType())) {
+            ExtensionUninstalledEvent uninstallEvent = (ExtensionUninstalledEvent) event;
 
-        addUninstalledExtension(uninstallEvent.getExtensionId(), uninstallEvent.getNamespace());
+            addUninstalledExtension(uninstallEvent.getExtensionId(), uninstallEvent.getNamespace());
+        }
     }
 
     private void onJobStartedEvent(Event event)
@@ -238,36 +243,101 @@ private void onJobFinishedEvent(Event event)
         popUninstallLevel();
 
         if (collection != null) {
+            long startTime = System.currentTimeMillis();
+
+            Map<String, Set<InstalledExtension>> unloadedExtensions = new HashMap<String, Set<InstalledExtension>>();
+
             if (collection.rootNamespace) {
                 // Unload extensions
-                unloadJARsFromNamespace(null, null);
+                unloadJARsFromNamespace(null, unloadedExtensions);
 
                 // Drop class loaders
                 this.jarExtensionClassLoader.dropURLClassLoaders();
-
-                // Load extensions
-                this.extensionInitializer.initialize(null, "jar");
             } else if (collection.namespaces != null) {
                 for (String namespace : collection.namespaces) {
                     // Unload extensions
-                    unloadJARsFromNamespace(namespace, null);
+                    unloadJARsFromNamespace(namespace, unloadedExtensions);
 
                     // Drop class loader
                     this.jarExtensionClassLoader.dropURLClassLoader(namespace);
-
-                    // Load extensions
-                    this.extensionInitializer.initialize(namespace, "jar");
                 }
             }
+
+            // Load back the unloaded extensions (and only them since the others are still loaded)
+            int loaded = loadJARs(unloadedExtensions);
+
+            this.logger.info("Reloaded [{}] JAR extension(s) in [{}] ms", loaded, System.currentTimeMillis()
+                - startTime);
+        }
+    }
+
+    private int loadJARs(Map<String, Set<InstalledExtension>> unloadedExtensions)
+    {
+        int loaded = 0;
+
+        Map<String, Set<InstalledExtension>> loadedExtensions = new HashMap<String, Set<InstalledExtension>>();
+
+        for (Map.Entry<String, Set<InstalledExtension>> entry : unloadedExtensions.entrySet()) {
+            for (InstalledExtension installedExtension : entry.getValue()) {
+                loaded += loadJAR(installedExtension, entry.getKey(), unloadedExtensions, loadedExtensions);
+            }
         }
+
+        return loaded;
     }
 
-    private void unloadJARsFromNamespace(String namespace, Map<String, Set<InstalledExtension>> unloadedExtensions)
+    private int loadJAR(InstalledExtension installedExtension, String namespace,
+        Map<String, Set<InstalledExtension>> unloadedExtensions, Map<String, Set<InstalledExtension>> loadedExtensions)
     {
-        if (unloadedExtensions == null) {
-            unloadedExtensions = new HashMap<String, Set<InstalledExtension>>();
+        Set<InstalledExtension> loadedExtensionsInNamespace = loadedExtensions.get(namespace);
+
+        if (loadedExtensionsInNamespace == null) {
+            loadedExtensionsInNamespace = new HashSet<InstalledExtension>();
+            loadedExtensions.put(namespace, loadedExtensionsInNamespace);
         }
 
+        if (!loadedExtensionsInNamespace.add(installedExtension)) {
+            return 0;
+        }
+
+        int loaded = 0;
+
+        // Load first the dependencies which have been unloaded
+        for (ExtensionDependency dependency : installedExtension.getDependencies()) {
+            if (!this.coreExtensionRepository.exists(dependency.getId())) {
+                InstalledExtension dependencyExtension =
+                    this.installedExtensionRepository.getInstalledExtension(dependency.getId(), namespace);
+
+                if (dependencyExtension != null) {
+                    String dependencyNamespace = dependencyExtension.isInstalled(null) ? null : namespace;
+                    Set<InstalledExtension> unloadedExtensionsInNamespace =
+                        unloadedExtensions.get(dependencyNamespace);
+
+                    if (unloadedExtensionsInNamespace != null
+                        && unloadedExtensionsInNamespace.contains(dependencyExtension)) {
+                        loaded +=
+                            loadJAR(dependencyExtension, dependencyNamespace, unloadedExtensions, loadedExtensions);
+                    }
+                }
+            }
+        }
+
+        if ("jar".equals(installedExtension.getType()) && installedExtension.isValid(namespace)) {
+            try {
+                this.jarHandler.initialize(installedExtension, namespace);
+
+                ++loaded;
+            } catch (ExtensionException e) {
+                this.logger.error("Failed to load installed extension [{}] on namespace [{}]", installedExtension,
+                    namespace, e);
+            }
+        }
+
+        return loaded;
+    }
+
+    private void unloadJARsFromNamespace(String namespace, Map<String, Set<InstalledExtension>> unloadedExtensions)
+    {
         // Load extensions from local repository
         Collection<InstalledExtension> installedExtensions;
         if (namespace != null) {
@@ -316,8 +386,8 @@ private void unloadJAR(InstalledExtension installedExtension, String namespace,
                             installedExtension, e);
                     }
 
-                    this.jarHandler.uninstall(installedExtension, null, null);
                     unloadedExtensionsInNamespace.add(installedExtension);
+                    this.jarHandler.uninstall(installedExtension, null, null);
                 } else {
                     for (String namespace2 : installedExtension.getNamespaces()) {
                         unloadJAR(installedExtension, namespace2, unloadedExtensions);
@@ -338,8 +408,8 @@ private void unloadJAR(InstalledExtension installedExtension, String namespace,
                         installedExtension, namespace, e);
                 }
 
-                this.jarHandler.uninstall(installedExtension, namespace, null);
                 unloadedExtensionsInNamespace.add(installedExtension);
+                this.jarHandler.uninstall(installedExtension, namespace, null);
             }
         }
     }
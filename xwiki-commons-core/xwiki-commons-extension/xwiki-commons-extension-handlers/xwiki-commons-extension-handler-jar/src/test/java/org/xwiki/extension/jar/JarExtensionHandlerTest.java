@@ -558,6 +558,7 @@ public void testInstallDependencyInstallExtensionOnANamespaceAndUninstallExtensi
             checkJarExtensionAvailability(TestComponentWithDeps.class, DefaultTestComponentWithDeps.class, namespace);
         Type extensionDep2 = checkJarExtensionAvailability(TestComponent.TYPE_STRING, DefaultTestComponent.class);
         Assert.assertEquals(extensionDep1, extensionDep2);
+        Object dependencyComponent = this.mocker.getInstance(extensionDep1);
 
         // actual uninstall test
         LocalExtension localExtension = uninstall(extensionId, namespace);
@@ -568,6 +569,8 @@ public void testInstallDependencyInstallExtensionOnANamespaceAndUninstallExtensi
         checkJarExtensionUnavailability(TestComponentWithDeps.class, namespace);
         Type extensionDep3 = checkJarExtensionAvailability(TestComponent.TYPE_STRING, DefaultTestComponent.class);
         Assert.assertEquals(extensionDep1, extensionDep3);
+        // The dependency installed on root should not have been reloaded
+        Assert.assertSame(dependencyComponent, this.mocker.getInstance(extensionDep3));
 
         // actual reinstall test
         installedExtension = install(extensionId, namespace);
@@ -0,0 +1,235 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.extension.repository.http.internal;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * A resource stored by {@link DefaultHttpResourceCache} and its cache file format.
+ * 
+ * @version $Id$
+ * @since 6.0M1
+ */
+final class CachedHttpResource
+{
+    /**
+     * The version of the format of the cache files, cache files with a different version are ignored.
+     */
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * The value stored for a missing optional value.
+     */
+    private static final String NONE = "";
+
+    /**
+     * The URL of the resource.
+     */
+    private final String url;
+
+    /**
+     * The date when the resource was downloaded or revalidated for the last time, in milliseconds.
+     */
+    private long date;
+
+    /**
+     * True if the resource exists on the remote server.
+     */
+    private final boolean found;
+
+    /**
+     * The ETag sent by the remote server, null if none.
+     */
+    private final String etag;
+
+    /**
+     * The Last-Modified date sent by the remote server, null if none.
+     */
+    private final String lastModified;
+
+    /**
+     * The content of the resource, null if it does not exist.
+     */
+    private final byte[] content;
+
+    /**
+     * Create a resource which exists on the remote server.
+     * 
+     * @param url the URL of the resource
+     * @param date the date when the resource was downloaded, in milliseconds
+     * @param etag the ETag sent by the remote server, null if none
+     * @param lastModified the Last-Modified date sent by the remote server, null if none
+     * @param content the content of the resource
+     */
+    CachedHttpResource(String url, long date, String etag, String lastModified, byte[] content)
+    {
+        this.url = url;
+        this.date = date;
+        this.found = true;
+        this.etag = etag;
+        this.lastModified = lastModified;
+        this.content = content;
+    }
+
+    /**
+     * Create a resource which does not exist on the remote server.
+     * 
+     * @param url the URL of the resource
+     * @param date the date when the remote server said the resource does not exist, in milliseconds
+     */
+    CachedHttpResource(String url, long date)
+    {
+        this.url = url;
+        this.date = date;
+        this.found = false;
+        this.etag = null;
+        this.lastModified = null;
+        this.content = null;
+    }
+
+    /**
+     * @return the URL of the resource
+     */
+    String getURL()
+    {
+        return this.url;
+    }
+
+    /**
+     * @return the date when the resource was downloaded or revalidated for the last time, in milliseconds
+     */
+    long getDate()
+    {
+        return this.date;
+    }
+
+    /**
+     * @param date the date when the resource was revalidated, in milliseconds
+     */
+    void setDate(long date)
+    {
+        this.date = date;
+    }
+
+    /**
+     * @return true if the resource exists on the remote server
+     */
+    boolean isFound()
+    {
+        return this.found;
+    }
+
+    /**
+     * @return the ETag sent by the remote server, null if none
+     */
+    String getETag()
+    {
+        return this.etag;
+    }
+
+    /**
+     * @return the Last-Modified date sent by the remote server, null if none
+     */
+    String getLastModified()
+    {
+        return this.lastModified;
+    }
+
+    /**
+     * @return the content of the resource, null if it does not exist
+     */
+    byte[] getContent()
+    {
+        return this.content;
+    }
+
+    /**
+     * @param file the cache file
+     * @param url the URL of the resource
+     * @return the cached resource, null if the file contains another resource or uses another format
+     * @throws IOException when failing to read the file
+     */
+    static CachedHttpResource read(File file, String url) throws IOException
+    {
+        DataInputStream stream = new DataInputStream(new FileInputStream(file));
+
+        try {
+            if (stream.readInt() != FORMAT_VERSION || !url.equals(stream.readUTF())) {
+                return null;
+            }
+
+            long date = stream.readLong();
+
+            if (!stream.readBoolean()) {
+                return new CachedHttpResource(url, date);
+            }
+
+            String etag = readOptional(stream);
+            String lastModified = readOptional(stream);
+            byte[] content = new byte[stream.readInt()];
+            stream.readFully(content);
+
+            return new CachedHttpResource(url, date, etag, lastModified, content);
+        } finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * @param stream the stream to read
+     * @return the read value, null if empty
+     * @throws IOException when failing to read the stream
+     */
+    private static String readOptional(DataInputStream stream) throws IOException
+    {
+        String value = stream.readUTF();
+
+        return value.isEmpty() ? null : value;
+    }
+
+    /**
+     * @param file the file where to write the resource
+     * @throws IOException when failing to write the file
+     */
+    void write(File file) throws IOException
+    {
+        DataOutputStream stream = new DataOutputStream(new FileOutputStream(file));
+
+        try {
+            stream.writeInt(FORMAT_VERSION);
+            stream.writeUTF(this.url);
+            stream.writeLong(this.date);
+            stream.writeBoolean(this.found);
+            if (this.found) {
+                stream.writeUTF(this.etag != null ? this.etag : NONE);
+                stream.writeUTF(this.lastModified != null ? this.lastModified : NONE);
+                stream.writeInt(this.content.length);
+                stream.write(this.content);
+            }
+        } finally {
+            stream.close();
+        }
+    }
+}
@@ -19,36 +19,100 @@
  */
 package org.xwiki.extension.repository.http.internal;
 
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
 import javax.inject.Inject;
+import javax.inject.Provider;
 import javax.inject.Singleton;
 
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponse;
 import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.UsernamePasswordCredentials;
 import org.apache.http.client.CredentialsProvider;
-import org.apache.http.config.SocketConfig;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.BasicCredentialsProvider;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.HttpClientBuilder;
-import org.apache.http.impl.conn.BasicHttpClientConnectionManager;
+import org.apache.http.protocol.HttpContext;
 import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.configuration.ConfigurationSource;
 import org.xwiki.extension.ExtensionManagerConfiguration;
 
 /**
  * Configures user agent, timeouts, proxy and authentication.
+ * <p>
+ * Each client has its own pool of keep-alive connections so it's expected to be reused for all the requests sent to a
+ * repository. The pools are configured with the following properties:
+ * <ul>
+ * <li>{@code extension.http.maxConnectionsPerRoute}: the maximum number of connections opened at the same time to the
+ * same host, 10 by default</li>
+ * <li>{@code extension.http.maxConnections}: the maximum number of connections opened at the same time by a client, 50
+ * by default</li>
+ * <li>{@code extension.http.keepAlive}: the number of seconds during which an idle connection is kept when the server
+ * does not indicate it, 30 by default</li>
+ * </ul>
+ * Content compression (gzip and deflate) is negotiated with the server. Closing a client shuts down its pool.
  * 
  * @version $Id$
  * @since 5.2M1
  */
 @Component
 @Singleton
-public class DefaultHttpClientFactory implements HttpClientFactory
+public class DefaultHttpClientFactory implements HttpClientFactory, Disposable
 {
+    private static final String CK_PREFIX = "extension.http.";
+
+    private static final String CK_MAXCONNECTIONSPERROUTE = CK_PREFIX + "maxConnectionsPerRoute";
+
+    private static final String CK_MAXCONNECTIONS = CK_PREFIX + "maxConnections";
+
+    private static final String CK_KEEPALIVE = CK_PREFIX + "keepAlive";
+
+    private static final int DEFAULT_MAXCONNECTIONSPERROUTE = 10;
+
+    private static final int DEFAULT_MAXCONNECTIONS = 50;
+
+    private static final long DEFAULT_KEEPALIVE = 30;
+
     /**
      * Used to get the user agent to use when performing HTTP calls to the remote Extension Repository.
      */
     @Inject
     private ExtensionManagerConfiguration configuration;
 
+    /**
+     * Used to get the connection pool configuration.
+     */
+    @Inject
+    private Provider<ConfigurationSource> configurationSource;
+
+    /**
+     * The connection pools of the clients.
+     */
+    private final HttpConnectionPools connectionPools = new HttpConnectionPools();
+
+    /**
+     * The number of requests sent.
+     */
+    private final AtomicLong requestCount = new AtomicLong();
+
+    /**
+     * Count the requests sent.
+     */
+    private final HttpRequestInterceptor requestCounter = new HttpRequestInterceptor()
+    {
+        @Override
+        public void process(HttpRequest request, HttpContext context)
+        {
+            requestCount.incrementAndGet();
+        }
+    };
+
     @Override
     public CloseableHttpClient createClient(String user, String password)
     {
@@ -60,11 +124,28 @@ public CloseableHttpClient createClient(String user, String password)
         // Setup user agent
         httpClientBuilder.setUserAgent(this.configuration.getUserAgent());
 
-        // Setup timeout
-        BasicHttpClientConnectionManager connectionManager = new BasicHttpClientConnectionManager();
-        SocketConfig socketConfig = SocketConfig.custom().setSoTimeout(60000).build();
-        connectionManager.setSocketConfig(socketConfig);
-        httpClientBuilder.setConnectionManager(connectionManager);
+        ConfigurationSource source = this.configurationSource.get();
+        final long keepAlive = source.getProperty(CK_KEEPALIVE, DEFAULT_KEEPALIVE);
+
+        // Setup timeout and connection pool
+        httpClientBuilder.setConnectionManager(this.connectionPools.create(
+            source.getProperty(CK_MAXCONNECTIONSPERROUTE, DEFAULT_MAXCONNECTIONSPERROUTE),
+            source.getProperty(CK_MAXCONNECTIONS, DEFAULT_MAXCONNECTIONS), keepAlive));
+
+        // Keep the connections alive
+        httpClientBuilder.setKeepAliveStrategy(new ConnectionKeepAliveStrategy()
+        {
+            @Override
+            public long getKeepAliveDuration(HttpResponse response, HttpContext context)
+            {
+                long duration = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+
+                return duration > 0 ? duration : TimeUnit.SECONDS.toMillis(keepAlive);
+            }
+        });
+
+        // Statistics
+        httpClientBuilder.addInterceptorLast(this.requestCounter);
 
         // Setup authentication
         if (user != null) {
@@ -76,4 +157,46 @@ public CloseableHttpClient createClient(String user, String password)
 
         return httpClientBuilder.build();
     }
+
+    @Override
+    public void dispose()
+    {
+        this.connectionPools.shutdown();
+    }
+
+    /**
+     * @return the number of requests sent by the clients
+     * @since 6.0M1
+     */
+    public long getRequestCount()
+    {
+        return this.requestCount.get();
+    }
+
+    /**
+     * @return the number of connections opened by the clients
+     * @since 6.0M1
+     */
+    public long getConnectionCount()
+    {
+        return this.connectionPools.getConnectionCount();
+    }
+
+    /**
+     * @return the number of requests which reused an already opened connection
+     * @since 6.0M1
+     */
+    public long getReusedConnectionCount()
+    {
+        return Math.max(0, getRequestCount() - getConnectionCount());
+    }
+
+    /**
+     * @return the number of connection pools used by clients which have not been closed yet
+     * @since 6.0M1
+     */
+    public int getConnectionPoolCount()
+    {
+        return this.connectionPools.getPoolCount();
+    }
 }
@@ -0,0 +1,466 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.extension.repository.http.internal;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLEncoder;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.environment.Environment;
+
+/**
+ * Store the cached resources in the permanent directory, one file per resource.
+ * <p>
+ * The cache is configured with the following properties:
+ * <ul>
+ * <li>{@code extension.repositoryCache.ttl}: the number of seconds during which a resource is used without asking the
+ * remote server if it changed, 3600 by default</li>
+ * <li>{@code extension.repositoryCache.negativeTtl}: the number of seconds during which a resource which does not
+ * exist is not asked again to the remote server, 300 by default</li>
+ * <li>{@code extension.repositoryCache.maxSize}: the maximum size of the cache in bytes, 50MB by default</li>
+ * <li>{@code extension.repositoryCache.offline}: if true the remote server is never asked for resources which are in
+ * the cache, whatever their age, false by default</li>
+ * </ul>
+ * Whatever the configuration, the cached version of a resource is used when the remote server can't be reached.
+ * 
+ * @version $Id$
+ * @since 6.0M1
+ */
+@Component
+@Singleton
+public class DefaultHttpResourceCache implements HttpResourceCache
+{
+    /**
+     * The prefix of the cache configuration properties.
+     */
+    private static final String CK_PREFIX = "extension.repositoryCache.";
+
+    /**
+     * The configuration property containing the number of seconds during which a resource is used without
+     * revalidation.
+     */
+    private static final String CK_TTL = CK_PREFIX + "ttl";
+
+    /**
+     * The configuration property containing the number of seconds during which a resource which does not exist is not
+     * asked again.
+     */
+    private static final String CK_NEGATIVETTL = CK_PREFIX + "negativeTtl";
+
+    /**
+     * The configuration property containing the maximum size of the cache in bytes.
+     */
+    private static final String CK_MAXSIZE = CK_PREFIX + "maxSize";
+
+    /**
+     * The configuration property indicating if the remote server should never be asked for cached resources.
+     */
+    private static final String CK_OFFLINE = CK_PREFIX + "offline";
+
+    /**
+     * The default value of {@link #CK_TTL}, one hour.
+     */
+    private static final long DEFAULT_TTL = 3600;
+
+    /**
+     * The default value of {@link #CK_NEGATIVETTL}, five minutes.
+     */
+    private static final long DEFAULT_NEGATIVETTL = 300;
+
+    /**
+     * The default value of {@link #CK_MAXSIZE}, 50MB.
+     */
+    private static final long DEFAULT_MAXSIZE = 50L * 1024 * 1024;
+
+    /**
+     * The extension of the cache files.
+     */
+    private static final String FILE_EXTENSION = ".cache";
+
+    /**
+     * The message of the exception thrown when the server answered with an unexpected status.
+     */
+    private static final String INVALID_ANSWER = "Invalid answer [%s] from the server when requesting [%s]";
+
+    /**
+     * A cache file and its properties at the time it was listed.
+     * 
+     * @version $Id$
+     */
+    private static final class CachedFile
+    {
+        /**
+         * The cache file.
+         */
+        private File file;
+
+        /**
+         * The last modification date of the file.
+         */
+        private long date;
+
+        /**
+         * The size of the file.
+         */
+        private long length;
+    }
+
+    /**
+     * Used to get the permanent directory.
+     */
+    @Inject
+    private Environment environment;
+
+    /**
+     * Used to get the cache configuration.
+     */
+    @Inject
+    private Provider<ConfigurationSource> configuration;
+
+    /**
+     * The logger to log.
+     */
+    @Inject
+    private Logger logger;
+
+    /**
+     * The folder where the cached resources are stored.
+     */
+    private File folder;
+
+    /**
+     * The total size of the cache files, -1 when not calculated yet.
+     */
+    private final AtomicLong size = new AtomicLong(-1);
+
+    /**
+     * @return the folder where the cached resources are stored
+     */
+    private File getFolder()
+    {
+        if (this.folder == null) {
+            this.folder = new File(this.environment.getPermanentDirectory(), "extension/repository-cache/");
+        }
+
+        return this.folder;
+    }
+
+    @Override
+    public InputStream getContent(String repositoryId, HttpGet request, Loader loader) throws IOException
+    {
+        String url = request.getURI().toString();
+        File file = getFile(repositoryId, url);
+
+        CachedHttpResource resource = read(file, url);
+
+        long now = System.currentTimeMillis();
+
+        boolean offline = this.configuration.get().getProperty(CK_OFFLINE, false);
+
+        if (resource != null && (offline || now - resource.getDate() < getTTL(resource))) {
+            return toContent(resource);
+        } else if (offline) {
+            throw new IOException(String.format("Resource [%s] is not cached and remote access is disabled", url));
+        }
+
+        if (resource != null && resource.isFound()) {
+            setConditionalHeaders(request, resource);
+        }
+
+        CloseableHttpResponse response;
+        try {
+            response = loader.execute(request);
+        } catch (IOException e) {
+            return getStaleContent(resource, e);
+        }
+
+        CachedHttpResource newResource;
+        try {
+            newResource = toCachedResource(response, url, resource, now);
+        } finally {
+            // Read what's left so that the connection can be reused
+            EntityUtils.consumeQuietly(response.getEntity());
+            response.close();
+        }
+
+        if (newResource == null) {
+            return getStaleContent(resource,
+                new IOException(String.format(INVALID_ANSWER, response.getStatusLine().getStatusCode(), url)));
+        }
+
+        write(file, newResource);
+
+        return toContent(newResource);
+    }
+
+    /**
+     * Ask the server to send the resource only if it changed.
+     * 
+     * @param request the request to send to the server
+     * @param resource the cached resource
+     */
+    private void setConditionalHeaders(HttpGet request, CachedHttpResource resource)
+    {
+        if (resource.getETag() != null) {
+            request.setHeader(HttpHeaders.IF_NONE_MATCH, resource.getETag());
+        }
+        if (resource.getLastModified() != null) {
+            request.setHeader(HttpHeaders.IF_MODIFIED_SINCE, resource.getLastModified());
+        }
+    }
+
+    /**
+     * @param response the answer of the server
+     * @param url the URL of the resource
+     * @param resource the cached resource, null if none
+     * @param now the date of the request
+     * @return the resource to store in the cache, null if the server failed and the cached resource should be used
+     * @throws IOException when the server gave an unexpected answer
+     */
+    private CachedHttpResource toCachedResource(CloseableHttpResponse response, String url,
+        CachedHttpResource resource, long now) throws IOException
+    {
+        int statusCode = response.getStatusLine().getStatusCode();
+
+        if (statusCode == HttpStatus.SC_OK) {
+            return new CachedHttpResource(url, now, getHeader(response, HttpHeaders.ETAG), getHeader(response,
+                HttpHeaders.LAST_MODIFIED), EntityUtils.toByteArray(response.getEntity()));
+        } else if (statusCode == HttpStatus.SC_NOT_MODIFIED && resource != null && resource.isFound()) {
+            resource.setDate(now);
+
+            return resource;
+        } else if (statusCode == HttpStatus.SC_NOT_FOUND) {
+            return new CachedHttpResource(url, now);
+        } else if (statusCode >= HttpStatus.SC_INTERNAL_SERVER_ERROR) {
+            return null;
+        }
+
+        throw new IOException(String.format(INVALID_ANSWER, statusCode, url));
+    }
+
+    /**
+     * @param resource the cached resource
+     * @return the number of milliseconds during which the passed cached resource can be used without revalidation
+     */
+    private long getTTL(CachedHttpResource resource)
+    {
+        long ttl;
+        if (resource.isFound()) {
+            ttl = this.configuration.get().getProperty(CK_TTL, DEFAULT_TTL);
+        } else {
+            ttl = this.configuration.get().getProperty(CK_NEGATIVETTL, DEFAULT_NEGATIVETTL);
+        }
+
+        return TimeUnit.SECONDS.toMillis(ttl);
+    }
+
+    /**
+     * @param response the HTTP response
+     * @param name the name of the header
+     * @return the value of the header, null if the response does not contain it
+     */
+    private String getHeader(CloseableHttpResponse response, String name)
+    {
+        Header header = response.getFirstHeader(name);
+
+        return header != null ? header.getValue() : null;
+    }
+
+    /**
+     * @param resource the cached resource
+     * @return the content of the cached resource
+     * @throws IOException when the cached resource indicates that the resource does not exist
+     */
+    private InputStream toContent(CachedHttpResource resource) throws IOException
+    {
+        if (!resource.isFound()) {
+            throw new IOException(String.format(INVALID_ANSWER, HttpStatus.SC_NOT_FOUND, resource.getURL()));
+        }
+
+        return new ByteArrayInputStream(resource.getContent());
+    }
+
+    /**
+     * @param resource the cached resource, null if none
+     * @param cause the reason why the resource could not be revalidated
+     * @return the content of the cached resource
+     * @throws IOException the passed cause when there is no cached content to fallback on
+     */
+    private InputStream getStaleContent(CachedHttpResource resource, IOException cause) throws IOException
+    {
+        if (resource == null || !resource.isFound()) {
+            throw cause;
+        }
+
+        this.logger.warn("Failed to revalidate resource [{}], using the version cached on [{}]: {}",
+            resource.getURL(), new Date(resource.getDate()), ExceptionUtils.getRootCauseMessage(cause));
+
+        return toContent(resource);
+    }
+
+    // Storage
+
+    /**
+     * @param repositoryId the identifier of the repository
+     * @param url the URL of the resource
+     * @return the file where to store the resource
+     * @throws IOException when failing to generate the file name
+     */
+    private File getFile(String repositoryId, String url) throws IOException
+    {
+        // Make sure the repository identifier can't point outside of the cache folder
+        String repositoryFolder = URLEncoder.encode(repositoryId, "UTF-8").replace(".", "%2E");
+
+        return new File(new File(getFolder(), repositoryFolder), DigestUtils.sha1Hex(url) + FILE_EXTENSION);
+    }
+
+    /**
+     * @param file the cache file
+     * @param url the URL of the resource
+     * @return the cached resource, null if there is none or if the file is invalid
+     */
+    private CachedHttpResource read(File file, String url)
+    {
+        if (!file.exists()) {
+            return null;
+        }
+
+        try {
+            return CachedHttpResource.read(file, url);
+        } catch (IOException e) {
+            this.logger.debug("Failed to read cache file [{}]", file, e);
+
+            return null;
+        }
+    }
+
+    /**
+     * Store the passed cached resource and make sure the cache does not get too big.
+     * 
+     * @param file the cache file
+     * @param resource the cached resource
+     */
+    private void write(File file, CachedHttpResource resource)
+    {
+        long previousLength = file.length();
+
+        try {
+            File parent = file.getParentFile();
+            FileUtils.forceMkdir(parent);
+
+            // Write in a temporary file first so that a concurrent read never see a partial file
+            File temporaryFile = File.createTempFile(file.getName(), null, parent);
+            try {
+                resource.write(temporaryFile);
+
+                Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                // Only remains when the write or the move failed
+                Files.deleteIfExists(temporaryFile.toPath());
+            }
+        } catch (IOException e) {
+            this.logger.warn("Failed to write cache file [{}]: {}", file, ExceptionUtils.getRootCauseMessage(e));
+
+            return;
+        }
+
+        if (this.size.get() < 0) {
+            this.size.compareAndSet(-1, FileUtils.sizeOfDirectory(getFolder()));
+        } else {
+            this.size.addAndGet(file.length() - previousLength);
+        }
+
+        long maxSize = this.configuration.get().getProperty(CK_MAXSIZE, DEFAULT_MAXSIZE);
+        if (this.size.get() > maxSize) {
+            evict(maxSize);
+        }
+    }
+
+    /**
+     * Remove the oldest cache files until the cache is at 80% of its maximum size.
+     * 
+     * @param maxSize the maximum size of the cache
+     */
+    private synchronized void evict(long maxSize)
+    {
+        // Take a snapshot of the modification dates since they might change during the sort
+        List<CachedFile> files = new ArrayList<CachedFile>();
+        long currentSize = 0;
+        for (File file : FileUtils.listFiles(getFolder(), null, true)) {
+            CachedFile cachedFile = new CachedFile();
+            cachedFile.file = file;
+            cachedFile.date = file.lastModified();
+            cachedFile.length = file.length();
+            files.add(cachedFile);
+
+            currentSize += cachedFile.length;
+        }
+
+        Collections.sort(files, new Comparator<CachedFile>()
+        {
+            @Override
+            public int compare(CachedFile file1, CachedFile file2)
+            {
+                return file1.date < file2.date ? -1 : (file1.date == file2.date ? 0 : 1);
+            }
+        });
+
+        long targetSize = maxSize - maxSize / 5;
+        for (CachedFile cachedFile : files) {
+            if (currentSize <= targetSize) {
+                break;
+            }
+
+            if (cachedFile.file.delete()) {
+                currentSize -= cachedFile.length;
+            }
+        }
+
+        this.size.set(currentSize);
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.extension.repository.http.internal;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.config.ConnectionConfig;
+import org.apache.http.config.SocketConfig;
+import org.apache.http.conn.HttpConnectionFactory;
+import org.apache.http.conn.ManagedHttpClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.conn.ManagedHttpClientConnectionFactory;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.xwiki.extension.internal.ExtensionThreadFactory;
+
+/**
+ * Create the connection pools of the HTTP clients and close their expired and idle connections.
+ * <p>
+ * A pool is released when it's shut down, which happens when the client using it is closed. The thread closing the
+ * idle connections is stopped when there is no pool left.
+ * 
+ * @version $Id$
+ * @since 6.0M1
+ */
+class HttpConnectionPools
+{
+    /**
+     * The interval in seconds between two checks of the idle connections.
+     */
+    private static final long EVICTION_INTERVAL = 10;
+
+    /**
+     * The socket timeout in milliseconds.
+     */
+    private static final int SOCKET_TIMEOUT = 60000;
+
+    /**
+     * A connection pool which releases itself when shut down.
+     * 
+     * @version $Id$
+     */
+    private class ConnectionPool extends PoolingHttpClientConnectionManager
+    {
+        /**
+         * The number of seconds during which an idle connection is kept.
+         */
+        private final long keepAlive;
+
+        /**
+         * @param keepAlive the number of seconds during which an idle connection is kept
+         */
+        ConnectionPool(long keepAlive)
+        {
+            super(connectionFactory);
+
+            this.keepAlive = keepAlive;
+        }
+
+        /**
+         * Close the connections which expired or have been idle for more than the keep alive duration.
+         */
+        void evictIdleConnections()
+        {
+            closeExpiredConnections();
+            closeIdleConnections(this.keepAlive, TimeUnit.SECONDS);
+        }
+
+        @Override
+        public void shutdown()
+        {
+            super.shutdown();
+
+            release(this);
+        }
+    }
+
+    /**
+     * The connection pools which have not been shut down yet and are still in use.
+     */
+    private final Set<ConnectionPool> pools = Collections.newSetFromMap(new WeakHashMap<ConnectionPool, Boolean>());
+
+    /**
+     * Close the expired and idle connections, null when there is no pool.
+     */
+    private ScheduledExecutorService evictionExecutor;
+
+    /**
+     * The number of connections opened.
+     */
+    private final AtomicLong connectionCount = new AtomicLong();
+
+    /**
+     * Create the connections and count them.
+     */
+    private final HttpConnectionFactory<HttpRoute, ManagedHttpClientConnection> connectionFactory =
+        new HttpConnectionFactory<HttpRoute, ManagedHttpClientConnection>()
+        {
+            @Override
+            public ManagedHttpClientConnection create(HttpRoute route, ConnectionConfig config)
+            {
+                connectionCount.incrementAndGet();
+
+                return ManagedHttpClientConnectionFactory.INSTANCE.create(route, config);
+            }
+        };
+
+    /**
+     * @param maxPerRoute the maximum number of connections opened at the same time to the same host
+     * @param maxTotal the maximum number of connections opened at the same time
+     * @param keepAlive the number of seconds during which an idle connection is kept
+     * @return a new connection pool
+     */
+    PoolingHttpClientConnectionManager create(int maxPerRoute, int maxTotal, long keepAlive)
+    {
+        ConnectionPool pool = new ConnectionPool(keepAlive);
+        pool.setDefaultSocketConfig(SocketConfig.custom().setSoTimeout(SOCKET_TIMEOUT).build());
+        pool.setDefaultMaxPerRoute(maxPerRoute);
+        pool.setMaxTotal(maxTotal);
+
+        synchronized (this.pools) {
+            this.pools.add(pool);
+
+            if (this.evictionExecutor == null) {
+                this.evictionExecutor = createEvictionExecutor();
+            }
+        }
+
+        return pool;
+    }
+
+    /**
+     * @param pool the pool which has been shut down
+     */
+    private void release(ConnectionPool pool)
+    {
+        synchronized (this.pools) {
+            this.pools.remove(pool);
+
+            stopEvictionIfUnused();
+        }
+    }
+
+    /**
+     * Stop the thread closing the idle connections if there is no pool left. Must be called while holding the lock on
+     * {@link #pools}.
+     */
+    private void stopEvictionIfUnused()
+    {
+        if (this.pools.isEmpty() && this.evictionExecutor != null) {
+            this.evictionExecutor.shutdownNow();
+            this.evictionExecutor = null;
+        }
+    }
+
+    /**
+     * @return the executor closing the idle connections
+     */
+    private ScheduledExecutorService createEvictionExecutor()
+    {
+        ScheduledExecutorService executor =
+            Executors.newSingleThreadScheduledExecutor(new ExtensionThreadFactory(
+                "Extension repositories idle connections evictor", Thread.MIN_PRIORITY, false));
+
+        executor.scheduleWithFixedDelay(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                evictIdleConnections();
+            }
+        }, EVICTION_INTERVAL, EVICTION_INTERVAL, TimeUnit.SECONDS);
+
+        return executor;
+    }
+
+    /**
+     * Close the connections which expired or have been idle for more than the keep alive duration.
+     */
+    private void evictIdleConnections()
+    {
+        ConnectionPool[] currentPools;
+        synchronized (this.pools) {
+            // The pools of the clients which have been garbage collected without being closed are gone
+            stopEvictionIfUnused();
+
+            currentPools = this.pools.toArray(new ConnectionPool[0]);
+        }
+
+        for (ConnectionPool pool : currentPools) {
+            pool.evictIdleConnections();
+        }
+    }
+
+    /**
+     * Shut down all the pools and stop the thread closing the idle connections.
+     */
+    void shutdown()
+    {
+        ConnectionPool[] currentPools;
+        synchronized (this.pools) {
+            currentPools = this.pools.toArray(new ConnectionPool[0]);
+        }
+
+        // Each pool releases itself
+        for (ConnectionPool pool : currentPools) {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * @return the number of pools which have not been shut down yet
+     */
+    int getPoolCount()
+    {
+        synchronized (this.pools) {
+            return this.pools.size();
+        }
+    }
+
+    /**
+     * @return the number of connections opened by the pools
+     */
+    long getConnectionCount()
+    {
+        return this.connectionCount.get();
+    }
+}
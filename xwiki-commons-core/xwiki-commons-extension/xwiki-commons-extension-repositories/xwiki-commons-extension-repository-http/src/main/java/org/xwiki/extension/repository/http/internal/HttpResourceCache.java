@@ -0,0 +1,65 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.extension.repository.http.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.xwiki.component.annotation.Role;
+
+/**
+ * Keep on disk the resources downloaded from HTTP-based Extension Repositories and revalidate them with the remote
+ * server when they expire.
+ * 
+ * @version $Id$
+ * @since 6.0M1
+ */
+@Role
+public interface HttpResourceCache
+{
+    /**
+     * Execute the HTTP requests on the remote repository.
+     * 
+     * @version $Id$
+     */
+    interface Loader
+    {
+        /**
+         * @param request the request to execute
+         * @return the response of the server
+         * @throws IOException when failing to execute the request
+         */
+        CloseableHttpResponse execute(HttpGet request) throws IOException;
+    }
+
+    /**
+     * Return the content of the passed request. The cached version is returned when it's still fresh, or when the
+     * remote server says it did not change, or when the remote server can't be reached.
+     * 
+     * @param repositoryId the identifier of the repository the resource is coming from
+     * @param request the request to send to the repository
+     * @param loader used to execute the request when the cache does not contain a fresh enough version of the resource
+     * @return the content of the resource
+     * @throws IOException when the resource does not exist or can't be downloaded
+     */
+    InputStream getContent(String repositoryId, HttpGet request, Loader loader) throws IOException;
+}
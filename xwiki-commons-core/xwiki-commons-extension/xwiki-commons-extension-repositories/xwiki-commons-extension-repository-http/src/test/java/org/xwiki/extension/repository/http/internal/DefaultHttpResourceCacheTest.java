@@ -0,0 +1,234 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.extension.repository.http.internal;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.equalTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.xwiki.configuration.internal.MemoryConfigurationSource;
+import org.xwiki.environment.Environment;
+import org.xwiki.test.annotation.BeforeComponent;
+import org.xwiki.test.annotation.ComponentList;
+import org.xwiki.test.mockito.MockitoComponentManagerRule;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+
+/**
+ * Unit tests for {@link DefaultHttpResourceCache}.
+ * 
+ * @version $Id$
+ */
+@ComponentList({DefaultHttpResourceCache.class})
+public class DefaultHttpResourceCacheTest
+{
+    private static final String URL = "http://localhost:8890/resource";
+
+    @Rule
+    public WireMockRule wireMockRule = new WireMockRule(8890);
+
+    @Rule
+    public final MockitoComponentManagerRule componentManager = new MockitoComponentManagerRule();
+
+    private File permanentDirectory;
+
+    private MemoryConfigurationSource configuration;
+
+    private CloseableHttpClient client;
+
+    private HttpResourceCache cache;
+
+    private HttpResourceCache.Loader loader = new HttpResourceCache.Loader()
+    {
+        @Override
+        public CloseableHttpResponse execute(HttpGet request) throws IOException
+        {
+            return client.execute(request);
+        }
+    };
+
+    @BeforeComponent
+    public void registerComponents() throws Exception
+    {
+        this.permanentDirectory = new File("target/test-" + getClass().getSimpleName() + System.currentTimeMillis());
+
+        Environment environment = this.componentManager.registerMockComponent(Environment.class);
+        when(environment.getPermanentDirectory()).thenReturn(this.permanentDirectory);
+
+        this.configuration = this.componentManager.registerMemoryConfigurationSource();
+    }
+
+    @Before
+    public void setUp() throws Exception
+    {
+        this.cache = this.componentManager.getInstance(HttpResourceCache.class);
+        this.client = HttpClients.createDefault();
+    }
+
+    @After
+    public void tearDown() throws IOException
+    {
+        this.client.close();
+
+        FileUtils.deleteDirectory(this.permanentDirectory);
+    }
+
+    private String getContent(String url) throws IOException
+    {
+        InputStream stream = this.cache.getContent("repository", new HttpGet(url), this.loader);
+
+        try {
+            return IOUtils.toString(stream, "UTF-8");
+        } finally {
+            stream.close();
+        }
+    }
+
+    private void assertNotFound(String url)
+    {
+        try {
+            getContent(url);
+
+            fail("The resource should not exist");
+        } catch (IOException expected) {
+            // expected
+        }
+    }
+
+    // Tests
+
+    @Test
+    public void testFreshResourceServedFromCache() throws IOException
+    {
+        stubFor(get(urlEqualTo("/resource")).willReturn(aResponse().withStatus(200).withBody("content")));
+
+        assertEquals("content", getContent(URL));
+        assertEquals("content", getContent(URL));
+
+        verify(1, getRequestedFor(urlEqualTo("/resource")));
+    }
+
+    @Test
+    public void testExpiredResourceRevalidated() throws IOException
+    {
+        this.configuration.setProperty("extension.repositoryCache.ttl", 0L);
+
+        stubFor(get(urlEqualTo("/resource")).willReturn(
+            aResponse().withStatus(200).withHeader("ETag", "\"v1\"").withBody("content")));
+        stubFor(get(urlEqualTo("/resource")).withHeader("If-None-Match", equalTo("\"v1\"")).willReturn(
+            aResponse().withStatus(304)));
+
+        assertEquals("content", getContent(URL));
+        assertEquals("content", getContent(URL));
+
+        verify(2, getRequestedFor(urlEqualTo("/resource")));
+        verify(1, getRequestedFor(urlEqualTo("/resource")).withHeader("If-None-Match", equalTo("\"v1\"")));
+    }
+
+    @Test
+    public void testMissingResourceCached() throws IOException
+    {
+        stubFor(get(urlEqualTo("/missing")).willReturn(aResponse().withStatus(404)));
+
+        assertNotFound("http://localhost:8890/missing");
+        assertNotFound("http://localhost:8890/missing");
+
+        verify(1, getRequestedFor(urlEqualTo("/missing")));
+    }
+
+    @Test
+    public void testStaleResourceUsedWhenServerFails() throws IOException
+    {
+        this.configuration.setProperty("extension.repositoryCache.ttl", 0L);
+
+        stubFor(get(urlEqualTo("/resource")).willReturn(aResponse().withStatus(200).withBody("content")));
+
+        assertEquals("content", getContent(URL));
+
+        stubFor(get(urlEqualTo("/resource")).willReturn(aResponse().withStatus(503)));
+
+        assertEquals("content", getContent(URL));
+
+        // Without cached version the error is propagated
+        stubFor(get(urlEqualTo("/other")).willReturn(aResponse().withStatus(503)));
+
+        assertNotFound("http://localhost:8890/other");
+    }
+
+    @Test
+    public void testOffline() throws IOException
+    {
+        stubFor(get(urlEqualTo("/resource")).willReturn(aResponse().withStatus(200).withBody("content")));
+
+        assertEquals("content", getContent(URL));
+
+        this.configuration.setProperty("extension.repositoryCache.ttl", 0L);
+        this.configuration.setProperty("extension.repositoryCache.offline", true);
+
+        assertEquals("content", getContent(URL));
+        assertNotFound("http://localhost:8890/other");
+
+        verify(1, getRequestedFor(urlEqualTo("/resource")));
+        verify(0, getRequestedFor(urlEqualTo("/other")));
+    }
+
+    @Test
+    public void testEviction() throws Exception
+    {
+        this.configuration.setProperty("extension.repositoryCache.maxSize", 1000L);
+
+        stubFor(get(urlEqualTo("/resource1")).willReturn(
+            aResponse().withStatus(200).withBody(new byte[600])));
+        stubFor(get(urlEqualTo("/resource2")).willReturn(
+            aResponse().withStatus(200).withBody(new byte[600])));
+
+        getContent("http://localhost:8890/resource1");
+        // Make sure the second file is more recent than the first one
+        Thread.sleep(1000);
+        getContent("http://localhost:8890/resource2");
+
+        // The oldest resource was evicted
+        getContent("http://localhost:8890/resource1");
+
+        verify(2, getRequestedFor(urlEqualTo("/resource1")));
+        verify(1, getRequestedFor(urlEqualTo("/resource2")));
+    }
+}
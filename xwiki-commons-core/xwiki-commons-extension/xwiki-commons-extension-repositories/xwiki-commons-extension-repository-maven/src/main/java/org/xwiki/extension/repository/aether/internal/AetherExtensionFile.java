@@ -102,7 +102,7 @@ public InputStream openStream() throws IOException
             throw new IOException("Failed to get org.sonatype.aether.RepositorySystem component", e);
         }
 
-        RepositorySystemSession session = this.repository.createRepositorySystemSession();
+        RepositorySystemSession session = this.repository.getRepositorySystemSession();
         List<RemoteRepository> repositories;
         try {
             repositories = this.repository.newResolutionRepositories(session);
@@ -30,6 +30,9 @@
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.maven.model.Developer;
@@ -37,6 +40,7 @@
 import org.apache.maven.model.Model;
 import org.codehaus.plexus.PlexusContainer;
 import org.codehaus.plexus.component.repository.exception.ComponentLookupException;
+import org.eclipse.aether.RepositoryCache;
 import org.eclipse.aether.RepositorySystem;
 import org.eclipse.aether.RepositorySystemSession;
 import org.eclipse.aether.artifact.Artifact;
@@ -98,6 +102,11 @@ public class AetherExtensionRepository extends AbstractExtensionRepository
      */
     private static final GenericVersionScheme AETHERVERSIONSCHEME = new GenericVersionScheme();
 
+    /**
+     * The prefix of the keys of the Maven descriptors stored in the session cache.
+     */
+    private static final String DESCRIPTORCACHE_PREFIX = AetherExtensionRepository.class.getName() + ':';
+
     private transient PlexusContainer plexusContainer;
 
     private transient RemoteRepository remoteRepository;
@@ -114,6 +123,27 @@ public class AetherExtensionRepository extends AbstractExtensionRepository
 
     private transient Method loadPomMethod;
 
+    /**
+     * Used to make sure the same descriptor is not loaded several times in parallel.
+     */
+    private final transient Object descriptorCacheLock = new Object();
+
+    /**
+     * The loading of a Maven descriptor, stored in the session cache.
+     * 
+     * @version $Id$
+     */
+    private static final class DescriptorLoad extends FutureTask<Model>
+    {
+        /**
+         * @param callable load the descriptor
+         */
+        DescriptorLoad(Callable<Model> callable)
+        {
+            super(callable);
+        }
+    }
+
     public AetherExtensionRepository(ExtensionRepositoryDescriptor repositoryDescriptor,
         AetherExtensionRepositoryFactory repositoryFactory, PlexusContainer plexusContainer,
         ComponentManager componentManager) throws Exception
@@ -161,9 +191,13 @@ public AetherExtensionRepository(ExtensionRepositoryDescriptor repositoryDescrip
         this.loadPomMethod.setAccessible(true);
     }
 
-    protected RepositorySystemSession createRepositorySystemSession()
+    /**
+     * @return the session to use for a resolution, possibly shared with other recent resolutions
+     * @since 6.0M1
+     */
+    protected RepositorySystemSession getRepositorySystemSession()
     {
-        return this.repositoryFactory.createRepositorySystemSession();
+        return this.repositoryFactory.getRepositorySystemSession();
     }
 
     @Override
@@ -195,7 +229,7 @@ public IterableResult<Version> resolveVersions(String id, int offset, int nb) th
 
         List<org.eclipse.aether.version.Version> versions;
         try {
-            versions = resolveVersions(artifact, createRepositorySystemSession());
+            versions = resolveVersions(artifact, getRepositorySystemSession());
 
             if (versions.isEmpty()) {
                 throw new ResolveException("No versions available for id [" + id + "]");
@@ -301,7 +335,7 @@ private String getPropertyString(Model model, String propertyName, String def)
 
     private AetherExtension resolveMaven(ExtensionDependency extensionDependency) throws ResolveException
     {
-        RepositorySystemSession session = createRepositorySystemSession();
+        RepositorySystemSession session = getRepositorySystemSession();
 
         Artifact artifact;
         String artifactExtension;
@@ -321,25 +355,24 @@ private AetherExtension resolveMaven(ExtensionDependency extensionDependency) th
             artifactExtension = null;
         }
 
-        return resolveMaven(artifact, artifactExtension);
+        return resolveMaven(artifact, artifactExtension, session);
     }
 
     private AetherExtension resolveMaven(ExtensionId extensionId) throws ResolveException
     {
         Artifact artifact = AetherUtils.createArtifact(extensionId.getId(), extensionId.getVersion().getValue());
 
-        return resolveMaven(artifact, null);
+        return resolveMaven(artifact, null, getRepositorySystemSession());
     }
 
-    private AetherExtension resolveMaven(Artifact artifact, String artifactExtension) throws ResolveException
+    private AetherExtension resolveMaven(Artifact artifact, String artifactExtension,
+        RepositorySystemSession session) throws ResolveException
     {
-        RepositorySystemSession session = createRepositorySystemSession();
-
         // Get Maven descriptor
 
         Model model;
         try {
-            model = loadPom(artifact, session);
+            model = getPom(artifact, session);
         } catch (Exception e) {
             throw new ResolveException("Failed to resolve artifact [" + artifact + "] descriptor", e);
         }
@@ -466,7 +499,66 @@ private ExtensionLicense createLicenseByName(String name)
 
     }
 
-    private Model loadPom(Artifact artifact, RepositorySystemSession session) throws IllegalArgumentException,
+    /**
+     * Get the Maven descriptor from the session cache or load it. Concurrent requests for the same descriptor wait for
+     * the same loading.
+     */
+    private Model getPom(final Artifact artifact, final RepositorySystemSession session) throws Exception
+    {
+        RepositoryCache cache = session.getCache();
+
+        // The content of a SNAPSHOT can change at any time
+        if (cache == null || artifact.isSnapshot()) {
+            return loadPom(artifact, session);
+        }
+
+        String key =
+            DESCRIPTORCACHE_PREFIX + this.remoteRepository.getId() + ':' + artifact.getGroupId() + ':'
+                + artifact.getArtifactId() + ':' + artifact.getVersion();
+
+        DescriptorLoad task;
+        boolean load = false;
+        synchronized (this.descriptorCacheLock) {
+            Object cached = cache.get(session, key);
+
+            if (cached instanceof DescriptorLoad) {
+                task = (DescriptorLoad) cached;
+            } else {
+                task = new DescriptorLoad(new Callable<Model>()
+                {
+                    @Override
+                    public Model call() throws Exception
+                    {
+                        return loadPom(artifact, session);
+                    }
+                });
+                cache.put(session, key, task);
+                load = true;
+            }
+        }
+
+        if (load) {
+            task.run();
+        }
+
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            // Don't remember failures
+            synchronized (this.descriptorCacheLock) {
+                if (cache.get(session, key) == task) {
+                    cache.put(session, key, null);
+                }
+            }
+
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+    }
+
+    /**
+     * Load the Maven descriptor of the passed artifact without looking at the cache.
+     */
+    Model loadPom(Artifact artifact, RepositorySystemSession session) throws IllegalArgumentException,
         IllegalAccessException, InvocationTargetException, ComponentLookupException
     {
         ArtifactDescriptorRequest artifactDescriptorRequest = new ArtifactDescriptorRequest();
@@ -19,6 +19,8 @@
  */
 package org.xwiki.extension.repository.aether.internal;
 
+import java.util.concurrent.TimeUnit;
+
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Provider;
@@ -28,6 +30,7 @@
 import org.codehaus.plexus.PlexusContainer;
 import org.codehaus.plexus.component.repository.exception.ComponentLookupException;
 import org.eclipse.aether.ConfigurationProperties;
+import org.eclipse.aether.DefaultRepositoryCache;
 import org.eclipse.aether.DefaultRepositorySystemSession;
 import org.eclipse.aether.RepositorySystem;
 import org.eclipse.aether.RepositorySystemSession;
@@ -74,7 +77,17 @@ public class AetherExtensionRepositoryFactory extends AbstractExtensionRepositor
     private RepositorySystem repositorySystem;
 
     private LocalRepository localRepository;
-    
+
+    /**
+     * The session shared between the resolutions to benefit from Aether caches (models, metadata, descriptors).
+     */
+    private RepositorySystemSession sharedSession;
+
+    /**
+     * The date when {@link #sharedSession} has been created.
+     */
+    private long sharedSessionDate;
+
     @Override
     public void initialize() throws InitializationException
     {
@@ -86,7 +99,38 @@ public void initialize() throws InitializationException
         this.localRepository = new LocalRepository(this.aetherConfiguration.getLocalRepository());
     }
 
+    /**
+     * @return a session shared with the resolutions performed recently, a new session when it's too old
+     * @since 6.0M1
+     */
+    public synchronized RepositorySystemSession getRepositorySystemSession()
+    {
+        long timeout = TimeUnit.SECONDS.toMillis(this.aetherConfiguration.getSessionTimeout());
+
+        if (timeout <= 0) {
+            this.sharedSession = null;
+
+            return createRepositorySystemSession();
+        }
+
+        long now = System.currentTimeMillis();
+        if (this.sharedSession == null || now - this.sharedSessionDate > timeout) {
+            DefaultRepositorySystemSession session = newRepositorySystemSession();
+            session.setCache(new DefaultRepositoryCache());
+
+            this.sharedSession = session;
+            this.sharedSessionDate = now;
+        }
+
+        return this.sharedSession;
+    }
+
     public RepositorySystemSession createRepositorySystemSession()
+    {
+        return newRepositorySystemSession();
+    }
+
+    private DefaultRepositorySystemSession newRepositorySystemSession()
     {
         DefaultRepositorySystemSession session = MavenRepositorySystemUtils.newSession();
 
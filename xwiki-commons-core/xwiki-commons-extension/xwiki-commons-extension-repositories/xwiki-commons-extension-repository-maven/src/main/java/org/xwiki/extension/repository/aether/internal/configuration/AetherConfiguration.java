@@ -32,4 +32,11 @@
 public interface AetherConfiguration
 {
     File getLocalRepository();
+
+    /**
+     * @return the number of seconds during which the same Aether session (and its caches) is shared between the
+     *         resolutions, 0 to create a new session for each resolution
+     * @since 6.0M1
+     */
+    long getSessionTimeout();
 }
@@ -38,6 +38,8 @@
 @Singleton
 public class DefaultAetherConfiguration implements AetherConfiguration
 {
+    private static final long DEFAULT_SESSIONTIMEOUT = 300;
+
     @Inject
     private Provider<ConfigurationSource> configurationSourceProvider;
 
@@ -59,4 +61,11 @@ public File getLocalRepository()
 
         return directory;
     }
+
+    @Override
+    public long getSessionTimeout()
+    {
+        return this.configurationSourceProvider.get().getProperty("extension.aether.sessionTimeout",
+            DEFAULT_SESSIONTIMEOUT);
+    }
 }
@@ -0,0 +1,210 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.extension.repository.aether.internal;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.inject.Provider;
+
+import org.apache.maven.model.Model;
+import org.codehaus.plexus.PlexusContainer;
+import org.codehaus.plexus.component.repository.exception.ComponentLookupException;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.artifact.Artifact;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.xwiki.component.util.DefaultParameterizedType;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.configuration.internal.MemoryConfigurationSource;
+import org.xwiki.extension.Extension;
+import org.xwiki.extension.ExtensionId;
+import org.xwiki.extension.repository.DefaultExtensionRepositoryDescriptor;
+import org.xwiki.extension.repository.ExtensionRepositoryFactory;
+import org.xwiki.extension.test.MockitoRepositoryUtilsRule;
+import org.xwiki.test.annotation.AllComponents;
+import org.xwiki.test.mockito.MockitoComponentManagerRule;
+
+/**
+ * Validate the caching of the Maven descriptors in the shared Aether session of {@link AetherExtensionRepository}.
+ * 
+ * @version $Id$
+ */
+@AllComponents
+public class AetherExtensionRepositoryTest
+{
+    private static final ExtensionId EXTENSIONID = new ExtensionId("groupid:artifactid", "version");
+
+    private static final ExtensionId SNAPSHOTEXTENSIONID = new ExtensionId("groupid:artifactid", "1.0-SNAPSHOT");
+
+    private static final String SESSIONTIMEOUT = "extension.aether.sessionTimeout";
+
+    private static final int THREADS = 8;
+
+    @Rule
+    public MockitoRepositoryUtilsRule repositoryUtil = new MockitoRepositoryUtilsRule();
+
+    private MemoryConfigurationSource configuration;
+
+    private AetherExtensionRepositoryFactory repositoryFactory;
+
+    private AetherExtensionRepository repository;
+
+    /**
+     * The number of descriptors actually loaded from the repository.
+     */
+    private final AtomicInteger loads = new AtomicInteger();
+
+    /**
+     * When not null, the loading of the descriptors wait for it to be released.
+     */
+    private volatile CountDownLatch loadGate;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        MockitoComponentManagerRule componentManager = this.repositoryUtil.getComponentManager();
+
+        this.configuration = (MemoryConfigurationSource) componentManager.getInstance(ConfigurationSource.class);
+        this.repositoryFactory = componentManager.getInstance(ExtensionRepositoryFactory.class, "maven");
+        Provider<PlexusContainer> plexusProvider =
+            componentManager.getInstance(new DefaultParameterizedType(null, Provider.class, PlexusContainer.class));
+
+        this.repository =
+            new AetherExtensionRepository(new DefaultExtensionRepositoryDescriptor("counting", "maven",
+                this.repositoryUtil.getMavenRepository().toURI()), this.repositoryFactory, plexusProvider.get(),
+                componentManager)
+            {
+                @Override
+                Model loadPom(Artifact artifact, RepositorySystemSession session) throws IllegalAccessException,
+                    InvocationTargetException, ComponentLookupException
+                {
+                    loads.incrementAndGet();
+
+                    CountDownLatch gate = loadGate;
+                    if (gate != null) {
+                        try {
+                            gate.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+
+                    return super.loadPom(artifact, session);
+                }
+            };
+    }
+
+    @Test
+    public void testConcurrentResolveLoadsDescriptorOnce() throws Exception
+    {
+        this.loadGate = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<Extension>> futures = new ArrayList<Future<Extension>>();
+            for (int i = 0; i < THREADS; ++i) {
+                futures.add(executor.submit(new Callable<Extension>()
+                {
+                    @Override
+                    public Extension call() throws Exception
+                    {
+                        return repository.resolve(EXTENSIONID);
+                    }
+                }));
+            }
+
+            // Let the other threads find the in-flight load before it completes
+            while (this.loads.get() == 0) {
+                Thread.sleep(10);
+            }
+            Thread.sleep(100);
+            this.loadGate.countDown();
+
+            for (Future<Extension> future : futures) {
+                Assert.assertEquals(EXTENSIONID, future.get(10, TimeUnit.SECONDS).getId());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Assert.assertEquals(1, this.loads.get());
+    }
+
+    @Test
+    public void testSessionReused() throws Exception
+    {
+        RepositorySystemSession session = this.repositoryFactory.getRepositorySystemSession();
+
+        this.repository.resolve(EXTENSIONID);
+        this.repository.resolve(EXTENSIONID);
+
+        Assert.assertSame(session, this.repositoryFactory.getRepositorySystemSession());
+        Assert.assertEquals(1, this.loads.get());
+    }
+
+    @Test
+    public void testSessionRenewedAfterTimeout() throws Exception
+    {
+        this.configuration.setProperty(SESSIONTIMEOUT, 1L);
+
+        RepositorySystemSession session = this.repositoryFactory.getRepositorySystemSession();
+        this.repository.resolve(EXTENSIONID);
+
+        Thread.sleep(1100);
+
+        this.repository.resolve(EXTENSIONID);
+
+        Assert.assertNotSame(session, this.repositoryFactory.getRepositorySystemSession());
+        Assert.assertEquals(2, this.loads.get());
+    }
+
+    @Test
+    public void testSessionNotSharedWithZeroTimeout() throws Exception
+    {
+        this.configuration.setProperty(SESSIONTIMEOUT, 0L);
+
+        this.repository.resolve(EXTENSIONID);
+        this.repository.resolve(EXTENSIONID);
+
+        Assert.assertNotSame(this.repositoryFactory.getRepositorySystemSession(),
+            this.repositoryFactory.getRepositorySystemSession());
+        Assert.assertEquals(2, this.loads.get());
+    }
+
+    @Test
+    public void testSNAPSHOTDescriptorNotCached() throws Exception
+    {
+        this.repository.resolve(SNAPSHOTEXTENSIONID);
+        this.repository.resolve(SNAPSHOTEXTENSIONID);
+
+        Assert.assertEquals(2, this.loads.get());
+    }
+}
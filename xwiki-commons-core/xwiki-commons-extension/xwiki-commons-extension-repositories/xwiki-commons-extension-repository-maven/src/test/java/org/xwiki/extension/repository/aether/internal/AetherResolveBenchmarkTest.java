@@ -0,0 +1,212 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.extension.repository.aether.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.configuration.internal.MemoryConfigurationSource;
+import org.xwiki.extension.DefaultExtensionDependency;
+import org.xwiki.extension.Extension;
+import org.xwiki.extension.ExtensionDependency;
+import org.xwiki.extension.ExtensionId;
+import org.xwiki.extension.repository.ExtensionRepositoryManager;
+import org.xwiki.extension.test.MockitoRepositoryUtilsRule;
+import org.xwiki.test.annotation.AllComponents;
+
+/**
+ * Resolve a big dependency tree from a file based Maven repository with a new Aether session for each resolution and
+ * with a shared session, check that both give the same result and log the time they took.
+ * <p>
+ * The size of the tree can be increased with the {@code benchmark.width} (artifacts by level) and
+ * {@code benchmark.depth} (number of levels) system properties, for example
+ * {@code mvn test -Dtest=AetherResolveBenchmarkTest -Dbenchmark.width=50}.
+ * 
+ * @version $Id$
+ */
+@AllComponents
+public class AetherResolveBenchmarkTest
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(AetherResolveBenchmarkTest.class);
+
+    private static final String GROUPID = "org.xwiki.benchmark";
+
+    private static final String VERSION = "1.0";
+
+    private static final int DEPENDENCIES = 4;
+
+    @Rule
+    public MockitoRepositoryUtilsRule repositoryUtil = new MockitoRepositoryUtilsRule();
+
+    private final int width = Integer.getInteger("benchmark.width", 10);
+
+    private final int depth = Integer.getInteger("benchmark.depth", 3);
+
+    private ExtensionRepositoryManager repositoryManager;
+
+    private MemoryConfigurationSource configuration;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        // Aether reads the repository files when they are requested, they can be added after the test setup
+        generateRepository(this.repositoryUtil.getMavenRepository());
+
+        this.repositoryManager =
+            this.repositoryUtil.getComponentManager().getInstance(ExtensionRepositoryManager.class);
+        this.configuration =
+            (MemoryConfigurationSource) this.repositoryUtil.getComponentManager().getInstance(
+                ConfigurationSource.class);
+    }
+
+    private static String getArtifactId(int level, int index)
+    {
+        return "artifact" + level + '-' + index;
+    }
+
+    /**
+     * Each artifact of a level depends on 4 artifacts of the next level (half with a version range) and all of them
+     * share the same parents.
+     */
+    private void generateRepository(File root) throws IOException
+    {
+        writePom(root, "grandparent", "pom", "<properties><xwiki.extension.summary>summary</xwiki.extension.summary>"
+            + "</properties>", false);
+        writePom(root, "parent", "pom", "<parent><groupId>" + GROUPID + "</groupId><artifactId>grandparent"
+            + "</artifactId><version>" + VERSION + "</version></parent>", false);
+
+        for (int level = 0; level < this.depth; ++level) {
+            for (int index = 0; index < this.width; ++index) {
+                StringBuilder content = new StringBuilder();
+                content.append("<parent><groupId>" + GROUPID + "</groupId><artifactId>parent</artifactId><version>"
+                    + VERSION + "</version></parent>");
+
+                if (level + 1 < this.depth) {
+                    content.append("<dependencies>");
+                    for (int i = 0; i < DEPENDENCIES; ++i) {
+                        content.append("<dependency><groupId>" + GROUPID + "</groupId><artifactId>"
+                            + getArtifactId(level + 1, (index * DEPENDENCIES + i) % this.width)
+                            + "</artifactId><version>" + (i % 2 == 0 ? VERSION : "[" + VERSION + ",)")
+                            + "</version></dependency>");
+                    }
+                    content.append("</dependencies>");
+                }
+
+                writePom(root, getArtifactId(level, index), "jar", content.toString(), true);
+            }
+        }
+    }
+
+    private void writePom(File root, String artifactId, String packaging, String content, boolean metadata)
+        throws IOException
+    {
+        File folder = new File(root, GROUPID.replace('.', '/') + '/' + artifactId);
+
+        FileUtils.write(new File(folder, VERSION + '/' + artifactId + '-' + VERSION + ".pom"),
+            "<project><modelVersion>4.0.0</modelVersion><groupId>" + GROUPID + "</groupId><artifactId>"
+                + artifactId + "</artifactId><version>" + VERSION + "</version><packaging>" + packaging
+                + "</packaging>" + content + "</project>");
+
+        if (metadata) {
+            FileUtils.write(new File(folder, "maven-metadata.xml"), "<metadata><groupId>" + GROUPID
+                + "</groupId><artifactId>" + artifactId + "</artifactId><versioning><versions><version>" + VERSION
+                + "</version></versions></versioning></metadata>");
+        }
+    }
+
+    private void resolve(Extension extension, List<Extension> resolved) throws Exception
+    {
+        resolved.add(extension);
+
+        for (ExtensionDependency dependency : extension.getDependencies()) {
+            // Go through the version constraint resolution like an install plan
+            resolve(this.repositoryManager.resolve(new DefaultExtensionDependency(dependency.getId(), dependency
+                .getVersionConstraint())), resolved);
+        }
+    }
+
+    private List<Extension> run(String name, long sessionTimeout) throws Exception
+    {
+        this.configuration.setProperty("extension.aether.sessionTimeout", sessionTimeout);
+
+        List<Extension> resolved = new ArrayList<Extension>();
+
+        long time = System.nanoTime();
+
+        for (int index = 0; index < this.width; ++index) {
+            resolve(this.repositoryManager.resolve(new ExtensionId(GROUPID + ':' + getArtifactId(0, index), VERSION)),
+                resolved);
+        }
+
+        time = System.nanoTime() - time;
+
+        LOGGER.info("{}: {} resolutions, {} ns/resolution", name, resolved.size(), time / resolved.size());
+
+        return resolved;
+    }
+
+    private void assertSameExtensions(List<Extension> expected, List<Extension> actual)
+    {
+        Assert.assertEquals(expected.size(), actual.size());
+
+        for (int i = 0; i < expected.size(); ++i) {
+            Extension expectedExtension = expected.get(i);
+            Extension actualExtension = actual.get(i);
+
+            Assert.assertEquals(expectedExtension.getId(), actualExtension.getId());
+            Assert.assertEquals(expectedExtension.getType(), actualExtension.getType());
+            Assert.assertEquals(expectedExtension.getSummary(), actualExtension.getSummary());
+            Assert.assertEquals(expectedExtension.getDependencies().size(), actualExtension.getDependencies().size());
+        }
+    }
+
+    @Test
+    public void testResolveTreeWithSharedSession() throws Exception
+    {
+        // Warm up (and fill Aether local repository)
+        run("Warm up", 0);
+
+        List<Extension> separated = run("New session for each resolution", 0);
+        // The previous run disabled the shared session so a new one is created
+        List<Extension> shared = run("Shared session", 300);
+
+        // Each root artifact has 4 dependencies per level
+        int expected = 0;
+        for (int level = 0, nodes = this.width; level < this.depth; ++level, nodes *= DEPENDENCIES) {
+            expected += nodes;
+        }
+        Assert.assertEquals(expected, separated.size());
+
+        assertSameExtensions(separated, shared);
+
+        // Inherited from the shared grandparent
+        Assert.assertEquals("summary", shared.get(shared.size() - 1).getSummary());
+    }
+}
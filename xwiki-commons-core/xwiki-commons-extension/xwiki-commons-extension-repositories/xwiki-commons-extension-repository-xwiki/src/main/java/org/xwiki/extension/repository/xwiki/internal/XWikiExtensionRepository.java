@@ -25,6 +25,8 @@
 import java.util.ArrayList;
 import java.util.List;
 
+import javax.xml.bind.JAXBException;
+
 import org.apache.commons.lang3.StringUtils;
 import org.apache.http.HttpHost;
 import org.apache.http.HttpStatus;
@@ -35,6 +37,9 @@
 import org.apache.http.impl.auth.BasicScheme;
 import org.apache.http.impl.client.BasicAuthCache;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
+import org.xwiki.component.manager.ComponentLifecycleException;
+import org.xwiki.component.phase.Disposable;
 import org.xwiki.extension.Extension;
 import org.xwiki.extension.ExtensionDependency;
 import org.xwiki.extension.ExtensionId;
@@ -44,6 +49,7 @@
 import org.xwiki.extension.repository.DefaultExtensionRepositoryDescriptor;
 import org.xwiki.extension.repository.ExtensionRepositoryDescriptor;
 import org.xwiki.extension.repository.http.internal.HttpClientFactory;
+import org.xwiki.extension.repository.http.internal.HttpResourceCache;
 import org.xwiki.extension.repository.result.CollectionIterableResult;
 import org.xwiki.extension.repository.result.IterableResult;
 import org.xwiki.extension.repository.search.SearchException;
@@ -62,7 +68,7 @@
  * @version $Id$
  * @since 4.0M1
  */
-public class XWikiExtensionRepository extends AbstractExtensionRepository implements Searchable
+public class XWikiExtensionRepository extends AbstractExtensionRepository implements Searchable, Disposable
 {
     private final transient XWikiExtensionRepositoryFactory repositoryFactory;
 
@@ -70,6 +76,8 @@ public class XWikiExtensionRepository extends AbstractExtensionRepository implem
 
     private final transient HttpClientFactory httpClientFactory;
 
+    private final transient HttpResourceCache resourceCache;
+
     private final transient UriBuilder extensionVersionUriBuider;
 
     private final transient UriBuilder extensionVersionFileUriBuider;
@@ -80,9 +88,25 @@ public class XWikiExtensionRepository extends AbstractExtensionRepository implem
 
     private HttpClientContext localContext;
 
+    /**
+     * The client used for all the requests to this repository, created when the first request is sent and closed when
+     * the repository is disposed.
+     */
+    private transient volatile CloseableHttpClient httpClient;
+
     public XWikiExtensionRepository(ExtensionRepositoryDescriptor repositoryDescriptor,
         XWikiExtensionRepositoryFactory repositoryFactory, ExtensionLicenseManager licenseManager,
         HttpClientFactory httpClientFactory) throws Exception
+    {
+        this(repositoryDescriptor, repositoryFactory, licenseManager, httpClientFactory, null);
+    }
+
+    /**
+     * @since 6.0M1
+     */
+    public XWikiExtensionRepository(ExtensionRepositoryDescriptor repositoryDescriptor,
+        XWikiExtensionRepositoryFactory repositoryFactory, ExtensionLicenseManager licenseManager,
+        HttpClientFactory httpClientFactory, HttpResourceCache resourceCache) throws Exception
     {
         super(repositoryDescriptor.getURI().getPath().endsWith("/") ? new DefaultExtensionRepositoryDescriptor(
             repositoryDescriptor.getId(), repositoryDescriptor.getType(), new URI(StringUtils.chop(repositoryDescriptor
@@ -91,6 +115,7 @@ public XWikiExtensionRepository(ExtensionRepositoryDescriptor repositoryDescript
         this.repositoryFactory = repositoryFactory;
         this.licenseManager = licenseManager;
         this.httpClientFactory = httpClientFactory;
+        this.resourceCache = resourceCache;
 
         // Uri builders
         this.extensionVersionUriBuider = createUriBuilder(Resources.EXTENSION_VERSION);
@@ -120,6 +145,50 @@ protected UriBuilder getExtensionFileUriBuider()
     }
 
     protected CloseableHttpResponse getRESTResource(UriBuilder builder, Object... values) throws IOException
+    {
+        HttpGet getMethod = createGetMethod(builder, values);
+
+        CloseableHttpResponse response = execute(getMethod);
+
+        if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
+            // Give the connection back to the pool
+            EntityUtils.consumeQuietly(response.getEntity());
+            response.close();
+
+            throw new IOException(String.format("Invalid answer [%s] from the server when requesting [%s]",
+                response.getStatusLine().getStatusCode(), getMethod.getURI()));
+        }
+
+        return response;
+    }
+
+    protected InputStream getRESTResourceAsStream(UriBuilder builder, Object... values) throws IOException
+    {
+        return getRESTResource(builder, values).getEntity().getContent();
+    }
+
+    /**
+     * Same as {@link #getRESTResourceAsStream(UriBuilder, Object...)} but go through the resource cache (when there is
+     * one).
+     */
+    private InputStream getCachedRESTResourceAsStream(UriBuilder builder, Object... values) throws IOException
+    {
+        if (this.resourceCache == null) {
+            return getRESTResourceAsStream(builder, values);
+        }
+
+        return this.resourceCache.getContent(getDescriptor().getId(), createGetMethod(builder, values),
+            new HttpResourceCache.Loader()
+            {
+                @Override
+                public CloseableHttpResponse execute(HttpGet request) throws IOException
+                {
+                    return XWikiExtensionRepository.this.execute(request);
+                }
+            });
+    }
+
+    private HttpGet createGetMethod(UriBuilder builder, Object... values) throws IOException
     {
         String url;
         try {
@@ -128,33 +197,73 @@ protected CloseableHttpResponse getRESTResource(UriBuilder builder, Object... va
             throw new IOException("Failed to build REST URL", e);
         }
 
-        CloseableHttpClient httpClient = this.httpClientFactory.createClient(
-            getDescriptor().getProperty("auth.user"), getDescriptor().getProperty("auth.password"));
-
         HttpGet getMethod = new HttpGet(url);
         getMethod.addHeader("Accept", "application/xml");
-        CloseableHttpResponse response;
+
+        return getMethod;
+    }
+
+    /**
+     * @return the client to use to send requests to this repository
+     */
+    private CloseableHttpClient getHttpClient()
+    {
+        if (this.httpClient == null) {
+            synchronized (this) {
+                if (this.httpClient == null) {
+                    this.httpClient =
+                        this.httpClientFactory.createClient(getDescriptor().getProperty("auth.user"), getDescriptor()
+                            .getProperty("auth.password"));
+                }
+            }
+        }
+
+        return this.httpClient;
+    }
+
+    @Override
+    public void dispose() throws ComponentLifecycleException
+    {
+        synchronized (this) {
+            if (this.httpClient != null) {
+                try {
+                    // Also shut down the connection pool of the client
+                    this.httpClient.close();
+                } catch (IOException e) {
+                    throw new ComponentLifecycleException("Failed to close the HTTP client of repository ["
+                        + getDescriptor() + "]", e);
+                } finally {
+                    this.httpClient = null;
+                }
+            }
+        }
+    }
+
+    private CloseableHttpResponse execute(HttpGet getMethod) throws IOException
+    {
+        CloseableHttpClient httpClient = getHttpClient();
+
         try {
             if (this.localContext != null) {
-                response = httpClient.execute(getMethod, this.localContext);
+                return httpClient.execute(getMethod, this.localContext);
             } else {
-                response = httpClient.execute(getMethod);
+                return httpClient.execute(getMethod);
             }
         } catch (Exception e) {
             throw new IOException(String.format("Failed to request [%s]", getMethod.getURI()), e);
         }
-
-        if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
-            throw new IOException(String.format("Invalid answer [%s] from the server when requesting [%s]",
-                response.getStatusLine().getStatusCode(), getMethod.getURI()));
-        }
-
-        return response;
     }
 
-    protected InputStream getRESTResourceAsStream(UriBuilder builder, Object... values) throws IOException
+    /**
+     * Parse the passed REST resource and close it so that the connection goes back to the pool.
+     */
+    private Object unmarshal(InputStream stream) throws JAXBException, IOException
     {
-        return getRESTResource(builder, values).getEntity().getContent();
+        try {
+            return this.repositoryFactory.getUnmarshaller().unmarshal(stream);
+        } finally {
+            stream.close();
+        }
     }
 
     private UriBuilder createUriBuilder(String path)
@@ -168,9 +277,9 @@ private UriBuilder createUriBuilder(String path)
     public Extension resolve(ExtensionId extensionId) throws ResolveException
     {
         try {
-            return new XWikiExtension(this, (ExtensionVersion) this.repositoryFactory.getUnmarshaller().unmarshal(
-                getRESTResourceAsStream(this.extensionVersionUriBuider, extensionId.getId(), extensionId.getVersion()
-                    .getValue())), this.licenseManager);
+            return new XWikiExtension(this, (ExtensionVersion) unmarshal(getCachedRESTResourceAsStream(
+                this.extensionVersionUriBuider, extensionId.getId(), extensionId.getVersion().getValue())),
+                this.licenseManager);
         } catch (Exception e) {
             throw new ResolveException("Failed to create extension object for extension [" + extensionId + "]", e);
         }
@@ -198,9 +307,8 @@ public Extension resolve(ExtensionDependency extensionDependency) throws Resolve
                 version = constraint.getVersion();
             }
 
-            return new XWikiExtension(this, (ExtensionVersion) this.repositoryFactory.getUnmarshaller().unmarshal(
-                getRESTResourceAsStream(this.extensionVersionUriBuider, extensionDependency.getId(), version)),
-                this.licenseManager);
+            return new XWikiExtension(this, (ExtensionVersion) unmarshal(getCachedRESTResourceAsStream(
+                this.extensionVersionUriBuider, extensionDependency.getId(), version)), this.licenseManager);
         } catch (Exception e) {
             throw new ResolveException("Failed to create extension object for extension dependency ["
                 + extensionDependency + "]", e);
@@ -220,8 +328,7 @@ private ExtensionVersions resolveExtensionVersions(String id, VersionConstraint
         }
 
         try {
-            return (ExtensionVersions) this.repositoryFactory.getUnmarshaller().unmarshal(
-                getRESTResourceAsStream(builder, id));
+            return (ExtensionVersions) unmarshal(getCachedRESTResourceAsStream(builder, id));
         } catch (Exception e) {
             throw new ResolveException("Failed to find version for extension id [" + id + "]", e);
         }
@@ -254,9 +361,7 @@ public IterableResult<Extension> search(String pattern, int offset, int nb) thro
 
         ExtensionsSearchResult restExtensions;
         try {
-            restExtensions =
-                (ExtensionsSearchResult) this.repositoryFactory.getUnmarshaller().unmarshal(
-                    getRESTResourceAsStream(builder));
+            restExtensions = (ExtensionsSearchResult) unmarshal(getRESTResourceAsStream(builder));
         } catch (Exception e) {
             throw new SearchException("Failed to search extensions based on pattern [" + pattern + "]", e);
         }
@@ -23,6 +23,7 @@
 import javax.inject.Named;
 import javax.inject.Singleton;
 import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
 import javax.xml.bind.Marshaller;
 import javax.xml.bind.Unmarshaller;
 
@@ -35,6 +36,7 @@
 import org.xwiki.extension.repository.ExtensionRepositoryDescriptor;
 import org.xwiki.extension.repository.ExtensionRepositoryException;
 import org.xwiki.extension.repository.http.internal.HttpClientFactory;
+import org.xwiki.extension.repository.http.internal.HttpResourceCache;
 
 /**
  * @version $Id$
@@ -51,17 +53,19 @@ public class XWikiExtensionRepositoryFactory extends AbstractExtensionRepository
     @Inject
     private HttpClientFactory httpClientFactory;
 
-    private Marshaller marshaller;
+    @Inject
+    private HttpResourceCache resourceCache;
+
+    private JAXBContext context;
 
-    private Unmarshaller unmarshaller;
+    private Marshaller marshaller;
 
     @Override
     public void initialize() throws InitializationException
     {
         try {
-            JAXBContext context = JAXBContext.newInstance("org.xwiki.extension.repository.xwiki.model.jaxb");
-            this.marshaller = context.createMarshaller();
-            this.unmarshaller = context.createUnmarshaller();
+            this.context = JAXBContext.newInstance("org.xwiki.extension.repository.xwiki.model.jaxb");
+            this.marshaller = this.context.createMarshaller();
         } catch (Exception e) {
             throw new InitializationException("Failed to create JAXB context", e);
         }
@@ -72,9 +76,16 @@ public Marshaller getMarshaller()
         return this.marshaller;
     }
 
+    /**
+     * @return a new {@link Unmarshaller}, they are not thread safe and repositories can be called concurrently
+     */
     public Unmarshaller getUnmarshaller()
     {
-        return this.unmarshaller;
+        try {
+            return this.context.createUnmarshaller();
+        } catch (JAXBException e) {
+            throw new RuntimeException("Failed to create JAXB unmarshaller", e);
+        }
     }
 
     // ExtensionRepositoryFactory
@@ -85,7 +96,7 @@ public ExtensionRepository createRepository(ExtensionRepositoryDescriptor reposi
     {
         try {
             return new XWikiExtensionRepository(repositoryDescriptor, this, this.licenseManager,
-                this.httpClientFactory);
+                this.httpClientFactory, this.resourceCache);
         } catch (Exception e) {
             throw new ExtensionRepositoryException("Failed to create repository [" + repositoryDescriptor + "]", e);
         }
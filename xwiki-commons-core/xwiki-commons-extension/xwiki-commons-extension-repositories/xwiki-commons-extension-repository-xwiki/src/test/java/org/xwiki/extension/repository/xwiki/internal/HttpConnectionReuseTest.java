@@ -0,0 +1,157 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.extension.repository.xwiki.internal;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlMatching;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+
+import java.net.URI;
+
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.xwiki.extension.ExtensionLicenseManager;
+import org.xwiki.extension.ExtensionManagerConfiguration;
+import org.xwiki.extension.repository.DefaultExtensionRepositoryDescriptor;
+import org.xwiki.extension.repository.http.internal.DefaultHttpClientFactory;
+import org.xwiki.extension.repository.http.internal.HttpClientFactory;
+import org.xwiki.extension.repository.search.SearchException;
+import org.xwiki.test.annotation.BeforeComponent;
+import org.xwiki.test.annotation.ComponentList;
+import org.xwiki.test.mockito.MockitoComponentManagerRule;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+
+/**
+ * Validate that the connections to the remote repositories are kept alive and reused.
+ * 
+ * @version $Id$
+ */
+@ComponentList({DefaultHttpClientFactory.class})
+public class HttpConnectionReuseTest
+{
+    @Rule
+    public WireMockRule wireMockRule = new WireMockRule(8889);
+
+    @Rule
+    public final MockitoComponentManagerRule componentManager = new MockitoComponentManagerRule();
+
+    private DefaultHttpClientFactory httpClientFactory;
+
+    @BeforeComponent
+    public void registerComponents() throws Exception
+    {
+        this.componentManager.registerMockComponent(ExtensionManagerConfiguration.class);
+        this.componentManager.registerMemoryConfigurationSource();
+    }
+
+    @Before
+    public void setUp() throws Exception
+    {
+        this.httpClientFactory = this.componentManager.getInstance(HttpClientFactory.class);
+    }
+
+    @Test
+    public void testConnectionReused() throws Exception
+    {
+        stubFor(get(urlMatching(".*")).willReturn(aResponse().withStatus(200).withBody("content")));
+
+        CloseableHttpClient client = this.httpClientFactory.createClient(null, null);
+
+        for (int i = 0; i < 5; ++i) {
+            CloseableHttpResponse response = client.execute(new HttpGet("http://localhost:8889/resource" + i));
+            try {
+                assertEquals("content", EntityUtils.toString(response.getEntity()));
+            } finally {
+                response.close();
+            }
+        }
+
+        assertEquals(5, this.httpClientFactory.getRequestCount());
+        assertEquals(1, this.httpClientFactory.getConnectionCount());
+        assertEquals(4, this.httpClientFactory.getReusedConnectionCount());
+    }
+
+    @Test
+    public void testRepositoryReuseConnectionAfterError() throws Exception
+    {
+        stubFor(get(urlMatching(".*")).willReturn(aResponse().withStatus(404)));
+
+        XWikiExtensionRepository repository =
+            new XWikiExtensionRepository(new DefaultExtensionRepositoryDescriptor("id", "xwiki", new URI(
+                "http://localhost:8889/xwiki/rest")), mock(XWikiExtensionRepositoryFactory.class),
+                mock(ExtensionLicenseManager.class), this.httpClientFactory);
+
+        for (int i = 0; i < 3; ++i) {
+            try {
+                repository.search("pattern" + i, 0, -1);
+            } catch (SearchException e) {
+                // Expected
+            }
+        }
+
+        assertEquals(3, this.httpClientFactory.getRequestCount());
+        assertEquals(1, this.httpClientFactory.getConnectionCount());
+    }
+
+    @Test
+    public void testRepositoryDisposeClosesConnectionPool() throws Exception
+    {
+        stubFor(get(urlMatching(".*")).willReturn(aResponse().withStatus(404)));
+
+        XWikiExtensionRepository repository =
+            new XWikiExtensionRepository(new DefaultExtensionRepositoryDescriptor("id", "xwiki", new URI(
+                "http://localhost:8889/xwiki/rest")), mock(XWikiExtensionRepositoryFactory.class),
+                mock(ExtensionLicenseManager.class), this.httpClientFactory);
+
+        try {
+            repository.search("pattern", 0, -1);
+        } catch (SearchException e) {
+            // Expected
+        }
+
+        assertEquals(1, this.httpClientFactory.getConnectionPoolCount());
+
+        repository.dispose();
+
+        assertEquals(0, this.httpClientFactory.getConnectionPoolCount());
+
+        // A disposed repository is not used anymore but it should not leak anything if it is
+        try {
+            repository.search("pattern", 0, -1);
+        } catch (SearchException e) {
+            // Expected
+        }
+
+        assertEquals(1, this.httpClientFactory.getConnectionPoolCount());
+
+        this.httpClientFactory.dispose();
+
+        assertEquals(0, this.httpClientFactory.getConnectionPoolCount());
+    }
+}
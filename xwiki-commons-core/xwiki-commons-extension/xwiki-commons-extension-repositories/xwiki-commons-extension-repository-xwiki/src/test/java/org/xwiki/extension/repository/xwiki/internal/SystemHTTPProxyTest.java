@@ -24,19 +24,24 @@
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.Date;
 
 import org.apache.http.client.ClientProtocolException;
 import org.junit.Rule;
 import org.junit.Test;
 import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.environment.Environment;
+import org.xwiki.environment.internal.StandardEnvironment;
 import org.xwiki.extension.ResolveException;
 import org.xwiki.extension.repository.DefaultExtensionRepositoryDescriptor;
 import org.xwiki.extension.repository.ExtensionRepository;
 import org.xwiki.extension.repository.ExtensionRepositoryException;
 import org.xwiki.extension.repository.ExtensionRepositoryFactory;
+import org.xwiki.test.annotation.AfterComponent;
 import org.xwiki.test.annotation.AllComponents;
 import org.xwiki.test.mockito.MockitoComponentMockingRule;
 
@@ -52,6 +57,14 @@
     public MockitoComponentMockingRule<ExtensionRepositoryFactory> repositoryFactory =
         new MockitoComponentMockingRule<ExtensionRepositoryFactory>(XWikiExtensionRepositoryFactory.class);
 
+    @AfterComponent
+    public void afterComponent() throws Exception
+    {
+        // Don't reuse the resources cached by a previous execution
+        StandardEnvironment environment = this.repositoryFactory.getInstance(Environment.class);
+        environment.setPermanentDirectory(new File("target/test-" + new Date().getTime()));
+    }
+
     @Test
     public void testProxy() throws ClientProtocolException, IOException, ExtensionRepositoryException,
         ComponentLookupException, URISyntaxException
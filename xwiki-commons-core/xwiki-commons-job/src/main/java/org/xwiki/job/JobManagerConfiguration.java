@@ -36,4 +36,19 @@
      * @return the folder containing job executing status
      */
     File getStorage();
+
+    /**
+     * @return true if jobs should also send (coalesced) progress related events to the
+     *         {@link org.xwiki.observation.ObservationManager}, the progress of the jobs running in the current thread
+     *         is always updated directly
+     * @since 6.0M1
+     */
+    boolean isProgressEventEnabled();
+
+    /**
+     * @return true if the arguments of the log produced by jobs should be replaced by compact immutable
+     *         representations to make sure the job status does not retain big objects
+     * @since 6.0M1
+     */
+    boolean isLogArgumentsSnapshotEnabled();
 }
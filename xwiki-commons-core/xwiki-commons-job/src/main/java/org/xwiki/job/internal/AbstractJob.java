@@ -32,6 +32,7 @@
 import org.xwiki.component.manager.ComponentManager;
 import org.xwiki.job.Job;
 import org.xwiki.job.JobContext;
+import org.xwiki.job.JobManagerConfiguration;
 import org.xwiki.job.Request;
 import org.xwiki.job.event.JobFinishedEvent;
 import org.xwiki.job.event.JobStartedEvent;
@@ -93,6 +94,12 @@
     @Inject
     protected JobStatusStorage storage;
 
+    /**
+     * Used to know how to report progress.
+     */
+    @Inject
+    protected JobManagerConfiguration jobManagerConfiguration;
+
     /**
      * The logger to log.
      */
@@ -125,6 +132,11 @@
      */
     protected final Condition finishedCondition = lock.newCondition();
 
+    /**
+     * Indicate if progress events are also sent to the {@link ObservationManager}.
+     */
+    private boolean progressEventEnabled;
+
     @Override
     public R getRequest()
     {
@@ -142,6 +154,12 @@ public void initialize(Request request)
     {
         this.request = castRequest(request);
         this.status = createNewStatus(this.request);
+
+        this.progressEventEnabled = this.jobManagerConfiguration.isProgressEventEnabled();
+
+        if (this.jobManagerConfiguration.isLogArgumentsSnapshotEnabled()) {
+            this.status.getLog().setSnapshotArguments(true);
+        }
     }
 
     @Override
@@ -200,6 +218,9 @@ protected void jobFinished(Throwable exception)
         this.lock.lock();
 
         try {
+            // Send the remaining progress events
+            JobProgressChannel.flush();
+
             // Give a chance to any listener to do custom action associated to the job
             // TODO: use a JobFinishingEvent instead ?
             this.observationManager.notify(new JobFinishedEvent(getRequest().getId(), getType(), this.request), this,
@@ -269,7 +290,11 @@ protected S createNewStatus(R request)
      */
     protected void notifyPushLevelProgress(int steps)
     {
-        this.observationManager.notify(new PushLevelProgressEvent(steps), this);
+        JobProgressChannel.pushLevelProgress(steps);
+
+        if (this.progressEventEnabled) {
+            JobProgressChannel.publish(new PushLevelProgressEvent(steps), this, this.observationManager);
+        }
     }
 
     /**
@@ -277,7 +302,11 @@ protected void notifyPushLevelProgress(int steps)
      */
     protected void notifyStepPropress()
     {
-        this.observationManager.notify(new StepProgressEvent(), this);
+        JobProgressChannel.stepProgress();
+
+        if (this.progressEventEnabled) {
+            JobProgressChannel.publish(new StepProgressEvent(), this, this.observationManager);
+        }
     }
 
     /**
@@ -285,7 +314,11 @@ protected void notifyStepPropress()
      */
     protected void notifyPopLevelProgress()
     {
-        this.observationManager.notify(new PopLevelProgressEvent(), this);
+        JobProgressChannel.popLevelProgress();
+
+        if (this.progressEventEnabled) {
+            JobProgressChannel.publish(new PopLevelProgressEvent(), this, this.observationManager);
+        }
     }
 
     /**
@@ -132,6 +132,7 @@ public AbstractJobStatus(R request, ObservationManager observationManager, Logge
     public void startListening()
     {
         // Register progress listener
+        JobProgressChannel.register(this.progress);
         this.observationManager.addListener(new WrappedThreadEventListener(this.progress));
 
         // Isolate log for the job status
@@ -154,6 +155,7 @@ public void stopListening()
             this.loggerManager.popLogListener();
         }
         this.observationManager.removeListener(this.progress.getName());
+        JobProgressChannel.unregister(this.progress);
     }
 
     // JobStatus
@@ -82,4 +82,16 @@ public File getStorage()
 
         return this.store;
     }
+
+    @Override
+    public boolean isProgressEventEnabled()
+    {
+        return this.configuration.get().getProperty("job.progressEvent", true);
+    }
+
+    @Override
+    public boolean isLogArgumentsSnapshotEnabled()
+    {
+        return this.configuration.get().getProperty("job.logArgumentsSnapshot", false);
+    }
 }
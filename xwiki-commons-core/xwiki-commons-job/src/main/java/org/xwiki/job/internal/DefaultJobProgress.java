@@ -19,9 +19,10 @@
  */
 package org.xwiki.job.internal;
 
+import java.util.ArrayDeque;
 import java.util.Arrays;
+import java.util.Deque;
 import java.util.List;
-import java.util.Stack;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -33,6 +34,14 @@
 import org.xwiki.observation.event.Event;
 
 /**
+ * Compute the progress of a job.
+ * <p>
+ * The progress can be updated either directly (see {@link JobProgressChannel}) or through progress events sent to the
+ * {@link org.xwiki.observation.ObservationManager}. In both cases the progress stack is only ever modified by the
+ * thread executing the job while the computed offsets are published through volatile fields so that they can be read
+ * from any thread without locking. The events coalesced by {@link JobProgressChannel} are ignored since they have
+ * already been taken into account.
+ * 
  * @version $Id$
  * @since 4.0M1
  */
@@ -55,9 +64,19 @@ public class DefaultJobProgress implements EventListener, JobProgress
     private final String name;
 
     /**
-     * The progress stack.
+     * The progress stack, only accessed by the thread executing the job.
      */
-    private final Stack<Level> progress = new Stack<Level>();
+    private final Deque<Level> progress = new ArrayDeque<Level>();
+
+    /**
+     * @see #getOffset()
+     */
+    private volatile double offset;
+
+    /**
+     * @see #getCurrentLevelOffset()
+     */
+    private volatile double currentLevelOffset;
 
     /**
      * Flag indicating that the next {@link StepProgressEvent} should be ignored (probably because its progress was
@@ -147,25 +166,76 @@ public List<Event> getEvents()
     @Override
     public void onEvent(Event event, Object arg1, Object arg2)
     {
-        boolean ignoreNextStep = this.ignoreNextStepProgressEvent;
-        this.ignoreNextStepProgressEvent = false;
+        if (arg2 == JobProgressChannel.COALESCED) {
+            // Already taken into account through JobProgressChannel
+            return;
+        }
+
         if (event instanceof PushLevelProgressEvent) {
-            onPushLevelProgress((PushLevelProgressEvent) event);
+            pushLevelProgress(((PushLevelProgressEvent) event).getSteps());
         } else if (event instanceof PopLevelProgressEvent) {
-            onPopLevelProgress();
-        } else if (event instanceof StepProgressEvent && !ignoreNextStep) {
-            onStepProgress();
+            popLevelProgress();
+        } else if (event instanceof StepProgressEvent) {
+            stepProgress();
         }
     }
 
+    // Direct access
+
     /**
      * Adds a new level to the progress stack.
      * 
-     * @param event the event that was fired
+     * @param steps number of steps in the new level
+     * @since 6.0M1
+     */
+    public void pushLevelProgress(int steps)
+    {
+        this.ignoreNextStepProgressEvent = false;
+
+        this.progress.push(new Level(steps, this.progress.peek().globalOffset, this.progress.peek().globalStepSize));
+
+        publish();
+    }
+
+    /**
+     * Move progress to next step.
+     * 
+     * @since 6.0M1
      */
-    private void onPushLevelProgress(PushLevelProgressEvent event)
+    public void stepProgress()
     {
-        this.progress.push(new Level(event.getSteps(), getOffset(), this.progress.peek().globalStepSize));
+        if (this.ignoreNextStepProgressEvent) {
+            this.ignoreNextStepProgressEvent = false;
+        } else {
+            onStepProgress();
+
+            publish();
+        }
+    }
+
+    /**
+     * Remove the current level from the progress stack.
+     * 
+     * @since 6.0M1
+     */
+    public void popLevelProgress()
+    {
+        this.ignoreNextStepProgressEvent = false;
+
+        onPopLevelProgress();
+
+        publish();
+    }
+
+    /**
+     * Update the offsets visible to other threads.
+     */
+    private void publish()
+    {
+        Level level = this.progress.peek();
+
+        this.offset = level.globalOffset;
+        this.currentLevelOffset = level.levelOffset;
     }
 
     /**
@@ -206,12 +276,12 @@ private void onPopLevelProgress()
     @Override
     public double getOffset()
     {
-        return this.progress.peek().globalOffset;
+        return this.offset;
     }
 
     @Override
     public double getCurrentLevelOffset()
     {
-        return this.progress.peek().levelOffset;
+        return this.currentLevelOffset;
     }
 }
@@ -0,0 +1,296 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.job.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.xwiki.job.event.status.PopLevelProgressEvent;
+import org.xwiki.job.event.status.PushLevelProgressEvent;
+import org.xwiki.observation.ObservationManager;
+import org.xwiki.observation.event.Event;
+
+/**
+ * Thread bound channel used to directly update the progress of the jobs running in the current thread without going
+ * through the {@link org.xwiki.observation.ObservationManager}.
+ * <p>
+ * Like the progress events it replaces, a progress notification is received by all the {@link DefaultJobProgress}
+ * registered in the current thread so that the progress of a job executed by another job is reflected in the progress
+ * of the parent job.
+ * <p>
+ * The progress events are still sent to the {@link ObservationManager} for other listeners but they are coalesced:
+ * they are accumulated and sent at most every {@link #PUBLICATION_INTERVAL} milliseconds (and when {@link #flush()} is
+ * called) and a level pushed and popped between two publications is sent as a single push/pop pair instead of all its
+ * events. The events are sent with {@link #COALESCED} as data so that {@link DefaultJobProgress} knows it does not need
+ * to take them into account again.
+ * 
+ * @version $Id$
+ * @since 6.0M1
+ */
+public final class JobProgressChannel
+{
+    /**
+     * The data associated to the progress events sent by the channel.
+     */
+    public static final Object COALESCED = JobProgressChannel.class.getName() + ".coalesced";
+
+    /**
+     * The minimum time in milliseconds between two publications of the progress events.
+     */
+    public static final long PUBLICATION_INTERVAL = 100;
+
+    /**
+     * @see #PUBLICATION_INTERVAL
+     */
+    private static final long PUBLICATION_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(PUBLICATION_INTERVAL);
+
+    /**
+     * The state of the channel for each thread.
+     */
+    private static final ThreadLocal<ThreadChannel> CHANNEL = new ThreadLocal<ThreadChannel>();
+
+    /**
+     * A progress event waiting to be sent.
+     * 
+     * @version $Id$
+     */
+    private static class PendingEvent
+    {
+        /**
+         * The event to send.
+         */
+        public final Event event;
+
+        /**
+         * The source of the event.
+         */
+        public final Object source;
+
+        /**
+         * The observation manager to send the event to.
+         */
+        public final ObservationManager observationManager;
+
+        /**
+         * @param event the event to send
+         * @param source the source of the event
+         * @param observationManager the observation manager to send the event to
+         */
+        public PendingEvent(Event event, Object source, ObservationManager observationManager)
+        {
+            this.event = event;
+            this.source = source;
+            this.observationManager = observationManager;
+        }
+    }
+
+    /**
+     * The state of the channel in a thread.
+     * 
+     * @version $Id$
+     */
+    private static class ThreadChannel
+    {
+        /**
+         * The progress to update.
+         */
+        public final List<DefaultJobProgress> progresses = new ArrayList<DefaultJobProgress>();
+
+        /**
+         * The events waiting to be sent.
+         */
+        public final List<PendingEvent> events = new ArrayList<PendingEvent>();
+
+        /**
+         * The index in {@link #events} of the push events which don't have a matching pop event yet.
+         */
+        public final List<Integer> openLevels = new ArrayList<Integer>();
+
+        /**
+         * The last time the events were sent.
+         */
+        public long lastPublication = System.nanoTime();
+
+        /**
+         * @return true if the channel does not hold anything anymore
+         */
+        public boolean isEmpty()
+        {
+            return this.progresses.isEmpty() && this.events.isEmpty();
+        }
+    }
+
+    /**
+     * Utility class.
+     */
+    private JobProgressChannel()
+    {
+        // Utility class
+    }
+
+    /**
+     * @return the channel of the current thread
+     */
+    private static ThreadChannel getChannel()
+    {
+        ThreadChannel channel = CHANNEL.get();
+
+        if (channel == null) {
+            channel = new ThreadChannel();
+            CHANNEL.set(channel);
+        }
+
+        return channel;
+    }
+
+    /**
+     * @param channel the channel to forget if empty
+     */
+    private static void release(ThreadChannel channel)
+    {
+        if (channel.isEmpty()) {
+            CHANNEL.remove();
+        }
+    }
+
+    /**
+     * @param progress the progress to update when a job running in the current thread reports progress
+     */
+    public static void register(DefaultJobProgress progress)
+    {
+        getChannel().progresses.add(progress);
+    }
+
+    /**
+     * @param progress the progress to stop updating
+     */
+    public static void unregister(DefaultJobProgress progress)
+    {
+        ThreadChannel channel = CHANNEL.get();
+
+        if (channel != null) {
+            channel.progresses.remove(progress);
+
+            release(channel);
+        }
+    }
+
+    /**
+     * Push new progression level.
+     * 
+     * @param steps number of steps in this new level
+     */
+    public static void pushLevelProgress(int steps)
+    {
+        ThreadChannel channel = CHANNEL.get();
+        if (channel != null) {
+            for (DefaultJobProgress progress : channel.progresses) {
+                progress.pushLevelProgress(steps);
+            }
+        }
+    }
+
+    /**
+     * Next step.
+     */
+    public static void stepProgress()
+    {
+        ThreadChannel channel = CHANNEL.get();
+        if (channel != null) {
+            for (DefaultJobProgress progress : channel.progresses) {
+                progress.stepProgress();
+            }
+        }
+    }
+
+    /**
+     * Pop progression level.
+     */
+    public static void popLevelProgress()
+    {
+        ThreadChannel channel = CHANNEL.get();
+        if (channel != null) {
+            for (DefaultJobProgress progress : channel.progresses) {
+                progress.popLevelProgress();
+            }
+        }
+    }
+
+    /**
+     * Send a progress event to the observation manager. The event is sent later with the other events of the current
+     * thread, possibly coalesced with them.
+     * 
+     * @param event the progress event
+     * @param source the source of the event
+     * @param observationManager the observation manager to send the event to
+     */
+    public static void publish(Event event, Object source, ObservationManager observationManager)
+    {
+        ThreadChannel channel = getChannel();
+
+        if (event instanceof PopLevelProgressEvent && !channel.openLevels.isEmpty()) {
+            int pushIndex = channel.openLevels.remove(channel.openLevels.size() - 1);
+
+            // The whole level happened since the last publication: only its push and pop are needed to get the same
+            // result
+            channel.events.subList(pushIndex + 1, channel.events.size()).clear();
+        } else if (event instanceof PushLevelProgressEvent) {
+            channel.openLevels.add(channel.events.size());
+        }
+
+        channel.events.add(new PendingEvent(event, source, observationManager));
+
+        if (System.nanoTime() - channel.lastPublication >= PUBLICATION_INTERVAL_NANOS) {
+            flush(channel);
+        }
+    }
+
+    /**
+     * Send the progress events waiting to be sent in the current thread.
+     */
+    public static void flush()
+    {
+        ThreadChannel channel = CHANNEL.get();
+
+        if (channel != null) {
+            flush(channel);
+
+            release(channel);
+        }
+    }
+
+    /**
+     * @param channel the channel for which to send the waiting progress events
+     */
+    private static void flush(ThreadChannel channel)
+    {
+        // Copy the events in case a listener reports progress
+        List<PendingEvent> events = new ArrayList<PendingEvent>(channel.events);
+
+        channel.events.clear();
+        channel.openLevels.clear();
+        channel.lastPublication = System.nanoTime();
+
+        for (PendingEvent pendingEvent : events) {
+            pendingEvent.observationManager.notify(pendingEvent.event, pendingEvent.source, COALESCED);
+        }
+    }
+}
@@ -19,13 +19,18 @@
  */
 package org.xwiki.job.internal;
 
-import org.junit.Assert;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
+import org.junit.Assert;
 import org.junit.Test;
 import org.xwiki.job.event.status.PopLevelProgressEvent;
 import org.xwiki.job.event.status.PushLevelProgressEvent;
 import org.xwiki.job.event.status.StepProgressEvent;
+import org.xwiki.observation.EventListener;
 import org.xwiki.observation.ObservationManager;
+import org.xwiki.observation.event.Event;
 import org.xwiki.test.jmock.AbstractComponentTestCase;
 
 public class DefaultJobProgressTest extends AbstractComponentTestCase
@@ -125,4 +130,99 @@ public void testIgnoreNextStepAfterPopLevel()
         Assert.assertEquals(0, Double.compare(1D, this.progress.getOffset()));
         Assert.assertEquals(0, Double.compare(1D, this.progress.getCurrentLevelOffset()));
     }
+
+    /**
+     * Tests that progress reported directly through {@link JobProgressChannel} is taken into account.
+     */
+    @Test
+    public void testProgressChannel()
+    {
+        DefaultJobProgress parentProgress = new DefaultJobProgress();
+
+        JobProgressChannel.register(parentProgress);
+
+        try {
+            JobProgressChannel.pushLevelProgress(2);
+
+            DefaultJobProgress childProgress = new DefaultJobProgress();
+            JobProgressChannel.register(childProgress);
+
+            try {
+                JobProgressChannel.pushLevelProgress(2);
+                JobProgressChannel.stepProgress();
+
+                Assert.assertEquals(0, Double.compare(.5D, childProgress.getOffset()));
+                Assert.assertEquals(0, Double.compare(.25D, parentProgress.getOffset()));
+
+                JobProgressChannel.popLevelProgress();
+            } finally {
+                JobProgressChannel.unregister(childProgress);
+            }
+
+            Assert.assertEquals(0, Double.compare(1D, childProgress.getOffset()));
+            Assert.assertEquals(0, Double.compare(.5D, parentProgress.getOffset()));
+
+            // Ignored since the progress was already updated by the end of the child level
+            JobProgressChannel.stepProgress();
+
+            Assert.assertEquals(0, Double.compare(.5D, parentProgress.getOffset()));
+
+            JobProgressChannel.stepProgress();
+            JobProgressChannel.popLevelProgress();
+
+            Assert.assertEquals(0, Double.compare(1D, parentProgress.getOffset()));
+        } finally {
+            JobProgressChannel.unregister(parentProgress);
+        }
+    }
+
+    /**
+     * Tests that the progress events are coalesced and not taken into account twice.
+     */
+    @Test
+    public void testPublishCoalescedEvents()
+    {
+        final List<Event> events = new ArrayList<Event>();
+        this.observation.addListener(new EventListener()
+        {
+            @Override
+            public String getName()
+            {
+                return "coalesced";
+            }
+
+            @Override
+            public List<Event> getEvents()
+            {
+                return Arrays.<Event> asList(new PushLevelProgressEvent(), new StepProgressEvent(),
+                    new PopLevelProgressEvent());
+            }
+
+            @Override
+            public void onEvent(Event event, Object source, Object data)
+            {
+                events.add(event);
+            }
+        });
+
+        PushLevelProgressEvent push2 = new PushLevelProgressEvent(2);
+        PushLevelProgressEvent push3 = new PushLevelProgressEvent(3);
+        PopLevelProgressEvent pop = new PopLevelProgressEvent();
+        StepProgressEvent step = new StepProgressEvent();
+
+        JobProgressChannel.publish(push2, null, this.observation);
+        JobProgressChannel.publish(push3, null, this.observation);
+        JobProgressChannel.publish(new StepProgressEvent(), null, this.observation);
+        JobProgressChannel.publish(new StepProgressEvent(), null, this.observation);
+        JobProgressChannel.publish(pop, null, this.observation);
+        JobProgressChannel.publish(step, null, this.observation);
+
+        JobProgressChannel.flush();
+
+        // The steps of the inner level are not needed
+        Assert.assertEquals(Arrays.<Event> asList(push2, push3, pop, step), events);
+
+        // Already taken into account through the channel
+        Assert.assertEquals(0, Double.compare(0D, this.progress.getOffset()));
+    }
 }
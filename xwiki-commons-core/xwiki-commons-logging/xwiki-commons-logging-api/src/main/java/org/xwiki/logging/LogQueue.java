@@ -20,16 +20,32 @@
 package org.xwiki.logging;
 
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.commons.lang3.ArrayUtils;
 import org.slf4j.Marker;
 import org.xwiki.logging.event.LogEvent;
+import org.xwiki.logging.internal.LogEventIndex;
 
 /**
  * A queue of {@link LogEvent}s.
+ * <p>
+ * In addition to the standard queue methods the events can be accessed by index (see {@link #getLogEvents(int, int)})
+ * or followed (see {@link #subscribe(int, int)}) so that a client displaying the log only has to read the new events.
+ * Indexes assume events are never removed from the queue: removing an event shifts the index of all the following
+ * events.
+ * <p>
+ * Adding an event takes a private lock for the time needed to append it to the queue and the index and to push it to
+ * the subscriptions, so that they all see the events in the same order. The removal methods and the subscription
+ * changes take the same lock. Reading the queue (iteration or indexed access) does not lock, except to rebuild the
+ * index after a removal.
  * 
  * @version $Id$
  * @since 3.2M3
@@ -41,6 +57,81 @@ public class LogQueue extends ConcurrentLinkedQueue<LogEvent> implements Logger
      */
     private static final long serialVersionUID = 1L;
 
+    /**
+     * Used to create {@link #lock} atomically.
+     */
+    private static final AtomicReferenceFieldUpdater<LogQueue, ReentrantLock> LOCK =
+        AtomicReferenceFieldUpdater.newUpdater(LogQueue.class, ReentrantLock.class, "lock");
+
+    /**
+     * The events in the order they have been added, recreated from the queue content when an event is removed.
+     */
+    private transient volatile LogEventIndex eventIndex = new LogEventIndex();
+
+    /**
+     * Make sure the queue, the index and the subscriptions receive the events in the same order. Created lazily since
+     * the constructors are not called when unserializing the queue.
+     */
+    private transient volatile ReentrantLock lock;
+
+    /**
+     * The subscriptions to notify when a new event is added.
+     */
+    private transient volatile List<LogQueueSubscription> subscriptions;
+
+    /**
+     * @see #isSnapshotArguments()
+     */
+    private transient volatile boolean snapshotArguments;
+
+    /**
+     * Invalidate the index when an event is removed through the iterator.
+     * 
+     * @version $Id$
+     */
+    private class LogQueueIterator implements Iterator<LogEvent>
+    {
+        /**
+         * The iterator of the queue.
+         */
+        private final Iterator<LogEvent> iterator;
+
+        /**
+         * @param iterator the iterator of the queue
+         */
+        LogQueueIterator(Iterator<LogEvent> iterator)
+        {
+            this.iterator = iterator;
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            return this.iterator.hasNext();
+        }
+
+        @Override
+        public LogEvent next()
+        {
+            return this.iterator.next();
+        }
+
+        @Override
+        public void remove()
+        {
+            ReentrantLock currentLock = getLock();
+            currentLock.lock();
+
+            try {
+                this.iterator.remove();
+
+                eventIndex = null;
+            } finally {
+                currentLock.unlock();
+            }
+        }
+    }
+
     /**
      * Copy the stored log into a passed {@link org.slf4j.Logger}.
      * 
@@ -113,8 +204,8 @@ public LogEvent addLogEvent(LogLevel level, String format, Object[] arguments, T
      */
     public LogEvent addLogEvent(Marker marker, LogLevel level, String format, Object[] arguments, Throwable throwable)
     {
-        LogEvent logEvent = LogUtils.newLogEvent(marker, level, format, arguments, throwable);
-        log(logEvent);
+        LogEvent logEvent = toStoredLogEvent(LogUtils.newLogEvent(marker, level, format, arguments, throwable));
+        add(logEvent);
 
         return logEvent;
     }
@@ -122,7 +213,324 @@ public LogEvent addLogEvent(Marker marker, LogLevel level, String format, Object
     @Override
     public void log(LogEvent logEvent)
     {
-        add(logEvent);
+        add(toStoredLogEvent(logEvent));
+    }
+
+    /**
+     * @param logEvent the event to store
+     * @return the version of the event to store in the queue
+     */
+    private LogEvent toStoredLogEvent(LogEvent logEvent)
+    {
+        return this.snapshotArguments ? LogUtils.snapshot(logEvent) : logEvent;
+    }
+
+    /**
+     * @return true if the arguments of the logged events are replaced by compact immutable representations
+     * @see LogUtils#snapshot(LogEvent)
+     * @since 6.0M1
+     */
+    public boolean isSnapshotArguments()
+    {
+        return this.snapshotArguments;
+    }
+
+    /**
+     * Indicate if the arguments of the logged events should be replaced by compact immutable representations. Useful
+     * for queues kept for a long time to make sure they don't retain big objects.
+     * 
+     * @param snapshotArguments true if the arguments of the logged events should be replaced by compact immutable
+     *            representations
+     * @see LogUtils#snapshot(LogEvent)
+     * @since 6.0M1
+     */
+    public void setSnapshotArguments(boolean snapshotArguments)
+    {
+        this.snapshotArguments = snapshotArguments;
+    }
+
+    // Queue
+
+    /**
+     * @return the lock to hold while modifying the queue
+     */
+    private ReentrantLock getLock()
+    {
+        ReentrantLock currentLock = this.lock;
+
+        if (currentLock == null) {
+            LOCK.compareAndSet(this, null, new ReentrantLock());
+            currentLock = this.lock;
+        }
+
+        return currentLock;
+    }
+
+    @Override
+    public boolean offer(LogEvent logEvent)
+    {
+        ReentrantLock currentLock = getLock();
+        currentLock.lock();
+
+        try {
+            super.offer(logEvent);
+
+            LogEventIndex index = this.eventIndex;
+            if (index != null) {
+                index.add(logEvent);
+            }
+
+            List<LogQueueSubscription> currentSubscriptions = this.subscriptions;
+            if (currentSubscriptions != null) {
+                for (LogQueueSubscription subscription : currentSubscriptions) {
+                    subscription.push(logEvent);
+                }
+            }
+        } finally {
+            currentLock.unlock();
+        }
+
+        return true;
+    }
+
+    @Override
+    public boolean addAll(Collection< ? extends LogEvent> logEvents)
+    {
+        boolean modified = false;
+
+        for (LogEvent logEvent : logEvents) {
+            modified |= offer(logEvent);
+        }
+
+        return modified;
+    }
+
+    @Override
+    public LogEvent poll()
+    {
+        ReentrantLock currentLock = getLock();
+        currentLock.lock();
+
+        try {
+            LogEvent logEvent = super.poll();
+
+            if (logEvent != null) {
+                this.eventIndex = null;
+            }
+
+            return logEvent;
+        } finally {
+            currentLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean remove(Object o)
+    {
+        ReentrantLock currentLock = getLock();
+        currentLock.lock();
+
+        try {
+            boolean removed = super.remove(o);
+
+            if (removed) {
+                this.eventIndex = null;
+            }
+
+            return removed;
+        } finally {
+            currentLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean removeAll(Collection< ? > c)
+    {
+        ReentrantLock currentLock = getLock();
+        currentLock.lock();
+
+        try {
+            boolean removed = super.removeAll(c);
+
+            if (removed) {
+                this.eventIndex = null;
+            }
+
+            return removed;
+        } finally {
+            currentLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean retainAll(Collection< ? > c)
+    {
+        ReentrantLock currentLock = getLock();
+        currentLock.lock();
+
+        try {
+            boolean removed = super.retainAll(c);
+
+            if (removed) {
+                this.eventIndex = null;
+            }
+
+            return removed;
+        } finally {
+            currentLock.unlock();
+        }
+    }
+
+    @Override
+    public Iterator<LogEvent> iterator()
+    {
+        return new LogQueueIterator(super.iterator());
+    }
+
+    // Indexed access
+
+    /**
+     * @return the index of the events, created from the queue content if needed
+     */
+    private LogEventIndex getEventIndex()
+    {
+        LogEventIndex index = this.eventIndex;
+
+        if (index == null) {
+            ReentrantLock currentLock = getLock();
+            currentLock.lock();
+
+            try {
+                index = getEventIndexLocked();
+            } finally {
+                currentLock.unlock();
+            }
+        }
+
+        return index;
+    }
+
+    /**
+     * Must be called while holding {@link #lock}.
+     * 
+     * @return the index of the events, created from the queue content if needed
+     */
+    private LogEventIndex getEventIndexLocked()
+    {
+        LogEventIndex index = this.eventIndex;
+
+        if (index == null) {
+            index = new LogEventIndex();
+            for (LogEvent logEvent : this) {
+                index.add(logEvent);
+            }
+
+            this.eventIndex = index;
+        }
+
+        return index;
+    }
+
+    /**
+     * @return the number of events in the queue, unlike {@link #size()} it does not require to traverse the queue
+     * @since 6.0M1
+     */
+    public int getLogEventCount()
+    {
+        return getEventIndex().size();
+    }
+
+    /**
+     * @param index the index of the event in the queue
+     * @return the event
+     * @throws IndexOutOfBoundsException if there is no event with the passed index
+     * @since 6.0M1
+     */
+    public LogEvent getLogEvent(int index)
+    {
+        return getEventIndex().get(index);
+    }
+
+    /**
+     * Return the events added after the passed offset without copying them.
+     * 
+     * @param offset the index of the first event to return
+     * @param limit the maximum number of events to return, -1 for all the events
+     * @return an immutable view of the events, it's not modified when new events are added to the queue
+     * @since 6.0M1
+     */
+    public List<LogEvent> getLogEvents(int offset, int limit)
+    {
+        return getEventIndex().subList(offset, limit);
+    }
+
+    /**
+     * Follow the events added to the queue.
+     * 
+     * @param offset the index of the first event to receive, events already in the queue are received first
+     * @param capacity the maximum number of events to buffer before falling back on reading the queue
+     * @return the subscription
+     * @since 6.0M1
+     */
+    public LogQueueSubscription subscribe(int offset, int capacity)
+    {
+        ReentrantLock currentLock = getLock();
+        currentLock.lock();
+
+        try {
+            LogQueueSubscription subscription =
+                new LogQueueSubscription(this, offset, capacity, offset < getEventIndexLocked().size());
+
+            if (this.subscriptions == null) {
+                this.subscriptions = new CopyOnWriteArrayList<LogQueueSubscription>();
+            }
+            this.subscriptions.add(subscription);
+
+            return subscription;
+        } finally {
+            currentLock.unlock();
+        }
+    }
+
+    /**
+     * @param subscription the subscription to stop notifying
+     */
+    void unsubscribe(LogQueueSubscription subscription)
+    {
+        ReentrantLock currentLock = getLock();
+        currentLock.lock();
+
+        try {
+            if (this.subscriptions != null) {
+                this.subscriptions.remove(subscription);
+            }
+        } finally {
+            currentLock.unlock();
+        }
+    }
+
+    /**
+     * Read the events following the passed offset and restart the buffering of the passed subscription without any
+     * event being added in between.
+     * 
+     * @param subscription the subscription catching up
+     * @param offset the index of the first event to return
+     * @return the events following the passed offset
+     */
+    List<LogEvent> catchUp(LogQueueSubscription subscription, int offset)
+    {
+        ReentrantLock currentLock = getLock();
+        currentLock.lock();
+
+        try {
+            List<LogEvent> events = getEventIndexLocked().subList(offset, -1);
+
+            subscription.restart();
+
+            return events;
+        } finally {
+            currentLock.unlock();
+        }
     }
 
     /**
@@ -0,0 +1,170 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.logging;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.xwiki.logging.event.LogEvent;
+
+/**
+ * Receive the {@link LogEvent}s added to a {@link LogQueue} after a given offset.
+ * <p>
+ * New events are pushed to a bounded buffer. When the buffer is full the subscription stops buffering and the next
+ * call to {@link #poll()} reads the missed events directly from the {@link LogQueue} so that no event is ever lost and
+ * slow consumers never slow down the producer.
+ * 
+ * @version $Id$
+ * @since 6.0M1
+ */
+public class LogQueueSubscription
+{
+    /**
+     * The queue to follow.
+     */
+    private final LogQueue queue;
+
+    /**
+     * The buffer of pushed events.
+     */
+    private final BlockingQueue<LogEvent> buffer;
+
+    /**
+     * The index of the next event to return.
+     */
+    private int offset;
+
+    /**
+     * True if the buffer does not contain all the events following {@link #offset}.
+     */
+    private volatile boolean behind;
+
+    /**
+     * @param queue the queue to follow
+     * @param offset the index of the first event to return
+     * @param capacity the maximum number of events to buffer
+     * @param behind true if the queue already contains events following the passed offset
+     */
+    LogQueueSubscription(LogQueue queue, int offset, int capacity, boolean behind)
+    {
+        this.queue = queue;
+        this.offset = offset;
+        this.buffer = new ArrayBlockingQueue<LogEvent>(capacity);
+        this.behind = behind;
+    }
+
+    /**
+     * Called by the {@link LogQueue} for each new event, possibly from several threads at the same time.
+     * 
+     * @param event the new event
+     */
+    void push(LogEvent event)
+    {
+        if (!this.behind && !this.buffer.offer(event)) {
+            this.behind = true;
+        }
+    }
+
+    /**
+     * @return the index in the {@link LogQueue} of the next event to return
+     */
+    public int getOffset()
+    {
+        return this.offset;
+    }
+
+    /**
+     * @return the events received since the previous call, never waits
+     */
+    public List<LogEvent> poll()
+    {
+        if (this.behind) {
+            return catchUp();
+        }
+
+        List<LogEvent> events = new ArrayList<LogEvent>(this.buffer.size());
+        this.buffer.drainTo(events);
+
+        this.offset += events.size();
+
+        return events;
+    }
+
+    /**
+     * @param timeout how long to wait for a new event before giving up
+     * @param unit the unit of the timeout
+     * @return the events received since the previous call, empty if no event has been received before the timeout
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public List<LogEvent> poll(long timeout, TimeUnit unit) throws InterruptedException
+    {
+        if (this.behind) {
+            return catchUp();
+        }
+
+        LogEvent event = this.buffer.poll(timeout, unit);
+        if (event == null) {
+            return Collections.emptyList();
+        }
+
+        List<LogEvent> events = new ArrayList<LogEvent>(this.buffer.size() + 1);
+        events.add(event);
+        this.buffer.drainTo(events);
+
+        this.offset += events.size();
+
+        return events;
+    }
+
+    /**
+     * Read all the events following {@link #offset} directly from the {@link LogQueue} and restart buffering.
+     * 
+     * @return the events following {@link #offset}
+     */
+    private List<LogEvent> catchUp()
+    {
+        List<LogEvent> events = this.queue.catchUp(this, this.offset);
+
+        this.offset += events.size();
+
+        return events;
+    }
+
+    /**
+     * Called by the {@link LogQueue} while no event can be added to restart buffering after a catch up.
+     */
+    void restart()
+    {
+        this.buffer.clear();
+        this.behind = false;
+    }
+
+    /**
+     * Stop receiving events.
+     */
+    public void close()
+    {
+        this.queue.unsubscribe(this);
+    }
+}
@@ -19,7 +19,12 @@
  */
 package org.xwiki.logging;
 
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
 import org.slf4j.Marker;
+import org.slf4j.helpers.MessageFormatter;
 import org.xwiki.logging.event.BeginLogEvent;
 import org.xwiki.logging.event.EndLogEvent;
 import org.xwiki.logging.event.LogEvent;
@@ -33,6 +38,13 @@
  */
 public final class LogUtils
 {
+    /**
+     * The types of arguments which are kept as is when creating a snapshot of a {@link LogEvent}.
+     */
+    private static final Set<Class< ? >> COMPACT_TYPES = new HashSet<Class< ? >>(Arrays.<Class< ? >>asList(
+        String.class, Boolean.class, Character.class, Byte.class, Short.class, Integer.class, Long.class, Float.class,
+        Double.class));
+
     private LogUtils()
     {
         // Utility class
@@ -102,4 +114,61 @@ public static LogEvent translate(LogEvent logEvent, String translatedMessage)
 
         return logEvent;
     }
+
+    /**
+     * Create a copy of the passed {@link LogEvent} where the arguments are replaced by compact immutable
+     * representations.
+     * <p>
+     * Strings, primitive wrappers and enums are kept as is, any other argument is replaced by the {@link String} it
+     * would produce in the formatted message. This makes sure a {@link LogEvent} kept for a long time (in a job log for
+     * example) does not retain big objects like documents or extensions.
+     * 
+     * @param logEvent the {@link LogEvent} to copy
+     * @return the copy of the passed {@link LogEvent} or the passed {@link LogEvent} itself when its arguments are
+     *         already compact
+     * @since 6.0M1
+     */
+    public static LogEvent snapshot(LogEvent logEvent)
+    {
+        Object[] arguments = logEvent.getArgumentArray();
+
+        if (arguments == null) {
+            return logEvent;
+        }
+
+        Object[] snapshotArguments = null;
+        for (int i = 0; i < arguments.length; ++i) {
+            Object argument = arguments[i];
+            if (!isCompact(argument)) {
+                if (snapshotArguments == null) {
+                    snapshotArguments = arguments.clone();
+                }
+                snapshotArguments[i] = MessageFormatter.format(MessageParser.ARGUMENT_STR, argument).getMessage();
+            }
+        }
+
+        if (snapshotArguments == null) {
+            return logEvent;
+        }
+
+        if (logEvent instanceof BeginLogEvent) {
+            return new BeginLogEvent(logEvent.getMarker(), logEvent.getLevel(), logEvent.getMessage(),
+                snapshotArguments, logEvent.getThrowable());
+        } else if (logEvent instanceof EndLogEvent) {
+            return new EndLogEvent(logEvent.getMarker(), logEvent.getLevel(), logEvent.getMessage(),
+                snapshotArguments, logEvent.getThrowable());
+        }
+
+        return new LogEvent(logEvent.getMarker(), logEvent.getLevel(), logEvent.getMessage(), snapshotArguments,
+            logEvent.getThrowable());
+    }
+
+    /**
+     * @param argument the log argument
+     * @return true if the argument is immutable and does not reference any other object
+     */
+    private static boolean isCompact(Object argument)
+    {
+        return argument == null || COMPACT_TYPES.contains(argument.getClass()) || argument instanceof Enum;
+    }
 }
@@ -0,0 +1,242 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.logging.internal;
+
+import java.util.AbstractList;
+import java.util.Collections;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.xwiki.logging.event.LogEvent;
+
+/**
+ * Append only storage of {@link LogEvent}s providing constant time access by index.
+ * <p>
+ * Events are stored in fixed size segments so that adding an event never copies the already stored events. Adding an
+ * event never takes a lock: each event atomically reserves its index and is then stored in its slot, so several threads
+ * can add events at the same time. Readers never see a partially added event: they wait for the slot of a reserved
+ * index to be filled, which only takes the time of a few instructions.
+ * 
+ * @version $Id$
+ * @since 6.0M1
+ */
+public class LogEventIndex
+{
+    /**
+     * The number of bits of the index used to locate an event in a segment.
+     */
+    private static final int SEGMENT_SHIFT = 8;
+
+    /**
+     * The number of events in a segment.
+     */
+    private static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+
+    /**
+     * Used to get the index of an event in a segment.
+     */
+    private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+    /**
+     * The number of reserved indexes.
+     */
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * The segments. Segments are installed in order and each one by the thread which reserved its first index so that
+     * this directory is only ever modified by one thread at a time.
+     */
+    private volatile AtomicReferenceArray<AtomicReferenceArray<LogEvent>> segments =
+        new AtomicReferenceArray<AtomicReferenceArray<LogEvent>>(1);
+
+    /**
+     * An immutable view of a range of the stored events.
+     * 
+     * @version $Id$
+     */
+    private final class RangeList extends AbstractList<LogEvent> implements RandomAccess
+    {
+        /**
+         * The index of the first event.
+         */
+        private final int from;
+
+        /**
+         * The number of events.
+         */
+        private final int rangeSize;
+
+        /**
+         * @param from the index of the first event
+         * @param rangeSize the number of events
+         */
+        RangeList(int from, int rangeSize)
+        {
+            this.from = from;
+            this.rangeSize = rangeSize;
+        }
+
+        @Override
+        public LogEvent get(int index)
+        {
+            checkIndex(index, this.rangeSize);
+
+            return LogEventIndex.this.get(this.from + index);
+        }
+
+        @Override
+        public int size()
+        {
+            return this.rangeSize;
+        }
+    }
+
+    /**
+     * @param index the index to check
+     * @param currentSize the number of elements
+     * @throws IndexOutOfBoundsException if the index is not between 0 and the size
+     */
+    private static void checkIndex(int index, int currentSize)
+    {
+        if (index < 0 || index >= currentSize) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + currentSize);
+        }
+    }
+
+    /**
+     * @param event the event to add at the end of the index
+     */
+    public void add(LogEvent event)
+    {
+        int index = this.size.getAndIncrement();
+        int segmentIndex = index >>> SEGMENT_SHIFT;
+
+        AtomicReferenceArray<LogEvent> segment;
+        if ((index & SEGMENT_MASK) == 0) {
+            segment = new AtomicReferenceArray<LogEvent>(SEGMENT_SIZE);
+            installSegment(segmentIndex, segment);
+        } else {
+            segment = getSegment(segmentIndex);
+        }
+
+        segment.set(index & SEGMENT_MASK, event);
+    }
+
+    /**
+     * @param segmentIndex the index of the segment
+     * @param segment the segment to install
+     */
+    private void installSegment(int segmentIndex, AtomicReferenceArray<LogEvent> segment)
+    {
+        // Make sure the previous segment is installed so that the directory is never modified concurrently
+        if (segmentIndex > 0) {
+            getSegment(segmentIndex - 1);
+        }
+
+        AtomicReferenceArray<AtomicReferenceArray<LogEvent>> directory = this.segments;
+
+        if (segmentIndex == directory.length()) {
+            AtomicReferenceArray<AtomicReferenceArray<LogEvent>> newDirectory =
+                new AtomicReferenceArray<AtomicReferenceArray<LogEvent>>(segmentIndex * 2);
+            for (int i = 0; i < segmentIndex; ++i) {
+                newDirectory.set(i, directory.get(i));
+            }
+            newDirectory.set(segmentIndex, segment);
+
+            this.segments = newDirectory;
+        } else {
+            directory.set(segmentIndex, segment);
+        }
+    }
+
+    /**
+     * @param segmentIndex the index of the segment
+     * @return the segment, waiting for it to be installed if needed
+     */
+    private AtomicReferenceArray<LogEvent> getSegment(int segmentIndex)
+    {
+        while (true) {
+            AtomicReferenceArray<AtomicReferenceArray<LogEvent>> directory = this.segments;
+
+            if (segmentIndex < directory.length()) {
+                AtomicReferenceArray<LogEvent> segment = directory.get(segmentIndex);
+
+                if (segment != null) {
+                    return segment;
+                }
+            }
+
+            // The thread which reserved the first index of the segment is installing it
+            Thread.yield();
+        }
+    }
+
+    /**
+     * @return the number of stored events
+     */
+    public int size()
+    {
+        return this.size.get();
+    }
+
+    /**
+     * @param index the index of the event
+     * @return the event
+     */
+    public LogEvent get(int index)
+    {
+        checkIndex(index, this.size.get());
+
+        AtomicReferenceArray<LogEvent> segment = getSegment(index >>> SEGMENT_SHIFT);
+
+        LogEvent event = segment.get(index & SEGMENT_MASK);
+        while (event == null) {
+            // The thread which reserved the index is storing the event
+            Thread.yield();
+
+            event = segment.get(index & SEGMENT_MASK);
+        }
+
+        return event;
+    }
+
+    /**
+     * @param offset the index of the first event to return
+     * @param limit the maximum number of events to return, -1 for all the events stored when calling the method
+     * @return an immutable view of the events, not copied
+     */
+    public List<LogEvent> subList(int offset, int limit)
+    {
+        int currentSize = this.size.get();
+
+        if (offset < 0 || offset >= currentSize) {
+            return Collections.emptyList();
+        }
+
+        int rangeSize = currentSize - offset;
+        if (limit >= 0 && limit < rangeSize) {
+            rangeSize = limit;
+        }
+
+        return new RangeList(offset, rangeSize);
+    }
+}
@@ -22,6 +22,8 @@
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.xwiki.logging.internal.helpers.MessageParser.MessageElement;
 import org.xwiki.logging.internal.helpers.MessageParser.MessageIndex;
@@ -36,6 +38,16 @@
 // TODO: remove as soon as all that is provided by org.slf4j.helpers.MessageFormatter
 public final class ExtendedMessageFormatter
 {
+    /**
+     * The maximum number of parsed message patterns to keep in the cache.
+     */
+    private static final int TEMPLATE_CACHE_SIZE = 1000;
+
+    /**
+     * The parsed message patterns, the same patterns are generally used over and over since most of them are constants.
+     */
+    private static final Map<String, MessageElement[]> TEMPLATES = new ConcurrentHashMap<String, MessageElement[]>();
+
     /**
      * Default constructor.
      */
@@ -61,11 +73,11 @@ public static List<String> parseMessage(final String messagePattern, Object[] ar
 
         List<String> messageList = new ArrayList<String>(arguments.length + 1);
 
-        MessageParser parser = new MessageParser(messagePattern, false);
+        MessageElement[] elements = getTemplate(messagePattern);
 
         StringBuilder lastElement = new StringBuilder();
-        for (MessageElement element = parser.next(), previous = null; element != null; previous = element, element =
-                parser.next()) {
+        MessageElement previous = null;
+        for (MessageElement element : elements) {
             if (arguments.length < messageList.size()) {
                 lastElement.append(element.getString());
             } else {
@@ -75,12 +87,41 @@ public static List<String> parseMessage(final String messagePattern, Object[] ar
                     messageList.add("");
                 }
             }
+
+            previous = element;
         }
 
-        if (lastElement.length() > 0 || parser.getCurrentMessageElement() instanceof MessageIndex) {
+        if (lastElement.length() > 0 || previous instanceof MessageIndex) {
             messageList.add(lastElement.toString());
         }
 
         return messageList;
     }
+
+    /**
+     * @param messagePattern the message pattern to parse
+     * @return the elements of the message pattern
+     */
+    private static MessageElement[] getTemplate(String messagePattern)
+    {
+        MessageElement[] elements = TEMPLATES.get(messagePattern);
+
+        if (elements == null) {
+            MessageParser parser = new MessageParser(messagePattern, false);
+
+            List<MessageElement> elementList = new ArrayList<MessageElement>();
+            for (MessageElement element = parser.next(); element != null; element = parser.next()) {
+                elementList.add(element);
+            }
+            elements = elementList.toArray(new MessageElement[elementList.size()]);
+
+            // Not worth a real LRU, patterns are generally constants so the cache is not supposed to get full
+            if (TEMPLATES.size() >= TEMPLATE_CACHE_SIZE) {
+                TEMPLATES.clear();
+            }
+            TEMPLATES.put(messagePattern, elements);
+        }
+
+        return elements;
+    }
 }
@@ -19,7 +19,18 @@
  */
 package org.xwiki.logging;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -117,4 +128,182 @@ public void testGetLogsFrom()
         Assert.assertFalse(queue.getLogsFrom(LogLevel.WARN).isEmpty());
         Assert.assertTrue(queue.getLogsFrom(LogLevel.ERROR).isEmpty());
     }
+
+    @Test
+    public void testGetLogEvents()
+    {
+        LogQueue queue = new LogQueue();
+
+        Assert.assertEquals(0, queue.getLogEventCount());
+        Assert.assertTrue(queue.getLogEvents(0, -1).isEmpty());
+
+        for (int i = 0; i < 1000; ++i) {
+            queue.info("message {}", i);
+        }
+
+        Assert.assertEquals(1000, queue.getLogEventCount());
+        Assert.assertEquals("message 500", queue.getLogEvent(500).getFormattedMessage());
+
+        List<LogEvent> events = queue.getLogEvents(998, -1);
+        queue.info("message {}", 1000);
+
+        Assert.assertEquals(2, events.size());
+        Assert.assertEquals("message 999", events.get(1).getFormattedMessage());
+
+        events = queue.getLogEvents(10, 5);
+        Assert.assertEquals(5, events.size());
+        Assert.assertEquals("message 14", events.get(4).getFormattedMessage());
+
+        Assert.assertTrue(queue.getLogEvents(1001, -1).isEmpty());
+
+        // Removing an event shift the index of the following events
+        queue.poll();
+
+        Assert.assertEquals(1000, queue.getLogEventCount());
+        Assert.assertEquals("message 1", queue.getLogEvent(0).getFormattedMessage());
+    }
+
+    @Test
+    public void testIteratorRemove()
+    {
+        LogQueue queue = new LogQueue();
+
+        queue.info("message 0");
+        queue.info("message 1");
+
+        Assert.assertEquals(2, queue.getLogEventCount());
+
+        Iterator<LogEvent> iterator = queue.iterator();
+        iterator.next();
+        iterator.remove();
+
+        Assert.assertEquals(1, queue.getLogEventCount());
+        Assert.assertEquals("message 1", queue.getLogEvent(0).getFormattedMessage());
+
+        queue.info("message 2");
+
+        Assert.assertEquals(2, queue.getLogEventCount());
+        Assert.assertEquals("message 2", queue.getLogEvent(1).getFormattedMessage());
+    }
+
+    @Test
+    public void testConcurrentProducers() throws InterruptedException
+    {
+        final LogQueue queue = new LogQueue();
+        final int eventsPerThread = 2000;
+
+        LogQueueSubscription subscription = queue.subscribe(0, 4 * eventsPerThread);
+
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; ++i) {
+            final int thread = i;
+            threads[i] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    for (int j = 0; j < eventsPerThread; ++j) {
+                        queue.info("message {} {}", thread, j);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Assert.assertEquals(threads.length * eventsPerThread, queue.getLogEventCount());
+
+        Set<LogEvent> indexed = new HashSet<LogEvent>(queue.getLogEvents(0, -1));
+        Assert.assertEquals(threads.length * eventsPerThread, indexed.size());
+        Assert.assertTrue(indexed.containsAll(queue));
+
+        // The queue, the index and the subscriptions see the events in the same order
+        List<LogEvent> events = new ArrayList<LogEvent>(queue);
+        Assert.assertEquals(events, queue.getLogEvents(0, -1));
+        Assert.assertEquals(events, subscription.poll());
+    }
+
+    @Test
+    public void testSerialization() throws IOException, ClassNotFoundException
+    {
+        LogQueue queue = new LogQueue();
+        queue.info("message 0");
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(queue);
+        out.close();
+
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        LogQueue unserializedQueue = (LogQueue) in.readObject();
+        in.close();
+
+        unserializedQueue.info("message 1");
+
+        Assert.assertEquals(2, unserializedQueue.getLogEventCount());
+        Assert.assertEquals("message 0", unserializedQueue.getLogEvent(0).getFormattedMessage());
+        Assert.assertEquals("message 1", unserializedQueue.getLogEvent(1).getFormattedMessage());
+
+        Assert.assertTrue(unserializedQueue.remove(unserializedQueue.getLogEvent(0)));
+        Assert.assertEquals("message 1", unserializedQueue.getLogEvent(0).getFormattedMessage());
+    }
+
+    @Test
+    public void testSubscribe() throws InterruptedException
+    {
+        LogQueue queue = new LogQueue();
+
+        queue.info("message 0");
+
+        LogQueueSubscription subscription = queue.subscribe(0, 2);
+
+        queue.info("message 1");
+
+        List<LogEvent> events = subscription.poll();
+        Assert.assertEquals(2, events.size());
+        Assert.assertEquals("message 0", events.get(0).getFormattedMessage());
+        Assert.assertEquals("message 1", events.get(1).getFormattedMessage());
+        Assert.assertEquals(2, subscription.getOffset());
+
+        Assert.assertTrue(subscription.poll(1, TimeUnit.MILLISECONDS).isEmpty());
+
+        // Overflow the buffer
+        queue.info("message 2");
+        queue.info("message 3");
+        queue.info("message 4");
+
+        events = subscription.poll(1, TimeUnit.MILLISECONDS);
+        Assert.assertEquals(3, events.size());
+        Assert.assertEquals("message 2", events.get(0).getFormattedMessage());
+        Assert.assertEquals("message 4", events.get(2).getFormattedMessage());
+        Assert.assertEquals(5, subscription.getOffset());
+
+        queue.info("message 5");
+
+        events = subscription.poll(1, TimeUnit.MILLISECONDS);
+        Assert.assertEquals(1, events.size());
+        Assert.assertEquals("message 5", events.get(0).getFormattedMessage());
+
+        subscription.close();
+
+        queue.info("message 6");
+
+        Assert.assertTrue(subscription.poll().isEmpty());
+    }
+
+    @Test
+    public void testSnapshotArguments()
+    {
+        LogQueue queue = new LogQueue();
+        queue.setSnapshotArguments(true);
+
+        queue.error("message {} {}", Arrays.asList("value"), 42);
+
+        LogEvent logEvent = queue.peek();
+
+        Assert.assertArrayEquals(new Object[] {"[value]", 42}, logEvent.getArgumentArray());
+        Assert.assertEquals("message [value] 42", logEvent.getFormattedMessage());
+    }
 }
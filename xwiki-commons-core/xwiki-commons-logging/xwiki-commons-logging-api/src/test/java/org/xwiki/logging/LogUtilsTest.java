@@ -21,6 +21,7 @@
 
 import org.junit.Assert;
 import org.junit.Test;
+import org.xwiki.logging.event.BeginLogEvent;
 import org.xwiki.logging.event.LogEvent;
 
 /**
@@ -60,4 +61,31 @@ public void testTranslate()
         Assert.assertEquals("hello2 {}", translatedLogEvent.getMessage());
         Assert.assertArrayEquals(new Object[] {"two", "two"}, translatedLogEvent.getArgumentArray());
     }
+
+    @Test
+    public void testSnapshot()
+    {
+        LogEvent logEvent = new LogEvent(LogLevel.ERROR, "hello {} world {}", new Object[] {"one", 2}, null);
+
+        Assert.assertSame(logEvent, LogUtils.snapshot(logEvent));
+
+        Object argument = new Object()
+        {
+            @Override
+            public String toString()
+            {
+                return "two";
+            }
+        };
+        logEvent =
+            new BeginLogEvent(null, LogLevel.ERROR, "hello {} world {} {}", new Object[] {"one", argument,
+                new int[] {1, 2}}, null);
+
+        LogEvent snapshotLogEvent = LogUtils.snapshot(logEvent);
+
+        Assert.assertTrue(snapshotLogEvent instanceof BeginLogEvent);
+        Assert.assertArrayEquals(new Object[] {"one", "two", "[1, 2]"}, snapshotLogEvent.getArgumentArray());
+        Assert.assertEquals(logEvent.getFormattedMessage(), snapshotLogEvent.getFormattedMessage());
+        Assert.assertSame(argument, logEvent.getArgumentArray()[1]);
+    }
 }
@@ -0,0 +1,275 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.logging.logback.internal;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+
+/**
+ * Send Logback events to {@link LogbackEventGenerator#sendLogEvent(ILoggingEvent)} from a dedicated thread so that the
+ * threads producing the log don't pay for the execution of the {@link org.xwiki.logging.event.LogEvent} listeners.
+ * <p>
+ * Events are stored in a {@link RingBuffer} and sent by batches. When the buffer is getting full, events with a level
+ * lower or equal to the discarding level are dropped while threads sending more important events wait for some space
+ * to be available. Once the dispatcher is stopped the events are sent directly from the thread producing them.
+ * 
+ * @version $Id$
+ * @since 6.0M1
+ */
+public class AsyncLogEventDispatcher implements Runnable
+{
+    /**
+     * The maximum number of events sent before checking again if the dispatcher is still running.
+     */
+    private static final int BATCH_SIZE = 256;
+
+    /**
+     * How long to wait when the buffer is empty before checking again for events, in nanoseconds.
+     */
+    private static final long IDLE_WAIT = TimeUnit.MILLISECONDS.toNanos(100);
+
+    /**
+     * How long to wait for space in a full buffer before trying again, in nanoseconds.
+     */
+    private static final long FULL_WAIT = TimeUnit.MICROSECONDS.toNanos(100);
+
+    /**
+     * Used to send the events.
+     */
+    private final LogbackEventGenerator generator;
+
+    /**
+     * The events waiting to be sent.
+     */
+    private final RingBuffer<ILoggingEvent> buffer;
+
+    /**
+     * Events with a level lower or equal to this one are dropped when the buffer is getting full.
+     */
+    private final int discardingLevel;
+
+    /**
+     * The number of events in the buffer above which discardable events are dropped.
+     */
+    private final int discardingThreshold;
+
+    /**
+     * The number of dropped events.
+     */
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * The thread sending the events.
+     */
+    private Thread thread;
+
+    /**
+     * False when the dispatcher has been asked to stop.
+     */
+    private volatile boolean running;
+
+    /**
+     * True once the dispatcher thread is stopped: nobody else is going to read the buffer.
+     */
+    private volatile boolean stopped;
+
+    /**
+     * True when the dispatcher thread is waiting for new events.
+     */
+    private volatile boolean waiting;
+
+    /**
+     * Make sure only one thread at a time reads the buffer once the dispatcher thread is stopped.
+     */
+    private final Object drainLock = new Object();
+
+    /**
+     * @param generator used to send the events
+     * @param bufferSize the maximum number of events waiting to be sent
+     * @param discardingLevel events with a level lower or equal to this one are dropped when the buffer is getting
+     *            full
+     */
+    public AsyncLogEventDispatcher(LogbackEventGenerator generator, int bufferSize, Level discardingLevel)
+    {
+        this.generator = generator;
+        this.buffer = new RingBuffer<ILoggingEvent>(bufferSize);
+        this.discardingLevel = discardingLevel.toInt();
+        // Start dropping discardable events when the buffer is 80% full
+        this.discardingThreshold = this.buffer.capacity() - this.buffer.capacity() / 5;
+    }
+
+    /**
+     * Start the thread sending the events.
+     */
+    public void start()
+    {
+        this.running = true;
+
+        this.thread = new Thread(this, "XWiki log event dispatcher");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Stop the thread sending the events and send the remaining events from the current thread.
+     * 
+     * @throws InterruptedException if interrupted while waiting for the dispatcher thread to stop
+     */
+    public void stop() throws InterruptedException
+    {
+        this.running = false;
+
+        if (this.thread != null) {
+            LockSupport.unpark(this.thread);
+            this.thread.join();
+        }
+
+        synchronized (this.drainLock) {
+            this.stopped = true;
+
+            // Make sure nothing is left behind
+            drain();
+        }
+    }
+
+    /**
+     * @return the number of events dropped because the buffer was full
+     */
+    public long getDropped()
+    {
+        return this.dropped.get();
+    }
+
+    /**
+     * @return true if the current thread is the one sending the events
+     */
+    public boolean isDispatcherThread()
+    {
+        return Thread.currentThread() == this.thread;
+    }
+
+    /**
+     * Add an event to the buffer.
+     * 
+     * @param event the event to send
+     */
+    public void dispatch(ILoggingEvent event)
+    {
+        if (this.stopped) {
+            this.generator.sendLogEvent(event);
+
+            return;
+        }
+
+        boolean discardable = event.getLevel().toInt() <= this.discardingLevel;
+
+        if (discardable && this.buffer.size() >= this.discardingThreshold) {
+            this.dropped.incrementAndGet();
+
+            return;
+        }
+
+        // Capture the thread name and MDC before the logging thread moves on
+        event.prepareForDeferredProcessing();
+
+        while (!this.buffer.offer(event)) {
+            if (discardable) {
+                this.dropped.incrementAndGet();
+
+                return;
+            }
+
+            if (!this.running) {
+                // Nobody is going to make some space
+                this.generator.sendLogEvent(event);
+
+                return;
+            }
+
+            // Wait for the dispatcher thread to make some space
+            LockSupport.unpark(this.thread);
+            LockSupport.parkNanos(this, FULL_WAIT);
+        }
+
+        if (this.stopped) {
+            // The dispatcher stopped before it could see the event
+            synchronized (this.drainLock) {
+                drain();
+            }
+        } else if (this.waiting) {
+            LockSupport.unpark(this.thread);
+        }
+    }
+
+    @Override
+    public void run()
+    {
+        while (this.running) {
+            if (sendBatch() == 0) {
+                this.waiting = true;
+
+                // Check again in case an event was added before the producer could see we were waiting
+                if (this.buffer.size() == 0 && this.running) {
+                    LockSupport.parkNanos(this, IDLE_WAIT);
+                }
+
+                this.waiting = false;
+            }
+        }
+    }
+
+    /**
+     * Send all the events of the buffer. Must be called while holding {@link #drainLock} after the dispatcher thread
+     * is stopped.
+     */
+    private void drain()
+    {
+        while (sendBatch() > 0) {
+            // Continue until the buffer is empty
+        }
+    }
+
+    /**
+     * @return the number of sent events
+     */
+    private int sendBatch()
+    {
+        int count = 0;
+
+        for (ILoggingEvent event = this.buffer.poll(); event != null; event = this.buffer.poll()) {
+            try {
+                this.generator.sendLogEvent(event);
+            } catch (Exception e) {
+                // Make sure a failing listener does not kill the dispatcher
+                this.generator.addError("Failed to send log event", e);
+            }
+
+            if (++count == BATCH_SIZE) {
+                break;
+            }
+        }
+
+        return count;
+    }
+}
@@ -33,7 +33,6 @@
 import org.xwiki.logging.LoggerManager;
 import org.xwiki.observation.EventListener;
 import org.xwiki.observation.ObservationManager;
-import org.xwiki.observation.WrappedThreadEventListener;
 
 import ch.qos.logback.classic.LoggerContext;
 import ch.qos.logback.classic.spi.ILoggingEvent;
@@ -49,11 +48,22 @@
 public class DefaultLoggerManager implements LoggerManager, Initializable
 {
     /**
-     * Used to register/unregister {@link org.xwiki.logging.event.LogEvent} listeners.
+     * The name of the listener generating the log events.
+     */
+    private static final String EVENT_GENERATOR = "LogbackEventGenerator";
+
+    /**
+     * Used to find the event generator. Going through the {@link ObservationManager} (instead of injecting the event
+     * generator) makes sure all the listeners are initialized before any log is sent to them.
      */
     @Inject
     private ObservationManager observation;
 
+    /**
+     * The event generator to tell which listener captures the log of the current thread, lazily resolved.
+     */
+    private volatile LogbackEventGenerator captureGenerator;
+
     /**
      * The logger.
      */
@@ -107,17 +117,12 @@ public void pushLogListener(EventListener listener)
             this.listeners.set(listenerStack);
         }
 
-        if (!listenerStack.isEmpty()) {
-            this.observation.removeListener(listenerStack.peek().getName());
-        }
-
-        if (listener != null) {
-            this.observation.addListener(new WrappedThreadEventListener(listener));
-        }
         if (listenerStack.isEmpty()) {
             grabLog(Thread.currentThread());
         }
         listenerStack.push(listener);
+
+        setCaptureListener(listener);
     }
 
     @Override
@@ -128,16 +133,12 @@ public EventListener popLogListener()
         EventListener listener;
         if (listenerStack != null && !listenerStack.isEmpty()) {
             listener = listenerStack.pop();
-            if (listener != null) {
-                this.observation.removeListener(listener.getName());
-            }
             if (listenerStack.isEmpty()) {
                 ungrabLog(Thread.currentThread());
+                this.listeners.remove();
+                setCaptureListener(null);
             } else {
-                EventListener topListener = listenerStack.peek();
-                if (topListener != null) {
-                    this.observation.addListener(new WrappedThreadEventListener(topListener));
-                }
+                setCaptureListener(listenerStack.peek());
             }
         } else {
             listener = null;
@@ -146,6 +147,38 @@ public EventListener popLogListener()
         return listener;
     }
 
+    /**
+     * @param listener the listener receiving the log of the current thread, null if the log should be lost
+     */
+    private void setCaptureListener(EventListener listener)
+    {
+        // No need to initialize the event generator just to tell it nothing is captured
+        LogbackEventGenerator generator = listener != null ? getCaptureGenerator() : this.captureGenerator;
+
+        if (generator != null) {
+            generator.setCaptureListener(listener);
+        }
+    }
+
+    /**
+     * @return the event generator registered in the {@link ObservationManager}, null if none could be found
+     */
+    private synchronized LogbackEventGenerator getCaptureGenerator()
+    {
+        if (this.captureGenerator == null) {
+            EventListener eventGenerator = this.observation.getListener(EVENT_GENERATOR);
+
+            if (eventGenerator instanceof LogbackEventGenerator) {
+                this.captureGenerator = (LogbackEventGenerator) eventGenerator;
+            } else {
+                this.logger.error("The event generator [{}] is not a [{}]: the log of the threads pushing a log"
+                    + " listener won't be captured.", eventGenerator, LogbackEventGenerator.class.getName());
+            }
+        }
+
+        return this.captureGenerator;
+    }
+
     /**
      * Isolate all appender from provided thread except the event generator one.
      * 
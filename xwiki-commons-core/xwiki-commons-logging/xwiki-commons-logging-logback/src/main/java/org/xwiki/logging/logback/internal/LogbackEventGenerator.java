@@ -41,10 +41,11 @@
 import org.xwiki.observation.ObservationManager;
 import org.xwiki.observation.event.Event;
 
+import ch.qos.logback.classic.Level;
 import ch.qos.logback.classic.spi.ILoggingEvent;
 import ch.qos.logback.classic.spi.IThrowableProxy;
 import ch.qos.logback.classic.spi.ThrowableProxy;
-import ch.qos.logback.core.AppenderBase;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
 
 /**
  * Bridge converting log to Observation Events.
@@ -57,6 +58,13 @@
  * possibility that some logs will not be seen if some Event Listeners do logging in their initialization and it happens
  * that they're initialized before this component...).
  * </p>
+ * <p>
+ * By default the {@link LogEvent}s are sent from the thread which produced the log. When the
+ * {@value #PROPERTY_ASYNC} Logback context property is set to true they are sent from a dedicated thread instead (see
+ * {@link AsyncLogEventDispatcher}). The log of the threads being captured (see
+ * {@link org.xwiki.logging.LoggerManager#pushLogListener(EventListener)}) is always sent synchronously to the
+ * capturing listener.
+ * </p>
  * 
  * @version $Id$
  * @since 3.2M1
@@ -64,9 +72,31 @@
 @Component
 @Named("LogbackEventGenerator")
 @Singleton
-public class LogbackEventGenerator extends AppenderBase<ILoggingEvent> implements EventListener, Initializable,
-    Disposable
+public class LogbackEventGenerator extends UnsynchronizedAppenderBase<ILoggingEvent> implements EventListener,
+    Initializable, Disposable
 {
+    /**
+     * The name of the Logback context property indicating if the events should be sent asynchronously.
+     */
+    public static final String PROPERTY_ASYNC = "xwiki.logging.async";
+
+    /**
+     * The name of the Logback context property containing the maximum number of events waiting to be sent
+     * asynchronously.
+     */
+    public static final String PROPERTY_ASYNC_BUFFERSIZE = "xwiki.logging.async.bufferSize";
+
+    /**
+     * The name of the Logback context property containing the level of the events which are dropped first when too
+     * many events are waiting to be sent asynchronously.
+     */
+    public static final String PROPERTY_ASYNC_DISCARDINGLEVEL = "xwiki.logging.async.discardingLevel";
+
+    /**
+     * The default maximum number of events waiting to be sent asynchronously.
+     */
+    private static final int DEFAULT_ASYNC_BUFFERSIZE = 8192;
+
     /**
      * The logger to log.
      */
@@ -84,6 +114,21 @@ public class LogbackEventGenerator extends AppenderBase<ILoggingEvent> implement
      */
     private LogbackUtils utils = new LogbackUtils();
 
+    /**
+     * The observation manager, looked up the first time it's needed (see the class documentation above).
+     */
+    private volatile ObservationManager observationManager;
+
+    /**
+     * The listener capturing the log of the current thread.
+     */
+    private final ThreadLocal<EventListener> captureListener = new ThreadLocal<EventListener>();
+
+    /**
+     * Send the events asynchronously, null when events are sent synchronously.
+     */
+    private AsyncLogEventDispatcher dispatcher;
+
     @Override
     public String getName()
     {
@@ -106,6 +151,12 @@ public void initialize() throws InitializationException
 
         if (rootLogger != null) {
             setContext(rootLogger.getLoggerContext());
+
+            if (Boolean.parseBoolean(getContext().getProperty(PROPERTY_ASYNC))) {
+                this.dispatcher = createDispatcher();
+                this.dispatcher.start();
+            }
+
             rootLogger.addAppender(this);
             start();
         } else {
@@ -114,6 +165,27 @@ public void initialize() throws InitializationException
         }
     }
 
+    /**
+     * @return the dispatcher configured from the Logback context properties
+     */
+    private AsyncLogEventDispatcher createDispatcher()
+    {
+        int bufferSize = DEFAULT_ASYNC_BUFFERSIZE;
+        String bufferSizeProperty = getContext().getProperty(PROPERTY_ASYNC_BUFFERSIZE);
+        if (bufferSizeProperty != null) {
+            try {
+                bufferSize = Integer.parseInt(bufferSizeProperty);
+            } catch (NumberFormatException e) {
+                this.logger.warn("Invalid value [{}] for property [{}], using default [{}]", bufferSizeProperty,
+                    PROPERTY_ASYNC_BUFFERSIZE, DEFAULT_ASYNC_BUFFERSIZE);
+            }
+        }
+
+        Level discardingLevel = Level.toLevel(getContext().getProperty(PROPERTY_ASYNC_DISCARDINGLEVEL), Level.DEBUG);
+
+        return new AsyncLogEventDispatcher(this, bufferSize, discardingLevel);
+    }
+
     @Override
     public void onEvent(Event event, Object source, Object data)
     {
@@ -127,11 +199,84 @@ public void onEvent(Event event, Object source, Object data)
      */
     private ObservationManager getObservationManager() throws ComponentLookupException
     {
-        return this.componentManager.getInstance(ObservationManager.class);
+        if (this.observationManager == null) {
+            this.observationManager = this.componentManager.getInstance(ObservationManager.class);
+        }
+
+        return this.observationManager;
+    }
+
+    /**
+     * Send the log produced in the current thread directly to the passed listener.
+     * 
+     * @param listener the listener capturing the log of the current thread, null to stop capturing
+     * @since 6.0M1
+     */
+    public void setCaptureListener(EventListener listener)
+    {
+        if (listener != null) {
+            this.captureListener.set(listener);
+        } else {
+            this.captureListener.remove();
+        }
     }
 
     @Override
     protected void append(ILoggingEvent event)
+    {
+        LogEvent logEvent = null;
+
+        // Send the log directly to the listener capturing the current thread log if any
+        EventListener listener = this.captureListener.get();
+        if (listener != null) {
+            logEvent = toLogEvent(event);
+
+            if (logEvent != null) {
+                listener.onEvent(logEvent, event.getLoggerName(), null);
+            }
+        }
+
+        if (this.dispatcher != null && !this.dispatcher.isDispatcherThread()) {
+            this.dispatcher.dispatch(event);
+        } else if (logEvent != null) {
+            sendLogEvent(logEvent, event.getLoggerName());
+        } else if (listener == null) {
+            sendLogEvent(event);
+        }
+    }
+
+    /**
+     * Send the passed Logback event to the {@link ObservationManager}.
+     * 
+     * @param event the Logback event
+     */
+    void sendLogEvent(ILoggingEvent event)
+    {
+        LogEvent logEvent = toLogEvent(event);
+
+        if (logEvent != null) {
+            sendLogEvent(logEvent, event.getLoggerName());
+        }
+    }
+
+    /**
+     * @param logEvent the event to send to the {@link ObservationManager}
+     * @param loggerName the name of the logger which produced the event
+     */
+    private void sendLogEvent(LogEvent logEvent, String loggerName)
+    {
+        try {
+            getObservationManager().notify(logEvent, loggerName, null);
+        } catch (ComponentLookupException e) {
+            this.logger.error("Can't find any implementation of [{}]", ObservationManager.class.getName(), e);
+        }
+    }
+
+    /**
+     * @param event the Logback event
+     * @return the corresponding {@link LogEvent}, null if the level is not supported
+     */
+    private LogEvent toLogEvent(ILoggingEvent event)
     {
         Throwable throwable = null;
         IThrowableProxy throwableProxy = event.getThrowableProxy();
@@ -142,16 +287,13 @@ protected void append(ILoggingEvent event)
         try {
             LogLevel logLevel = this.utils.toLogLevel(event.getLevel());
 
-            LogEvent logevent =
-                LogUtils.newLogEvent(event.getMarker(), logLevel, event.getMessage(), event.getArgumentArray(),
-                    throwable);
-
-            getObservationManager().notify(logevent, event.getLoggerName(), null);
+            return LogUtils.newLogEvent(event.getMarker(), logLevel, event.getMessage(), event.getArgumentArray(),
+                throwable);
         } catch (IllegalArgumentException e) {
             this.logger.debug("Unsupported log level [{}]", event.getLevel());
-        } catch (ComponentLookupException e) {
-            this.logger.error("Can't find any implementation of [{}]", ObservationManager.class.getName(), e);
         }
+
+        return null;
     }
 
     /**
@@ -173,5 +315,16 @@ public void dispose() throws ComponentLifecycleException
         if (rootLogger != null) {
             rootLogger.detachAppender(this);
         }
+
+        // Send the remaining events
+        if (this.dispatcher != null) {
+            try {
+                this.dispatcher.stop();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+
+                throw new ComponentLifecycleException("Interrupted while stopping the log event dispatcher", e);
+            }
+        }
     }
 }
@@ -61,7 +61,34 @@ public ch.qos.logback.classic.Logger getRootLogger()
      */
     public LogLevel toLogLevel(Level level)
     {
-        return level != null ? LogLevel.valueOf(level.toString()) : null;
+        if (level == null) {
+            return null;
+        }
+
+        // Avoid going through the level name for standard levels since it's called for each log
+        LogLevel logLevel;
+        switch (level.toInt()) {
+            case Level.ERROR_INT:
+                logLevel = LogLevel.ERROR;
+                break;
+            case Level.WARN_INT:
+                logLevel = LogLevel.WARN;
+                break;
+            case Level.INFO_INT:
+                logLevel = LogLevel.INFO;
+                break;
+            case Level.DEBUG_INT:
+                logLevel = LogLevel.DEBUG;
+                break;
+            case Level.TRACE_INT:
+                logLevel = LogLevel.TRACE;
+                break;
+            default:
+                logLevel = LogLevel.valueOf(level.toString());
+                break;
+        }
+
+        return logLevel;
     }
 
     /**
@@ -0,0 +1,148 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.logging.logback.internal;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded lock free queue supporting several producers and a single consumer.
+ * <p>
+ * Each slot carries a sequence number telling if it is ready to be written by the producer owning the corresponding
+ * position or to be read by the consumer, so that producers only compete on a single compare and set of the tail
+ * position and never wait for each other.
+ * 
+ * @param <E> the type of the elements
+ * @version $Id$
+ * @since 6.0M1
+ */
+public class RingBuffer<E>
+{
+    /**
+     * Used to get the slot of a position.
+     */
+    private final int mask;
+
+    /**
+     * The elements.
+     */
+    private final AtomicReferenceArray<E> elements;
+
+    /**
+     * The sequence of each slot.
+     */
+    private final AtomicLongArray sequences;
+
+    /**
+     * The position of the next element to write.
+     */
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * The position of the next element to read, only modified by the consumer.
+     */
+    private volatile long head;
+
+    /**
+     * @param capacity the minimum number of elements the buffer can contain, rounded to the next power of two
+     */
+    public RingBuffer(int capacity)
+    {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+
+        this.mask = size - 1;
+        this.elements = new AtomicReferenceArray<E>(size);
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; ++i) {
+            this.sequences.set(i, i);
+        }
+    }
+
+    /**
+     * @return the maximum number of elements the buffer can contain
+     */
+    public int capacity()
+    {
+        return this.mask + 1;
+    }
+
+    /**
+     * @return the approximate number of elements in the buffer
+     */
+    public int size()
+    {
+        return (int) (this.tail.get() - this.head);
+    }
+
+    /**
+     * @param element the element to add
+     * @return false if the buffer is full
+     */
+    public boolean offer(E element)
+    {
+        long position = this.tail.get();
+
+        while (true) {
+            int slot = (int) position & this.mask;
+            long difference = this.sequences.get(slot) - position;
+
+            if (difference == 0) {
+                if (this.tail.compareAndSet(position, position + 1)) {
+                    this.elements.set(slot, element);
+                    // Make the slot available to the consumer
+                    this.sequences.set(slot, position + 1);
+
+                    return true;
+                }
+            } else if (difference < 0) {
+                // The slot has not been consumed yet: the buffer is full
+                return false;
+            }
+
+            position = this.tail.get();
+        }
+    }
+
+    /**
+     * Must only be called by the consumer.
+     * 
+     * @return the first element or null if the buffer is empty
+     */
+    public E poll()
+    {
+        long position = this.head;
+        int slot = (int) position & this.mask;
+
+        if (this.sequences.get(slot) != position + 1) {
+            // Not written yet
+            return null;
+        }
+
+        E element = this.elements.get(slot);
+        this.elements.set(slot, null);
+
+        // Make the slot available to the producer of the next round
+        this.sequences.set(slot, position + this.mask + 1);
+        this.head = position + 1;
+
+        return element;
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.logging.logback.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+
+/**
+ * Send the same events from 64 concurrent loggers directly and through an {@link AsyncLogEventDispatcher}, check that
+ * no error is lost and log the time spent in the loggers.
+ * <p>
+ * The size of the benchmark can be changed with the {@code benchmark.loggers} and {@code benchmark.events} system
+ * properties, for example {@code mvn test -Dtest=AsyncLogEventDispatcherBenchmarkTest -Dbenchmark.events=100000}.
+ * 
+ * @version $Id$
+ */
+public class AsyncLogEventDispatcherBenchmarkTest
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(AsyncLogEventDispatcherBenchmarkTest.class);
+
+    private final int nbLoggers = Integer.getInteger("benchmark.loggers", 64);
+
+    private final int nbEvents = Integer.getInteger("benchmark.events", 1000);
+
+    private final AtomicInteger sentErrors = new AtomicInteger();
+
+    private final AtomicInteger sentInfos = new AtomicInteger();
+
+    /**
+     * Simulate listeners doing some work with each event and a shared state.
+     */
+    private final LogbackEventGenerator generator = new LogbackEventGenerator()
+    {
+        private long work;
+
+        @Override
+        synchronized void sendLogEvent(ILoggingEvent event)
+        {
+            for (int i = 0; i < 1000; ++i) {
+                this.work += i ^ event.getMessage().length();
+            }
+
+            if (event.getLevel() == Level.ERROR) {
+                sentErrors.incrementAndGet();
+            } else {
+                sentInfos.incrementAndGet();
+            }
+        }
+    };
+
+    private interface EventSender
+    {
+        void send(ILoggingEvent event);
+    }
+
+    private static ILoggingEvent createEvent(Level level, int logger)
+    {
+        LoggingEvent event = new LoggingEvent();
+        event.setLevel(level);
+        event.setLoggerName("logger" + logger);
+        event.setMessage("message from logger " + logger);
+
+        return event;
+    }
+
+    private long run(final EventSender sender) throws InterruptedException
+    {
+        List<Thread> threads = new ArrayList<Thread>(this.nbLoggers);
+        for (int i = 0; i < this.nbLoggers; ++i) {
+            final int logger = i;
+            threads.add(new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    for (int j = 0; j < nbEvents; ++j) {
+                        sender.send(createEvent(Level.ERROR, logger));
+                        sender.send(createEvent(Level.INFO, logger));
+                    }
+                }
+            }));
+        }
+
+        long time = System.nanoTime();
+
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        return System.nanoTime() - time;
+    }
+
+    @Test
+    public void dispatchFromConcurrentLoggers() throws InterruptedException
+    {
+        long total = 2L * this.nbLoggers * this.nbEvents;
+
+        long time = run(new EventSender()
+        {
+            @Override
+            public void send(ILoggingEvent event)
+            {
+                generator.sendLogEvent(event);
+            }
+        });
+
+        LOGGER.info("Synchronous: {} loggers, {} ns/event", this.nbLoggers, time / total);
+
+        Assert.assertEquals(total / 2, this.sentErrors.getAndSet(0));
+        Assert.assertEquals(total / 2, this.sentInfos.getAndSet(0));
+
+        final AsyncLogEventDispatcher dispatcher = new AsyncLogEventDispatcher(this.generator, 1024, Level.INFO);
+        dispatcher.start();
+
+        time = run(new EventSender()
+        {
+            @Override
+            public void send(ILoggingEvent event)
+            {
+                dispatcher.dispatch(event);
+            }
+        });
+
+        long stopTime = System.nanoTime();
+        dispatcher.stop();
+        stopTime = System.nanoTime() - stopTime;
+
+        LOGGER.info("Asynchronous: {} loggers, {} ns/event, {} ms to flush on stop, {} events dropped",
+            this.nbLoggers, time / total, stopTime / 1000000, dispatcher.getDropped());
+
+        // No error is ever lost, info events might be
+        Assert.assertEquals(total / 2, this.sentErrors.get());
+        Assert.assertEquals(total / 2, this.sentInfos.get() + dispatcher.getDropped());
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.logging.logback.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for {@link AsyncLogEventDispatcher}.
+ * 
+ * @version $Id$
+ */
+public class AsyncLogEventDispatcherTest
+{
+    private ILoggingEvent errorEvent;
+
+    private ILoggingEvent debugEvent;
+
+    private final AtomicInteger sentErrors = new AtomicInteger();
+
+    private final AtomicInteger sentDebugs = new AtomicInteger();
+
+    private final LogbackEventGenerator generator = new LogbackEventGenerator()
+    {
+        @Override
+        void sendLogEvent(ILoggingEvent event)
+        {
+            if (event.getLevel() == Level.ERROR) {
+                sentErrors.incrementAndGet();
+            } else {
+                sentDebugs.incrementAndGet();
+            }
+        }
+    };
+
+    @Before
+    public void setUp()
+    {
+        this.errorEvent = mock(ILoggingEvent.class);
+        when(this.errorEvent.getLevel()).thenReturn(Level.ERROR);
+
+        this.debugEvent = mock(ILoggingEvent.class);
+        when(this.debugEvent.getLevel()).thenReturn(Level.DEBUG);
+    }
+
+    @Test
+    public void dispatchWhenBufferIsFull() throws InterruptedException
+    {
+        AsyncLogEventDispatcher dispatcher = new AsyncLogEventDispatcher(this.generator, 8, Level.DEBUG);
+
+        // Debug events are dropped when the buffer is 80% full
+        for (int i = 0; i < 10; ++i) {
+            dispatcher.dispatch(this.debugEvent);
+        }
+
+        Assert.assertEquals(3, dispatcher.getDropped());
+
+        // Error events fill the rest of the buffer and are then sent directly since the dispatcher is not running
+        dispatcher.dispatch(this.errorEvent);
+        dispatcher.dispatch(this.errorEvent);
+
+        Assert.assertEquals(0, this.sentDebugs.get());
+        Assert.assertEquals(1, this.sentErrors.get());
+
+        dispatcher.stop();
+
+        Assert.assertEquals(7, this.sentDebugs.get());
+        Assert.assertEquals(2, this.sentErrors.get());
+        Assert.assertEquals(3, dispatcher.getDropped());
+
+        // Queued events are prepared for deferred processing, dropped ones are not
+        verify(this.debugEvent, times(7)).prepareForDeferredProcessing();
+        verify(this.errorEvent, times(2)).prepareForDeferredProcessing();
+    }
+
+    @Test
+    public void dispatchFromConcurrentLoggers() throws InterruptedException
+    {
+        final AsyncLogEventDispatcher dispatcher = new AsyncLogEventDispatcher(this.generator, 64, Level.DEBUG);
+        dispatcher.start();
+
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 64; ++i) {
+            Thread thread = new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    for (int j = 0; j < 1000; ++j) {
+                        dispatcher.dispatch(errorEvent);
+                        dispatcher.dispatch(debugEvent);
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        dispatcher.stop();
+
+        // No error is ever lost, debug events might be
+        Assert.assertEquals(64000, this.sentErrors.get());
+        Assert.assertEquals(64000, this.sentDebugs.get() + dispatcher.getDropped());
+    }
+
+    @Test
+    public void dispatchAfterStop() throws InterruptedException
+    {
+        AsyncLogEventDispatcher dispatcher = new AsyncLogEventDispatcher(this.generator, 8, Level.DEBUG);
+        dispatcher.start();
+        dispatcher.stop();
+
+        // The buffer has room but nobody is going to read it anymore
+        dispatcher.dispatch(this.errorEvent);
+        dispatcher.dispatch(this.debugEvent);
+
+        Assert.assertEquals(1, this.sentErrors.get());
+        Assert.assertEquals(1, this.sentDebugs.get());
+        Assert.assertEquals(0, dispatcher.getDropped());
+    }
+
+    @Test
+    public void dispatchWhileStopping() throws InterruptedException
+    {
+        final AsyncLogEventDispatcher dispatcher = new AsyncLogEventDispatcher(this.generator, 64, Level.DEBUG);
+        dispatcher.start();
+
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 8; ++i) {
+            Thread thread = new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    for (int j = 0; j < 10000; ++j) {
+                        dispatcher.dispatch(errorEvent);
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+
+        dispatcher.stop();
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // Events dispatched during and after the stop are not left in the buffer
+        Assert.assertEquals(80000, this.sentErrors.get());
+    }
+}
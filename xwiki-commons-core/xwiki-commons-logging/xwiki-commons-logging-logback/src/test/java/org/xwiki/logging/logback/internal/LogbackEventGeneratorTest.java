@@ -91,6 +91,28 @@ public void verifyThatLoggingGeneratesALogEvent()
         verify(listener).onEvent(eq(expected), eq(getClass().getName()), eq(null));
     }
 
+    @Test
+    public void captureListenerReceivesCurrentThreadLog() throws Exception
+    {
+        LogbackEventGenerator generator =
+            (LogbackEventGenerator) this.componentManager.getInstance(EventListener.class, "LogbackEventGenerator");
+
+        EventListener listener = mock(EventListener.class);
+
+        generator.setCaptureListener(listener);
+
+        this.logger.error("captured message");
+
+        Event expected = new LogEvent(null, LogLevel.ERROR, "captured message", null, null);
+        verify(listener).onEvent(eq(expected), eq(getClass().getName()), eq(null));
+
+        generator.setCaptureListener(null);
+
+        this.logger.error("not captured message");
+
+        verifyNoMoreInteractions(listener);
+    }
+
     @Test
     public void initializeWhenNoLogback() throws Exception
     {